@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index;
+
+/**
+ * Receives the results of spatial joins, see {@link SpatialJoin}.
+ *
+ * @param <T> Value type of the first index
+ * @param <U> Value type of the second index
+ */
+@FunctionalInterface
+public interface JoinResultSink<T, U> {
+
+	/**
+	 * Called once for every pair of matching entries, i.e. intersecting entries or,
+	 * for distance joins, entries that are close enough.
+	 * 
+	 * For parallel joins, this method may be called concurrently by multiple threads.
+	 * 
+	 * @param e1 an entry of the first index
+	 * @param e2 an entry of the second index that matches 'e1'. 
+	 * Entries may be reused by the index after this method returns, so they should 
+	 * be copied if they are required later on.
+	 */
+	void accept(RectangleEntry<T> e1, RectangleEntry<U> e2);
+	
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Batch kNN queries.
+ * 
+ * The parallel variant splits the query points into chunks that are processed by
+ * the common fork-join pool. Each chunk uses a single kNN iterator that is reused
+ * (with {@link QueryIteratorKNN#reset(double[], int)}) for all of its query points.
+ * It requires that the index supports concurrent queries, i.e. queries must not 
+ * modify the index. Statistics counters of the index may be inaccurate when 
+ * queries are executed concurrently.
+ */
+public final class KnnBatchQuery {
+
+	/** Batches smaller than this are processed sequentially. */
+	private static final int PARALLEL_THRESHOLD = 256;
+	/** Maximum number of query points per task. */
+	private static final int MAX_CHUNK_SIZE = 1024;
+
+	private KnnBatchQuery() {
+		//static utility
+	}
+
+	/**
+	 * Execute all queries sequentially in the current thread.
+	 * @param <T> value type
+	 * @param index the index
+	 * @param centers query points
+	 * @param k number of neighbors
+	 * @param sink receives the results
+	 */
+	public static <T> void sequential(PointIndex<T> index, double[][] centers, int k, 
+			KnnResultSink<T> sink) {
+		query(index, centers, 0, centers.length, k, sink);
+	}
+
+	/**
+	 * Execute the queries in parallel. The index must support concurrent queries.
+	 * @param <T> value type
+	 * @param index the index
+	 * @param centers query points
+	 * @param k number of neighbors
+	 * @param sink receives the results, this may be called concurrently
+	 */
+	public static <T> void parallel(PointIndex<T> index, double[][] centers, int k, 
+			KnnResultSink<T> sink) {
+		if (centers.length < PARALLEL_THRESHOLD) {
+			sequential(index, centers, k, sink);
+			return;
+		}
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		//Create a few tasks per worker to allow for load balancing
+		int chunkSize = centers.length / (pool.getParallelism() * 4);
+		chunkSize = Math.max(1, Math.min(chunkSize, MAX_CHUNK_SIZE));
+		pool.invoke(new QueryTask<>(index, centers, 0, centers.length, k, sink, chunkSize));
+	}
+
+	private static <T> void query(PointIndex<T> index, double[][] centers, int start, int end,
+			int k, KnnResultSink<T> sink) {
+		if (start >= end) {
+			return;
+		}
+		QueryIteratorKNN<PointEntryDist<T>> it = index.queryKNN(centers[start], k);
+		for (int i = start; i < end; i++) {
+			if (i > start) {
+				it.reset(centers[i], k);
+			}
+			while (it.hasNext()) {
+				sink.accept(i, it.next());
+			}
+		}
+	}
+
+	private static class QueryTask<T> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final PointIndex<T> index;
+		private final double[][] centers;
+		private final int start;
+		private final int end;
+		private final int k;
+		private final KnnResultSink<T> sink;
+		private final int chunkSize;
+
+		QueryTask(PointIndex<T> index, double[][] centers, int start, int end, int k,
+				KnnResultSink<T> sink, int chunkSize) {
+			this.index = index;
+			this.centers = centers;
+			this.start = start;
+			this.end = end;
+			this.k = k;
+			this.sink = sink;
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= chunkSize) {
+				query(index, centers, start, end, k, sink);
+				return;
+			}
+			int mid = (start + end) >>> 1;
+			invokeAll(new QueryTask<>(index, centers, start, mid, k, sink, chunkSize),
+					new QueryTask<>(index, centers, mid, end, k, sink, chunkSize));
+		}
+	}
+}
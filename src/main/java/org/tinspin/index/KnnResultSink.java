@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index;
+
+/**
+ * Receives the results of batch kNN queries, 
+ * see {@link PointIndex#queryKNN(double[][], int, KnnResultSink)}.
+ *
+ * @param <T> Value type
+ */
+@FunctionalInterface
+public interface KnnResultSink<T> {
+
+	/**
+	 * Called once for every neighbor of every query point. The neighbors of a query 
+	 * point are reported consecutively, in the order in which they are returned by
+	 * {@link PointIndex#queryKNN(double[], int)}.
+	 * 
+	 * For parallel batch queries, this method may be called concurrently by multiple 
+	 * threads (for different query points).
+	 * 
+	 * @param queryId the position of the query point in the 'centers' array
+	 * @param entry a neighbor. The entry may be reused by the index after this method
+	 * returns, so it should be copied if it is required later on.
+	 */
+	void accept(int queryId, PointEntryDist<T> entry);
+	
+}
@@ -21,12 +21,117 @@ package org.tinspin.index;
 public interface PointDistanceFunction {
 
 	/** L1/Manhattan/taxi distance. */
-	public static PointDistanceFunction L1 = PointDistanceFunction::l1;
-	/** L2/Euclidean distance. */
-	public static PointDistanceFunction L2 = PointDistanceFunction::l2;
+	public static PointDistanceFunction L1 = new PointDistanceFunction() {
+		@Override
+		public double dist(double[] p1, double[] p2) {
+			return l1(p1, p2);
+		}
+
+		@Override
+		public double dist(double[] p1, double[] p2, double maxDist) {
+			return l1(p1, p2, maxDist);
+		}
+
+		@Override
+		public double distComparable(double[] p1, double[] p2, double maxDistComparable) {
+			return l1(p1, p2, maxDistComparable);
+		}
+	};
+	/** L2/Euclidean distance. The comparable distance is the squared euclidean distance. */
+	public static PointDistanceFunction L2 = new PointDistanceFunction() {
+		@Override
+		public double dist(double[] p1, double[] p2) {
+			return l2(p1, p2);
+		}
+
+		@Override
+		public double dist(double[] p1, double[] p2, double maxDist) {
+			//Allow for rounding errors, sqrt(d) may be equal to 'maxDist' for 'd > maxDist^2'
+			return Math.sqrt(l2Squared(p1, p2, maxDist * maxDist * (1 + 1e-12)));
+		}
+
+		@Override
+		public double distComparable(double[] p1, double[] p2) {
+			return l2Squared(p1, p2);
+		}
+
+		@Override
+		public double distComparable(double[] p1, double[] p2, double maxDistComparable) {
+			return l2Squared(p1, p2, maxDistComparable);
+		}
+
+		@Override
+		public double toDist(double distComparable) {
+			return Math.sqrt(distComparable);
+		}
+
+		@Override
+		public double toComparable(double dist) {
+			return dist * dist;
+		}
+	};
 
 	double dist(double[] p1, double[] p2);
 
+	/**
+	 * Distance with early termination. Implementations may stop the calculation
+	 * as soon as it is clear that the distance is larger than 'maxDist'.
+	 * In that case they return a value larger than 'maxDist', otherwise they return
+	 * the same value as {@link #dist(double[], double[])}.
+	 * The default implementation always calculates the full distance.
+	 * @param p1 a point
+	 * @param p2 another point
+	 * @param maxDist the maximum distance of interest
+	 * @return distance between the points, or any value larger than 'maxDist'
+	 */
+	default double dist(double[] p1, double[] p2, double maxDist) {
+		return dist(p1, p2);
+	}
+
+	/**
+	 * Comparable distance. This is a monotone function of {@link #dist(double[], double[])}
+	 * that may be cheaper to calculate, such as the squared euclidean distance.
+	 * It can be used when distances are only compared with each other, for example
+	 * during kNN searches. The default implementation returns the distance.
+	 * @param p1 a point
+	 * @param p2 another point
+	 * @return comparable distance between the points
+	 * @see #toDist(double)
+	 * @see #toComparable(double)
+	 */
+	default double distComparable(double[] p1, double[] p2) {
+		return dist(p1, p2);
+	}
+
+	/**
+	 * Comparable distance with early termination, 
+	 * see {@link #dist(double[], double[], double)}.
+	 * @param p1 a point
+	 * @param p2 another point
+	 * @param maxDistComparable the maximum comparable distance of interest
+	 * @return comparable distance between the points, or any value larger than
+	 * 'maxDistComparable'
+	 */
+	default double distComparable(double[] p1, double[] p2, double maxDistComparable) {
+		return distComparable(p1, p2);
+	}
+
+	/**
+	 * @param distComparable a comparable distance
+	 * @return the distance that corresponds to the comparable distance
+	 */
+	default double toDist(double distComparable) {
+		return distComparable;
+	}
+
+	/**
+	 * @param dist a distance, must not be negative
+	 * @return the comparable distance that corresponds to the distance
+	 */
+	default double toComparable(double dist) {
+		return dist;
+	}
+
 	/**
 	 * 
 	 * @param p1 a point
@@ -53,6 +158,26 @@ public interface PointDistanceFunction {
 		return dist;
 	}
 
+	/**
+	 * Manhattan/Taxi distance / L1 with early termination.
+	 * @param p1 point 1
+	 * @param p2 point 2
+	 * @param maxDist maximum distance
+	 * @return distance or {@code Double.POSITIVE_INFINITY} if the distance is
+	 * larger than 'maxDist'
+	 */
+	public static double l1(double[] p1, double[] p2, double maxDist) {
+		double dist = 0;
+		for (int i = 0; i < p1.length; i++) {
+			double d = Math.abs(p1[i] - p2[i]);
+			dist += d;
+			if (dist > maxDist) {
+				return Double.POSITIVE_INFINITY;
+			}
+		}
+		return dist;
+	}
+
 	/**
 	 * Euclidean distance / L2.
 	 * @param p1 point 1
@@ -68,6 +193,41 @@ public interface PointDistanceFunction {
 		return Math.sqrt(dist);
 	}
 
+	/**
+	 * Squared euclidean distance.
+	 * @param p1 point 1
+	 * @param p2 point 2
+	 * @return squared distance
+	 */
+	public static double l2Squared(double[] p1, double[] p2) {
+		double dist = 0;
+		for (int i = 0; i < p1.length; i++) {
+			double d = p1[i] - p2[i];
+			dist += d*d;
+		}
+		return dist;
+	}
+
+	/**
+	 * Squared euclidean distance with early termination.
+	 * @param p1 point 1
+	 * @param p2 point 2
+	 * @param maxDistSquared maximum squared distance
+	 * @return squared distance or {@code Double.POSITIVE_INFINITY} if the squared 
+	 * distance is larger than 'maxDistSquared'
+	 */
+	public static double l2Squared(double[] p1, double[] p2, double maxDistSquared) {
+		double dist = 0;
+		for (int i = 0; i < p1.length; i++) {
+			double d = p1[i] - p2[i];
+			dist += d*d;
+			if (dist > maxDistSquared) {
+				return Double.POSITIVE_INFINITY;
+			}
+		}
+		return dist;
+	}
+
 	public static String getName(PointDistanceFunction fn) {
 		//'nice' hack, eh?
 		if (fn == L1) {
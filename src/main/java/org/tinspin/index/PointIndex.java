@@ -18,6 +18,7 @@
 package org.tinspin.index;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 public interface PointIndex<T> extends Index<T> {
 
@@ -85,4 +86,88 @@ public interface PointIndex<T> extends Index<T> {
 	 */
 	QueryIteratorKNN<PointEntryDist<T>> queryKNN(double[] center, int k);
 
+	/**
+	 * Batch kNN query. This executes {@link #queryKNN(double[], int)} for every point in
+	 * 'centers' and reports the results to 'sink'.
+	 * 
+	 * The default implementation executes the queries sequentially and reuses a single
+	 * iterator. Implementations that support concurrent queries may execute them in 
+	 * parallel, in that case 'sink' may be called concurrently.
+	 * 
+	 * @param centers center points
+	 * @param k number of neighbors per center point
+	 * @param sink receives the neighbors of each center point
+	 * @see KnnBatchQuery
+	 */
+	default void queryKNN(double[][] centers, int k, KnnResultSink<T> sink) {
+		KnnBatchQuery.sequential(this, centers, k, sink);
+	}
+
+	/**
+	 * Finds all points with a distance of at most 'radius' to 'center'. 
+	 * This uses euclidean distance, except for indexes that are configured with a
+	 * different distance function.
+	 * 
+	 * The default implementation filters the result of a window query with euclidean
+	 * distance. Implementations should override this to prune nodes by their distance 
+	 * to 'center', and they must override it if they use a different distance function.
+	 * 
+	 * @param center center point
+	 * @param radius maximum distance, inclusive
+	 * @return All points within the given distance of 'center', in no particular order.
+	 */
+	default QueryIteratorRange<PointEntry<T>> queryRange(double[] center, double radius) {
+		return new QueryIteratorRange<PointEntry<T>>() {
+			private final double[] min = new double[getDims()];
+			private final double[] max = new double[getDims()];
+			private QueryIterator<PointEntry<T>> it;
+			private double[] c;
+			private double r;
+			private PointEntry<T> next;
+
+			{
+				reset(center, radius);
+			}
+
+			@Override
+			public QueryIteratorRange<PointEntry<T>> reset(double[] center, double radius) {
+				for (int i = 0; i < min.length; i++) {
+					min[i] = center[i] - radius;
+					max[i] = center[i] + radius;
+				}
+				this.c = center;
+				this.r = radius;
+				if (it == null) {
+					it = query(min, max);
+				} else {
+					it.reset(min, max);
+				}
+				next = null;
+				return this;
+			}
+
+			@Override
+			public boolean hasNext() {
+				//Entries may be reused by 'it', so we look ahead only when required
+				while (next == null && it.hasNext()) {
+					PointEntry<T> e = it.next();
+					if (PointDistanceFunction.L2.dist(c, e.point()) <= r) {
+						next = e;
+					}
+				}
+				return next != null;
+			}
+
+			@Override
+			public PointEntry<T> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				PointEntry<T> ret = next;
+				next = null;
+				return ret;
+			}
+		};
+	}
+
 }
\ No newline at end of file
@@ -17,8 +17,11 @@
  */
 package org.tinspin.index;
 
+import java.util.function.BiConsumer;
+
 import org.tinspin.index.rtree.Entry;
 import org.tinspin.index.rtree.RTree;
+import org.tinspin.index.rtree.RTree.LoadPolicy;
 
 public class PointIndexWrapper<T> implements PointIndex<T> {
 
@@ -202,6 +205,57 @@ public class PointIndexWrapper<T> implements PointIndex<T> {
 		((RTree<T>)ind).load(entries);
 	}
 
+	public void load(Entry<T>[] entries, LoadPolicy policy) {
+		if (!(ind instanceof RTree)) {
+			throw new UnsupportedOperationException(
+					"Bulkloading is only supported for RTrees");
+		}
+		((RTree<T>)ind).load(entries, policy);
+	}
+
+	/**
+	 * Distance join: find all pairs of points of this index and another index with a
+	 * distance of at most 'maxDist'. The join is fastest if both indexes wrap 
+	 * an {@link RTree}.
+	 * @param <U> value type of the other index
+	 * @param other the other index
+	 * @param maxDist maximum distance
+	 * @param parallel whether to execute the join in parallel
+	 * @param consumer receives all pairs of matching points, this may be called 
+	 * concurrently if 'parallel' is 'true'
+	 * @see SpatialJoin
+	 */
+	public <U> void join(PointIndexWrapper<U> other, double maxDist, boolean parallel, 
+			BiConsumer<? super PointEntry<T>, ? super PointEntry<U>> consumer) {
+		JoinResultSink<T, U> sink = (e1, e2) -> consumer.accept(
+				new PointW<>(e1.lower(), e1.value()), new PointW<>(e2.lower(), e2.value()));
+		if (parallel) {
+			SpatialJoin.parallel(ind, other.ind, maxDist, sink);
+		} else {
+			SpatialJoin.sequential(ind, other.ind, maxDist, sink);
+		}
+	}
+
+	/**
+	 * Distance self-join: find all pairs of different points of this index with a
+	 * distance of at most 'maxDist'. Every pair is reported only once.
+	 * @param maxDist maximum distance
+	 * @param parallel whether to execute the join in parallel
+	 * @param consumer receives all pairs of matching points, this may be called 
+	 * concurrently if 'parallel' is 'true'
+	 * @see SpatialJoin
+	 */
+	public void selfJoin(double maxDist, boolean parallel, 
+			BiConsumer<? super PointEntry<T>, ? super PointEntry<T>> consumer) {
+		JoinResultSink<T, T> sink = (e1, e2) -> consumer.accept(
+				new PointW<>(e1.lower(), e1.value()), new PointW<>(e2.lower(), e2.value()));
+		if (parallel) {
+			SpatialJoin.parallelSelf(ind, maxDist, sink);
+		} else {
+			SpatialJoin.sequentialSelf(ind, maxDist, sink);
+		}
+	}
+
 	@Override
 	public String toStringTree() {
 		return ind.toStringTree();
@@ -129,4 +129,25 @@ public interface RectangleDistanceFunction {
 		}
 		return Math.sqrt(dist);
 	}
+
+	/**
+	 * @param min1 lower left corner of the first rectangle
+	 * @param max1 upper right corner of the first rectangle
+	 * @param min2 lower left corner of the second rectangle
+	 * @param max2 upper right corner of the second rectangle
+	 * @return the minimum distance between the two rectangles, '0' if they intersect
+	 */
+	public static double edgeDistance(double[] min1, double[] max1, double[] min2, double[] max2) {
+		double dist = 0;
+		for (int i = 0; i < min1.length; i++) {
+			double d = 0;
+			if (min2[i] > max1[i]) {
+				d = min2[i] - max1[i];
+			} else if (max2[i] < min1[i]) {
+				d = min1[i] - max2[i];
+			}
+			dist += d*d;
+		}
+		return Math.sqrt(dist);
+	}
 }
@@ -67,6 +67,30 @@ public interface RectangleIndex<T> extends Index<T> {
 	 */
 	QueryIterator<RectangleEntry<T>> queryIntersect(double[] min, double[] max);
 
+	/**
+	 * The default implementation filters the result of 
+	 * {@link #queryIntersect(double[], double[])}.
+	 * @param min Lower left corner of the query window
+	 * @param max Upper right corner of the query window
+	 * @return All rectangles that lie completely inside the query rectangle.
+	 */
+	default QueryIterator<RectangleEntry<T>> queryContained(double[] min, double[] max) {
+		return new WindowFilterIterator<>(queryIntersect(min, max), min, max, 
+				WindowPredicate.CONTAINED);
+	}
+
+	/**
+	 * The default implementation filters the result of 
+	 * {@link #queryIntersect(double[], double[])}.
+	 * @param min Lower left corner of the query window
+	 * @param max Upper right corner of the query window
+	 * @return All rectangles that completely enclose the query rectangle.
+	 */
+	default QueryIterator<RectangleEntry<T>> queryEnclosing(double[] min, double[] max) {
+		return new WindowFilterIterator<>(queryIntersect(min, max), min, max, 
+				WindowPredicate.ENCLOSING);
+	}
+
 	/**
 	 * Finds the nearest neighbor. This uses euclidean 'edge distance'.
 	 * Other distance types can only be specified directly on the index implementations. 
@@ -92,4 +116,16 @@ public interface RectangleIndex<T> extends Index<T> {
 	 */
 	QueryIteratorKNN<RectangleEntryDist<T>> queryKNN(double[] center, int k);
 
+	/**
+	 * Spatial join: find all pairs of intersecting entries of this index and another
+	 * index. The join is executed in the current thread.
+	 * @param <U> value type of the other index
+	 * @param other the other index
+	 * @param sink receives all pairs of intersecting entries
+	 * @see SpatialJoin
+	 */
+	default <U> void join(RectangleIndex<U> other, JoinResultSink<T, U> sink) {
+		SpatialJoin.sequential(this, other, sink);
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.tinspin.index.rtree.Entry;
+import org.tinspin.index.rtree.RTree;
+import org.tinspin.index.rtree.RTreeJoin;
+
+/**
+ * Spatial joins: find all pairs of intersecting rectangles of two indexes.
+ * Distance joins find all pairs of rectangles with a distance of at most 'maxDist', 
+ * see {@link RectangleDistanceFunction#edgeDistance(double[], double[], double[], double[])}.
+ * For points, this is the Euclidean distance. Joins with 'maxDist=0' are 
+ * intersection joins.
+ * 
+ * If both indexes are {@link RTree}s, the join descends both trees together, 
+ * see {@link RTreeJoin}. For other indexes, the join iterates over the first index 
+ * and executes a window query on the second index for every entry. 
+ * The parallel variant of this fallback splits the entries of the first index into 
+ * chunks that are processed by the common fork-join pool.
+ * 
+ * Self-joins report every pair of different entries only once. Indexes other than 
+ * {@link RTree} are copied into a temporary {@link RTree} for self-joins.
+ * 
+ * Parallel joins require that the indexes support concurrent queries, i.e. queries 
+ * must not modify the index.
+ */
+public final class SpatialJoin {
+
+	/** Outer inputs smaller than this are processed sequentially. */
+	private static final int PARALLEL_THRESHOLD = 1024;
+	/** Maximum number of outer entries per task. */
+	private static final int MAX_CHUNK_SIZE = 1024;
+
+	private SpatialJoin() {
+		//static utility
+	}
+
+	/**
+	 * Execute a spatial join in the current thread.
+	 * @param <T> value type of the first index
+	 * @param <U> value type of the second index
+	 * @param index1 the first index
+	 * @param index2 the second index
+	 * @param sink receives all pairs of intersecting entries
+	 */
+	public static <T, U> void sequential(RectangleIndex<T> index1, RectangleIndex<U> index2, 
+			JoinResultSink<T, U> sink) {
+		sequential(index1, index2, 0, sink);
+	}
+
+	/**
+	 * Execute a distance join in the current thread.
+	 * @param <T> value type of the first index
+	 * @param <U> value type of the second index
+	 * @param index1 the first index
+	 * @param index2 the second index
+	 * @param maxDist maximum distance
+	 * @param sink receives all pairs of entries with a distance of at most 'maxDist'
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T, U> void sequential(RectangleIndex<T> index1, RectangleIndex<U> index2, 
+			double maxDist, JoinResultSink<T, U> sink) {
+		checkArgs(index1, index2, maxDist);
+		if (index1 instanceof RTree && index2 instanceof RTree) {
+			RTreeJoin.join((RTree<T>) index1, (RTree<U>) index2, maxDist, sink);
+			return;
+		}
+		nestedLoopJoin(queryAll(index1), index2, maxDist, sink);
+	}
+
+	/**
+	 * Execute a spatial join in parallel. The indexes must support concurrent queries.
+	 * @param <T> value type of the first index
+	 * @param <U> value type of the second index
+	 * @param index1 the first index
+	 * @param index2 the second index
+	 * @param sink receives all pairs of intersecting entries, this may be called concurrently
+	 */
+	public static <T, U> void parallel(RectangleIndex<T> index1, RectangleIndex<U> index2, 
+			JoinResultSink<T, U> sink) {
+		parallel(index1, index2, 0, sink);
+	}
+
+	/**
+	 * Execute a distance join in parallel. The indexes must support concurrent queries.
+	 * @param <T> value type of the first index
+	 * @param <U> value type of the second index
+	 * @param index1 the first index
+	 * @param index2 the second index
+	 * @param maxDist maximum distance
+	 * @param sink receives all pairs of entries with a distance of at most 'maxDist', 
+	 * this may be called concurrently
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T, U> void parallel(RectangleIndex<T> index1, RectangleIndex<U> index2, 
+			double maxDist, JoinResultSink<T, U> sink) {
+		checkArgs(index1, index2, maxDist);
+		if (index1 instanceof RTree && index2 instanceof RTree) {
+			RTreeJoin.joinParallel((RTree<T>) index1, (RTree<U>) index2, maxDist, sink);
+			return;
+		}
+		if (index1.size() < PARALLEL_THRESHOLD) {
+			sequential(index1, index2, maxDist, sink);
+			return;
+		}
+		//copy entries, iterators may reuse them
+		ArrayList<RectangleEntry<T>> entries = copyEntries(index1);
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		//Create a few tasks per worker to allow for load balancing
+		int chunkSize = entries.size() / (pool.getParallelism() * 4);
+		chunkSize = Math.max(1, Math.min(chunkSize, MAX_CHUNK_SIZE));
+		pool.invoke(new JoinTask<>(entries, index2, maxDist, 0, entries.size(), sink, chunkSize));
+	}
+
+	/**
+	 * Execute a distance self-join in the current thread. Every pair of different 
+	 * entries is reported only once.
+	 * @param <T> value type of the index
+	 * @param index the index
+	 * @param maxDist maximum distance
+	 * @param sink receives all pairs of entries with a distance of at most 'maxDist'
+	 */
+	public static <T> void sequentialSelf(RectangleIndex<T> index, double maxDist, 
+			JoinResultSink<T, T> sink) {
+		checkArgs(index, index, maxDist);
+		RTreeJoin.selfJoin(asRTree(index), maxDist, sink);
+	}
+
+	/**
+	 * Execute a distance self-join in parallel. Every pair of different 
+	 * entries is reported only once. The index must support concurrent queries.
+	 * @param <T> value type of the index
+	 * @param index the index
+	 * @param maxDist maximum distance
+	 * @param sink receives all pairs of entries with a distance of at most 'maxDist', 
+	 * this may be called concurrently
+	 */
+	public static <T> void parallelSelf(RectangleIndex<T> index, double maxDist, 
+			JoinResultSink<T, T> sink) {
+		checkArgs(index, index, maxDist);
+		RTreeJoin.selfJoinParallel(asRTree(index), maxDist, sink);
+	}
+
+	private static void checkArgs(RectangleIndex<?> index1, RectangleIndex<?> index2, 
+			double maxDist) {
+		if (index1.getDims() != index2.getDims()) {
+			throw new IllegalArgumentException("Dimensionality differs: " + 
+					index1.getDims() + " vs " + index2.getDims());
+		}
+		if (!(maxDist >= 0)) {
+			throw new IllegalArgumentException("maxDist must be >= 0: " + maxDist);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> RTree<T> asRTree(RectangleIndex<T> index) {
+		if (index instanceof RTree) {
+			return (RTree<T>) index;
+		}
+		ArrayList<RectangleEntry<T>> entries = copyEntries(index);
+		RTree<T> tree = RTree.createRStar(index.getDims());
+		tree.load(entries.toArray(new Entry[entries.size()]));
+		return tree;
+	}
+
+	private static <T> ArrayList<RectangleEntry<T>> copyEntries(RectangleIndex<T> index) {
+		ArrayList<RectangleEntry<T>> entries = new ArrayList<>(index.size());
+		for (QueryIterator<RectangleEntry<T>> it = queryAll(index); it.hasNext(); ) {
+			RectangleEntry<T> e = it.next();
+			entries.add(new Entry<>(e.lower().clone(), e.upper().clone(), e.value()));
+		}
+		return entries;
+	}
+
+	/**
+	 * Not all indexes support {@code iterator()}, so we use a window query that
+	 * covers the whole space instead.
+	 */
+	private static <T> QueryIterator<RectangleEntry<T>> queryAll(RectangleIndex<T> index) {
+		double[] min = new double[index.getDims()];
+		double[] max = new double[index.getDims()];
+		Arrays.fill(min, Double.NEGATIVE_INFINITY);
+		Arrays.fill(max, Double.POSITIVE_INFINITY);
+		return index.queryIntersect(min, max);
+	}
+
+	/**
+	 * Index nested loop join: execute a window query on the second index for every 
+	 * entry of the first index. For distance joins, the window is extended by 'maxDist' 
+	 * and the results are filtered by their actual distance.
+	 */
+	private static <T, U> void nestedLoopJoin(Iterator<RectangleEntry<T>> it1, 
+			RectangleIndex<U> index2, double maxDist, JoinResultSink<T, U> sink) {
+		QueryIterator<RectangleEntry<U>> it2 = null;
+		double[] min = new double[index2.getDims()];
+		double[] max = new double[index2.getDims()];
+		while (it1.hasNext()) {
+			RectangleEntry<T> e1 = it1.next();
+			double[] lower = e1.lower();
+			double[] upper = e1.upper();
+			if (maxDist > 0) {
+				for (int d = 0; d < min.length; d++) {
+					min[d] = lower[d] - maxDist;
+					max[d] = upper[d] + maxDist;
+				}
+				lower = min;
+				upper = max;
+			}
+			if (it2 == null) {
+				it2 = index2.queryIntersect(lower, upper);
+			} else {
+				it2.reset(lower, upper);
+			}
+			while (it2.hasNext()) {
+				RectangleEntry<U> e2 = it2.next();
+				if (maxDist == 0 || RectangleDistanceFunction.edgeDistance(
+						e1.lower(), e1.upper(), e2.lower(), e2.upper()) <= maxDist) {
+					sink.accept(e1, e2);
+				}
+			}
+		}
+	}
+
+	private static class JoinTask<T, U> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final ArrayList<RectangleEntry<T>> entries;
+		private final RectangleIndex<U> index2;
+		private final double maxDist;
+		private final int start;
+		private final int end;
+		private final JoinResultSink<T, U> sink;
+		private final int chunkSize;
+
+		JoinTask(ArrayList<RectangleEntry<T>> entries, RectangleIndex<U> index2, double maxDist,
+				int start, int end, JoinResultSink<T, U> sink, int chunkSize) {
+			this.entries = entries;
+			this.index2 = index2;
+			this.maxDist = maxDist;
+			this.start = start;
+			this.end = end;
+			this.sink = sink;
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= chunkSize) {
+				nestedLoopJoin(entries.subList(start, end).iterator(), index2, maxDist, sink);
+				return;
+			}
+			int mid = (start + end) >>> 1;
+			invokeAll(new JoinTask<>(entries, index2, maxDist, start, mid, sink, chunkSize),
+					new JoinTask<>(entries, index2, maxDist, mid, end, sink, chunkSize));
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Resetable query iterator that filters the results of an intersection query. 
+ * This is used by indexes that do not support other predicates natively.
+ *
+ * @param <T> Value type
+ */
+class WindowFilterIterator<T> implements QueryIterator<RectangleEntry<T>> {
+
+	private final QueryIterator<RectangleEntry<T>> it;
+	private final WindowPredicate predicate;
+	private double[] min;
+	private double[] max;
+	private RectangleEntry<T> next;
+
+	/**
+	 * @param it an intersection query with the window 'min'/'max'
+	 * @param min lower left corner of the query window
+	 * @param max upper right corner of the query window
+	 * @param predicate the filter
+	 */
+	WindowFilterIterator(QueryIterator<RectangleEntry<T>> it, double[] min, double[] max, 
+			WindowPredicate predicate) {
+		this.it = it;
+		this.min = min;
+		this.max = max;
+		this.predicate = predicate;
+	}
+
+	@Override
+	public boolean hasNext() {
+		//Look ahead lazily: the underlying iterator may reuse the last returned entry
+		while (next == null && it.hasNext()) {
+			RectangleEntry<T> e = it.next();
+			if (predicate.matches(min, max, e.lower(), e.upper())) {
+				next = e;
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public RectangleEntry<T> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		RectangleEntry<T> ret = next;
+		next = null;
+		return ret;
+	}
+
+	@Override
+	public void reset(double[] min, double[] max) {
+		this.min = min;
+		this.max = max;
+		this.next = null;
+		it.reset(min, max);
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index;
+
+/**
+ * Relation between the entries and the query window of a window query, 
+ * see {@link RectangleIndex#queryIntersect(double[], double[])}, 
+ * {@link RectangleIndex#queryContained(double[], double[])} and
+ * {@link RectangleIndex#queryEnclosing(double[], double[])}.
+ */
+public enum WindowPredicate {
+
+	/** Entries that intersect with the query window. */
+	INTERSECT,
+	/** Entries that lie completely inside the query window. */
+	CONTAINED,
+	/** Entries that completely enclose the query window. */
+	ENCLOSING;
+
+	/**
+	 * @param min lower left corner of the query window
+	 * @param max upper right corner of the query window
+	 * @param lower lower left corner of the entry
+	 * @param upper upper right corner of the entry
+	 * @return whether the entry matches the query window
+	 */
+	public boolean matches(double[] min, double[] max, double[] lower, double[] upper) {
+		switch (this) {
+		case CONTAINED:
+			for (int d = 0; d < min.length; d++) {
+				if (lower[d] < min[d] || upper[d] > max[d]) {
+					return false;
+				}
+			}
+			return true;
+		case ENCLOSING:
+			for (int d = 0; d < min.length; d++) {
+				if (lower[d] > min[d] || upper[d] < max[d]) {
+					return false;
+				}
+			}
+			return true;
+		default:
+			for (int d = 0; d < min.length; d++) {
+				if (lower[d] > max[d] || upper[d] < min[d]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
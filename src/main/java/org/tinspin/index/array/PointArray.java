@@ -12,11 +12,13 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
+import org.tinspin.index.PointDistanceFunction;
 import org.tinspin.index.PointEntry;
 import org.tinspin.index.PointEntryDist;
 import org.tinspin.index.PointIndex;
 import org.tinspin.index.QueryIterator;
 import org.tinspin.index.QueryIteratorKNN;
+import org.tinspin.index.QueryIteratorRange;
 import org.tinspin.index.Stats;
 
 public class PointArray<T> implements PointIndex<T> {
@@ -162,11 +164,49 @@ public class PointArray<T> implements PointIndex<T> {
     }
     
 
+	@Override
+	public AQueryIteratorRange queryRange(double[] center, double radius) {
+		return new AQueryIteratorRange(center, radius);
+	}
+
+    private class AQueryIteratorRange implements QueryIteratorRange<PointEntry<T>> {
+
+    	private Iterator<PointEntry<T>> it;
+    	
+		public AQueryIteratorRange(double[] center, double radius) {
+			reset(center, radius);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return it.hasNext();
+		}
+
+		@Override
+		public PointEntry<T> next() {
+			return it.next();
+		}
+
+		@Override
+		public AQueryIteratorRange reset(double[] center, double radius) {
+			ArrayList<PointEntry<T>> results = new ArrayList<>(); 
+			for (int i = 0; i < N; i++) { 
+				if (phc[i] != null && dist(center, phc[i]) <= radius) {
+					results.add(values[i]);
+				}
+			}
+			it = results.iterator();
+			return this;
+		}
+    }
+    
+
 	private ArrayList<KnnEntry<T>> knnQuery(double[] center, int k) {
 		ArrayList<KnnEntry<T>> ret = new ArrayList<>(k);
 		for (int i = 0; i < phc.length; i++) {
 			double[] p = phc[i];
-			double dist = dist(center, p);
+			double maxDist = ret.size() < k ? Double.POSITIVE_INFINITY : ret.get(k-1).dist;
+			double dist = PointDistanceFunction.l2Squared(center, p, maxDist);
 			if (ret.size() < k) {
 				ret.add(new KnnEntry<>(p, values[i].value(), dist));
 				ret.sort(COMP);
@@ -176,16 +216,24 @@ public class PointArray<T> implements PointIndex<T> {
 				ret.sort(COMP);
 			}
 		}
+		for (int i = 0; i < ret.size(); i++) {
+			KnnEntry<T> e = ret.get(i);
+			ret.set(i, new KnnEntry<>(e.p, e.val, Math.sqrt(e.dist)));
+		}
 		return ret;
 	}
 	
 	private static double dist(double[] a, double[] b) {
+		return Math.sqrt(distSquared(a, b));
+	}
+
+	private static double distSquared(double[] a, double[] b) {
 		double dist = 0;
 		for (int i = 0; i < a.length; i++) {
 			double d =  a[i]-b[i];
 			dist += d*d;
 		}
-		return Math.sqrt(dist);
+		return dist;
 	}
 
 	private final Comparator<KnnEntry<T>> COMP = new Comparator<KnnEntry<T>>() {
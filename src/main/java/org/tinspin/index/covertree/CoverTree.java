@@ -21,12 +21,15 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 
+import org.tinspin.index.KnnBatchQuery;
+import org.tinspin.index.KnnResultSink;
 import org.tinspin.index.PointDistanceFunction;
 import org.tinspin.index.PointEntry;
 import org.tinspin.index.PointEntryDist;
 import org.tinspin.index.PointIndex;
 import org.tinspin.index.QueryIterator;
 import org.tinspin.index.QueryIteratorKNN;
+import org.tinspin.index.QueryIteratorRange;
 import org.tinspin.index.Stats;
 
 
@@ -767,9 +770,10 @@ public class CoverTree<T> implements PointIndex<T> {
 				}
 
 				//TODO report to authors: use d(y;x) > d(_X_;q)-maxdist(q)
-				double distQX = d(x, q.point());
+				double maxDistQ = q.maxdist(this);
+				double distQX = d(q.point(), x.point(), y.dist() + maxDistQ);
 				nDist1NN++;
-				if (y.dist() > (distQX - q.maxdist(this))) {
+				if (y.dist() > (distQX - maxDistQ)) {
 					findNearestNeighbor(q, x, y, distQX);
 				}
 			}
@@ -784,6 +788,31 @@ public class CoverTree<T> implements PointIndex<T> {
 		//return new CoverTreeQueryKnn<>(this, center, k, dist);
 	}
 
+	/**
+	 * Batch kNN query. The queries are executed in parallel, so 'sink' may be called
+	 * concurrently. The tree must not be modified during the query.
+	 * @see KnnBatchQuery#parallel(PointIndex, double[][], int, KnnResultSink)
+	 */
+	@Override
+	public void queryKNN(double[][] centers, int k, KnnResultSink<T> sink) {
+		if (root != null) {
+			//Queries lazily calculate 'maxdist', so we do this in advance to avoid 
+			//modifying the tree during concurrent queries.
+			updateMaxDist(root);
+		}
+		KnnBatchQuery.parallel(this, centers, k, sink);
+	}
+
+	private void updateMaxDist(Node<T> node) {
+		if (node.hasChildren()) {
+			ArrayList<Node<T>> children = node.getChildren();
+			for (int i = 0; i < children.size(); i++) {
+				updateMaxDist(children.get(i));
+			}
+		}
+		node.maxdist(this);
+	}
+
 	private void findNearestNeighbor(Node<T> p, double[] x, 
 			int k, ArrayList<PointDist<T>> candidates, double distPX) {
 //		Algorithm 1 Find nearest neighbor
@@ -823,9 +852,10 @@ public class CoverTree<T> implements PointIndex<T> {
 	//			if (d(y, x) > (d(y, q.point()) - q.maxdist(this))) {
 	//				y = findNearestNeighbor(q, x, y);
 	//			}
-				double distQX = d(q.point(), x);
+				double maxDistQ = q.maxdist(this);
+				double distQX = d(q.point(), x, distCurrentWorst + maxDistQ);
 				nDistKNN++;
-				if (distCurrentWorst > (distQX - q.maxdist(this))) {
+				if (distCurrentWorst > (distQX - maxDistQ)) {
 					findNearestNeighbor(q, x, k, candidates, distQX);
 				}
 			}
@@ -865,6 +895,70 @@ public class CoverTree<T> implements PointIndex<T> {
 		}	
 	}
 	
+	@Override
+	public QueryIteratorRange<PointEntry<T>> queryRange(double[] center, double radius) {
+		return new RangeIterator<>(this).reset(center, radius);
+	}
+
+	private void findRange(Node<T> p, double[] x, double radius, 
+			ArrayList<PointEntry<T>> result, double distPX) {
+		if (distPX <= radius) {
+			result.add(p.point());
+		}
+
+		if (p.hasChildren()) {
+			ArrayList<Node<T>> children = p.getChildren();
+			for (int i = 0; i < children.size(); i++) {
+				Node<T> q = children.get(i);
+				
+				//Exclude children that are (compared to x) too close to the node or too far away
+				//to overlap with the query radius.
+				double distPQ = q.getDistanceToParent();
+				if (distPQ+q.maxdist(this) < distPX-radius
+						|| distPQ-q.maxdist(this)> distPX+radius) {
+					continue;
+				}
+				
+				double distQX = d(q.point(), x);
+				if (distQX - q.maxdist(this) <= radius) {
+					findRange(q, x, radius, result, distQX);
+				}
+			}
+		}
+	}
+
+	private static class RangeIterator<T> implements QueryIteratorRange<PointEntry<T>> {
+
+		private final CoverTree<T> tree;
+		private final ArrayList<PointEntry<T>> result = new ArrayList<>();
+		private Iterator<PointEntry<T>> iter;
+		
+		public RangeIterator(CoverTree<T> tree) {
+			this.tree = tree;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return iter.hasNext();
+		}
+
+		@Override
+		public PointEntry<T> next() {
+			return iter.next();
+		}
+
+		@Override
+		public QueryIteratorRange<PointEntry<T>> reset(double[] center, double radius) {
+			result.clear();
+			if (tree.root != null) {
+				double distPX = tree.d(tree.root.point(), center);
+				tree.findRange(tree.root, center, radius, result, distPX);
+			}
+			iter = result.iterator();
+			return this;
+		}	
+	}
+	
 	double d(Point<?> x, Point<?> y) {
 		return d(x, y.point());
 	}
@@ -877,6 +971,15 @@ public class CoverTree<T> implements PointIndex<T> {
 		nDistCalc++;
 		return dist.dist(x.point(), p2);
 	}
+
+	/**
+	 * @return the distance or any value larger than 'maxDist' if the distance is
+	 * larger than 'maxDist'
+	 */
+	private double d(Point<?> x, double[] p2, double maxDist) {
+		nDistCalc++;
+		return dist.dist(x.point(), p2, maxDist);
+	}
 	
 	private double covdist(Node<?> p) {
 		return covDist(p.getLevel());
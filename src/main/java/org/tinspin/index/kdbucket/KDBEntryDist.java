@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.kdbucket;
+
+import java.util.Comparator;
+
+import org.tinspin.index.PointEntryDist;
+
+public class KDBEntryDist<T> extends KDBEntry<T> implements PointEntryDist<T> {
+
+	private double distance;
+
+	public KDBEntryDist(double[] point, T value, double dist) {
+		super(point, value);
+		this.distance = dist;
+	}
+
+	void set(double[] point, T value, double dist) {
+		super.set(point, value);
+		this.distance = dist;
+	}
+
+	@Override
+	public double dist() {
+		return distance;
+	}
+
+	public static final Comparator<KDBEntryDist<?>> COMP = 
+			(KDBEntryDist<?> o1, KDBEntryDist<?> o2) -> {
+				double d = o1.dist() - o2.dist();
+				return d < 0 ? -1 : (d > 0 ? 1 : 0);
+			};
+}
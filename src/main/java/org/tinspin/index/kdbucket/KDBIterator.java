@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.kdbucket;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+import org.tinspin.index.PointEntry;
+import org.tinspin.index.QueryIterator;
+
+/**
+ * Resetable query iterator.
+ * Inner nodes are traversed depth-first, buckets are scanned linearly.
+ *
+ * @param <T> Value type
+ */
+public class KDBIterator<T> implements QueryIterator<PointEntry<T>> {
+
+	private final KDBucketTree<T> tree;
+	private final ArrayList<KDBNode<T>> stack = new ArrayList<>();
+	private KDBNode<T> leaf;
+	private int posInLeaf;
+	private KDBEntry<T> next = null;
+	private double[] min;
+	private double[] max;
+
+	KDBIterator(KDBucketTree<T> tree, double[] min, double[] max) {
+		this.tree = tree;
+		reset(min, max);
+	}
+
+	private void findNext() {
+		while (true) {
+			if (leaf != null) {
+				while (posInLeaf < leaf.size()) {
+					int pos = posInLeaf++;
+					if (leaf.isEnclosed(pos, min, max)) {
+						next = new KDBEntry<>(leaf.getPoint(pos, tree.getDims()), leaf.getValue(pos));
+						return;
+					}
+				}
+				leaf = null;
+			}
+			if (stack.isEmpty()) {
+				next = null;
+				return;
+			}
+			KDBNode<T> node = stack.remove(stack.size() - 1);
+			if (node.isLeaf()) {
+				leaf = node;
+				posInLeaf = 0;
+				continue;
+			}
+			//push 'hi' first, so that 'lo' is traversed first
+			int dim = node.getDim();
+			if (max[dim] >= node.getSplit()) {
+				stack.add(node.getHi());
+			}
+			if (min[dim] < node.getSplit()) {
+				stack.add(node.getLo());
+			}
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return next != null;
+	}
+
+	@Override
+	public KDBEntry<T> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		KDBEntry<T> ret = next;
+		findNext();
+		return ret;
+	}
+
+	/**
+	 * Reset the iterator. This iterator can be reused in order to reduce load on the
+	 * garbage collector.
+	 * @param min lower left corner of query
+	 * @param max upper right corner of query
+	 */
+	@Override
+	public void reset(double[] min, double[] max) {
+		stack.clear();
+		leaf = null;
+		this.min = min;
+		this.max = max;
+		next = null;
+		if (tree.getRoot() != null) {
+			stack.add(tree.getRoot());
+			findNext();
+		}
+	}
+}
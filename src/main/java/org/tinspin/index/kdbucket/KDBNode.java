@@ -0,0 +1,320 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ *
+ * This file is part of TinSpin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.kdbucket;
+
+import java.util.Arrays;
+
+import org.tinspin.index.kdbucket.KDBucketTree.KDBStats;
+
+/**
+ * Node of the bucket KD-Tree. A node is either a leaf (bucket) or an inner node.
+ *
+ * Leaves store their points in a single contiguous array: the coordinates of
+ * entry 'i' are at {@code coords[i*dims]} to {@code coords[i*dims+dims-1]}.
+ *
+ * Inner nodes store a split dimension and a split value. Points with
+ * {@code p[dim] >= split} are in the 'hi' subtree, all other points are in the
+ * 'lo' subtree.
+ *
+ * @param <T> Value type
+ */
+public class KDBNode<T> {
+
+	//leaf
+	private double[] coords;
+	private Object[] values;
+	private int size;
+	/** 'true' if a split failed because all points are identical. */
+	private boolean identical;
+
+	//inner node
+	private int dim;
+	private double split;
+	private KDBNode<T> lo;
+	private KDBNode<T> hi;
+
+	KDBNode(int dims, int bucketSize) {
+		this.coords = new double[dims * bucketSize];
+		this.values = new Object[bucketSize];
+	}
+
+	boolean isLeaf() {
+		return coords != null;
+	}
+
+	KDBNode<T> getChild(double[] key) {
+		return key[dim] >= split ? hi : lo;
+	}
+
+	/**
+	 * Add an entry to a leaf. This grows the bucket if required.
+	 * @param key the key
+	 * @param value the value
+	 * @param dims dimensionality
+	 */
+	void addEntry(double[] key, T value, int dims) {
+		if (identical && !isEqual(0, key, dims)) {
+			identical = false;
+		}
+		addEntry(key, 0, value, dims);
+	}
+
+	/**
+	 * @param bucketSize bucket size
+	 * @return 'true' if this leaf has overflown and can be split
+	 */
+	boolean needsSplit(int bucketSize) {
+		return size > bucketSize && !identical;
+	}
+
+	private void addEntry(double[] src, int srcPos, Object value, int dims) {
+		if (size == values.length) {
+			int newCapacity = values.length * 2;
+			values = Arrays.copyOf(values, newCapacity);
+			coords = Arrays.copyOf(coords, newCapacity * dims);
+		}
+		System.arraycopy(src, srcPos, coords, size * dims, dims);
+		values[size++] = value;
+	}
+
+	/**
+	 * Split a leaf that has overflown into two leaves. The split dimension is the
+	 * dimension with the largest spread, the split value is the median of that dimension.
+	 * Buckets that contain only identical points cannot be split and are allowed
+	 * to grow beyond 'bucketSize'. They are not split again before a different
+	 * point is added.
+	 *
+	 * Afterwards, this node is an inner node.
+	 *
+	 * @param dims dimensionality
+	 * @param bucketSize bucket size
+	 */
+	void split(int dims, int bucketSize) {
+		int splitDim = -1;
+		double maxSpread = 0;
+		for (int d = 0; d < dims; d++) {
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = d; i < size * dims; i += dims) {
+				min = Math.min(min, coords[i]);
+				max = Math.max(max, coords[i]);
+			}
+			if (max - min > maxSpread) {
+				maxSpread = max - min;
+				splitDim = d;
+			}
+		}
+		if (splitDim < 0) {
+			//all points are identical
+			identical = true;
+			return;
+		}
+
+		double[] buf = new double[size];
+		for (int i = 0; i < size; i++) {
+			buf[i] = coords[i * dims + splitDim];
+		}
+		Arrays.sort(buf);
+		double splitValue = buf[size >> 1];
+		if (splitValue == buf[0]) {
+			//Ensure that the 'lo' node is not empty
+			int i = size >> 1;
+			while (buf[i] == splitValue) {
+				i++;
+			}
+			splitValue = buf[i];
+		}
+
+		KDBNode<T> newLo = new KDBNode<>(dims, bucketSize);
+		KDBNode<T> newHi = new KDBNode<>(dims, bucketSize);
+		for (int i = 0; i < size; i++) {
+			KDBNode<T> n = coords[i * dims + splitDim] >= splitValue ? newHi : newLo;
+			n.addEntry(coords, i * dims, values[i], dims);
+		}
+		coords = null;
+		values = null;
+		size = 0;
+		dim = splitDim;
+		split = splitValue;
+		lo = newLo;
+		hi = newHi;
+
+		if (lo.needsSplit(bucketSize)) {
+			lo.split(dims, bucketSize);
+		}
+		if (hi.needsSplit(bucketSize)) {
+			hi.split(dims, bucketSize);
+		}
+	}
+
+	/**
+	 * @param key the key
+	 * @param dims dimensionality
+	 * @return position of the key in this leaf or -1 if the key was not found
+	 */
+	int find(double[] key, int dims) {
+		for (int i = 0; i < size; i++) {
+			if (isEqual(i, key, dims)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private boolean isEqual(int pos, double[] key, int dims) {
+		int offs = pos * dims;
+		for (int d = 0; d < dims; d++) {
+			if (coords[offs + d] != key[d]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Remove an entry from a leaf.
+	 * @param pos position of the entry
+	 * @param dims dimensionality
+	 * @return the value of the removed entry
+	 */
+	@SuppressWarnings("unchecked")
+	T removeEntry(int pos, int dims) {
+		T value = (T) values[pos];
+		size--;
+		if (pos < size) {
+			//move last entry into the gap
+			System.arraycopy(coords, size * dims, coords, pos * dims, dims);
+			values[pos] = values[size];
+		}
+		values[size] = null;
+		return value;
+	}
+
+	/**
+	 * Merge the children of an inner node if they are leaves with at most
+	 * 'bucketSize/2' entries. Empty children are always removed.
+	 * @param dims dimensionality
+	 * @param bucketSize bucket size
+	 */
+	void mergeChildren(int dims, int bucketSize) {
+		if (lo.isLeaf() && hi.isLeaf()) {
+			if (lo.size + hi.size <= bucketSize >> 1) {
+				KDBNode<T> oldLo = lo;
+				KDBNode<T> oldHi = hi;
+				coords = new double[dims * bucketSize];
+				values = new Object[bucketSize];
+				lo = null;
+				hi = null;
+				for (int i = 0; i < oldLo.size; i++) {
+					addEntry(oldLo.coords, i * dims, oldLo.values[i], dims);
+				}
+				for (int i = 0; i < oldHi.size; i++) {
+					addEntry(oldHi.coords, i * dims, oldHi.values[i], dims);
+				}
+				return;
+			}
+		}
+		if (lo.isLeaf() && lo.size == 0) {
+			replaceWith(hi);
+		} else if (hi.isLeaf() && hi.size == 0) {
+			replaceWith(lo);
+		}
+	}
+
+	private void replaceWith(KDBNode<T> n) {
+		coords = n.coords;
+		values = n.values;
+		size = n.size;
+		identical = n.identical;
+		dim = n.dim;
+		split = n.split;
+		lo = n.lo;
+		hi = n.hi;
+	}
+
+	double[] getCoords() {
+		return coords;
+	}
+
+	@SuppressWarnings("unchecked")
+	T getValue(int pos) {
+		return (T) values[pos];
+	}
+
+	int size() {
+		return size;
+	}
+
+	int getDim() {
+		return dim;
+	}
+
+	double getSplit() {
+		return split;
+	}
+
+	KDBNode<T> getLo() {
+		return lo;
+	}
+
+	KDBNode<T> getHi() {
+		return hi;
+	}
+
+	double[] getPoint(int pos, int dims) {
+		return Arrays.copyOfRange(coords, pos * dims, pos * dims + dims);
+	}
+
+	boolean isEnclosed(int pos, double[] min, double[] max) {
+		int offs = pos * min.length;
+		for (int d = 0; d < min.length; d++) {
+			double x = coords[offs + d];
+			if (x < min[d] || x > max[d]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	void checkNode(KDBStats s, int depth) {
+		s.nNodes++;
+		if (depth > s.maxDepth) {
+			s.maxDepth = depth;
+		}
+		if (isLeaf()) {
+			s.nLeaf++;
+			s.nEntries += size;
+			s.sumLevel += size * depth;
+			if (size > s.maxNodeSize) {
+				s.maxNodeSize = size;
+			}
+			return;
+		}
+		s.nInner++;
+		lo.checkNode(s, depth + 1);
+		hi.checkNode(s, depth + 1);
+	}
+
+	@Override
+	public String toString() {
+		if (isLeaf()) {
+			return "leaf: size=" + size + " " + System.identityHashCode(this);
+		}
+		return "dim=" + dim + " split=" + split + " " + System.identityHashCode(this);
+	}
+}
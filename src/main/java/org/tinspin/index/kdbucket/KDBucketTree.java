@@ -0,0 +1,478 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.kdbucket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.tinspin.index.PointDistanceFunction;
+import org.tinspin.index.PointEntry;
+import org.tinspin.index.PointEntryDist;
+import org.tinspin.index.PointIndex;
+import org.tinspin.index.QueryIterator;
+import org.tinspin.index.QueryIteratorKNN;
+import org.tinspin.index.QueryIteratorRange;
+import org.tinspin.index.Stats;
+
+/**
+ * A KD-Tree with bucket leaves.
+ * 
+ * Unlike {@link org.tinspin.index.kdtree.KDTree}, inner nodes do not hold entries. 
+ * Instead, all entries are stored in leaves (buckets) that hold up to 'bucketSize' 
+ * entries in contiguous primitive arrays. This greatly reduces the number of objects 
+ * (and thus memory consumption) of the tree. Queries scan buckets linearly.
+ * 
+ * When a bucket overflows it is split at the median of the dimension with the 
+ * largest spread.
+ * 
+ * @author T. Zäschke
+ *
+ * @param <T> Value type
+ */
+public class KDBucketTree<T> implements PointIndex<T> {
+
+	private static final String NL = System.lineSeparator();
+
+	public static final boolean DEBUG = false;
+
+	private static final int DEFAULT_BUCKET_SIZE = 16;
+	
+	private final int dims;
+	private final int bucketSize;
+	private int size = 0; 
+	private long nDistKNN = 0;
+	
+	private KDBNode<T> root;
+	
+	private final PointDistanceFunction dist;
+	
+	private KDBucketTree(int dims, int bucketSize, PointDistanceFunction dist) {
+		if (DEBUG) {
+			System.err.println("Warning: DEBUG enabled");
+		}
+		if (bucketSize < 2) {
+			throw new IllegalArgumentException("bucketSize must be >= 2 but was " + bucketSize);
+		}
+		this.dims = dims;
+		this.bucketSize = bucketSize;
+		this.dist = dist != null ? dist : PointDistanceFunction.L2;
+	}
+
+	public static <T> KDBucketTree<T> create(int dims) {
+		return new KDBucketTree<>(dims, DEFAULT_BUCKET_SIZE, PointDistanceFunction.L2);
+	}
+	
+	public static <T> KDBucketTree<T> create(int dims, int bucketSize) {
+		return new KDBucketTree<>(dims, bucketSize, PointDistanceFunction.L2);
+	}
+	
+	public static <T> KDBucketTree<T> create(int dims, int bucketSize, PointDistanceFunction dist) {
+		return new KDBucketTree<>(dims, bucketSize, dist);
+	}
+	
+	/**
+	 * Insert a key-value pair.
+	 * @param key the key
+	 * @param value the value
+	 */
+	@Override
+	public void insert(double[] key, T value) {
+		size++;
+		if (root == null) {
+			root = new KDBNode<>(dims, bucketSize);
+		}
+		KDBNode<T> n = root;
+		while (!n.isLeaf()) {
+			n = n.getChild(key);
+		}
+		n.addEntry(key, value, dims);
+		if (n.needsSplit(bucketSize)) {
+			n.split(dims, bucketSize);
+		}
+	}
+	
+	/**
+	 * Check whether a given key exists.
+	 * @param key the key to check
+	 * @return true iff the key exists
+	 */
+	public boolean containsExact(double[] key) {
+		KDBNode<T> n = findLeaf(key);
+		return n != null && n.find(key, dims) >= 0;
+	}
+	
+	/**
+	 * Get the value associates with the key.
+	 * @param key the key to look up
+	 * @return the value for the key or 'null' if the key was not found
+	 */
+	@Override
+	public T queryExact(double[] key) {
+		KDBNode<T> n = findLeaf(key);
+		if (n == null) {
+			return null;
+		}
+		int pos = n.find(key, dims);
+		return pos < 0 ? null : n.getValue(pos);
+	}
+	
+	private KDBNode<T> findLeaf(double[] key) {
+		KDBNode<T> n = root;
+		while (n != null && !n.isLeaf()) {
+			n = n.getChild(key);
+		}
+		return n;
+	}
+	
+	/**
+	 * Remove a key.
+	 * @param key key to remove
+	 * @return the value associated with the key or 'null' if the key was not found
+	 */
+	@Override
+	public T remove(double[] key) {
+		if (root == null) {
+			return null;
+		}
+		KDBNode<T> parent = null;
+		KDBNode<T> n = root;
+		while (!n.isLeaf()) {
+			parent = n;
+			n = n.getChild(key);
+		}
+		int pos = n.find(key, dims);
+		if (pos < 0) {
+			return null;
+		}
+		T value = n.removeEntry(pos, dims);
+		size--;
+		if (size == 0) {
+			root = null;
+		} else if (parent != null) {
+			parent.mergeChildren(dims, bucketSize);
+		}
+		return value;
+	}
+	
+	/**
+	 * Reinsert the key.
+	 * @param oldKey old key
+	 * @param newKey new key
+	 * @return the value associated with the key or 'null' if the key was not found.
+	 */
+	@Override
+	public T update(double[] oldKey, double[] newKey) {
+		T value = remove(oldKey);
+		if (value != null) {
+			insert(newKey, value);
+		}
+		return value;
+	}
+	
+	/**
+	 * Get the number of key-value pairs in the tree.
+	 * @return the size
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all elements from the tree.
+	 */
+	@Override
+	public void clear() {
+		size = 0;
+		root = null;
+	}
+
+	/**
+	 * Query the tree, returning all points in the axis-aligned rectangle between 'min' and 'max'.
+	 * @param min lower left corner of query
+	 * @param max upper right corner of query
+	 * @return all entries in the rectangle
+	 */
+	@Override
+	public KDBIterator<T> query(double[] min, double[] max) {
+		return new KDBIterator<>(this, min, max);
+	}
+
+	public List<KDBEntryDist<T>> knnQuery(double[] center, int k) {
+		if (root == null) {
+    		return Collections.emptyList();
+		}
+    	ArrayList<KDBEntryDist<T>> candidates = new ArrayList<>(k);
+    	double[] buf = new double[dims];
+   		rangeSearchKNN(root, center, candidates, k, Double.POSITIVE_INFINITY, buf);
+   		for (int i = 0; i < candidates.size(); i++) {
+   			KDBEntryDist<T> e = candidates.get(i);
+   			e.set(e.point(), e.value(), dist.toDist(e.dist()));
+   		}
+    	return candidates;
+    }
+
+    private double rangeSearchKNN(KDBNode<T> node, double[] center, 
+    		ArrayList<KDBEntryDist<T>> candidates, int k, double maxRange, double[] buf) {
+    	if (node.isLeaf()) {
+    		double[] coords = node.getCoords();
+    		for (int i = 0; i < node.size(); i++) {
+    			System.arraycopy(coords, i * dims, buf, 0, dims);
+    			maxRange = addCandidate(node, i, buf, center, candidates, k, maxRange);
+    		}
+    		return maxRange;
+    	}
+    	int pos = node.getDim();
+    	double delta = center[pos] - node.getSplit();
+    	//search the closer subtree first
+    	KDBNode<T> first = delta < 0 ? node.getLo() : node.getHi();
+    	KDBNode<T> second = delta < 0 ? node.getHi() : node.getLo();
+    	maxRange = rangeSearchKNN(first, center, candidates, k, maxRange, buf);
+    	if (dist.toComparable(Math.abs(delta)) <= maxRange) {
+    		maxRange = rangeSearchKNN(second, center, candidates, k, maxRange, buf);
+    	}
+    	return maxRange;
+    }
+    
+    private double addCandidate(KDBNode<T> node, int pos, double[] point, double[] center, 
+    		ArrayList<KDBEntryDist<T>> candidates, int k, double maxRange) {
+    	nDistKNN++;
+    	//add ?
+    	double d = dist.distComparable(center, point, maxRange);
+    	if (d > maxRange) {
+    		//don't add if too far away
+    		return maxRange;
+    	}
+    	if (d == maxRange && candidates.size() >= k) {
+    		//don't add if we already have enough equally good results.
+    		return maxRange;
+    	}
+    	KDBEntryDist<T> cand;
+    	if (candidates.size() >= k) {
+    		cand = candidates.remove(k - 1);
+    		cand.set(node.getPoint(pos, dims), node.getValue(pos), d);
+    	} else {
+    		cand = new KDBEntryDist<>(node.getPoint(pos, dims), node.getValue(pos), d);
+    	}
+    	int insertionPos = Collections.binarySearch(candidates, cand, KDBEntryDist.COMP);
+    	insertionPos = insertionPos >= 0 ? insertionPos : -(insertionPos+1);
+    	candidates.add(insertionPos, cand);
+    	return candidates.size() < k ? maxRange : candidates.get(candidates.size() - 1).dist();
+    }
+    
+    private static class KDBQueryIteratorKNN<T> implements QueryIteratorKNN<PointEntryDist<T>> {
+
+    	private Iterator<? extends PointEntryDist<T>> it;
+    	private final KDBucketTree<T> tree;
+    	
+		public KDBQueryIteratorKNN(KDBucketTree<T> tree, double[] center, int k) {
+			this.tree = tree;
+			reset(center, k);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return it.hasNext();
+		}
+
+		@Override
+		public PointEntryDist<T> next() {
+			return it.next();
+		}
+
+		@Override
+		public KDBQueryIteratorKNN<T> reset(double[] center, int k) {
+			it = tree.knnQuery(center, k).iterator();
+			return this;
+		}
+    }
+    
+	/**
+	 * Range query. This returns all entries whose distance to 'center' is at most
+	 * 'radius', using the distance function of the tree.
+	 * @param center The center of the query
+	 * @param radius maximum distance, inclusive
+	 * @return all entries within the given distance, in no particular order
+	 */
+	public List<PointEntry<T>> rangeQuery(double[] center, double radius) {
+		ArrayList<PointEntry<T>> result = new ArrayList<>();
+		if (root != null) {
+			double[] buf = new double[dims];
+			rangeSearch(root, center, center.clone(), radius, result, buf);
+		}
+		return result;
+	}
+
+	/**
+	 * @param closest the point of the current subtree's region that is closest to 
+	 * 'center'. This is updated (and restored) whenever we descend into a child
+	 * on the other side of the splitting plane.
+	 */
+    private void rangeSearch(KDBNode<T> node, double[] center, double[] closest,
+    		double radius, List<PointEntry<T>> result, double[] buf) {
+    	if (node.isLeaf()) {
+    		double[] coords = node.getCoords();
+    		for (int i = 0; i < node.size(); i++) {
+    			System.arraycopy(coords, i * dims, buf, 0, dims);
+    			if (dist.dist(center, buf) <= radius) {
+    				result.add(new KDBEntry<>(node.getPoint(i, dims), node.getValue(i)));
+    			}
+    		}
+    		return;
+    	}
+    	int pos = node.getDim();
+    	double split = node.getSplit();
+    	KDBNode<T> near = center[pos] < split ? node.getLo() : node.getHi();
+    	KDBNode<T> far = center[pos] < split ? node.getHi() : node.getLo();
+    	rangeSearch(near, center, closest, radius, result, buf);
+    	double old = closest[pos];
+    	closest[pos] = split;
+    	if (dist.dist(center, closest) <= radius) {
+    		rangeSearch(far, center, closest, radius, result, buf);
+    	}
+    	closest[pos] = old;
+    }
+
+    private static class KDBQueryIteratorRange<T> implements QueryIteratorRange<PointEntry<T>> {
+
+    	private Iterator<PointEntry<T>> it;
+    	private final KDBucketTree<T> tree;
+    	
+		public KDBQueryIteratorRange(KDBucketTree<T> tree, double[] center, double radius) {
+			this.tree = tree;
+			reset(center, radius);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return it.hasNext();
+		}
+
+		@Override
+		public PointEntry<T> next() {
+			return it.next();
+		}
+
+		@Override
+		public KDBQueryIteratorRange<T> reset(double[] center, double radius) {
+			it = tree.rangeQuery(center, radius).iterator();
+			return this;
+		}
+    }
+    
+    /**
+	 * Returns a printable list of the tree.
+	 * @return the tree as String
+	 */
+    @Override
+	public String toStringTree() {
+		StringBuilder sb = new StringBuilder();
+		if (root == null) {
+			sb.append("empty tree");
+		} else {
+			toStringTree(sb, root, 0);
+		}
+		return sb.toString();
+	}
+	
+	private void toStringTree(StringBuilder sb, KDBNode<T> node, int depth) {
+		String prefix = "";
+		for (int i = 0; i < depth; i++) {
+			prefix += ".";
+		}
+		prefix += " ";
+		if (node.isLeaf()) {
+			for (int i = 0; i < node.size(); i++) {
+				sb.append(prefix + Arrays.toString(node.getPoint(i, dims)));
+				sb.append(" v=" + node.getValue(i) + NL);
+			}
+			return;
+		}
+		sb.append(prefix + "dim=" + node.getDim() + " split=" + node.getSplit() + NL);
+		toStringTree(sb, node.getLo(), depth+1);
+		toStringTree(sb, node.getHi(), depth+1);
+	}
+	
+	@Override
+	public String toString() {
+		return "KDBucketTree;size=" + size + 
+				";bucketSize=" + bucketSize + 
+				";DEBUG=" + DEBUG + 
+				";DistFn=" + PointDistanceFunction.getName(dist);
+	}
+	
+	@Override
+	public KDBStats getStats() {
+		KDBStats s = new KDBStats(this);
+		if (root != null) {
+			root.checkNode(s, 0);
+		}
+		return s;
+	}
+	
+	/**
+	 * Statistics container class.
+	 */
+	public static class KDBStats extends Stats {
+		public KDBStats(KDBucketTree<?> tree) {
+			super(tree.nDistKNN, 0, tree.nDistKNN);
+			this.dims = tree.dims;
+		}
+	}
+
+	@Override
+	public int getDims() {
+		return dims;
+	}
+
+	@Override
+	public QueryIterator<PointEntry<T>> iterator() {
+		double[] min = new double[dims];
+		double[] max = new double[dims];
+		Arrays.fill(min, Double.NEGATIVE_INFINITY);
+		Arrays.fill(max, Double.POSITIVE_INFINITY);
+		return query(min, max);
+	}
+
+	@Override
+	public QueryIteratorKNN<PointEntryDist<T>> queryKNN(double[] center, int k) {
+		return new KDBQueryIteratorKNN<>(this, center, k);
+	}
+
+	@Override
+	public QueryIteratorRange<PointEntry<T>> queryRange(double[] center, double radius) {
+		return new KDBQueryIteratorRange<>(this, center, radius);
+	}
+
+	@Override
+	public int getNodeCount() {
+		return getStats().getNodeCount();
+	}
+
+	@Override
+	public int getDepth() {
+		return getStats().getMaxDepth();
+	}
+	
+	KDBNode<T> getRoot() {
+		return root;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.kdfloat;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.tinspin.index.PointEntry;
+import org.tinspin.index.QueryIterator;
+
+/**
+ * Resetable query iterator. The corners of the query window are converted to float.
+ *
+ * @param <T> Value type
+ */
+public class KDFloatIterator<T> implements QueryIterator<PointEntry<T>> {
+
+	private static final int DO_LEFT = 1;
+	private static final int DO_KEY = 2;
+	private static final int DO_RIGHT = 4;
+	
+	private final KDFloatTree<T> tree;
+	private final int dims;
+	//stack of (node, depth, flags)
+	private int[] stack = new int[3 * 16];
+	private int stackSize = 0;
+	private KDFloatEntry<T> next = null;
+	private final float[] min;
+	private final float[] max;
+	private boolean invariantBroken;
+	
+	KDFloatIterator(KDFloatTree<T> tree, double[] min, double[] max) {
+		this.tree = tree;
+		this.dims = tree.getDims();
+		this.min = new float[dims];
+		this.max = new float[dims];
+		reset(min, max);
+	}
+	
+	private void push(int node, int depth) {
+		if (stackSize + 3 > stack.length) {
+			stack = Arrays.copyOf(stack, stack.length * 2);
+		}
+		int pos = depth % dims;
+		float x = tree.getCoord(node, pos);
+		//Keys that are equal to the node's key are in the 'upper' branch.
+		//If the invariant is broken, they may also be in the 'lower' branch.
+		boolean doLeft = min[pos] < x || (invariantBroken && min[pos] == x);
+		boolean doRight = max[pos] >= x;
+		boolean doKey = doLeft || doRight || x == min[pos] || x == max[pos];
+		stack[stackSize++] = node;
+		stack[stackSize++] = depth;
+		stack[stackSize++] = (doLeft ? DO_LEFT : 0) | (doKey ? DO_KEY : 0) | (doRight ? DO_RIGHT : 0);
+	}
+	
+	private void findNext() {
+		while (stackSize > 0) {
+			int node = stack[stackSize - 3];
+			int depth = stack[stackSize - 2];
+			int flags = stack[stackSize - 1];
+			if ((flags & DO_LEFT) != 0 && tree.getLo(node) != KDFloatTree.NIL) {
+				stack[stackSize - 1] = flags & ~DO_LEFT;
+				push(tree.getLo(node), depth + 1);
+				continue;
+			}
+			if ((flags & DO_KEY) != 0) {
+				stack[stackSize - 1] = flags = flags & ~DO_KEY;
+				if (isEnclosed(node)) {
+					next = new KDFloatEntry<>(tree.getPoint(node), tree.getValue(node));
+					return;
+				}
+			}
+			if ((flags & DO_RIGHT) != 0 && tree.getHi(node) != KDFloatTree.NIL) {
+				stack[stackSize - 1] = flags & ~(DO_LEFT | DO_RIGHT);
+				push(tree.getHi(node), depth + 1);
+				continue;
+			}
+			stackSize -= 3;
+		}
+		next = null;
+	}
+	
+	private boolean isEnclosed(int node) {
+		for (int d = 0; d < dims; d++) {
+			float x = tree.getCoord(node, d);
+			if (x < min[d] || x > max[d]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public boolean hasNext() {
+		return next != null;
+	}
+
+	@Override
+	public PointEntry<T> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		PointEntry<T> ret = next;
+		findNext();
+		return ret;
+	}
+
+	/**
+	 * Reset the iterator. This iterator can be reused in order to reduce load on the
+	 * garbage collector.
+	 * @param min lower left corner of query
+	 * @param max upper right corner of query
+	 */
+	@Override
+	public void reset(double[] min, double[] max) {
+		for (int d = 0; d < dims; d++) {
+			this.min[d] = (float) min[d];
+			this.max[d] = (float) max[d];
+		}
+		stackSize = 0;
+		next = null;
+		invariantBroken = tree.isInvariantBroken();
+		if (tree.getRoot() != KDFloatTree.NIL) {
+			push(tree.getRoot(), 0);
+			findNext();
+		}
+	}
+}
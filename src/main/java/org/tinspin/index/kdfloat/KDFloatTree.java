@@ -0,0 +1,848 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.kdfloat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.tinspin.index.PointDistanceFunction;
+import org.tinspin.index.PointEntry;
+import org.tinspin.index.PointEntryDist;
+import org.tinspin.index.PointIndex;
+import org.tinspin.index.QueryIterator;
+import org.tinspin.index.QueryIteratorKNN;
+import org.tinspin.index.QueryIteratorRange;
+import org.tinspin.index.Stats;
+
+/**
+ * A KD-Tree that stores coordinates with single (float) precision.
+ * 
+ * The tree has the same structure as {@link org.tinspin.index.kdtree.KDTree}, but nodes 
+ * are not objects. Instead, nodes are slots in primitive arrays: the coordinates of 
+ * node 'i' are at {@code coords[i*dims]} to {@code coords[i*dims+dims-1]}, its children 
+ * are {@code lo[i]} and {@code hi[i]}. This avoids the object and array headers of each 
+ * node and, together with float coordinates, greatly reduces the memory consumption.
+ * The split dimension of a node is {@code depth % dims}.
+ * 
+ * Keys and query arguments are converted to float. All comparisons use float precision,
+ * i.e. two keys are equal if they are equal after conversion to float. Distances are 
+ * calculated with double precision from the float coordinates. Returned points are 
+ * the float coordinates of the entries converted to double[].
+ * 
+ * @author T. Zäschke
+ *
+ * @param <T> Value type
+ */
+public class KDFloatTree<T> implements PointIndex<T> {
+
+	private static final String NL = System.lineSeparator();
+
+	public static final boolean DEBUG = false;
+	
+	static final int NIL = -1;
+	private static final int INITIAL_CAPACITY = 16;
+	
+	private final int dims;
+	private int size = 0; 
+	private long nDistKNN = 0;
+	//See KDTree: keys that are equal to a node's key (in the split dimension) are in 
+	//the node's 'upper' branch. Removing keys may break this invariant.
+	private boolean invariantBroken = false;
+	
+	private float[] coords;
+	private Object[] values;
+	private int[] lo;
+	private int[] hi;
+	/** Number of slots that have ever been used, including free slots. */
+	private int nSlots;
+	/** First free slot, free slots are linked via 'lo'. */
+	private int freeList;
+	private int root;
+	
+	private final PointDistanceFunction dist;
+	
+	private KDFloatTree(int dims, PointDistanceFunction dist) {
+		if (DEBUG) {
+			System.err.println("Warning: DEBUG enabled");
+		}
+		this.dims = dims;
+		this.dist = dist != null ? dist : PointDistanceFunction.L2;
+		init();
+	}
+
+	public static <T> KDFloatTree<T> create(int dims) {
+		return new KDFloatTree<>(dims, PointDistanceFunction.L2);
+	}
+	
+	public static <T> KDFloatTree<T> create(int dims, PointDistanceFunction dist) {
+		return new KDFloatTree<>(dims, dist);
+	}
+	
+	private void init() {
+		coords = new float[INITIAL_CAPACITY * dims];
+		values = new Object[INITIAL_CAPACITY];
+		lo = new int[INITIAL_CAPACITY];
+		hi = new int[INITIAL_CAPACITY];
+		nSlots = 0;
+		freeList = NIL;
+		root = NIL;
+	}
+	
+	private int allocate(float[] key, Object value) {
+		int n;
+		if (freeList != NIL) {
+			n = freeList;
+			freeList = lo[n];
+		} else {
+			if (nSlots == values.length) {
+				int newCapacity = values.length * 2;
+				coords = Arrays.copyOf(coords, newCapacity * dims);
+				values = Arrays.copyOf(values, newCapacity);
+				lo = Arrays.copyOf(lo, newCapacity);
+				hi = Arrays.copyOf(hi, newCapacity);
+			}
+			n = nSlots++;
+		}
+		System.arraycopy(key, 0, coords, n * dims, dims);
+		values[n] = value;
+		lo[n] = NIL;
+		hi[n] = NIL;
+		return n;
+	}
+	
+	private void free(int n) {
+		values[n] = null;
+		lo[n] = freeList;
+		hi[n] = NIL;
+		freeList = n;
+	}
+	
+	private float[] toFloat(double[] key) {
+		float[] f = new float[dims];
+		for (int d = 0; d < dims; d++) {
+			f[d] = (float) key[d];
+		}
+		return f;
+	}
+	
+	/**
+	 * Insert a key-value pair.
+	 * @param key the key
+	 * @param value the value
+	 */
+	@Override
+	public void insert(double[] key, T value) {
+		float[] k = toFloat(key);
+		size++;
+		if (root == NIL) {
+			root = allocate(k, value);
+			return;
+		}
+		int n = root;
+		int dim = 0;
+		while (true) {
+			if (k[dim] >= coords[n * dims + dim]) {
+				if (hi[n] == NIL) {
+					int child = allocate(k, value);
+					hi[n] = child;
+					return;
+				}
+				n = hi[n];
+			} else {
+				if (lo[n] == NIL) {
+					int child = allocate(k, value);
+					lo[n] = child;
+					return;
+				}
+				n = lo[n];
+			}
+			dim = (dim + 1) % dims;
+		}
+	}
+	
+	/**
+	 * Check whether a given key exists.
+	 * @param key the key to check
+	 * @return true iff the key exists
+	 */
+	public boolean containsExact(double[] key) {
+		return findNode(toFloat(key), new RemoveResult()) != NIL;
+	}
+	
+	/**
+	 * Get the value associates with the key.
+	 * @param key the key to look up
+	 * @return the value for the key or 'null' if the key was not found
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public T queryExact(double[] key) {
+		int n = findNode(toFloat(key), new RemoveResult());
+		return n == NIL ? null : (T) values[n];
+	}
+	
+	private int findNode(float[] key, RemoveResult result) {
+		if (root == NIL) {
+			return NIL;
+		}
+		return invariantBroken 
+				? findNodeSlow(key, root, NIL, 0, result) 
+				: findNodeFast(key, result);
+	}
+	
+	private int findNodeFast(float[] key, RemoveResult result) {
+		int n = root;
+		int parent = NIL;
+		int depth = 0;
+		do {
+			int dim = depth % dims;
+			float nodeX = coords[n * dims + dim];
+			float keyX = key[dim];
+			if (keyX == nodeX && isEqual(n, key)) {
+				result.set(n, parent, depth);
+				return n;
+			}
+			parent = n;
+			n = keyX >= nodeX ? hi[n] : lo[n];
+			depth++;
+		} while (n != NIL);
+		return NIL;
+	}
+	
+	private int findNodeSlow(float[] key, int n, int parent, int depth, RemoveResult result) {
+		do {
+			int dim = depth % dims;
+			float nodeX = coords[n * dims + dim];
+			float keyX = key[dim];
+			if (keyX == nodeX) {
+				if (isEqual(n, key)) {
+					result.set(n, parent, depth);
+					return n;
+				}
+				//Broken invariant? We need to check the 'lower' part as well...
+				if (lo[n] != NIL) {
+					int n2 = findNodeSlow(key, lo[n], n, depth + 1, result);
+					if (n2 != NIL) {
+						return n2;
+					}
+				}
+			}
+			parent = n;
+			n = keyX >= nodeX ? hi[n] : lo[n];
+			depth++;
+		} while (n != NIL);
+		return NIL;
+	}
+	
+	private boolean isEqual(int n, float[] key) {
+		int offs = n * dims;
+		for (int d = 0; d < dims; d++) {
+			if (coords[offs + d] != key[d]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Remove a key.
+	 * @param key key to remove
+	 * @return the value associated with the key or 'null' if the key was not found
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public T remove(double[] key) {
+		RemoveResult result = new RemoveResult();
+		int toRemove = findNode(toFloat(key), result);
+		if (toRemove == NIL) {
+			return null;
+		}
+		T value = (T) values[toRemove];
+		if (size == 1) {
+			clear();
+			return value;
+		}
+
+		//find replacement
+		int depth = result.depth;
+		while (lo[toRemove] != NIL || hi[toRemove] != NIL) {
+			int pos = depth % dims;
+			if (hi[toRemove] != NIL) {
+				//get replacement from right
+				//This is preferable, because it cannot break the invariant
+				result.best = Float.POSITIVE_INFINITY;
+				removeMinLeaf(hi[toRemove], toRemove, depth + 1, pos, result);
+			} else {
+				//get replacement from left
+				//Keys with the same value as the replacement may remain in the 'lower' branch
+				result.best = Float.NEGATIVE_INFINITY;
+				removeMaxLeaf(lo[toRemove], toRemove, depth + 1, pos, result);
+				invariantBroken = true;
+			}
+			System.arraycopy(coords, result.node * dims, coords, toRemove * dims, dims);
+			values[toRemove] = values[result.node];
+			toRemove = result.node;
+			depth = result.depth;
+		} 
+		//leaf node
+		int parent = result.parent; 
+		if (lo[parent] == toRemove) {
+			lo[parent] = NIL;
+		} else if (hi[parent] == toRemove) {
+			hi[parent] = NIL;
+		} else { 
+			throw new IllegalStateException();
+		}
+		free(toRemove);
+		size--;
+		return value;
+	}
+
+	private static class RemoveResult {
+		int node = NIL;
+		int parent = NIL;
+		int depth;
+		float best;
+		
+		void set(int node, int parent, int depth) {
+			this.node = node;
+			this.parent = parent;
+			this.depth = depth;
+		}
+	}
+	
+	private void removeMinLeaf(int node, int parent, int depth, int pos, RemoveResult result) {
+		float x = coords[node * dims + pos];
+		//Split in 'interesting' dimension
+		if (pos == depth % dims) {
+			//We strictly look for leaf nodes with left==null
+			// -> left!=null means the left child is at least as small as the current node
+			if (lo[node] != NIL) {
+				removeMinLeaf(lo[node], node, depth + 1, pos, result);
+			} else if (x <= result.best) {
+				result.set(node, parent, depth);
+				result.best = x;
+			}
+		} else {
+			//split in any other dimension.
+			//First, check local key. 
+			if (x <= result.best) {
+				result.set(node, parent, depth);
+				result.best = x;
+			}
+			if (lo[node] != NIL) {
+				removeMinLeaf(lo[node], node, depth + 1, pos, result);
+			}
+			if (hi[node] != NIL) {
+				removeMinLeaf(hi[node], node, depth + 1, pos, result);
+			}
+		}
+	}
+	
+	private void removeMaxLeaf(int node, int parent, int depth, int pos, RemoveResult result) {
+		float x = coords[node * dims + pos];
+		//Split in 'interesting' dimension
+		if (pos == depth % dims) {
+			if (hi[node] != NIL) {
+				removeMaxLeaf(hi[node], node, depth + 1, pos, result);
+			} else if (x >= result.best) {
+				result.set(node, parent, depth);
+				result.best = x;
+			}
+		} else {
+			//split in any other dimension.
+			//First, check local key. 
+			if (x >= result.best) {
+				result.set(node, parent, depth);
+				result.best = x;
+			}
+			if (lo[node] != NIL) {
+				removeMaxLeaf(lo[node], node, depth + 1, pos, result);
+			}
+			if (hi[node] != NIL) {
+				removeMaxLeaf(hi[node], node, depth + 1, pos, result);
+			}
+		}
+	}
+	
+	/**
+	 * Reinsert the key.
+	 * @param oldKey old key
+	 * @param newKey new key
+	 * @return the value associated with the key or 'null' if the key was not found.
+	 */
+	@Override
+	public T update(double[] oldKey, double[] newKey) {
+		T value = remove(oldKey);
+		if (value != null) {
+			insert(newKey, value);
+		}
+		return value;
+	}
+	
+	/**
+	 * Get the number of key-value pairs in the tree.
+	 * @return the size
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all elements from the tree.
+	 */
+	@Override
+	public void clear() {
+		size = 0;
+		invariantBroken = false;
+		init();
+	}
+
+	/**
+	 * Query the tree, returning all points in the axis-aligned rectangle between 'min' and 'max'.
+	 * The corners of the rectangle are converted to float.
+	 * @param min lower left corner of query
+	 * @param max upper right corner of query
+	 * @return all entries in the rectangle
+	 */
+	@Override
+	public KDFloatIterator<T> query(double[] min, double[] max) {
+		return new KDFloatIterator<>(this, min, max);
+	}
+
+	/**
+	 * @param center center point
+	 * @param k number of neighbors
+	 * @return the 'k' nearest neighbors, ordered by ascending distance
+	 */
+	@SuppressWarnings("unchecked")
+	public List<KDFloatEntryDist<T>> knnQuery(double[] center, int k) {
+		if (root == NIL || k <= 0) {
+			return Collections.emptyList();
+		}
+		KnnHeap heap = new KnnHeap(k);
+		double[] buf = new double[dims];
+		rangeSearchKNN(root, 0, center, heap, Double.POSITIVE_INFINITY, buf);
+		heap.sort();
+		ArrayList<KDFloatEntryDist<T>> result = new ArrayList<>(heap.size);
+		for (int i = 0; i < heap.size; i++) {
+			int n = heap.nodes[i];
+			result.add(new KDFloatEntryDist<>(getPoint(n), (T) values[n], dist.toDist(heap.dists[i])));
+		}
+		return result;
+	}
+
+	private double rangeSearchKNN(int node, int depth, double[] center, KnnHeap candidates, 
+			double maxRange, double[] buf) {
+		int pos = depth % dims;
+		double nodeX = coords[node * dims + pos];
+		if (lo[node] != NIL && (center[pos] < nodeX || hi[node] == NIL)) {
+			//go down
+			maxRange = rangeSearchKNN(lo[node], depth + 1, center, candidates, maxRange, buf);
+			//refine result
+			if (isInRange(nodeX - center[pos], maxRange)) {
+				maxRange = addCandidate(node, center, candidates, maxRange, buf);
+				if (hi[node] != NIL) {
+					maxRange = rangeSearchKNN(hi[node], depth + 1, center, candidates, maxRange, buf);
+				}
+			}
+		} else if (hi[node] != NIL) {
+			//go down
+			maxRange = rangeSearchKNN(hi[node], depth + 1, center, candidates, maxRange, buf);
+			//refine result
+			if (isInRange(center[pos] - nodeX, maxRange)) {
+				maxRange = addCandidate(node, center, candidates, maxRange, buf);
+				if (lo[node] != NIL) {
+					maxRange = rangeSearchKNN(lo[node], depth + 1, center, candidates, maxRange, buf);
+				}
+			}
+		} else {
+			//leaf -> first (probably best) match!
+			maxRange = addCandidate(node, center, candidates, maxRange, buf);
+		}
+		return maxRange;
+	}
+
+	/**
+	 * @param delta distance between 'center' and the splitting plane of a subtree,  
+	 * this is negative or 0 if 'center' lies on the side of the subtree
+	 * @param maxRange comparable search range
+	 * @return 'true' if the subtree may contain points within the search range
+	 */
+	private boolean isInRange(double delta, double maxRange) {
+		return delta <= 0 || dist.toComparable(delta) <= maxRange;
+	}
+
+	private double addCandidate(int node, double[] center, KnnHeap candidates, 
+			double maxRange, double[] buf) {
+		nDistKNN++;
+		int offs = node * dims;
+		for (int d = 0; d < dims; d++) {
+			buf[d] = coords[offs + d];
+		}
+		double d = dist.distComparable(center, buf, maxRange);
+		if (d > maxRange) {
+			//don't add if too far away
+			return maxRange;
+		}
+		if (d == maxRange && candidates.isFull()) {
+			//don't add if we already have enough equally good results.
+			return maxRange;
+		}
+		candidates.add(node, d);
+		return candidates.isFull() ? candidates.dists[0] : maxRange;
+	}
+
+	/**
+	 * Bounded max-heap of kNN candidates.
+	 */
+	private static class KnnHeap {
+		private final double[] dists;
+		private final int[] nodes;
+		private int size;
+
+		KnnHeap(int k) {
+			dists = new double[k];
+			nodes = new int[k];
+		}
+
+		boolean isFull() {
+			return size == nodes.length;
+		}
+
+		/**
+		 * Add a candidate. If the heap is full, this replaces the candidate with the 
+		 * largest distance.
+		 */
+		void add(int node, double dist) {
+			if (size < nodes.length) {
+				//sift up
+				int pos = size++;
+				while (pos > 0) {
+					int parent = (pos - 1) >> 1;
+					if (dists[parent] >= dist) {
+						break;
+					}
+					dists[pos] = dists[parent];
+					nodes[pos] = nodes[parent];
+					pos = parent;
+				}
+				dists[pos] = dist;
+				nodes[pos] = node;
+			} else {
+				siftDown(node, dist, size);
+			}
+		}
+
+		private void siftDown(int node, double dist, int n) {
+			int pos = 0;
+			int child;
+			while ((child = 2 * pos + 1) < n) {
+				if (child + 1 < n && dists[child + 1] > dists[child]) {
+					child++;
+				}
+				if (dists[child] <= dist) {
+					break;
+				}
+				dists[pos] = dists[child];
+				nodes[pos] = nodes[child];
+				pos = child;
+			}
+			dists[pos] = dist;
+			nodes[pos] = node;
+		}
+
+		/**
+		 * Sort the candidates in place by ascending distance (heap sort).
+		 */
+		void sort() {
+			for (int i = size - 1; i > 0; i--) {
+				double d = dists[i];
+				int n = nodes[i];
+				dists[i] = dists[0];
+				nodes[i] = nodes[0];
+				siftDown(n, d, i);
+			}
+		}
+	}
+	
+	private static class KDFloatQueryIteratorKNN<T> implements QueryIteratorKNN<PointEntryDist<T>> {
+
+		private Iterator<? extends PointEntryDist<T>> it;
+		private final KDFloatTree<T> tree;
+
+		public KDFloatQueryIteratorKNN(KDFloatTree<T> tree, double[] center, int k) {
+			this.tree = tree;
+			reset(center, k);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return it.hasNext();
+		}
+
+		@Override
+		public PointEntryDist<T> next() {
+			return it.next();
+		}
+
+		@Override
+		public KDFloatQueryIteratorKNN<T> reset(double[] center, int k) {
+			it = tree.knnQuery(center, k).iterator();
+			return this;
+		}
+	}
+	
+	/**
+	 * Range query. This returns all entries whose distance to 'center' is at most
+	 * 'radius', using the distance function of the tree.
+	 * @param center The center of the query
+	 * @param radius maximum distance, inclusive
+	 * @return all entries within the given distance, in no particular order
+	 */
+	public List<PointEntry<T>> rangeQuery(double[] center, double radius) {
+		ArrayList<PointEntry<T>> result = new ArrayList<>();
+		if (root != NIL) {
+			double[] buf = new double[dims];
+			rangeSearch(root, 0, center, center.clone(), radius, result, buf);
+		}
+		return result;
+	}
+
+	/**
+	 * @param closest the point of the current subtree's region that is closest to 
+	 * 'center'. This is updated (and restored) whenever we descend into a child
+	 * on the other side of the splitting plane.
+	 */
+	@SuppressWarnings("unchecked")
+	private void rangeSearch(int node, int depth, double[] center, double[] closest,
+			double radius, List<PointEntry<T>> result, double[] buf) {
+		int offs = node * dims;
+		for (int d = 0; d < dims; d++) {
+			buf[d] = coords[offs + d];
+		}
+		if (dist.dist(center, buf) <= radius) {
+			result.add(new KDFloatEntry<>(getPoint(node), (T) values[node]));
+		}
+		int pos = depth % dims;
+		double split = buf[pos];
+		int near = center[pos] < split ? lo[node] : hi[node];
+		int far = center[pos] < split ? hi[node] : lo[node];
+		if (near != NIL) {
+			rangeSearch(near, depth + 1, center, closest, radius, result, buf);
+		}
+		if (far != NIL) {
+			double old = closest[pos];
+			closest[pos] = split;
+			if (dist.dist(center, closest) <= radius) {
+				rangeSearch(far, depth + 1, center, closest, radius, result, buf);
+			}
+			closest[pos] = old;
+		}
+	}
+
+	private static class KDFloatQueryIteratorRange<T> implements QueryIteratorRange<PointEntry<T>> {
+
+		private Iterator<PointEntry<T>> it;
+		private final KDFloatTree<T> tree;
+
+		public KDFloatQueryIteratorRange(KDFloatTree<T> tree, double[] center, double radius) {
+			this.tree = tree;
+			reset(center, radius);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return it.hasNext();
+		}
+
+		@Override
+		public PointEntry<T> next() {
+			return it.next();
+		}
+
+		@Override
+		public KDFloatQueryIteratorRange<T> reset(double[] center, double radius) {
+			it = tree.rangeQuery(center, radius).iterator();
+			return this;
+		}
+	}
+	
+	/**
+	 * Returns a printable list of the tree.
+	 * @return the tree as String
+	 */
+	@Override
+	public String toStringTree() {
+		StringBuilder sb = new StringBuilder();
+		if (root == NIL) {
+			sb.append("empty tree");
+		} else {
+			toStringTree(sb, root, 0);
+		}
+		return sb.toString();
+	}
+	
+	private void toStringTree(StringBuilder sb, int node, int depth) {
+		String prefix = "";
+		for (int i = 0; i < depth; i++) {
+			prefix += ".";
+		}
+		prefix += " ";
+		if (lo[node] != NIL) {
+			toStringTree(sb, lo[node], depth+1);
+		}
+		sb.append(prefix + Arrays.toString(getPoint(node)));
+		sb.append(" v=" + values[node]);
+		sb.append(" l/r=");
+		sb.append(lo[node] == NIL ? null : Arrays.toString(getPoint(lo[node])));
+		sb.append("/");
+		sb.append(hi[node] == NIL ? null : Arrays.toString(getPoint(hi[node])));
+		sb.append(NL);
+		if (hi[node] != NIL) {
+			toStringTree(sb, hi[node], depth+1);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return "KDFloatTree;size=" + size + 
+				";DEBUG=" + DEBUG + 
+				";DistFn=" + PointDistanceFunction.getName(dist) +
+				";center=" + (root == NIL ? "null" : Arrays.toString(getPoint(root)));
+	}
+	
+	@Override
+	public KDFStats getStats() {
+		KDFStats s = new KDFStats(this);
+		if (root == NIL) {
+			return s;
+		}
+		//The tree may be degenerate, so we use an explicit stack
+		int[] stack = new int[64];
+		int stackSize = 0;
+		stack[stackSize++] = root;
+		stack[stackSize++] = 0;
+		while (stackSize > 0) {
+			int depth = stack[--stackSize];
+			int n = stack[--stackSize];
+			s.nNodes++;
+			s.nEntries++;
+			s.sumLevel += depth;
+			if (depth > s.maxDepth) {
+				s.maxDepth = depth;
+			}
+			if (stackSize + 4 > stack.length) {
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			if (lo[n] != NIL) {
+				stack[stackSize++] = lo[n];
+				stack[stackSize++] = depth + 1;
+			}
+			if (hi[n] != NIL) {
+				stack[stackSize++] = hi[n];
+				stack[stackSize++] = depth + 1;
+			}
+		}
+		return s;
+	}
+	
+	/**
+	 * Statistics container class.
+	 */
+	public static class KDFStats extends Stats {
+		public KDFStats(KDFloatTree<?> tree) {
+			super(tree.nDistKNN, 0, tree.nDistKNN);
+			this.dims = tree.dims;
+		}
+	}
+
+	@Override
+	public int getDims() {
+		return dims;
+	}
+
+	@Override
+	public QueryIterator<PointEntry<T>> iterator() {
+		double[] min = new double[dims];
+		double[] max = new double[dims];
+		Arrays.fill(min, Double.NEGATIVE_INFINITY);
+		Arrays.fill(max, Double.POSITIVE_INFINITY);
+		return query(min, max);
+	}
+
+	@Override
+	public QueryIteratorKNN<PointEntryDist<T>> queryKNN(double[] center, int k) {
+		return new KDFloatQueryIteratorKNN<>(this, center, k);
+	}
+
+	@Override
+	public QueryIteratorRange<PointEntry<T>> queryRange(double[] center, double radius) {
+		return new KDFloatQueryIteratorRange<>(this, center, radius);
+	}
+
+	@Override
+	public int getNodeCount() {
+		return size;
+	}
+
+	@Override
+	public int getDepth() {
+		return getStats().getMaxDepth();
+	}
+	
+	//Accessors for the iterator
+	
+	int getRoot() {
+		return root;
+	}
+	
+	int getLo(int node) {
+		return lo[node];
+	}
+	
+	int getHi(int node) {
+		return hi[node];
+	}
+	
+	float getCoord(int node, int dim) {
+		return coords[node * dims + dim];
+	}
+	
+	@SuppressWarnings("unchecked")
+	T getValue(int node) {
+		return (T) values[node];
+	}
+	
+	double[] getPoint(int node) {
+		double[] p = new double[dims];
+		int offs = node * dims;
+		for (int d = 0; d < dims; d++) {
+			p[d] = coords[offs + d];
+		}
+		return p;
+	}
+	
+	boolean isInvariantBroken() {
+		return invariantBroken;
+	}
+}
@@ -15,16 +15,16 @@ public class KDIterator<T> implements QueryIterator<PointEntry<T>> {
 
 	private static class IteratorPos<T> {
 		private Node<T> node;
-		private int depth;
 		private boolean doLeft, doKey, doRight;
 
-		void set(Node<T> node, double[] min, double[] max, int depth, int dims) {
+		void set(Node<T> node, double[] min, double[] max, boolean invariantBroken) {
 			this.node = node;
-			this.depth = depth;
 			double[] key = node.getKey();
-			int pos = depth % dims;
-			doLeft = min[pos] < key[pos];
-			doRight = max[pos] > key[pos];
+			int pos = node.getDim();
+			//Keys that are equal to the node's key are in the 'upper' branch.
+			//If the invariant is broken, they may also be in the 'lower' branch.
+			doLeft = min[pos] < key[pos] || (invariantBroken && min[pos] == key[pos]);
+			doRight = max[pos] >= key[pos];
 			doKey = doLeft || doRight || key[pos] == min[pos] || key[pos] == max[pos];
 		}
 	}
@@ -41,13 +41,13 @@ public class KDIterator<T> implements QueryIterator<PointEntry<T>> {
 			return size == 0;
 		}
 
-		IteratorPos<T> prepareAndPush(Node<T> node, double[] min, double[] max, int depth, int dims) {
+		IteratorPos<T> prepareAndPush(Node<T> node, double[] min, double[] max) {
 			if (size == stack.size()) {
 				stack.add(new IteratorPos<>());
 			}
 			IteratorPos<T> ni = stack.get(size++);
 			
-			ni.set(node, min, max, depth, dims);
+			ni.set(node, min, max, tree.isInvariantBroken());
 			return ni;
 		}
 
@@ -82,7 +82,7 @@ public class KDIterator<T> implements QueryIterator<PointEntry<T>> {
 			Node<T> node = itPos.node;
 			if (itPos.doLeft && node.getLo() != null) {
 				itPos.doLeft = false;
-				stack.prepareAndPush(node.getLo(), min, max, itPos.depth + 1, tree.getDims());
+				stack.prepareAndPush(node.getLo(), min, max);
 				continue;
 			}
 			if (itPos.doKey) {
@@ -94,7 +94,7 @@ public class KDIterator<T> implements QueryIterator<PointEntry<T>> {
 			}
 			if (itPos.doRight && node.getHi() != null) {
 				itPos.doRight = false;
-				stack.prepareAndPush(node.getHi(), min, max, itPos.depth + 1, tree.getDims());
+				stack.prepareAndPush(node.getHi(), min, max);
 				continue;
 			}
 			stack.pop();
@@ -130,7 +130,7 @@ public class KDIterator<T> implements QueryIterator<PointEntry<T>> {
 		this.max = max;
 		next = null;
 		if (tree.getRoot() != null) {
-			stack.prepareAndPush(tree.getRoot(), min, max, 0, tree.getDims());
+			stack.prepareAndPush(tree.getRoot(), min, max);
 			findNext();
 		}
 	}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.kdtree;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.tinspin.index.PointEntryDist;
+import org.tinspin.index.QueryIteratorKNN;
+
+/**
+ * Incremental (distance browsing) nearest neighbor iterator.
+ * 
+ * Unlike the iterator returned by {@link KDTree#queryKNN(double[], int)}, this iterator
+ * does not calculate all results in advance. Instead it uses a priority queue of 
+ * subtrees and points (best-first search) and returns the neighbors in order of 
+ * increasing distance as they are requested. The cost of the query is thus proportional
+ * to the number of returned neighbors, and the number of neighbors does not need to be
+ * known in advance.
+ * 
+ * Implementation after Hjaltason and Samet.
+ * G. R. Hjaltason and H. Samet., "Distance browsing in spatial databases.", ACM TODS 24(2):265--318. 1999
+ * 
+ * The distance of subtrees is estimated with the distance to the splitting planes of
+ * their ancestors, so the distance function must be L1, L2 or similar. 
+ * The queue is ordered by comparable distances, see 
+ * {@link org.tinspin.index.PointDistanceFunction#distComparable(double[], double[])}.
+ * 
+ * @param <T> Value type
+ */
+public class KDIteratorKNN<T> implements QueryIteratorKNN<PointEntryDist<T>> {
+
+	private final KDTree<T> tree;
+	private final MinHeap queue = new MinHeap();
+	private double[] center;
+	private int remaining;
+	private KDEntryDist<T> next;
+
+	KDIteratorKNN(KDTree<T> tree, double[] center, int k) {
+		this.tree = tree;
+		reset(center, k);
+	}
+
+	/**
+	 * Reset the iterator without limit on the number of returned entries.
+	 * @param center the center point
+	 * @return this iterator
+	 */
+	public KDIteratorKNN<T> reset(double[] center) {
+		return reset(center, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Reset the iterator.
+	 * @param center the center point
+	 * @param k the maximum number of entries to return. Use {@code Integer.MAX_VALUE} for 
+	 * no limit.
+	 * @return this iterator
+	 */
+	@Override
+	public KDIteratorKNN<T> reset(double[] center, int k) {
+		this.center = center;
+		this.remaining = k;
+		queue.clear();
+		if (tree.getRoot() != null && k > 0) {
+			queue.push(tree.getRoot(), 0, false);
+		}
+		findNext();
+		return this;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void findNext() {
+		while (remaining > 0 && !queue.isEmpty()) {
+			double d = queue.minDist();
+			boolean isPoint = queue.minIsPoint();
+			Node<T> node = (Node<T>) queue.pop();
+			if (isPoint) {
+				remaining--;
+				next = new KDEntryDist<>(node, tree.getDist().toDist(d));
+				return;
+			}
+			//Expand the subtree: add the node's point and both children
+			double[] key = node.getKey();
+			queue.push(node, tree.distanceKNN(center, key), true);
+			int pos = node.getDim();
+			double delta = center[pos] - key[pos];
+			double deltaC = tree.getDist().toComparable(Math.abs(delta));
+			if (node.getLo() != null) {
+				queue.push(node.getLo(), delta > 0 ? Math.max(d, deltaC) : d, false);
+			}
+			if (node.getHi() != null) {
+				queue.push(node.getHi(), delta < 0 ? Math.max(d, deltaC) : d, false);
+			}
+		}
+		next = null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return next != null;
+	}
+
+	@Override
+	public KDEntryDist<T> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		KDEntryDist<T> ret = next;
+		findNext();
+		return ret;
+	}
+
+	/**
+	 * Priority queue (binary min-heap) with primitive distances. Subtrees and points are
+	 * stored in the same queue, they are distinguished by a flag.
+	 * The queue only allocates when it grows beyond its previous size.
+	 */
+	private static class MinHeap {
+		private double[] dists = new double[16];
+		private Object[] nodes = new Object[16];
+		private boolean[] isPoint = new boolean[16];
+		private int size = 0;
+
+		void clear() {
+			Arrays.fill(nodes, 0, size, null);
+			size = 0;
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		double minDist() {
+			return dists[0];
+		}
+
+		boolean minIsPoint() {
+			return isPoint[0];
+		}
+
+		void push(Object node, double dist, boolean point) {
+			if (size == dists.length) {
+				int newLen = size * 2;
+				dists = Arrays.copyOf(dists, newLen);
+				nodes = Arrays.copyOf(nodes, newLen);
+				isPoint = Arrays.copyOf(isPoint, newLen);
+			}
+			int pos = size++;
+			while (pos > 0) {
+				int parent = (pos - 1) >> 1;
+				if (!isBefore(dist, point, dists[parent], isPoint[parent])) {
+					break;
+				}
+				set(pos, parent);
+				pos = parent;
+			}
+			dists[pos] = dist;
+			nodes[pos] = node;
+			isPoint[pos] = point;
+		}
+
+		Object pop() {
+			Object ret = nodes[0];
+			size--;
+			double dist = dists[size];
+			Object node = nodes[size];
+			boolean point = isPoint[size];
+			nodes[size] = null;
+			int pos = 0;
+			int child;
+			while ((child = 2 * pos + 1) < size) {
+				if (child + 1 < size && 
+						isBefore(dists[child + 1], isPoint[child + 1], dists[child], isPoint[child])) {
+					child++;
+				}
+				if (!isBefore(dists[child], isPoint[child], dist, point)) {
+					break;
+				}
+				set(pos, child);
+				pos = child;
+			}
+			if (size > 0) {
+				dists[pos] = dist;
+				nodes[pos] = node;
+				isPoint[pos] = point;
+			}
+			return ret;
+		}
+
+		/**
+		 * Points come before subtrees with the same distance. This allows returning 
+		 * results as early as possible.
+		 */
+		private static boolean isBefore(double d1, boolean isPoint1, double d2, boolean isPoint2) {
+			return d1 < d2 || (d1 == d2 && isPoint1 && !isPoint2);
+		}
+
+		private void set(int dst, int src) {
+			dists[dst] = dists[src];
+			nodes[dst] = nodes[src];
+			isPoint[dst] = isPoint[src];
+		}
+	}
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ *
+ * This file is part of TinSpin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.kdtree;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.tinspin.index.kdtree.KDTree.SplitPolicy;
+
+/**
+ * Bulk loader for the KD-Tree.
+ *
+ * The loader builds a balanced tree by recursively splitting the input at the median
+ * of the split dimension. Independent subtrees are built in parallel using fork-join.
+ * The split dimension of each node is chosen according to a {@link SplitPolicy}.
+ *
+ * The resulting tree follows the same invariant as a tree built with {@code insert()}:
+ * keys with the same value as a node (in the node's split dimension) are always
+ * in the 'upper' branch of that node. The only exception are ranges where all keys in
+ * the lower half are equal to the median, see {@link #isInvariantBroken()}.
+ *
+ * @param <T> Value type
+ */
+class KDLoader<T> {
+
+	/** Subtrees smaller than this are built sequentially. */
+	private static final int PARALLEL_THRESHOLD = 10_000;
+	/** Maximum number of keys that are used to estimate the variance of a subtree. */
+	private static final int VARIANCE_SAMPLE_SIZE = 1_000;
+
+	private final double[][] keys;
+	private final Object[] values;
+	private final int dims;
+	private final SplitPolicy policy;
+	/** Set by (possibly concurrent) build tasks, it is never reset. */
+	private volatile boolean invariantBroken = false;
+
+	/**
+	 * @param keys the keys, this array will be reordered
+	 * @param values the values, this array will be reordered
+	 * @param dims dimensionality
+	 */
+	KDLoader(double[][] keys, Object[] values, int dims) {
+		this(keys, values, dims, SplitPolicy.ROUND_ROBIN);
+	}
+
+	/**
+	 * @param keys the keys, this array will be reordered
+	 * @param values the values, this array will be reordered
+	 * @param dims dimensionality
+	 * @param policy the policy for choosing split dimensions
+	 */
+	KDLoader(double[][] keys, Object[] values, int dims, SplitPolicy policy) {
+		this.keys = keys;
+		this.values = values;
+		this.dims = dims;
+		this.policy = policy;
+	}
+
+	/**
+	 * Build a tree from all keys.
+	 * @return the root node or 'null' if there are no keys
+	 */
+	Node<T> load() {
+		return load(0);
+	}
+
+	/**
+	 * Build a tree from all keys.
+	 * @param dim the split dimension of the root node, this is only a hint if the 
+	 * split policy is not {@link SplitPolicy#ROUND_ROBIN}
+	 * @return the root node or 'null' if there are no keys
+	 */
+	Node<T> load(int dim) {
+		if (keys.length == 0) {
+			return null;
+		}
+		if (keys.length < PARALLEL_THRESHOLD) {
+			return build(0, keys.length, dim);
+		}
+		return ForkJoinPool.commonPool().invoke(new BuildTask(0, keys.length, dim));
+	}
+
+	/**
+	 * Keys that are equal to the median (in the split dimension) are normally moved
+	 * to the upper subtree. If all keys in the lower half of a range are equal to the 
+	 * median, this would result in a degenerated (chain-like) tree, so these keys 
+	 * are left in the lower subtree.
+	 * @return 'true' if the last tree built by this loader has keys in a lower subtree 
+	 * that are equal to their parent in the split dimension
+	 */
+	boolean isInvariantBroken() {
+		return invariantBroken;
+	}
+
+	/**
+	 * Reorder the keys to form an implicit balanced tree. The root of a range
+	 * [start, end) is at position {@code (start+end)>>>1}, the left subtree is the
+	 * range [start, mid), the right subtree is the range [mid+1, end). The split 
+	 * dimension is {@code depth % dims}.
+	 * 
+	 * Unlike trees created with {@link #load()}, keys with the same value as the 
+	 * median may end up in either subtree. The split policy is ignored.
+	 */
+	void arrange() {
+		arrange(0, keys.length, 0);
+	}
+
+	private void arrange(int start, int end, int dim) {
+		while (end - start > 1) {
+			int mid = (start + end) >>> 1;
+			select(start, end - 1, mid, dim);
+			int subDim = (dim + 1) % dims;
+			arrange(start, mid, subDim);
+			start = mid + 1;
+			dim = subDim;
+		}
+	}
+
+	private class BuildTask extends RecursiveTask<Node<T>> {
+		private static final long serialVersionUID = 1L;
+		private final int start;
+		private final int end;
+		private final int dim;
+
+		BuildTask(int start, int end, int dim) {
+			this.start = start;
+			this.end = end;
+			this.dim = dim;
+		}
+
+		@Override
+		protected Node<T> compute() {
+			if (end - start < PARALLEL_THRESHOLD) {
+				return build(start, end, dim);
+			}
+			int splitDim = chooseDim(start, end, dim);
+			int mid = partition(start, end, splitDim);
+			int subDim = (splitDim + 1) % dims;
+			Node<T> node = createNode(mid, splitDim);
+			BuildTask lo = null;
+			if (mid > start) {
+				lo = new BuildTask(start, mid, subDim);
+				lo.fork();
+			}
+			if (mid + 1 < end) {
+				node.setRight(new BuildTask(mid + 1, end, subDim).compute());
+			}
+			if (lo != null) {
+				node.setLeft(lo.join());
+			}
+			return node;
+		}
+	}
+
+	private Node<T> build(int start, int end, int dim) {
+		int splitDim = chooseDim(start, end, dim);
+		int mid = partition(start, end, splitDim);
+		int subDim = (splitDim + 1) % dims;
+		Node<T> node = createNode(mid, splitDim);
+		if (mid > start) {
+			node.setLeft(build(start, mid, subDim));
+		}
+		if (mid + 1 < end) {
+			node.setRight(build(mid + 1, end, subDim));
+		}
+		return node;
+	}
+
+	/**
+	 * @param start start of the range (inclusive)
+	 * @param end end of the range (exclusive)
+	 * @param dim the next dimension in round-robin order
+	 * @return the split dimension for the range
+	 */
+	private int chooseDim(int start, int end, int dim) {
+		if (end - start < 2) {
+			return dim;
+		}
+		switch (policy) {
+		case MAX_SPREAD: return maxSpreadDim(start, end, dim);
+		case MAX_VARIANCE: return maxVarianceDim(start, end, dim);
+		default: return dim;
+		}
+	}
+
+	private int maxSpreadDim(int start, int end, int dim) {
+		int bestDim = dim;
+		double bestSpread = 0;
+		for (int d = 0; d < dims; d++) {
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = start; i < end; i++) {
+				double x = keys[i][d];
+				min = Math.min(min, x);
+				max = Math.max(max, x);
+			}
+			if (max - min > bestSpread) {
+				bestSpread = max - min;
+				bestDim = d;
+			}
+		}
+		return bestDim;
+	}
+
+	private int maxVarianceDim(int start, int end, int dim) {
+		//Large ranges are sampled with a fixed stride
+		int step = Math.max(1, (end - start) / VARIANCE_SAMPLE_SIZE);
+		int bestDim = dim;
+		double bestVar = 0;
+		for (int d = 0; d < dims; d++) {
+			//Welford's algorithm
+			double mean = 0;
+			double m2 = 0;
+			int n = 0;
+			for (int i = start; i < end; i += step) {
+				double x = keys[i][d];
+				n++;
+				double delta = x - mean;
+				mean += delta / n;
+				m2 += delta * (x - mean);
+			}
+			if (m2 > bestVar) {
+				bestVar = m2;
+				bestDim = d;
+			}
+		}
+		return bestDim;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Node<T> createNode(int pos, int dim) {
+		return new Node<>(keys[pos], (T) values[pos], dim);
+	}
+
+	/**
+	 * Partition the range such that the returned position holds the median and all
+	 * keys before the median are strictly smaller in the given dimension.
+	 * All keys after the median are equal or larger.
+	 * If there are no smaller keys, the keys before the median are all equal to the
+	 * median. They stay in the lower part, this keeps the tree balanced for duplicate
+	 * keys, but breaks the invariant.
+	 * @return position of the median
+	 */
+	private int partition(int start, int end, int dim) {
+		int k = (start + end) >>> 1;
+		select(start, end - 1, k, dim);
+		//Move keys that are equal to the median to the upper part
+		double median = keys[k][dim];
+		int pos = start;
+		for (int i = start; i < k; i++) {
+			if (keys[i][dim] < median) {
+				swap(i, pos++);
+			}
+		}
+		if (pos == start && k > start) {
+			invariantBroken = true;
+			return k;
+		}
+		return pos;
+	}
+
+	/**
+	 * Quickselect: ensures that the k-th key (in the given dimension) is at position 'k'.
+	 */
+	private void select(int left, int right, int k, int dim) {
+		while (right > left) {
+			double pivot = medianOf3(left, (left + right) >>> 1, right, dim);
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (keys[i][dim] < pivot) {
+					i++;
+				}
+				while (keys[j][dim] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					swap(i++, j--);
+				}
+			}
+			if (k <= j) {
+				right = j;
+			} else if (k >= i) {
+				left = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private double medianOf3(int p1, int p2, int p3, int dim) {
+		double a = keys[p1][dim];
+		double b = keys[p2][dim];
+		double c = keys[p3][dim];
+		if (a < b) {
+			return b < c ? b : (a < c ? c : a);
+		}
+		return a < c ? a : (b < c ? c : b);
+	}
+
+	private void swap(int p1, int p2) {
+		double[] k = keys[p1];
+		keys[p1] = keys[p2];
+		keys[p2] = k;
+		Object v = values[p1];
+		values[p1] = values[p2];
+		values[p2] = v;
+	}
+}
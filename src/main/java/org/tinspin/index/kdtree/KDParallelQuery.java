@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.kdtree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import org.tinspin.index.PointEntry;
+
+/**
+ * Parallel window query for the KD-Tree.
+ *
+ * The upper levels of the tree are split into tasks for the common {@link ForkJoinPool},
+ * each task traverses a disjoint subtree. The query returns exactly the entries that
+ * are returned by {@link KDIterator}.
+ *
+ * @param <T> Value type
+ */
+class KDParallelQuery<T> {
+
+	/** Trees smaller than this are queried by a single task. */
+	private static final int PARALLEL_THRESHOLD = 10_000;
+	/** Subtrees below this depth are traversed sequentially. */
+	private static final int FORK_DEPTH = 10;
+
+	private final KDTree<T> tree;
+	private final double[] min;
+	private final double[] max;
+	private final boolean invariantBroken;
+	private final Consumer<? super PointEntry<T>> consumer;
+
+	/**
+	 * @param tree the tree
+	 * @param min lower left corner of query
+	 * @param max upper right corner of query
+	 * @param consumer the consumer for the results or 'null' if the results should be 
+	 * collected with {@link #collect()}
+	 */
+	KDParallelQuery(KDTree<T> tree, double[] min, double[] max, 
+			Consumer<? super PointEntry<T>> consumer) {
+		this.tree = tree;
+		this.min = min;
+		this.max = max;
+		this.invariantBroken = tree.isInvariantBroken();
+		this.consumer = consumer;
+	}
+
+	/**
+	 * Pass all results to the consumer.
+	 */
+	void run() {
+		execute();
+	}
+
+	/**
+	 * @return all results, in the same order as returned by {@link KDIterator}
+	 */
+	List<PointEntry<T>> collect() {
+		QueryTask task = execute();
+		ArrayList<PointEntry<T>> result = new ArrayList<>(task == null ? 0 : task.count());
+		if (task != null) {
+			task.fill(result);
+		}
+		return result;
+	}
+
+	private QueryTask execute() {
+		if (tree.getRoot() == null) {
+			return null;
+		}
+		int depth = tree.size() < PARALLEL_THRESHOLD ? FORK_DEPTH : 0;
+		QueryTask task = new QueryTask(tree.getRoot(), depth);
+		if (depth >= FORK_DEPTH) {
+			task.compute();
+		} else {
+			ForkJoinPool.commonPool().invoke(task);
+		}
+		return task;
+	}
+
+	private boolean goLeft(Node<T> node) {
+		//Keys that are equal to the node's key are in the 'upper' branch.
+		//If the invariant is broken, they may also be in the 'lower' branch.
+		int pos = node.getDim();
+		double x = node.getKey()[pos];
+		return node.getLo() != null && (min[pos] < x || (invariantBroken && min[pos] == x));
+	}
+
+	private boolean goRight(Node<T> node) {
+		int pos = node.getDim();
+		return node.getHi() != null && max[pos] >= node.getKey()[pos];
+	}
+
+	private class QueryTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Node<T> node;
+		private final int depth;
+		//forked tasks
+		private QueryTask lo;
+		private QueryTask hi;
+		private boolean isKeyEnclosed;
+		//sequential tasks (collect mode only)
+		private ArrayList<Node<T>> result;
+
+		QueryTask(Node<T> node, int depth) {
+			this.node = node;
+			this.depth = depth;
+		}
+
+		@Override
+		protected void compute() {
+			if (depth >= FORK_DEPTH) {
+				if (consumer == null) {
+					result = new ArrayList<>();
+				}
+				traverse(node);
+				return;
+			}
+			if (goLeft(node)) {
+				lo = new QueryTask(node.getLo(), depth + 1);
+				lo.fork();
+			}
+			if (KDTree.isEnclosed(node.getKey(), min, max)) {
+				isKeyEnclosed = true;
+				emit(node);
+			}
+			if (goRight(node)) {
+				hi = new QueryTask(node.getHi(), depth + 1);
+				hi.compute();
+			}
+			if (lo != null) {
+				lo.join();
+			}
+		}
+
+		/**
+		 * In-order traversal of a subtree. This uses an explicit stack because the tree
+		 * may be degenerate.
+		 */
+		private void traverse(Node<T> subRoot) {
+			ArrayList<Node<T>> stack = new ArrayList<>();
+			Node<T> n = subRoot;
+			while (n != null || !stack.isEmpty()) {
+				while (n != null) {
+					stack.add(n);
+					n = goLeft(n) ? n.getLo() : null;
+				}
+				n = stack.remove(stack.size() - 1);
+				if (KDTree.isEnclosed(n.getKey(), min, max)) {
+					emit(n);
+				}
+				n = goRight(n) ? n.getHi() : null;
+			}
+		}
+
+		private void emit(Node<T> n) {
+			if (consumer != null) {
+				consumer.accept(n);
+			} else if (result != null) {
+				result.add(n);
+			}
+		}
+
+		int count() {
+			if (result != null) {
+				return result.size();
+			}
+			return (lo != null ? lo.count() : 0) + (isKeyEnclosed ? 1 : 0) 
+					+ (hi != null ? hi.count() : 0);
+		}
+
+		void fill(ArrayList<PointEntry<T>> out) {
+			if (result != null) {
+				out.addAll(result);
+				return;
+			}
+			if (lo != null) {
+				lo.fill(out);
+			}
+			if (isKeyEnclosed) {
+				out.add(node);
+			}
+			if (hi != null) {
+				hi.fill(out);
+			}
+		}
+	}
+}
@@ -20,17 +20,20 @@ package org.tinspin.index.kdtree;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.function.Consumer;
 
+import org.tinspin.index.KnnBatchQuery;
+import org.tinspin.index.KnnResultSink;
 import org.tinspin.index.PointDistanceFunction;
 import org.tinspin.index.PointEntry;
 import org.tinspin.index.PointEntryDist;
 import org.tinspin.index.PointIndex;
 import org.tinspin.index.QueryIterator;
 import org.tinspin.index.QueryIteratorKNN;
+import org.tinspin.index.QueryIteratorRange;
 import org.tinspin.index.Stats;
 
 /**
@@ -74,6 +77,33 @@ public class KDTree<T> implements PointIndex<T> {
 	
 	private final PointDistanceFunction dist;
 	
+	private final SplitPolicy splitPolicy;
+	
+	//Scapegoat rebalancing: When an inserted node is deeper than log_{1/alpha}(size), 
+	//we rebuild the lowest subtree on the insertion path where one child holds more 
+	//than 'alpha' of the subtree's entries. When 'size' drops below 'alpha*maxSize',
+	//the whole tree is rebuilt. This also repairs the invariant (see above).
+	//'alpha=1' disables rebalancing.
+	private final double alpha;
+	private final double logInvAlpha;
+	private int maxSize = 0;
+	private final ArrayList<Node<T>> insertPath = new ArrayList<>();
+	
+	/**
+	 * Policy for choosing the split dimension of nodes during bulk loading.
+	 * Nodes that are added with {@code insert()} always split in the dimension 
+	 * that follows the split dimension of their parent.
+	 */
+	public enum SplitPolicy {
+		/** Split dimensions alternate with the depth of the node (default). */
+		ROUND_ROBIN,
+		/** Split in the dimension where the keys of the subtree have the largest extent. */
+		MAX_SPREAD,
+		/** Split in the dimension where the keys of the subtree have the largest variance. 
+		 * For large subtrees, the variance is estimated from a sample of the keys. */
+		MAX_VARIANCE
+	}
+	
 	public static void main(String ... args) {
 		for (int i = 0; i < 10; i++) {
 			try {
@@ -133,20 +163,56 @@ public class KDTree<T> implements PointIndex<T> {
 		}
 	}
 	
-	private KDTree(int dims, PointDistanceFunction dist) {
+	private KDTree(int dims, PointDistanceFunction dist, SplitPolicy splitPolicy, double alpha) {
 		if (DEBUG) {
 			System.err.println("Warning: DEBUG enabled");
 		}
+		if (!(alpha > 0.5 && alpha <= 1)) {
+			throw new IllegalArgumentException("alpha must be in (0.5, 1]: " + alpha);
+		}
 		this.dims = dims;
 		this.dist = dist != null ? dist : PointDistanceFunction.L2;
+		this.splitPolicy = splitPolicy != null ? splitPolicy : SplitPolicy.ROUND_ROBIN;
+		this.alpha = alpha;
+		this.logInvAlpha = Math.log(1 / alpha);
 	}
 
 	public static <T> KDTree<T> create(int dims) {
-		return new KDTree<>(dims, PointDistanceFunction.L2);
+		return new KDTree<>(dims, PointDistanceFunction.L2, SplitPolicy.ROUND_ROBIN, 1);
 	}
 	
 	public static <T> KDTree<T> create(int dims, PointDistanceFunction dist) {
-		return new KDTree<>(dims, dist);
+		return new KDTree<>(dims, dist, SplitPolicy.ROUND_ROBIN, 1);
+	}
+	
+	/**
+	 * @param dims dimensionality
+	 * @param dist distance function
+	 * @param splitPolicy the policy for choosing split dimensions in {@link #load(double[][], Object[])}
+	 * @return a new KD-Tree
+	 * @param <T> Value type
+	 */
+	public static <T> KDTree<T> create(int dims, PointDistanceFunction dist, SplitPolicy splitPolicy) {
+		return new KDTree<>(dims, dist, splitPolicy, 1);
+	}
+	
+	/**
+	 * Create a tree that rebalances itself by rebuilding unbalanced subtrees 
+	 * (scapegoat rebalancing). The depth of the tree is at most log_{1/alpha}(n),
+	 * amortized insert and remove costs are O(log n).
+	 * Chains of identical keys cannot be balanced and are left as they are.
+	 * @param dims dimensionality
+	 * @param dist distance function
+	 * @param splitPolicy the policy for choosing split dimensions when (sub-)trees are built
+	 * @param alpha imbalance factor in (0.5, 1]. A subtree is rebuilt when one of its children
+	 * holds more than 'alpha' of its entries. Smaller values result in better balanced
+	 * trees but more frequent rebuilds, '1' disables rebalancing. 
+	 * @return a new KD-Tree
+	 * @param <T> Value type
+	 */
+	public static <T> KDTree<T> create(int dims, PointDistanceFunction dist, SplitPolicy splitPolicy, 
+			double alpha) {
+		return new KDTree<>(dims, dist, splitPolicy, alpha);
 	}
 	
 	/**
@@ -158,13 +224,156 @@ public class KDTree<T> implements PointIndex<T> {
 	public void insert(double[] key, T value) {
 		size++;
 		modCount++;
+		maxSize = Math.max(maxSize, size);
 		if (root == null) {
 			root = new Node<>(key, value, 0);
 			return;
 		}
+		if (alpha < 1) {
+			insertAndRebalance(key, value);
+			return;
+		}
 		Node<T> n = root;
 		while ((n = n.getClosestNodeOrAddPoint(key, value, dims)) != null);
 	}
+
+	private void insertAndRebalance(double[] key, T value) {
+		ArrayList<Node<T>> path = insertPath;
+		Node<T> n = root;
+		do {
+			path.add(n);
+		} while ((n = n.getClosestNodeOrAddPoint(key, value, dims)) != null);
+		//The depth of the new node is path.size(). We don't rebalance identical keys,
+		//they always form a chain.
+		Node<T> parent = path.get(path.size() - 1);
+		if (path.size() > Math.floor(Math.log(size) / logInvAlpha) 
+				&& !Arrays.equals(key, parent.getKey())) {
+			rebuildScapegoat(path, key);
+		}
+		path.clear();
+	}
+
+	private void rebuildScapegoat(ArrayList<Node<T>> path, double[] key) {
+		Node<T> parent = path.get(path.size() - 1);
+		int parentDim = parent.getDim();
+		Node<T> child = key[parentDim] >= parent.getKey()[parentDim] ? parent.getHi() : parent.getLo();
+		int childSize = 1;
+		for (int i = path.size() - 1; i >= 0; i--) {
+			Node<T> node = path.get(i);
+			Node<T> sibling = node.getLo() == child ? node.getHi() : node.getLo();
+			int nodeSize = childSize + 1 + countNodes(sibling);
+			if (childSize > alpha * nodeSize) {
+				Node<T> newNode = rebuild(node, nodeSize, node.getDim());
+				if (i == 0) {
+					root = newNode;
+				} else if (path.get(i - 1).getLo() == node) {
+					path.get(i - 1).setLeft(newNode);
+				} else {
+					path.get(i - 1).setRight(newNode);
+				}
+				return;
+			}
+			child = node;
+			childSize = nodeSize;
+		}
+	}
+
+	private void rebuildAll() {
+		invariantBroken = false;
+		root = rebuild(root, size, 0);
+		maxSize = size;
+	}
+
+	/**
+	 * Build a new balanced subtree from the entries of a given subtree.
+	 * @param node root of the subtree
+	 * @param nodeCount number of nodes in the subtree
+	 * @param dim split dimension of the new root
+	 * @return root of the new subtree
+	 */
+	private Node<T> rebuild(Node<T> node, int nodeCount, int dim) {
+		double[][] keys = new double[nodeCount][];
+		Object[] values = new Object[nodeCount];
+		collect(node, keys, values);
+		KDLoader<T> loader = new KDLoader<>(keys, values, dims, splitPolicy);
+		Node<T> newNode = loader.load(dim);
+		invariantBroken |= loader.isInvariantBroken();
+		return newNode;
+	}
+
+	private static <T> int countNodes(Node<T> node) {
+		if (node == null) {
+			return 0;
+		}
+		ArrayList<Node<T>> stack = new ArrayList<>();
+		stack.add(node);
+		int n = 0;
+		while (!stack.isEmpty()) {
+			Node<T> e = stack.remove(stack.size() - 1);
+			n++;
+			if (e.getLo() != null) {
+				stack.add(e.getLo());
+			}
+			if (e.getHi() != null) {
+				stack.add(e.getHi());
+			}
+		}
+		return n;
+	}
+
+	private static <T> void collect(Node<T> node, double[][] keys, Object[] values) {
+		if (node == null) {
+			return;
+		}
+		ArrayList<Node<T>> stack = new ArrayList<>();
+		stack.add(node);
+		int pos = 0;
+		while (!stack.isEmpty()) {
+			Node<T> n = stack.remove(stack.size() - 1);
+			keys[pos] = n.getKey();
+			values[pos++] = n.getValue();
+			if (n.getLo() != null) {
+				stack.add(n.getLo());
+			}
+			if (n.getHi() != null) {
+				stack.add(n.getHi());
+			}
+		}
+	}
+
+	/**
+	 * Bulk load the tree. This replaces all entries that are currently in the tree.
+	 * The resulting tree is balanced, i.e. its depth is O(log n), independent of
+	 * the order of the keys. Large trees are built in parallel.
+	 * The split dimensions are chosen according to the tree's {@link SplitPolicy}.
+	 * @param keys the keys
+	 * @param values the values, the value at position 'i' is associated with the key at position 'i'
+	 */
+	public void load(double[][] keys, T[] values) {
+		if (keys.length != values.length) {
+			throw new IllegalArgumentException(
+					"keys.length != values.length: " + keys.length + " != " + values.length);
+		}
+		KDLoader<T> loader = new KDLoader<>(keys.clone(), values.clone(), dims, splitPolicy);
+		root = loader.load();
+		size = keys.length;
+		maxSize = size;
+		invariantBroken = loader.isInvariantBroken();
+		modCount++;
+	}
+
+	/**
+	 * Create an immutable, array-backed copy of this tree. The copy is balanced and 
+	 * requires considerably less memory than this tree.
+	 * @return an immutable copy of this tree
+	 * @see KDTreeStatic
+	 */
+	public KDTreeStatic<T> freeze() {
+		double[][] keys = new double[size][];
+		Object[] values = new Object[size];
+		collect(root, keys, values);
+		return KDTreeStatic.createNoCopy(dims, keys, values, dist);
+	}
 	
 	/**
 	 * Check whether a given key exists.
@@ -225,7 +434,7 @@ public class KDTree<T> implements PointIndex<T> {
 				}
 				//Broken invariant? We need to check the 'lower' part as well...
 				if (n.getLo() != null) {
-					Node<T> n2 = findNodeExactSlow(key, n.getLo(), parent, resultDepth);
+					Node<T> n2 = findNodeExactSlow(key, n.getLo(), n, resultDepth);
 					if (n2 != null) {
 						return n2;
 					}
@@ -262,10 +471,10 @@ public class KDTree<T> implements PointIndex<T> {
 			root = null;
 			size = 0;
 			invariantBroken = false;
+			return value;
 		}
 		
 		//find replacement
-		removeResult.nodeParent = null; 
 		while (eToRemove != null && !eToRemove.isLeaf()) {
 			//recurse
 			int pos = removeResult.pos;
@@ -305,6 +514,9 @@ public class KDTree<T> implements PointIndex<T> {
 			}
 		}
 		size--;
+		if (alpha < 1 && size < alpha * maxSize) {
+			rebuildAll();
+		}
 		return value;
 	}
 
@@ -411,6 +623,7 @@ public class KDTree<T> implements PointIndex<T> {
 	@Override
 	public void clear() {
 		size = 0;
+		maxSize = 0;
 		root = null;
 		invariantBroken = false;
 		modCount++;
@@ -427,6 +640,33 @@ public class KDTree<T> implements PointIndex<T> {
 		return new KDIterator<>(this, min, max);
 	}
 
+	/**
+	 * Query the tree in parallel, passing all points in the axis-aligned rectangle 
+	 * between 'min' and 'max' to the consumer. Disjoint subtrees are traversed
+	 * concurrently in the common ForkJoinPool, so the consumer must be thread-safe
+	 * and the order of the entries is unspecified.
+	 * The tree must not be modified during the query.
+	 * @param min lower left corner of query
+	 * @param max upper right corner of query
+	 * @param consumer the consumer for all entries in the rectangle
+	 */
+	public void queryParallel(double[] min, double[] max, Consumer<? super PointEntry<T>> consumer) {
+		new KDParallelQuery<>(this, min, max, consumer).run();
+	}
+
+	/**
+	 * Query the tree in parallel, returning all points in the axis-aligned rectangle 
+	 * between 'min' and 'max'. The result is the same, including the order of 
+	 * the entries, as that of {@link #query(double[], double[])}.
+	 * The tree must not be modified during the query.
+	 * @param min lower left corner of query
+	 * @param max upper right corner of query
+	 * @return all entries in the rectangle
+	 */
+	public List<PointEntry<T>> queryParallel(double[] min, double[] max) {
+		return new KDParallelQuery<>(this, min, max, null).collect();
+	}
+
 	static boolean isEnclosed(double[] point, double[] min, double[] max) {
 		for (int i = 0; i < point.length; i++) {
 			if (point[i] < min[i] || point[i] > max[i]) {
@@ -439,6 +679,32 @@ public class KDTree<T> implements PointIndex<T> {
 	private double distance(double[] p1, double[] p2) {
 		return dist.dist(p1, p2);
 	}
+
+	private double distanceComparable(double[] p1, double[] p2, double maxDist) {
+		return dist.distComparable(p1, p2, maxDist);
+	}
+
+	/**
+	 * @return the comparable distance, see {@link PointDistanceFunction#distComparable}
+	 */
+	double distanceKNN(double[] p1, double[] p2) {
+		nDistKNN++;
+		return dist.distComparable(p1, p2);
+	}
+
+	PointDistanceFunction getDist() {
+		return dist;
+	}
+
+	/**
+	 * @param delta distance between 'center' and the splitting plane of a subtree,  
+	 * this is negative or 0 if 'center' lies on the side of the subtree
+	 * @param maxRange comparable search range
+	 * @return 'true' if the subtree may contain points within the search range
+	 */
+	private boolean isInRange(double delta, double maxRange, SearchLimits limits) {
+		return delta <= 0 || dist.toComparable(delta * limits.distFactor) <= maxRange;
+	}
 	
 	/**
 	 * 1-nearest neighbor query.
@@ -446,48 +712,71 @@ public class KDTree<T> implements PointIndex<T> {
 	 * @return Nearest neighbor
 	 */
 	public KDEntryDist<T> nnQuery(double[] center) {
+		return nnQuery(center, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Approximate 1-nearest neighbor query. The distance of the returned entry is at most 
+	 * '(1+epsilon)' times the distance of the exact nearest neighbor. 
+	 * The number of nodes that are examined can be limited with 'maxNodes', in this case 
+	 * the result is the best match among the examined nodes.
+	 * The number of calculated distances is reported by {@link Stats#getNDistCalc1NN()}.
+	 * @param center The point for which the nearest neighbors are requested
+	 * @param epsilon approximation factor, '0' returns the exact nearest neighbor
+	 * @param maxNodes maximum number of nodes to examine, must be at least 1
+	 * @return Nearest neighbor
+	 */
+	public KDEntryDist<T> nnQuery(double[] center, double epsilon, int maxNodes) {
 		if (root == null) {
     		return null;
 		}
     	KDEntryDist<T> candidate = new KDEntryDist<>(null, Double.POSITIVE_INFINITY);
-   		rangeSearch1NN(root, center, candidate, Double.POSITIVE_INFINITY);
+   		rangeSearch1NN(root, center, candidate, Double.POSITIVE_INFINITY, 
+   				new SearchLimits().set(epsilon, maxNodes));
+   		candidate.setDist(dist.toDist(candidate.dist()));
     	return candidate;
     }
 
     private double rangeSearch1NN(Node<T> node, double[] center, 
-    		KDEntryDist<T> candidate, double maxRange) {
+    		KDEntryDist<T> candidate, double maxRange, SearchLimits limits) {
+    	if (limits.remainingNodes <= 0) {
+    		return maxRange;
+    	}
     	int pos = node.getDim();
     	if (node.getLo() != null && (center[pos] < node.getKey()[pos] || node.getHi() == null)) {
         	//go down
-    		maxRange = rangeSearch1NN(node.getLo(), center, candidate, maxRange);
+    		maxRange = rangeSearch1NN(node.getLo(), center, candidate, maxRange, limits);
         	//refine result
-    		if (center[pos] + maxRange >= node.getKey()[pos]) {
-    			maxRange = addCandidate(node, center, candidate, maxRange);
+    		if (isInRange(node.getKey()[pos] - center[pos], maxRange, limits)) {
+    			maxRange = addCandidate(node, center, candidate, maxRange, limits);
         		if (node.getHi() != null) {
-        			maxRange = rangeSearch1NN(node.getHi(), center, candidate, maxRange);
+        			maxRange = rangeSearch1NN(node.getHi(), center, candidate, maxRange, limits);
         		}
     		}
     	} else if (node.getHi() != null) {
         	//go down
-    		maxRange = rangeSearch1NN(node.getHi(), center, candidate, maxRange);
+    		maxRange = rangeSearch1NN(node.getHi(), center, candidate, maxRange, limits);
         	//refine result
-    		if (center[pos] <= node.getKey()[pos] + maxRange) {
-    			maxRange = addCandidate(node, center, candidate, maxRange);
+    		if (isInRange(center[pos] - node.getKey()[pos], maxRange, limits)) {
+    			maxRange = addCandidate(node, center, candidate, maxRange, limits);
         		if (node.getLo() != null) {
-        			maxRange = rangeSearch1NN(node.getLo(), center, candidate, maxRange);
+        			maxRange = rangeSearch1NN(node.getLo(), center, candidate, maxRange, limits);
         		}
     		}
     	} else {
     		//leaf -> first (probably best) match!
-    		maxRange = addCandidate(node, center, candidate, maxRange);
+    		maxRange = addCandidate(node, center, candidate, maxRange, limits);
     	}
     	return maxRange;
     }
         
     private double addCandidate(Node<T> node, double[] center, 
-    		final KDEntryDist<T> candidate, double maxRange) {
+    		final KDEntryDist<T> candidate, double maxRange, SearchLimits limits) {
+    	if (limits.remainingNodes-- <= 0) {
+    		return maxRange;
+    	}
     	nDist1NN++;
-    	double dist = distance(center, node.getKey());
+    	double dist = distanceComparable(center, node.getKey(), maxRange);
     	if (dist >= maxRange) {
     		//don't add if too far away
     		//don't add if we already have an equally good result
@@ -498,102 +787,365 @@ public class KDTree<T> implements PointIndex<T> {
     }
 	
 	public List<KDEntryDist<T>> knnQuery(double[] center, int k) {
-		if (root == null) {
+		return knnQuery(center, k, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Approximate k-nearest neighbor query. The distance of the i-th returned entry is 
+	 * at most '(1+epsilon)' times the distance of the exact i-th nearest neighbor.
+	 * Subtrees are skipped if their distance to the center exceeds 
+	 * 'maxRange/(1+epsilon)' where 'maxRange' is the distance of the current k-th candidate.
+	 * The number of nodes that are examined can be limited with 'maxNodes', in this case 
+	 * the result consists of the best matches among the examined nodes.
+	 * The number of calculated distances is reported by {@link Stats#getNDistCalcKNN()}.
+	 * @param center The point for which the nearest neighbors are requested
+	 * @param k number of neighbors
+	 * @param epsilon approximation factor, '0' returns the exact nearest neighbors
+	 * @param maxNodes maximum number of nodes to examine, must be at least 1
+	 * @return the nearest neighbors, ordered by ascending distance
+	 */
+	public List<KDEntryDist<T>> knnQuery(double[] center, int k, double epsilon, int maxNodes) {
+		SearchLimits limits = new SearchLimits().set(epsilon, maxNodes);
+		if (root == null || k <= 0) {
     		return Collections.emptyList();
 		}
-    	ArrayList<KDEntryDist<T>> candidates = new ArrayList<>(k);
-   		rangeSearchKNN(root, center, candidates, k, Double.POSITIVE_INFINITY);
+		KnnHeap<T> heap = new KnnHeap<>();
+		heap.reset(k);
+   		rangeSearchKNN(root, center, heap, Double.POSITIVE_INFINITY, limits);
+   		heap.sort();
+    	ArrayList<KDEntryDist<T>> candidates = new ArrayList<>(heap.size());
+    	for (int i = 0; i < heap.size(); i++) {
+    		candidates.add(new KDEntryDist<>(heap.node(i), dist.toDist(heap.dist(i))));
+    	}
     	return candidates;
     }
 
     private double rangeSearchKNN(Node<T> node, double[] center, 
-    		ArrayList<KDEntryDist<T>> candidates, int k, double maxRange) {
+    		KnnHeap<T> candidates, double maxRange, SearchLimits limits) {
+    	if (limits.remainingNodes <= 0) {
+    		return maxRange;
+    	}
     	int pos = node.getDim();
     	if (node.getLo() != null && (center[pos] < node.getKey()[pos] || node.getHi() == null)) {
         	//go down
-    		maxRange = rangeSearchKNN(node.getLo(), center, candidates, k, maxRange);
+    		maxRange = rangeSearchKNN(node.getLo(), center, candidates, maxRange, limits);
         	//refine result
-    		if (center[pos] + maxRange >= node.getKey()[pos]) {
-    			maxRange = addCandidate(node, center, candidates, k, maxRange);
+    		if (isInRange(node.getKey()[pos] - center[pos], maxRange, limits)) {
+    			maxRange = addCandidate(node, center, candidates, maxRange, limits);
         		if (node.getHi() != null) {
-        			maxRange = rangeSearchKNN(node.getHi(), center, candidates, k, maxRange);
+        			maxRange = rangeSearchKNN(node.getHi(), center, candidates, maxRange, limits);
         		}
     		}
     	} else if (node.getHi() != null) {
         	//go down
-    		maxRange = rangeSearchKNN(node.getHi(), center, candidates, k, maxRange);
+    		maxRange = rangeSearchKNN(node.getHi(), center, candidates, maxRange, limits);
         	//refine result
-    		if (center[pos] <= node.getKey()[pos] + maxRange) {
-    			maxRange = addCandidate(node, center, candidates, k, maxRange);
+    		if (isInRange(center[pos] - node.getKey()[pos], maxRange, limits)) {
+    			maxRange = addCandidate(node, center, candidates, maxRange, limits);
         		if (node.getLo() != null) {
-        			maxRange = rangeSearchKNN(node.getLo(), center, candidates, k, maxRange);
+        			maxRange = rangeSearchKNN(node.getLo(), center, candidates, maxRange, limits);
         		}
     		}
     	} else {
     		//leaf -> first (probably best) match!
-    		maxRange = addCandidate(node, center, candidates, k, maxRange);
+    		maxRange = addCandidate(node, center, candidates, maxRange, limits);
     	}
     	return maxRange;
     }
     
-	
-    private static final Comparator<KDEntryDist<?>> compKnn =  
-    		(KDEntryDist<?> point1, KDEntryDist<?> point2) -> {
-    			double deltaDist = point1.dist() - point2.dist();
-    			return deltaDist < 0 ? -1 : (deltaDist > 0 ? 1 : 0);
-    		};
-
-    
     private double addCandidate(Node<T> node, double[] center, 
-    		ArrayList<KDEntryDist<T>> candidates, int k, double maxRange) {
+    		KnnHeap<T> candidates, double maxRange, SearchLimits limits) {
+    	if (limits.remainingNodes-- <= 0) {
+    		return maxRange;
+    	}
     	nDistKNN++;
     	//add ?
-    	double dist = distance(center, node.getKey());
+    	double dist = distanceComparable(center, node.getKey(), maxRange);
     	if (dist > maxRange) {
     		//don't add if too far away
     		return maxRange;
     	}
-    	if (dist == maxRange && candidates.size() >= k) {
+    	if (dist == maxRange && candidates.isFull()) {
     		//don't add if we already have enough equally good results.
     		return maxRange;
     	}
-    	KDEntryDist<T> cand;
-    	if (candidates.size() >= k) {
-    		cand = candidates.remove(k - 1);
-    		cand.set(node, dist);
-    	} else {
-    		cand = new KDEntryDist<>(node, dist);
+    	candidates.add(node, dist);
+    	return candidates.isFull() ? candidates.maxDist() : maxRange;
+    }
+    
+    /**
+     * Limits for approximate nearest neighbor queries. 
+     */
+    private static class SearchLimits {
+    	/** 1+epsilon, this is multiplied with the distance of subtrees for pruning. */
+    	double distFactor;
+    	/** Number of nodes that may still be examined. */
+    	int remainingNodes;
+    	
+    	SearchLimits set(double epsilon, int maxNodes) {
+    		if (!(epsilon >= 0)) {
+    			throw new IllegalArgumentException("epsilon must be >= 0: " + epsilon);
+    		}
+    		if (maxNodes < 1) {
+    			throw new IllegalArgumentException("maxNodes must be >= 1: " + maxNodes);
+    		}
+    		this.distFactor = 1 + epsilon;
+    		this.remainingNodes = maxNodes;
+    		return this;
     	}
-    	int insertionPos = Collections.binarySearch(candidates, cand, compKnn);
-    	insertionPos = insertionPos >= 0 ? insertionPos : -(insertionPos+1);
-    	candidates.add(insertionPos, cand);
-    	return candidates.size() < k ? maxRange : candidates.get(candidates.size() - 1).dist();
     }
     
+    /**
+     * Bounded max-heap of candidates for kNN queries. The (comparable) distances are 
+     * stored in a primitive array with the nodes in a parallel array, the candidate 
+     * with the largest distance is at position 0.
+     * The heap can be reused for subsequent queries, it only allocates when 'k' grows.
+     */
+    private static class KnnHeap<T> {
+    	private double[] dists = new double[0];
+    	private Object[] nodes = new Object[0];
+    	private int size;
+    	private int k;
+
+    	void reset(int k) {
+    		if (dists.length < k) {
+    			dists = new double[k];
+    			nodes = new Object[k];
+    		}
+    		Arrays.fill(nodes, 0, size, null);
+    		this.size = 0;
+    		this.k = k;
+    	}
+    	
+    	int size() {
+    		return size;
+    	}
+
+    	boolean isFull() {
+    		return size >= k;
+    	}
+    	
+    	double maxDist() {
+    		return dists[0];
+    	}
+    	
+    	double dist(int pos) {
+    		return dists[pos];
+    	}
+    	
+    	@SuppressWarnings("unchecked")
+    	Node<T> node(int pos) {
+    		return (Node<T>) nodes[pos];
+    	}
+    	
+    	/**
+    	 * Add a candidate. If the heap is full, this replaces the candidate with the 
+    	 * largest distance.
+    	 */
+    	void add(Node<T> node, double dist) {
+    		if (size < k) {
+    			//sift up
+    			int pos = size++;
+    			while (pos > 0) {
+    				int parent = (pos - 1) >> 1;
+    				if (dists[parent] >= dist) {
+    					break;
+    				}
+    				dists[pos] = dists[parent];
+    				nodes[pos] = nodes[parent];
+    				pos = parent;
+    			}
+    			dists[pos] = dist;
+    			nodes[pos] = node;
+    		} else {
+    			siftDown(node, dist, size);
+    		}
+    	}
+    	
+    	private void siftDown(Object node, double dist, int n) {
+    		int pos = 0;
+    		int child;
+    		while ((child = 2 * pos + 1) < n) {
+    			if (child + 1 < n && dists[child + 1] > dists[child]) {
+    				child++;
+    			}
+    			if (dists[child] <= dist) {
+    				break;
+    			}
+    			dists[pos] = dists[child];
+    			nodes[pos] = nodes[child];
+    			pos = child;
+    		}
+    		dists[pos] = dist;
+    		nodes[pos] = node;
+    	}
+    	
+    	/**
+    	 * Sort the candidates in place by ascending distance (heap sort).
+    	 * Afterwards the heap must not be modified before calling {@link #reset(int)}.
+    	 */
+    	void sort() {
+    		for (int i = size - 1; i > 0; i--) {
+    			double d = dists[i];
+    			Object n = nodes[i];
+    			dists[i] = dists[0];
+    			nodes[i] = nodes[0];
+    			siftDown(n, d, i);
+    		}
+    	}
+    }
 	
+    /**
+     * kNN iterator. The iterator is reusable: calling {@link #reset(double[], int)} 
+     * does not allocate any objects unless 'k' is larger than in previous queries.
+     * Note that this means that entries returned by {@link #next()} are only valid 
+     * until the next call to {@link #reset(double[], int)}.
+     */
     private static class KDQueryIteratorKNN<T> implements QueryIteratorKNN<PointEntryDist<T>> {
 
-    	private Iterator<? extends PointEntryDist<T>> it;
     	private final KDTree<T> tree;
+    	private final KnnHeap<T> heap = new KnnHeap<>();
+    	private final SearchLimits limits = new SearchLimits();
+    	private KDEntryDist<T>[] results = newArray(0);
+    	private int nResults;
+    	private int pos;
     	
 		public KDQueryIteratorKNN(KDTree<T> tree, double[] center, int k) {
 			this.tree = tree;
 			reset(center, k);
 		}
 
+		@SuppressWarnings("unchecked")
+		private static <T> KDEntryDist<T>[] newArray(int size) {
+			return new KDEntryDist[size];
+		}
+		
 		@Override
 		public boolean hasNext() {
-			return it.hasNext();
+			return pos < nResults;
 		}
 
 		@Override
 		public PointEntryDist<T> next() {
-			return it.next();
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return results[pos++];
 		}
 
 		@Override
 		public KDQueryIteratorKNN<T> reset(double[] center, int k) {
-			it = tree.knnQuery(center, k).iterator();
+			pos = 0;
+			nResults = 0;
+			if (tree.root == null || k <= 0) {
+				return this;
+			}
+			heap.reset(k);
+			tree.rangeSearchKNN(tree.root, center, heap, Double.POSITIVE_INFINITY, 
+					limits.set(0, Integer.MAX_VALUE));
+			heap.sort();
+			nResults = heap.size();
+			if (results.length < nResults) {
+				KDEntryDist<T>[] newResults = newArray(k);
+				System.arraycopy(results, 0, newResults, 0, results.length);
+				for (int i = results.length; i < newResults.length; i++) {
+					newResults[i] = new KDEntryDist<>(null, 0);
+				}
+				results = newResults;
+			}
+			for (int i = 0; i < nResults; i++) {
+				results[i].set(heap.node(i), tree.dist.toDist(heap.dist(i)));
+			}
+			return this;
+		}
+    }
+
+	/**
+	 * Range query. This returns all entries whose distance to 'center' is at most
+	 * 'radius', using the distance function of the tree.
+	 * @param center The center of the query
+	 * @param radius maximum distance, inclusive
+	 * @return all entries within the given distance, in no particular order
+	 */
+	public List<PointEntry<T>> rangeQuery(double[] center, double radius) {
+		ArrayList<PointEntry<T>> result = new ArrayList<>();
+		if (root != null) {
+			rangeSearch(root, center, center.clone(), radius, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @param closest the point of the current subtree's region that is closest to 
+	 * 'center'. This is updated (and restored) whenever we descend into a child
+	 * on the other side of the splitting plane.
+	 */
+    private void rangeSearch(Node<T> node, double[] center, double[] closest,
+    		double radius, List<PointEntry<T>> result) {
+    	if (distance(center, node.getKey()) <= radius) {
+    		result.add(node);
+    	}
+    	int pos = node.getDim();
+    	double split = node.getKey()[pos];
+    	Node<T> near;
+    	Node<T> far;
+    	if (center[pos] < split) {
+    		near = node.getLo();
+    		far = node.getHi();
+    	} else {
+    		near = node.getHi();
+    		far = node.getLo();
+    	}
+    	if (near != null) {
+    		rangeSearch(near, center, closest, radius, result);
+    	}
+    	if (far != null) {
+    		double old = closest[pos];
+    		closest[pos] = split;
+    		if (distance(center, closest) <= radius) {
+    			rangeSearch(far, center, closest, radius, result);
+    		}
+    		closest[pos] = old;
+    	}
+    }
+
+    private static class KDQueryIteratorRange<T> implements QueryIteratorRange<PointEntry<T>> {
+
+    	private final KDTree<T> tree;
+    	private final ArrayList<PointEntry<T>> results = new ArrayList<>();
+    	private double[] closest;
+    	private int pos;
+    	
+		public KDQueryIteratorRange(KDTree<T> tree, double[] center, double radius) {
+			this.tree = tree;
+			reset(center, radius);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return pos < results.size();
+		}
+
+		@Override
+		public PointEntry<T> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return results.get(pos++);
+		}
+
+		@Override
+		public KDQueryIteratorRange<T> reset(double[] center, double radius) {
+			pos = 0;
+			results.clear();
+			if (tree.root == null) {
+				return this;
+			}
+			if (closest == null || closest.length != center.length) {
+				closest = new double[center.length];
+			}
+			System.arraycopy(center, 0, closest, 0, center.length);
+			tree.rangeSearch(tree.root, center, closest, radius, results);
 			return this;
 		}
     }
@@ -666,6 +1218,10 @@ public class KDTree<T> implements PointIndex<T> {
 		return dims;
 	}
 
+	public SplitPolicy getSplitPolicy() {
+		return splitPolicy;
+	}
+
 	@Override
 	public QueryIterator<PointEntry<T>> iterator() {
 		if (root == null) {
@@ -686,6 +1242,33 @@ public class KDTree<T> implements PointIndex<T> {
 		return new KDQueryIteratorKNN<>(this, center, k);
 	}
 
+	/**
+	 * Batch kNN query. The queries are executed in parallel, so 'sink' may be called
+	 * concurrently. The tree must not be modified during the query.
+	 * @see KnnBatchQuery#parallel(PointIndex, double[][], int, KnnResultSink)
+	 */
+	@Override
+	public void queryKNN(double[][] centers, int k, KnnResultSink<T> sink) {
+		KnnBatchQuery.parallel(this, centers, k, sink);
+	}
+
+	@Override
+	public QueryIteratorRange<PointEntry<T>> queryRange(double[] center, double radius) {
+		return new KDQueryIteratorRange<>(this, center, radius);
+	}
+
+	/**
+	 * Incremental nearest neighbor query. The returned iterator returns all entries in
+	 * the tree ordered by their distance to the center point. Neighbors are only searched
+	 * when they are requested, so the query can be aborted early at low cost.
+	 * @param center center point
+	 * @return an iterator over all entries, ordered by distance
+	 * @see KDIteratorKNN
+	 */
+	public KDIteratorKNN<T> queryNearestNeighbors(double[] center) {
+		return new KDIteratorKNN<>(this, center, Integer.MAX_VALUE);
+	}
+
 	@Override
 	public int getNodeCount() {
 		return getStats().getNodeCount();
@@ -699,4 +1282,8 @@ public class KDTree<T> implements PointIndex<T> {
 	Node<T> getRoot() {
 		return root;
 	}
+	
+	boolean isInvariantBroken() {
+		return invariantBroken;
+	}
 }
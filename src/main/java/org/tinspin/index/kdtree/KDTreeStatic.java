@@ -0,0 +1,605 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.kdtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.tinspin.index.PointDistanceFunction;
+import org.tinspin.index.PointEntry;
+import org.tinspin.index.PointEntryDist;
+import org.tinspin.index.PointIndex;
+import org.tinspin.index.QueryIterator;
+import org.tinspin.index.QueryIteratorKNN;
+import org.tinspin.index.QueryIteratorRange;
+import org.tinspin.index.Stats;
+
+/**
+ * An immutable, array-backed KD-Tree.
+ * 
+ * The tree is balanced and has no node objects. All coordinates are stored in a single
+ * {@code double[]} (interleaved, i.e. point 'i' is stored at {@code [i*dims, i*dims+dims)}), 
+ * the values are stored in a parallel {@code Object[]}.
+ * Children are addressed implicitly: the root of a range [start, end) is the point at 
+ * {@code mid=(start+end)>>>1}, its subtrees are the ranges [start, mid) and [mid+1, end).
+ * The split dimension of a node is {@code depth % dims}.
+ * 
+ * Trees can be created with {@link KDTree#freeze()} or {@link #create(int, double[][], Object[])}.
+ * All modifying operations throw {@link UnsupportedOperationException}.
+ * 
+ * @author T. Zäschke
+ *
+ * @param <T> Value type
+ */
+public class KDTreeStatic<T> implements PointIndex<T> {
+
+	private static final String NL = System.lineSeparator();
+
+	private final int dims;
+	private final int size;
+	private final double[] coords;
+	private final Object[] values;
+	private final PointDistanceFunction dist;
+	private long nDistKNN = 0;
+
+	private KDTreeStatic(int dims, double[][] keys, Object[] values, PointDistanceFunction dist) {
+		if (keys.length != values.length) {
+			throw new IllegalArgumentException(
+					"keys.length != values.length: " + keys.length + " != " + values.length);
+		}
+		this.dims = dims;
+		this.size = keys.length;
+		this.dist = dist != null ? dist : PointDistanceFunction.L2;
+		new KDLoader<T>(keys, values, dims).arrange();
+		this.coords = new double[size * dims];
+		for (int i = 0; i < size; i++) {
+			System.arraycopy(keys[i], 0, coords, i * dims, dims);
+		}
+		this.values = values;
+	}
+
+	/**
+	 * Create a tree.
+	 * @param dims dimensionality
+	 * @param keys the keys. The keys are copied into the tree.
+	 * @param values the values, the value at position 'i' is associated with the key at position 'i'
+	 * @return the tree
+	 * @param <T> Value type
+	 */
+	public static <T> KDTreeStatic<T> create(int dims, double[][] keys, T[] values) {
+		return new KDTreeStatic<>(dims, keys.clone(), values.clone(), PointDistanceFunction.L2);
+	}
+
+	/**
+	 * Create a tree.
+	 * @param dims dimensionality
+	 * @param keys the keys. The keys are copied into the tree.
+	 * @param values the values, the value at position 'i' is associated with the key at position 'i'
+	 * @param dist distance function
+	 * @return the tree
+	 * @param <T> Value type
+	 */
+	public static <T> KDTreeStatic<T> create(int dims, double[][] keys, T[] values, 
+			PointDistanceFunction dist) {
+		return new KDTreeStatic<>(dims, keys.clone(), values.clone(), dist);
+	}
+
+	/**
+	 * Create a tree without copying the arrays. The arrays are reordered.
+	 */
+	static <T> KDTreeStatic<T> createNoCopy(int dims, double[][] keys, Object[] values, 
+			PointDistanceFunction dist) {
+		return new KDTreeStatic<>(dims, keys, values, dist);
+	}
+
+	@Override
+	public void insert(double[] key, T value) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public T remove(double[] point) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public T update(double[] oldPoint, double[] newPoint) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Check whether a given key exists.
+	 * @param key the key to check
+	 * @return true iff the key exists
+	 */
+	public boolean containsExact(double[] key) {
+		return findExact(key, 0, size, 0) >= 0;
+	}
+
+	/**
+	 * Get the value associates with the key.
+	 * @param key the key to look up
+	 * @return the value for the key or 'null' if the key was not found
+	 */
+	@Override
+	public T queryExact(double[] key) {
+		int pos = findExact(key, 0, size, 0);
+		return pos < 0 ? null : getValue(pos);
+	}
+
+	private int findExact(double[] key, int start, int end, int depth) {
+		while (start < end) {
+			int mid = (start + end) >>> 1;
+			int d = depth % dims;
+			double nodeX = coords[mid * dims + d];
+			if (key[d] == nodeX) {
+				if (isEqual(mid, key)) {
+					return mid;
+				}
+				//equal keys may be in both subtrees
+				int pos = findExact(key, start, mid, depth + 1);
+				if (pos >= 0) {
+					return pos;
+				}
+				start = mid + 1;
+			} else if (key[d] < nodeX) {
+				end = mid;
+			} else {
+				start = mid + 1;
+			}
+			depth++;
+		}
+		return -1;
+	}
+
+	private boolean isEqual(int pos, double[] key) {
+		int offs = pos * dims;
+		for (int d = 0; d < dims; d++) {
+			if (coords[offs + d] != key[d]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isEnclosed(int pos, double[] min, double[] max) {
+		int offs = pos * dims;
+		for (int d = 0; d < dims; d++) {
+			double x = coords[offs + d];
+			if (x < min[d] || x > max[d]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T getValue(int pos) {
+		return (T) values[pos];
+	}
+
+	private double[] getPoint(int pos) {
+		return Arrays.copyOfRange(coords, pos * dims, pos * dims + dims);
+	}
+
+	private SEntry<T> createEntry(int pos) {
+		return new SEntry<>(getPoint(pos), getValue(pos));
+	}
+
+	/**
+	 * Query the tree, returning all points in the axis-aligned rectangle between 'min' and 'max'.
+	 * @param min lower left corner of query
+	 * @param max upper right corner of query
+	 * @return all entries in the rectangle
+	 */
+	@Override
+	public QueryIterator<PointEntry<T>> query(double[] min, double[] max) {
+		return new SIterator(min, max);
+	}
+
+	@Override
+	public QueryIterator<PointEntry<T>> iterator() {
+		double[] min = new double[dims];
+		double[] max = new double[dims];
+		Arrays.fill(min, Double.NEGATIVE_INFINITY);
+		Arrays.fill(max, Double.POSITIVE_INFINITY);
+		return query(min, max);
+	}
+
+	public List<PointEntryDist<T>> knnQuery(double[] center, int k) {
+		if (size == 0) {
+			return Collections.emptyList();
+		}
+		ArrayList<SEntryDist<T>> candidates = new ArrayList<>(k);
+		double[] buf = new double[dims];
+		rangeSearchKNN(0, size, 0, center, candidates, k, Double.POSITIVE_INFINITY, buf);
+		for (int i = 0; i < candidates.size(); i++) {
+			SEntryDist<T> e = candidates.get(i);
+			e.distance = dist.toDist(e.distance);
+		}
+		return Collections.unmodifiableList(candidates);
+	}
+
+	private double rangeSearchKNN(int start, int end, int depth, double[] center, 
+			ArrayList<SEntryDist<T>> candidates, int k, double maxRange, double[] buf) {
+		if (start >= end) {
+			return maxRange;
+		}
+		int mid = (start + end) >>> 1;
+		int d = depth % dims;
+		double delta = center[d] - coords[mid * dims + d];
+		if (delta < 0) {
+			maxRange = rangeSearchKNN(start, mid, depth + 1, center, candidates, k, maxRange, buf);
+			if (dist.toComparable(-delta) <= maxRange) {
+				maxRange = addCandidate(mid, center, candidates, k, maxRange, buf);
+				maxRange = rangeSearchKNN(mid + 1, end, depth + 1, center, candidates, k, maxRange, buf);
+			}
+		} else {
+			maxRange = rangeSearchKNN(mid + 1, end, depth + 1, center, candidates, k, maxRange, buf);
+			if (dist.toComparable(delta) <= maxRange) {
+				maxRange = addCandidate(mid, center, candidates, k, maxRange, buf);
+				maxRange = rangeSearchKNN(start, mid, depth + 1, center, candidates, k, maxRange, buf);
+			}
+		}
+		return maxRange;
+	}
+
+	private double addCandidate(int pos, double[] center, 
+			ArrayList<SEntryDist<T>> candidates, int k, double maxRange, double[] buf) {
+		nDistKNN++;
+		System.arraycopy(coords, pos * dims, buf, 0, dims);
+		double d = dist.distComparable(center, buf, maxRange);
+		if (d > maxRange) {
+			//don't add if too far away
+			return maxRange;
+		}
+		if (d == maxRange && candidates.size() >= k) {
+			//don't add if we already have enough equally good results.
+			return maxRange;
+		}
+		SEntryDist<T> cand;
+		if (candidates.size() >= k) {
+			cand = candidates.remove(k - 1);
+			cand.set(getPoint(pos), getValue(pos), d);
+		} else {
+			cand = new SEntryDist<>(getPoint(pos), getValue(pos), d);
+		}
+		int insertionPos = Collections.binarySearch(candidates, cand, SEntryDist.COMP);
+		insertionPos = insertionPos >= 0 ? insertionPos : -(insertionPos+1);
+		candidates.add(insertionPos, cand);
+		return candidates.size() < k ? maxRange : candidates.get(candidates.size() - 1).dist();
+	}
+
+	@Override
+	public QueryIteratorKNN<PointEntryDist<T>> queryKNN(double[] center, int k) {
+		return new SQueryIteratorKNN(center, k);
+	}
+
+	private class SQueryIteratorKNN implements QueryIteratorKNN<PointEntryDist<T>> {
+
+		private Iterator<PointEntryDist<T>> it;
+
+		SQueryIteratorKNN(double[] center, int k) {
+			reset(center, k);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return it.hasNext();
+		}
+
+		@Override
+		public PointEntryDist<T> next() {
+			return it.next();
+		}
+
+		@Override
+		public SQueryIteratorKNN reset(double[] center, int k) {
+			it = knnQuery(center, k).iterator();
+			return this;
+		}
+	}
+
+	/**
+	 * Range query. This returns all entries whose distance to 'center' is at most
+	 * 'radius', using the distance function of the tree.
+	 * @param center The center of the query
+	 * @param radius maximum distance, inclusive
+	 * @return all entries within the given distance, in no particular order
+	 */
+	public List<PointEntry<T>> rangeQuery(double[] center, double radius) {
+		ArrayList<PointEntry<T>> result = new ArrayList<>();
+		double[] buf = new double[dims];
+		rangeSearch(0, size, 0, center, center.clone(), radius, result, buf);
+		return result;
+	}
+
+	/**
+	 * @param closest the point of the current subtree's region that is closest to 
+	 * 'center'. This is updated (and restored) whenever we descend into a child
+	 * on the other side of the splitting plane.
+	 */
+	private void rangeSearch(int start, int end, int depth, double[] center, double[] closest,
+			double radius, List<PointEntry<T>> result, double[] buf) {
+		if (start >= end) {
+			return;
+		}
+		int mid = (start + end) >>> 1;
+		System.arraycopy(coords, mid * dims, buf, 0, dims);
+		if (dist.dist(center, buf) <= radius) {
+			result.add(createEntry(mid));
+		}
+		int d = depth % dims;
+		double split = buf[d];
+		boolean lower = center[d] < split;
+		if (lower) {
+			rangeSearch(start, mid, depth + 1, center, closest, radius, result, buf);
+		} else {
+			rangeSearch(mid + 1, end, depth + 1, center, closest, radius, result, buf);
+		}
+		double old = closest[d];
+		closest[d] = split;
+		if (dist.dist(center, closest) <= radius) {
+			if (lower) {
+				rangeSearch(mid + 1, end, depth + 1, center, closest, radius, result, buf);
+			} else {
+				rangeSearch(start, mid, depth + 1, center, closest, radius, result, buf);
+			}
+		}
+		closest[d] = old;
+	}
+
+	@Override
+	public QueryIteratorRange<PointEntry<T>> queryRange(double[] center, double radius) {
+		return new SQueryIteratorRange(center, radius);
+	}
+
+	private class SQueryIteratorRange implements QueryIteratorRange<PointEntry<T>> {
+
+		private Iterator<PointEntry<T>> it;
+
+		SQueryIteratorRange(double[] center, double radius) {
+			reset(center, radius);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return it.hasNext();
+		}
+
+		@Override
+		public PointEntry<T> next() {
+			return it.next();
+		}
+
+		@Override
+		public SQueryIteratorRange reset(double[] center, double radius) {
+			it = rangeQuery(center, radius).iterator();
+			return this;
+		}
+	}
+
+	/**
+	 * Resetable window query iterator. 
+	 * The traversal stack is a primitive array of [start, end, depth] triplets.
+	 */
+	private class SIterator implements QueryIterator<PointEntry<T>> {
+
+		private int[] stack = new int[3 * 64];
+		private int stackSize = 0;
+		private SEntry<T> next;
+		private double[] min;
+		private double[] max;
+
+		SIterator(double[] min, double[] max) {
+			reset(min, max);
+		}
+
+		private void push(int start, int end, int depth) {
+			if (start >= end) {
+				return;
+			}
+			if (stackSize + 3 > stack.length) {
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			stack[stackSize++] = start;
+			stack[stackSize++] = end;
+			stack[stackSize++] = depth;
+		}
+
+		private void findNext() {
+			while (stackSize > 0) {
+				int depth = stack[--stackSize];
+				int end = stack[--stackSize];
+				int start = stack[--stackSize];
+				int mid = (start + end) >>> 1;
+				int d = depth % dims;
+				double nodeX = coords[mid * dims + d];
+				//push 'hi' first, so that 'lo' is traversed first
+				if (max[d] >= nodeX) {
+					push(mid + 1, end, depth + 1);
+				}
+				if (min[d] <= nodeX) {
+					push(start, mid, depth + 1);
+				}
+				if (isEnclosed(mid, min, max)) {
+					next = createEntry(mid);
+					return;
+				}
+			}
+			next = null;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public PointEntry<T> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			SEntry<T> ret = next;
+			findNext();
+			return ret;
+		}
+
+		@Override
+		public void reset(double[] min, double[] max) {
+			this.min = min;
+			this.max = max;
+			stackSize = 0;
+			push(0, size, 0);
+			findNext();
+		}
+	}
+
+	private static class SEntry<T> implements PointEntry<T> {
+		private double[] point;
+		private T value;
+
+		SEntry(double[] point, T value) {
+			this.point = point;
+			this.value = value;
+		}
+
+		void set(double[] point, T value) {
+			this.point = point;
+			this.value = value;
+		}
+
+		@Override
+		public double[] point() {
+			return point;
+		}
+
+		@Override
+		public T value() {
+			return value;
+		}
+	}
+
+	private static class SEntryDist<T> extends SEntry<T> implements PointEntryDist<T> {
+		private double distance;
+
+		SEntryDist(double[] point, T value, double dist) {
+			super(point, value);
+			this.distance = dist;
+		}
+
+		void set(double[] point, T value, double dist) {
+			super.set(point, value);
+			this.distance = dist;
+		}
+
+		@Override
+		public double dist() {
+			return distance;
+		}
+
+		static final Comparator<SEntryDist<?>> COMP = 
+				(SEntryDist<?> o1, SEntryDist<?> o2) -> {
+					double d = o1.dist() - o2.dist();
+					return d < 0 ? -1 : (d > 0 ? 1 : 0);
+				};
+	}
+
+	@Override
+	public int getDims() {
+		return dims;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public KDStats getStats() {
+		KDStats s = new KDStats(nDistKNN);
+		s.dims = dims;
+		s.nEntries = size;
+		s.nNodes = size;
+		s.maxDepth = getDepth();
+		return s;
+	}
+
+	/**
+	 * Statistics container class.
+	 */
+	public static class KDStats extends Stats {
+		KDStats(long nDistKNN) {
+			super(nDistKNN, 0, nDistKNN);
+		}
+	}
+
+	@Override
+	public int getNodeCount() {
+		return size;
+	}
+
+	@Override
+	public int getDepth() {
+		//depth is counted from 0, as in KDTree
+		return size == 0 ? 0 : 31 - Integer.numberOfLeadingZeros(size);
+	}
+
+	@Override
+	public String toStringTree() {
+		StringBuilder sb = new StringBuilder();
+		if (size == 0) {
+			sb.append("empty tree");
+		} else {
+			toStringTree(sb, 0, size, 0);
+		}
+		return sb.toString();
+	}
+
+	private void toStringTree(StringBuilder sb, int start, int end, int depth) {
+		if (start >= end) {
+			return;
+		}
+		int mid = (start + end) >>> 1;
+		String prefix = "";
+		for (int i = 0; i < depth; i++) {
+			prefix += ".";
+		}
+		prefix += " ";
+		toStringTree(sb, start, mid, depth + 1);
+		sb.append(prefix + Arrays.toString(getPoint(mid)));
+		sb.append(" v=" + values[mid] + NL);
+		toStringTree(sb, mid + 1, end, depth + 1);
+	}
+
+	@Override
+	public String toString() {
+		return "KDTreeStatic;size=" + size + 
+				";DistFn=" + PointDistanceFunction.getName(dist);
+	}
+}
@@ -22,6 +22,7 @@ import java.util.NoSuchElementException;
 
 import org.tinspin.index.QueryIterator;
 import org.tinspin.index.RectangleEntry;
+import org.tinspin.index.WindowPredicate;
 
 /**
  * Resetable query iterator.
@@ -31,14 +32,20 @@ import org.tinspin.index.RectangleEntry;
 public class QRIterator<T> implements QueryIterator<RectangleEntry<T>> {
 
 	private final QuadTreeRKD<T> tree;
+	private final WindowPredicate predicate;
 	private IteratorStack stack;
 	private QREntry<T> next = null;
 	private double[] min;
 	private double[] max;
 	
 	QRIterator(QuadTreeRKD<T> tree, double[] min, double[] max) {
+		this(tree, min, max, WindowPredicate.INTERSECT);
+	}
+	
+	QRIterator(QuadTreeRKD<T> tree, double[] min, double[] max, WindowPredicate predicate) {
 		this.stack = new IteratorStack();
 		this.tree = tree;
+		this.predicate = predicate;
 		reset(min, max);
 	}
 	
@@ -53,13 +60,13 @@ public class QRIterator<T> implements QueryIterator<RectangleEntry<T>> {
 					se.posSub = Long.MAX_VALUE;
 				}
 				QRNode<T> node = se.subs[pos];
-				if (node != null) {
+				if (node != null && checkNode(node)) {
 					se = stack.prepareAndPush(node, min, max);
 				}
 			}
 			while (se.posE < se.lenE) {
 				QREntry<T> e = se.vals.get((int) se.posE++);
-				if (QUtil.overlap(min, max, e.lower(), e.upper())) {
+				if (predicate.matches(min, max, e.lower(), e.upper())) {
 					next = e;
 					return;
 				}
@@ -69,6 +76,17 @@ public class QRIterator<T> implements QueryIterator<RectangleEntry<T>> {
 		next = null;
 	}
 	
+	/**
+	 * Sub-nodes are selected with the query window, this only adds a check
+	 * for enclosure queries: entries are always inside the node, so only nodes 
+	 * that enclose the query window can contain matching entries. 
+	 * Like the tree, this allows entries to exceed the node by QUtil.EPS_MUL.
+	 */
+	private boolean checkNode(QRNode<T> node) {
+		return predicate != WindowPredicate.ENCLOSING 
+				|| QUtil.isRectEnclosed(min, max, node.getCenter(), node.getRadius()*QUtil.EPS_MUL);
+	}
+	
 	@Override
 	public boolean hasNext() {
 		return next != null;
@@ -96,7 +114,7 @@ public class QRIterator<T> implements QueryIterator<RectangleEntry<T>> {
 		this.min = min;
 		this.max = max;
 		next = null;
-		if (tree.getRoot() != null) {
+		if (tree.getRoot() != null && checkNode(tree.getRoot())) {
 			stack.prepareAndPush(tree.getRoot(), min, max);
 			findNext();
 		}
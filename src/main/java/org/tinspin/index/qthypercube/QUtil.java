@@ -17,6 +17,8 @@
  */
 package org.tinspin.index.qthypercube;
 
+import org.tinspin.index.PointDistanceFunction;
+
 public class QUtil {
 	
 	static final double EPS_MUL = 1.000000001;
@@ -112,12 +114,32 @@ public class QUtil {
 	}
 
 	public static double distance(double[] p1, double[] p2) {
+		return Math.sqrt(distanceSquared(p1, p2));
+	}
+	
+	/**
+	 * @param p1 point 1
+	 * @param p2 point 2
+	 * @return the squared euclidean distance
+	 */
+	public static double distanceSquared(double[] p1, double[] p2) {
 		double dist = 0;
 		for (int i = 0; i < p1.length; i++) {
 			double d = p1[i]-p2[i];
 			dist += d * d;
 		}
-		return Math.sqrt(dist);
+		return dist;
+	}
+	
+	/**
+	 * @param p1 point 1
+	 * @param p2 point 2
+	 * @param maxDistSquared maximum squared distance
+	 * @return the squared euclidean distance or {@code Double.POSITIVE_INFINITY} if
+	 * the squared distance is larger than 'maxDistSquared'
+	 */
+	public static double distanceSquared(double[] p1, double[] p2, double maxDistSquared) {
+		return PointDistanceFunction.l2Squared(p1, p2, maxDistSquared);
 	}
 	
 	/**
@@ -185,6 +207,17 @@ public class QUtil {
 	 * @return distance to edge of the node or 0 if the point is inside the node
 	 */
 	static double distToRectNode(double[] point, double[] nodeCenter, double nodeRadius) {
+		return Math.sqrt(distToRectNodeSquared(point, nodeCenter, nodeRadius));
+	}
+	
+	/**
+	 * Calculates the squared distance to the edge of a node.
+	 * @param point the point
+	 * @param nodeCenter the center of the node
+	 * @param nodeRadius radius of the node
+	 * @return squared distance to edge of the node or 0 if the point is inside the node
+	 */
+	static double distToRectNodeSquared(double[] point, double[] nodeCenter, double nodeRadius) {
 		double dist = 0;
 		for (int i = 0; i < point.length; i++) {
 			double d = 0;
@@ -195,7 +228,7 @@ public class QUtil {
 			}
 			dist += d*d;
 		}
-		return Math.sqrt(dist);
+		return dist;
 	}
 	
 }
@@ -29,6 +29,7 @@ import org.tinspin.index.PointEntryDist;
 import org.tinspin.index.PointIndex;
 import org.tinspin.index.QueryIterator;
 import org.tinspin.index.QueryIteratorKNN;
+import org.tinspin.index.QueryIteratorRange;
 import org.tinspin.index.Stats;
 
 /**
@@ -301,17 +302,22 @@ public class QuadTreeKD<T> implements PointIndex<T> {
         Comparator<QEntry<T>> comp =  
         		(QEntry<T> point1, QEntry<T> point2) -> {
         			double deltaDist = 
-        					QUtil.distance(center, point1.point()) - 
-        					QUtil.distance(center, point2.point());
+        					QUtil.distanceSquared(center, point1.point()) - 
+        					QUtil.distanceSquared(center, point2.point());
         			return deltaDist < 0 ? -1 : (deltaDist > 0 ? 1 : 0);
         		};
         double distEstimate = distanceEstimate(root, center, k, comp);
     	ArrayList<QEntryDist<T>> candidates = new ArrayList<>();
     	while (candidates.size() < k) {
     		candidates.clear();
-    		rangeSearchKNN(root, center, candidates, k, distEstimate);
+    		//the search uses squared distances
+    		rangeSearchKNN(root, center, candidates, k, distEstimate * distEstimate);
     		distEstimate *= 2;
     	}
+    	for (int i = 0; i < candidates.size(); i++) {
+    		QEntryDist<T> e = candidates.get(i);
+    		e.setDist(Math.sqrt(e.dist()));
+    	}
     	return candidates;
     }
 
@@ -354,7 +360,7 @@ public class QuadTreeKD<T> implements PointIndex<T> {
     		ArrayList<QEntry<T>> points = node.getEntries();
     		for (int i = 0; i < points.size(); i++) {
     			QEntry<T> p = points.get(i);
-   				double dist = QUtil.distance(center, p.point());
+   				double dist = QUtil.distanceSquared(center, p.point(), maxRange);
    				if (dist < maxRange) {
     				candidates.add(new QEntryDist<>(p, dist));
   				}
@@ -365,7 +371,7 @@ public class QuadTreeKD<T> implements PointIndex<T> {
     		for (int i = 0; i < nodes.length; i++) {
     			QNode<T> sub = nodes[i];
     			if (sub != null && 
-    					QUtil.distToRectNode(center, sub.getCenter(), sub.getRadius()) < maxRange) {
+    					QUtil.distToRectNodeSquared(center, sub.getCenter(), sub.getRadius()) < maxRange) {
     				maxRange = rangeSearchKNN(sub, center, candidates, k, maxRange);
     				//we set maxRange simply to the latest returned value.
     			}
@@ -415,6 +421,69 @@ public class QuadTreeKD<T> implements PointIndex<T> {
 			return this;
 		}
     }
+
+	/**
+	 * @param center center point
+	 * @param radius maximum distance, inclusive
+	 * @return all entries with a distance of at most 'radius' to 'center'
+	 */
+	public List<QEntryDist<T>> rangeQuery(double[] center, double radius) {
+		if (root == null) {
+    		return Collections.emptyList();
+		}
+    	ArrayList<QEntryDist<T>> result = new ArrayList<>();
+    	rangeSearch(root, center, radius, result);
+    	return result;
+    }
+
+    private void rangeSearch(QNode<T> node, double[] center, double radius,
+    		ArrayList<QEntryDist<T>> result) {
+		if (node.isLeaf()) {
+    		ArrayList<QEntry<T>> points = node.getEntries();
+    		for (int i = 0; i < points.size(); i++) {
+    			QEntry<T> p = points.get(i);
+   				double dist = QUtil.distance(center, p.point());
+   				if (dist <= radius) {
+    				result.add(new QEntryDist<>(p, dist));
+  				}
+    		}
+    	} else {
+    		QNode<T>[] nodes = node.getChildNodes(); 
+    		for (int i = 0; i < nodes.length; i++) {
+    			QNode<T> sub = nodes[i];
+    			if (sub != null && 
+    					QUtil.distToRectNode(center, sub.getCenter(), sub.getRadius()) <= radius) {
+    				rangeSearch(sub, center, radius, result);
+    			}
+    		}
+    	}
+    }
+
+    private class QQueryIteratorRange implements QueryIteratorRange<PointEntry<T>> {
+
+    	private Iterator<PointEntry<T>> it;
+    	
+		public QQueryIteratorRange(double[] center, double radius) {
+			reset(center, radius);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return it.hasNext();
+		}
+
+		@Override
+		public PointEntry<T> next() {
+			return it.next();
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		@Override
+		public QQueryIteratorRange reset(double[] center, double radius) {
+			it = ((List)rangeQuery(center, radius)).iterator();
+			return this;
+		}
+    }
     
     /**
 	 * Returns a printable list of the tree.
@@ -521,6 +590,11 @@ public class QuadTreeKD<T> implements PointIndex<T> {
 		return new QQueryIteratorKNN(center, k);
 	}
 
+	@Override
+	public QueryIteratorRange<PointEntry<T>> queryRange(double[] center, double radius) {
+		return new QQueryIteratorRange(center, radius);
+	}
+
 	@Override
 	public int getNodeCount() {
 		return getStats().getNodeCount();
@@ -29,6 +29,7 @@ import org.tinspin.index.QueryIteratorKNN;
 import org.tinspin.index.RectangleEntry;
 import org.tinspin.index.RectangleEntryDist;
 import org.tinspin.index.RectangleIndex;
+import org.tinspin.index.WindowPredicate;
 import org.tinspin.index.qthypercube.QuadTreeKD.QStats;
 
 /**
@@ -288,6 +289,30 @@ public class QuadTreeRKD<T> implements RectangleIndex<T> {
 		return new QRIterator<>(this, min, max);
 	}
 
+	/**
+	 * Query the tree, returning all entries that lie completely inside the axis-aligned 
+	 * rectangle between 'min' and 'max'.
+	 * @param min lower left corner of query
+	 * @param max upper right corner of query
+	 * @return all entries in the rectangle
+	 */
+	@Override
+	public QRIterator<T> queryContained(double[] min, double[] max) {
+		return new QRIterator<>(this, min, max, WindowPredicate.CONTAINED);
+	}
+
+	/**
+	 * Query the tree, returning all entries that completely enclose the axis-aligned 
+	 * rectangle between 'min' and 'max'. Only nodes that enclose the rectangle are visited.
+	 * @param min lower left corner of query
+	 * @param max upper right corner of query
+	 * @return all entries that enclose the rectangle
+	 */
+	@Override
+	public QRIterator<T> queryEnclosing(double[] min, double[] max) {
+		return new QRIterator<>(this, min, max, WindowPredicate.ENCLOSING);
+	}
+
 	public List<QREntryDist<T>> knnQuery(double[] center, int k) {
 		if (root == null) {
     		return Collections.emptyList();
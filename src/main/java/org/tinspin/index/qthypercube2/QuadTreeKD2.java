@@ -24,11 +24,14 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
+import org.tinspin.index.KnnBatchQuery;
+import org.tinspin.index.KnnResultSink;
 import org.tinspin.index.PointEntry;
 import org.tinspin.index.PointEntryDist;
 import org.tinspin.index.PointIndex;
 import org.tinspin.index.QueryIterator;
 import org.tinspin.index.QueryIteratorKNN;
+import org.tinspin.index.QueryIteratorRange;
 import org.tinspin.index.Stats;
 
 /**
@@ -315,6 +318,11 @@ public class QuadTreeKD2<T> implements PointIndex<T> {
 		}
     	ArrayList<QEntryDist<T>> candidates = new ArrayList<>();
     	rangeSearchKNN(root, center, candidates, k, Double.MAX_VALUE);
+    	//the search uses squared distances
+    	for (int i = 0; i < candidates.size(); i++) {
+    		QEntryDist<T> e = candidates.get(i);
+    		e.setDist(Math.sqrt(e.dist()));
+    	}
     	return candidates;
     }
 
@@ -339,11 +347,11 @@ public class QuadTreeKD2<T> implements PointIndex<T> {
     		Object e = entries[i];
     		if (e instanceof QNode && e != alreadyVisited) {
     			QNode<T> n = (QNode<T>) e;
-    			double dist = QUtil.distToRectNode(center, n.getCenter(), n.getRadius());
+    			double dist = QUtil.distToRectNodeSquared(center, n.getCenter(), n.getRadius());
     			addToBuffer(n, dist, maxRange, buffer);
     		} else if (e instanceof QEntry) {
     			QEntry<T> p = (QEntry<T>) e;
-   				double dist = QUtil.distance(center, p.point());
+   				double dist = QUtil.distanceSquared(center, p.point(), maxRange);
     			addToBuffer(p, dist, maxRange, buffer);
     		}
     	}
@@ -429,6 +437,67 @@ public class QuadTreeKD2<T> implements PointIndex<T> {
 			return this;
 		}
     }
+
+	/**
+	 * @param center center point
+	 * @param radius maximum distance, inclusive
+	 * @return all entries with a distance of at most 'radius' to 'center'
+	 */
+	public List<QEntryDist<T>> rangeQuery(double[] center, double radius) {
+		if (root == null) {
+    		return Collections.emptyList();
+		}
+    	ArrayList<QEntryDist<T>> result = new ArrayList<>();
+    	rangeSearch(root, center, radius, result);
+    	return result;
+    }
+
+    @SuppressWarnings("unchecked")
+	private void rangeSearch(QNode<T> node, double[] center, double radius,
+    		ArrayList<QEntryDist<T>> result) {
+    	Object[] entries = node.getEntries();
+    	for (int i = 0; i < entries.length; i++) {
+    		Object e = entries[i];
+    		if (e instanceof QNode) {
+    			QNode<T> n = (QNode<T>) e;
+    			if (QUtil.distToRectNode(center, n.getCenter(), n.getRadius()) <= radius) {
+    				rangeSearch(n, center, radius, result);
+    			}
+    		} else if (e instanceof QEntry) {
+    			QEntry<T> p = (QEntry<T>) e;
+   				double dist = QUtil.distance(center, p.point());
+   				if (dist <= radius) {
+   					result.add(new QEntryDist<>(p, dist));
+   				}
+    		}
+    	}
+    }
+
+    private class QQueryIteratorRange implements QueryIteratorRange<PointEntry<T>> {
+
+    	private Iterator<PointEntry<T>> it;
+    	
+		public QQueryIteratorRange(double[] center, double radius) {
+			reset(center, radius);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return it.hasNext();
+		}
+
+		@Override
+		public PointEntry<T> next() {
+			return it.next();
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		@Override
+		public QQueryIteratorRange reset(double[] center, double radius) {
+			it = ((List)rangeQuery(center, radius)).iterator();
+			return this;
+		}
+    }
     
     /**
 	 * Returns a printable list of the tree.
@@ -538,6 +607,21 @@ public class QuadTreeKD2<T> implements PointIndex<T> {
 		return new QQueryIteratorKNN(center, k);
 	}
 
+	/**
+	 * Batch kNN query. The queries are executed in parallel, so 'sink' may be called
+	 * concurrently. The tree must not be modified during the query.
+	 * @see KnnBatchQuery#parallel(PointIndex, double[][], int, KnnResultSink)
+	 */
+	@Override
+	public void queryKNN(double[][] centers, int k, KnnResultSink<T> sink) {
+		KnnBatchQuery.parallel(this, centers, k, sink);
+	}
+
+	@Override
+	public QueryIteratorRange<PointEntry<T>> queryRange(double[] center, double radius) {
+		return new QQueryIteratorRange(center, radius);
+	}
+
 	@Override
 	public int getNodeCount() {
 		return getStats().getNodeCount();
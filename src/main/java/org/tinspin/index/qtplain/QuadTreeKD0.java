@@ -366,17 +366,22 @@ public class QuadTreeKD0<T> implements PointIndex<T> {
         Comparator<QEntry<T>> comp =  
         		(QEntry<T> point1, QEntry<T> point2) -> {
         			double deltaDist = 
-        					QUtil.distance(center, point1.point()) - 
-        					QUtil.distance(center, point2.point());
+        					QUtil.distanceSquared(center, point1.point()) - 
+        					QUtil.distanceSquared(center, point2.point());
         			return deltaDist < 0 ? -1 : (deltaDist > 0 ? 1 : 0);
         		};
         double distEstimate = distanceEstimate(root, center, k, comp);
     	ArrayList<QEntryDist<T>> candidates = new ArrayList<>();
     	while (candidates.size() < k) {
     		candidates.clear();
-    		rangeSearchKNN(root, center, candidates, k, distEstimate);
+    		//the search uses squared distances
+    		rangeSearchKNN(root, center, candidates, k, distEstimate * distEstimate);
     		distEstimate *= 2;
     	}
+    	for (int i = 0; i < candidates.size(); i++) {
+    		QEntryDist<T> e = candidates.get(i);
+    		e.setDist(Math.sqrt(e.dist()));
+    	}
     	return candidates;
     }
 
@@ -419,7 +424,7 @@ public class QuadTreeKD0<T> implements PointIndex<T> {
     		ArrayList<QEntry<T>> points = node.getEntries();
     		for (int i = 0; i < points.size(); i++) {
     			QEntry<T> p = points.get(i);
-   				double dist = QUtil.distance(center, p.point());
+   				double dist = QUtil.distanceSquared(center, p.point(), maxRange);
    				if (dist < maxRange) {
     				candidates.add(new QEntryDist<>(p, dist));
   				}
@@ -430,7 +435,7 @@ public class QuadTreeKD0<T> implements PointIndex<T> {
     		for (int i = 0; i < nodes.size(); i++) {
     			QNode<T> sub = nodes.get(i);
     			if (sub != null && 
-    					QUtil.distToRectNode(center, sub.getCenter(), sub.getRadius()) < maxRange) {
+    					QUtil.distToRectNodeSquared(center, sub.getCenter(), sub.getRadius()) < maxRange) {
     				maxRange = rangeSearchKNN(sub, center, candidates, k, maxRange);
     				//we set maxRange simply to the latest returned value.
     			}
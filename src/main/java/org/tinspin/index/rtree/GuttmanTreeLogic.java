@@ -0,0 +1,237 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.rtree;
+
+import java.util.ArrayList;
+
+/**
+ * Base class for the insertion algorithms of the original R-Tree from
+ * Guttman, A. (1984). "R-Trees: A Dynamic Index Structure for Spatial Searching".
+ * 
+ * ChooseSubtree picks the child that requires the least area enlargement on all
+ * levels. Overflowing nodes are split without forced reinsertion. Subclasses 
+ * implement PickSeeds and PickNext of the split algorithm.
+ */
+public abstract class GuttmanTreeLogic implements RTreeLogic {
+
+	/** Minimum fill of nodes after a split, relative to the node capacity. */
+	private static final double MIN_FILL = 0.40;
+
+	private final int nodeMaxDir;
+	private final int nodeMaxData;
+
+	/**
+	 * @param nodeMaxDir maximum number of children of directory nodes
+	 * @param nodeMaxData maximum number of entries of leaf nodes
+	 */
+	protected GuttmanTreeLogic(int nodeMaxDir, int nodeMaxData) {
+		this.nodeMaxDir = nodeMaxDir;
+		this.nodeMaxData = nodeMaxData;
+	}
+
+	@Override
+	public <T> RTreeNode<T> chooseSubTree(RTreeNode<T> root, 
+			Entry<T> e, int desiredInsertionLevel, int nLevels) {
+		//CL1
+		RTreeNode<T> node = root;
+		int level = nLevels-1;
+		//CL2
+		while (level != desiredInsertionLevel) {
+			//CL3
+			node = chooseNodeWithLeastAreaEnlargement((RTreeNodeDir<T>) node, e);
+			level--;
+		}
+		return node;
+	}
+
+	private <T> RTreeNode<T> chooseNodeWithLeastAreaEnlargement(RTreeNodeDir<T> dir, Entry<T> e) {
+		ArrayList<RTreeNode<T>> children = dir.getChildren();
+		double bestAreaEnl = Double.MAX_VALUE;
+		double bestArea = Double.MAX_VALUE;
+		RTreeNode<T> bestNode = null;
+		for (int i = 0; i < children.size(); i++) {
+			RTreeNode<T> child = children.get(i);
+			double area = child.calcArea();
+			double areaEnl = child.calcAreaEnlarged(e) - area;
+			//ties are resolved by choosing the node with the smallest area
+			if (areaEnl < bestAreaEnl || (areaEnl == bestAreaEnl && area < bestArea)) {
+				bestAreaEnl = areaEnl;
+				bestArea = area;
+				bestNode = child; 
+			}
+		}
+		return bestNode;
+	}
+
+	@Override
+	public <T> boolean hasSpace(RTreeNode<T> node) {
+		return node.getEntries().size() < getM(node);
+	}
+
+	@Override
+	public int getNodeMaxDir() {
+		return nodeMaxDir;
+	}
+
+	@Override
+	public int getNodeMaxData() {
+		return nodeMaxData;
+	}
+
+	@Override
+	public boolean useReinsert() {
+		return false;
+	}
+
+	@Override
+	public <T> Entry<T>[] reInsert(RTreeNode<T> node, Entry<T> e) {
+		throw new UnsupportedOperationException("Forced reinsertion is not used by " + 
+				getClass().getSimpleName());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> RTreeNode<T> split(RTreeNode<T> node, Entry<T> e) {
+		final int M = getM(node);
+		final int m = Math.max(RTree.calcNodeMin(M), (int) (MIN_FILL * M));
+		Entry<T>[] children = node.getEntries().toArray(new Entry[M+1]);
+		children[M] = e;
+		int dims = e.min.length;
+		
+		//S1 pick first entries for the groups
+		int[] seeds = pickSeeds(children);
+		ArrayList<Entry<T>> group1 = new ArrayList<>();
+		ArrayList<Entry<T>> group2 = new ArrayList<>();
+		double[] min1 = new double[dims];
+		double[] max1 = new double[dims];
+		double[] min2 = new double[dims];
+		double[] max2 = new double[dims];
+		boolean[] assigned = new boolean[children.length];
+		addToGroup(children[seeds[0]], group1, min1, max1);
+		addToGroup(children[seeds[1]], group2, min2, max2);
+		assigned[seeds[0]] = true;
+		assigned[seeds[1]] = true;
+		int remaining = children.length - 2;
+		
+		while (remaining > 0) {
+			//S2 check if done: assign all remaining entries to a group that needs them
+			//for the minimum fill
+			ArrayList<Entry<T>> fill = null;
+			if (group1.size() + remaining <= m) {
+				fill = group1;
+			} else if (group2.size() + remaining <= m) {
+				fill = group2;
+			}
+			if (fill != null) {
+				for (int i = 0; i < children.length; i++) {
+					if (!assigned[i]) {
+						fill.add(children[i]);
+					}
+				}
+				break;
+			}
+			//S3 select entry to assign
+			int next = pickNext(children, assigned, min1, max1, min2, max2);
+			Entry<T> c = children[next];
+			double area1 = Entry.calcVolume(min1, max1);
+			double area2 = Entry.calcVolume(min2, max2);
+			double d1 = calcAreaEnlarged(min1, max1, c) - area1;
+			double d2 = calcAreaEnlarged(min2, max2, c) - area2;
+			//add to the group whose covering rectangle has to be enlarged least,
+			//resolve ties by smaller area, then by fewer entries
+			boolean toGroup1;
+			if (d1 != d2) {
+				toGroup1 = d1 < d2;
+			} else if (area1 != area2) {
+				toGroup1 = area1 < area2;
+			} else {
+				toGroup1 = group1.size() <= group2.size();
+			}
+			if (toGroup1) {
+				addToGroup(c, group1, min1, max1);
+			} else {
+				addToGroup(c, group2, min2, max2);
+			}
+			assigned[next] = true;
+			remaining--;
+		}
+		
+		RTreeNode<T> newNode;
+		if (node instanceof RTreeNodeDir) {
+			newNode = new RTreeNodeDir<>(dims);
+		} else {
+			newNode = new RTreeNodeLeaf<>(dims);
+		}
+		node.clear();
+		for (int i = 0; i < group1.size(); i++) {
+			node.addEntry(group1.get(i));
+		}
+		//shrink parents
+		node.recalcParentMBB();
+		for (int i = 0; i < group2.size(); i++) {
+			newNode.addEntry(group2.get(i));
+		}
+		return newNode;
+	}
+
+	/**
+	 * PickSeeds: select two entries to be the first elements of the two groups.
+	 * @param entries the entries of the overflowing node
+	 * @return the positions of the two seeds
+	 */
+	protected abstract int[] pickSeeds(Entry<?>[] entries);
+
+	/**
+	 * PickNext: select the next entry to be assigned to a group.
+	 * @param entries the entries of the overflowing node
+	 * @param assigned entries that have already been assigned
+	 * @param min1 lower corner of the first group
+	 * @param max1 upper corner of the first group
+	 * @param min2 lower corner of the second group
+	 * @param max2 upper corner of the second group
+	 * @return the position of an entry that has not been assigned yet
+	 */
+	protected abstract int pickNext(Entry<?>[] entries, boolean[] assigned, 
+			double[] min1, double[] max1, double[] min2, double[] max2);
+
+	private static <T> void addToGroup(Entry<T> e, ArrayList<Entry<T>> group, 
+			double[] min, double[] max) {
+		if (group.isEmpty()) {
+			System.arraycopy(e.min, 0, min, 0, min.length);
+			System.arraycopy(e.max, 0, max, 0, max.length);
+		} else {
+			for (int d = 0; d < min.length; d++) {
+				min[d] = Math.min(min[d], e.min[d]);
+				max[d] = Math.max(max[d], e.max[d]);
+			}
+		}
+		group.add(e);
+	}
+
+	static double calcAreaEnlarged(double[] min, double[] max, Entry<?> e) {
+		double area = 1;
+		for (int d = 0; d < min.length; d++) {
+			area *= Math.max(max[d], e.max[d]) - Math.min(min[d], e.min[d]);
+		}
+		return area;
+	}
+
+	private int getM(RTreeNode<?> node) {
+		return node instanceof RTreeNodeLeaf ? nodeMaxData : nodeMaxDir;
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.rtree;
+
+/**
+ * Guttman's linear-cost split algorithm. 
+ * 
+ * PickSeeds selects the pair of entries with the greatest normalized separation
+ * along any dimension. PickNext assigns the remaining entries in arbitrary order.
+ */
+public class LinearTreeLogic extends GuttmanTreeLogic {
+
+	public LinearTreeLogic() {
+		this(RTree.NODE_MAX_DIR, RTree.NODE_MAX_DATA);
+	}
+
+	/**
+	 * @param nodeMaxDir maximum number of children of directory nodes
+	 * @param nodeMaxData maximum number of entries of leaf nodes
+	 */
+	public LinearTreeLogic(int nodeMaxDir, int nodeMaxData) {
+		super(nodeMaxDir, nodeMaxData);
+	}
+
+	/**
+	 * LinearPickSeeds.
+	 */
+	@Override
+	protected int[] pickSeeds(Entry<?>[] entries) {
+		int dims = entries[0].min.length;
+		double bestSep = Double.NEGATIVE_INFINITY;
+		int seed1 = 0;
+		int seed2 = 1;
+		for (int d = 0; d < dims; d++) {
+			//LPS1 find extreme rectangles along all dimensions
+			int highestLow = 0;
+			int lowestHigh = 0;
+			double minLow = Double.POSITIVE_INFINITY;
+			double maxHigh = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < entries.length; i++) {
+				Entry<?> e = entries[i];
+				if (e.min[d] > entries[highestLow].min[d]) {
+					highestLow = i;
+				}
+				if (e.max[d] < entries[lowestHigh].max[d]) {
+					lowestHigh = i;
+				}
+				minLow = Math.min(minLow, e.min[d]);
+				maxHigh = Math.max(maxHigh, e.max[d]);
+			}
+			if (highestLow == lowestHigh) {
+				continue;
+			}
+			//LPS2 adjust for shape of the rectangle cluster
+			double width = maxHigh - minLow;
+			double sep = entries[highestLow].min[d] - entries[lowestHigh].max[d];
+			if (width > 0) {
+				sep /= width;
+			}
+			//LPS3 select the most extreme pair
+			if (sep > bestSep) {
+				bestSep = sep;
+				seed1 = lowestHigh;
+				seed2 = highestLow;
+			}
+		}
+		return new int[] {seed1, seed2};
+	}
+
+	@Override
+	protected int pickNext(Entry<?>[] entries, boolean[] assigned, 
+			double[] min1, double[] max1, double[] min2, double[] max2) {
+		for (int i = 0; i < assigned.length; i++) {
+			if (!assigned[i]) {
+				return i;
+			}
+		}
+		throw new IllegalStateException();
+	}
+}
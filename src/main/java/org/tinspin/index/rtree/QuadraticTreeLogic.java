@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.rtree;
+
+/**
+ * Guttman's quadratic-cost split algorithm.
+ * 
+ * PickSeeds selects the pair of entries that would waste the most area if put 
+ * into the same group. PickNext selects the entry with the greatest preference 
+ * for one group.
+ */
+public class QuadraticTreeLogic extends GuttmanTreeLogic {
+
+	public QuadraticTreeLogic() {
+		this(RTree.NODE_MAX_DIR, RTree.NODE_MAX_DATA);
+	}
+
+	/**
+	 * @param nodeMaxDir maximum number of children of directory nodes
+	 * @param nodeMaxData maximum number of entries of leaf nodes
+	 */
+	public QuadraticTreeLogic(int nodeMaxDir, int nodeMaxData) {
+		super(nodeMaxDir, nodeMaxData);
+	}
+
+	/**
+	 * QuadraticPickSeeds.
+	 */
+	@Override
+	protected int[] pickSeeds(Entry<?>[] entries) {
+		double worst = Double.NEGATIVE_INFINITY;
+		int seed1 = 0;
+		int seed2 = 1;
+		for (int i = 0; i < entries.length; i++) {
+			Entry<?> e1 = entries[i];
+			double v1 = Entry.calcVolume(e1);
+			for (int j = i + 1; j < entries.length; j++) {
+				//PS1 calculate inefficiency of grouping entries together
+				Entry<?> e2 = entries[j];
+				double d = calcAreaEnlarged(e1.min, e1.max, e2) - v1 - Entry.calcVolume(e2);
+				//PS2 choose the most wasteful pair
+				if (d > worst) {
+					worst = d;
+					seed1 = i;
+					seed2 = j;
+				}
+			}
+		}
+		return new int[] {seed1, seed2};
+	}
+
+	@Override
+	protected int pickNext(Entry<?>[] entries, boolean[] assigned, 
+			double[] min1, double[] max1, double[] min2, double[] max2) {
+		double area1 = Entry.calcVolume(min1, max1);
+		double area2 = Entry.calcVolume(min2, max2);
+		double maxDiff = Double.NEGATIVE_INFINITY;
+		int next = -1;
+		for (int i = 0; i < entries.length; i++) {
+			if (assigned[i]) {
+				continue;
+			}
+			//PN1 determine cost of putting each entry in each group
+			double d1 = calcAreaEnlarged(min1, max1, entries[i]) - area1;
+			double d2 = calcAreaEnlarged(min2, max2, entries[i]) - area2;
+			//PN2 find entry with greatest preference for one group
+			double diff = Math.abs(d1 - d2);
+			if (diff > maxDiff) {
+				maxDiff = diff;
+				next = i;
+			}
+		}
+		return next;
+	}
+}
@@ -22,8 +22,34 @@ import java.util.Comparator;
 
 public class RStarTreeLogic implements RTreeLogic {
 
+	/** Number of children that are considered for minimum overlap cost. */
+	private static final int P_MAX = 32;
+
 	private final SortByAxisAsc SORT_BY_AXIS_ASC = new SortByAxisAsc();
 	private final SortByAxisDes SORT_BY_AXIS_DES = new SortByAxisDes();
+
+	//Scratch buffers for choosing subtrees. These avoid allocations for every insert, 
+	//as a consequence an instance must not be used by multiple trees concurrently. 
+	private final double[] candidateEnl = new double[P_MAX];
+	private final int[] candidatePos = new int[P_MAX];
+	private double[] enlargedMin = new double[0];
+	private double[] enlargedMax = new double[0];
+
+	private final int nodeMaxDir;
+	private final int nodeMaxData;
+
+	public RStarTreeLogic() {
+		this(RTree.NODE_MAX_DIR, RTree.NODE_MAX_DATA);
+	}
+
+	/**
+	 * @param nodeMaxDir maximum number of children of directory nodes
+	 * @param nodeMaxData maximum number of entries of leaf nodes
+	 */
+	public RStarTreeLogic(int nodeMaxDir, int nodeMaxData) {
+		this.nodeMaxDir = nodeMaxDir;
+		this.nodeMaxData = nodeMaxData;
+	}
 	
 	/**
 	 * Choose subtree as described in the paper.
@@ -51,23 +77,6 @@ public class RStarTreeLogic implements RTreeLogic {
 		return node;
 	}
 
-	private static class NDPair<T> implements Comparable<NDPair<T>>{
-		RTreeNode<T> node;
-		double d;
-		public NDPair(double d, RTreeNode<T> node) {
-			this.d = d;
-			this.node = node;
-		}
-		@Override
-		public int compareTo(NDPair<T> o) {
-			return d < o.d ? -1 : d > o.d ? 1 : 0;
-		}
-		@Override
-		public boolean equals(Object obj) {
-			return this == obj;
-		}
-	}
-	
 	private static class EDPair<T> implements Comparable<EDPair<T>>{
 		Entry<T> entry;
 		double d;
@@ -81,60 +90,89 @@ public class RStarTreeLogic implements RTreeLogic {
 		}
 	}
 	
-	@SuppressWarnings("unchecked")
 	private <T> RTreeNode<T> chooseNodeWithNearlyMinimumOverlapCost(
 			RTreeNodeDir<T> dir, Entry<T> e) {
-		final int P = Math.min(32, dir.getChildren().size());
+		ArrayList<RTreeNode<T>> children = dir.getChildren();
+		final int P = Math.min(P_MAX, children.size());
+		final double[] enl = candidateEnl;
+		final int[] pos = candidatePos;
 		
 		//rank by area enlargement
-		ArrayList<RTreeNode<T>> children = dir.getChildren();
 		//TODO This doesn't always allow for ties...
-		NDPair<T>[] areas = new NDPair[P];
 		for (int i = 0; i < children.size(); i++) {
-			RTreeNode<T> child = children.get(i);
-			double area = calcAreaEnlargementSize(child, e);
+			double area = calcAreaEnlargementSize(children.get(i), e);
 			if (i < P) {
-				areas[i] = new NDPair<>(area, child);
+				enl[i] = area;
+				pos[i] = i;
 				if (i == P-1) {
-					Arrays.sort(areas);
+					sortCandidates(enl, pos, P);
 				}
-			} else if (areas[P-1].d > area) {
-				areas[P-1].d = area;
-				areas[P-1].node = child;
+			} else if (enl[P-1] > area) {
+				enl[P-1] = area;
+				pos[P-1] = i;
 			}
 		}
 		int dims = dir.min.length;
-		Entry<T> enlarged = new Entry<T>(new double[dims], new double[dims], null);
+		if (enlargedMin.length != dims) {
+			enlargedMin = new double[dims];
+			enlargedMax = new double[dims];
+		}
+		double[] min = enlargedMin;
+		double[] max = enlargedMax;
 		double bestOverLap = Double.MAX_VALUE;
 		RTreeNode<T> bestNode = null;
 		for (int i = 0; i < P; i++) {
-			enlarged.setToCover(e, areas[i].node);
-			double o = calcOverlapSize(enlarged, areas[i].node, children);
+			RTreeNode<T> node = children.get(pos[i]);
+			for (int d = 0; d < dims; d++) {
+				min[d] = Entry.min(e.min[d], node.min[d]);
+				max[d] = Entry.max(e.max[d], node.max[d]);
+			}
+			double o = calcOverlapSize(min, max, node, children);
 			if (o < bestOverLap) {
 				bestOverLap = o;
-				bestNode = areas[i].node; 
+				bestNode = node; 
 			} else if (o == bestOverLap) {
 				//ties are resolved by choosing the node with the smallest area
 				double aBest = bestNode.calcArea();
-				double aNew = areas[i].node.calcArea();
+				double aNew = node.calcArea();
 				if (aNew < aBest) {
 					bestOverLap = o;
-					bestNode = areas[i].node; 
+					bestNode = node; 
 				}
 			}
 		}
 		return bestNode;
 	}
 
+	/**
+	 * Stable insertion sort by area enlargement. 'n' is at most {@link #P_MAX}.
+	 */
+	private static void sortCandidates(double[] enl, int[] pos, int n) {
+		for (int i = 1; i < n; i++) {
+			double d = enl[i];
+			int p = pos[i];
+			int j = i;
+			while (j > 0 && enl[j-1] > d) {
+				enl[j] = enl[j-1];
+				pos[j] = pos[j-1];
+				j--;
+			}
+			enl[j] = d;
+			pos[j] = p;
+		}
+	}
+
 	private <T> double calcAreaEnlargementSize(RTreeNode<T> node, Entry<T> e) {
 		return node.calcAreaEnlarged(e) - node.calcArea();
 	}
 
-	private <T> double calcOverlapSize(Entry<T> node, Entry<T> toSkip, ArrayList<RTreeNode<T>> children) {
+	private <T> double calcOverlapSize(double[] min, double[] max, Entry<T> toSkip, 
+			ArrayList<RTreeNode<T>> children) {
 		double o = 0;
 		for (int i = 0; i < children.size(); i++) {
-			if (children.get(i) != toSkip) {
-				o += node.calcOverlap(children.get(i));
+			RTreeNode<T> child = children.get(i);
+			if (child != toSkip) {
+				o += Entry.calcOverlap(min, max, child.min, child.max);
 			}
 		}
 		return o;
@@ -252,7 +290,8 @@ public class RStarTreeLogic implements RTreeLogic {
 		double[] bufMax2 = new double[dims];
 
 		final int M = children.length-1;
-		final int m = (int) (0.40 * M);
+		//groups must not be smaller than the minimum node size
+		final int m = Math.max(RTree.calcNodeMin(M), (int) (0.40 * M));
 		final int kMax = (M-2*m+1);
 		int kMin = m;
 		int kEnd = m + kMax;
@@ -389,7 +428,17 @@ public class RStarTreeLogic implements RTreeLogic {
 
 	@Override
 	public <T> boolean hasSpace(RTreeNode<T> node) {
-		return node.hasSpace();
+		return node.getEntries().size() < getM(node);
+	}
+
+	@Override
+	public int getNodeMaxDir() {
+		return nodeMaxDir;
+	}
+
+	@Override
+	public int getNodeMaxData() {
+		return nodeMaxData;
 	}
 
 	private boolean isLeaf(RTreeNode<?> node) {
@@ -397,7 +446,7 @@ public class RStarTreeLogic implements RTreeLogic {
 	}
 	
 	private int getM(RTreeNode<?> node) {
-		return isLeaf(node) ? RTree.NODE_MAX_DATA : RTree.NODE_MAX_DIR;
+		return isLeaf(node) ? nodeMaxData : nodeMaxDir;
 	}
 
 }
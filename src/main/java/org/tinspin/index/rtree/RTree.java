@@ -25,6 +25,7 @@ import org.tinspin.index.RectangleDistanceFunction;
 import org.tinspin.index.RectangleEntryDist;
 import org.tinspin.index.RectangleIndex;
 import org.tinspin.index.Stats;
+import org.tinspin.index.WindowPredicate;
 
 
 /**
@@ -45,31 +46,65 @@ import org.tinspin.index.Stats;
  */
 public class RTree<T> implements RectangleIndex<T> {
 
+	//Default node capacities
 	static final int NODE_MAX_DIR = 10;//56; //PAPER: M=56 for 1KB pages
 	static final int NODE_MAX_DATA = 10;//50; //PAPER: M=50 for 1KB pages
-	//PAPER: m = 20% of M
-	static final int NODE_MIN_DIR = 2;//11;  //2 <= min <= max/2
-	static final int NODE_MIN_DATA = 2;//10;  //2 <= min <= max/2
+	//PAPER: m = 20% of M, see calcNodeMin()
 	public static final boolean DEBUG = false;
 	
 	private final int dims;
+	private final int nodeMaxDir;
+	private final int nodeMaxData;
+	private final int nodeMinDir;
+	private final int nodeMinData;
 	private int size = 0;
 	//number of levels
 	private int depth;
 	private RTreeNode<T> root;
 	private int nNodes = 0;
+	//reused for every insert, this avoids allocating a new array
+	private boolean[] blockedLevels = new boolean[1];
 
 	private long nDist1NN = 0;
 	private long nDistKNN = 0;
 	
-	static RTreeLogic logic = new RStarTreeLogic();
+	private final RTreeLogic logic;
+	
+	/**
+	 * Packing strategy for bulk loading.
+	 */
+	public enum LoadPolicy {
+		/** Sort-tile-recursive packing (default). */
+		STR,
+		/** Entries are sorted by the Hilbert value of their centers and packed into full 
+		 * leaves. This gives more compact nodes on highly clustered data. */
+		HILBERT
+	}
 	
 	/**
 	 * Create an RTree. By default it is an R*tree.
 	 * @param dims dimensionality
 	 */
 	protected RTree(int dims) {
+		this(dims, new RStarTreeLogic());
+	} 
+	
+	/**
+	 * Create an RTree.
+	 * @param dims dimensionality
+	 * @param logic the insertion and split algorithms
+	 */
+	protected RTree(int dims, RTreeLogic logic) {
 		this.dims = dims;
+		this.logic = logic;
+		this.nodeMaxDir = logic.getNodeMaxDir();
+		this.nodeMaxData = logic.getNodeMaxData();
+		if (nodeMaxDir < 4 || nodeMaxData < 4) {
+			throw new IllegalArgumentException("Node capacity must be at least 4: dir=" + 
+					nodeMaxDir + " data=" + nodeMaxData);
+		}
+		this.nodeMinDir = calcNodeMin(nodeMaxDir);
+		this.nodeMinData = calcNodeMin(nodeMaxData);
 		if (DEBUG) {
 			System.err.println("WARNING: Using DEBUG mode.");
 		}
@@ -80,6 +115,60 @@ public class RTree<T> implements RectangleIndex<T> {
 		return new RTree<>(dims);
 	}
 	
+	/**
+	 * Create an R*Tree with custom node capacities. The minimum number of entries
+	 * per node is 20% of the capacity, but at least 2.
+	 * @param dims dimensionality
+	 * @param nodeMaxDir maximum number of children of directory nodes, at least 4
+	 * @param nodeMaxData maximum number of entries of leaf nodes, at least 4
+	 * @return new RTree
+	 * @param <T> Value type
+	 */
+	public static <T> RTree<T> createRStar(int dims, int nodeMaxDir, int nodeMaxData) {
+		return new RTree<>(dims, new RStarTreeLogic(nodeMaxDir, nodeMaxData));
+	}
+	
+	/**
+	 * Create an RTree with Guttman's linear split. Inserts are much cheaper than 
+	 * with the R*Tree, at the cost of slower queries.
+	 * @param dims dimensionality
+	 * @return new RTree
+	 * @param <T> Value type
+	 */
+	public static <T> RTree<T> createLinear(int dims) {
+		return new RTree<>(dims, new LinearTreeLogic());
+	}
+	
+	/**
+	 * Create an RTree with Guttman's quadratic split. 
+	 * @param dims dimensionality
+	 * @return new RTree
+	 * @param <T> Value type
+	 */
+	public static <T> RTree<T> createQuadratic(int dims) {
+		return new RTree<>(dims, new QuadraticTreeLogic());
+	}
+	
+	/**
+	 * Create an RTree with custom insertion and split algorithms.
+	 * @param dims dimensionality
+	 * @param logic the insertion and split algorithms. Logic instances may hold
+	 * scratch buffers and should not be shared between trees.
+	 * @return new RTree
+	 * @param <T> Value type
+	 */
+	public static <T> RTree<T> create(int dims, RTreeLogic logic) {
+		return new RTree<>(dims, logic);
+	}
+	
+	/**
+	 * @param nodeMax node capacity
+	 * @return minimum number of entries of a node with the given capacity
+	 */
+	static int calcNodeMin(int nodeMax) {
+		return Math.max(2, nodeMax / 5);
+	}
+	
 	private void init() {
 		this.root = new RTreeNodeLeaf<>(dims);
 		this.nNodes = 1;
@@ -136,7 +225,11 @@ public class RTree<T> implements RectangleIndex<T> {
 	}
 	
 	private void insertAtDepth(Entry<T> e, int desiredInsertionLevel) {
-		boolean[] blockedLevels = new boolean[depth];
+		if (blockedLevels.length < depth) {
+			blockedLevels = new boolean[depth];
+		} else {
+			Arrays.fill(blockedLevels, false);
+		}
 		insert(e, blockedLevels, desiredInsertionLevel);
 	}
 	
@@ -178,7 +271,7 @@ public class RTree<T> implements RectangleIndex<T> {
 	private RTreeNode<T> overflowTreatment(RTreeNode<T> node, 
 			Entry<T> e, boolean[] blockedLevels, int desiredInsertionLevel) {
 		//OT1
-		if (node != root && !blockedLevels[desiredInsertionLevel]) {
+		if (logic.useReinsert() && node != root && !blockedLevels[desiredInsertionLevel]) {
 			blockedLevels[desiredInsertionLevel] = true;
 			Entry<T>[] toReinsert = logic.reInsert(node, e);
 			for (int i = 0; i < toReinsert.length; i++) {
@@ -191,8 +284,55 @@ public class RTree<T> implements RectangleIndex<T> {
 		}
 	}
 
+	/**
+	 * Bulk load entries with sort-tile-recursive (STR) packing. 
+	 * Large inputs are loaded in parallel.
+	 * This replaces all entries that are currently in the tree.
+	 * @param entries the entries, this array will be reordered
+	 */
 	public void load(Entry<T>[] entries) {
-		STRLoader<T> bulkLoader = new STRLoader<>();
+		load(entries, true);
+	}
+
+	/**
+	 * Bulk load entries with sort-tile-recursive (STR) packing. 
+	 * The resulting tree does not depend on whether it is loaded in parallel.
+	 * This replaces all entries that are currently in the tree.
+	 * @param entries the entries, this array will be reordered
+	 * @param parallel whether large inputs should be loaded in parallel
+	 */
+	public void load(Entry<T>[] entries, boolean parallel) {
+		load(entries, LoadPolicy.STR, parallel);
+	}
+
+	/**
+	 * Bulk load entries. Large inputs are loaded in parallel.
+	 * This replaces all entries that are currently in the tree.
+	 * @param entries the entries, this array will be reordered
+	 * @param policy the packing strategy
+	 */
+	public void load(Entry<T>[] entries, LoadPolicy policy) {
+		load(entries, policy, true);
+	}
+
+	/**
+	 * Bulk load entries.
+	 * This replaces all entries that are currently in the tree.
+	 * @param entries the entries, this array will be reordered
+	 * @param policy the packing strategy
+	 * @param parallel whether large inputs should be loaded in parallel
+	 */
+	public void load(Entry<T>[] entries, LoadPolicy policy, boolean parallel) {
+		if (policy == LoadPolicy.HILBERT) {
+			HilbertLoader<T> bulkLoader = new HilbertLoader<>(parallel, nodeMaxDir, nodeMaxData);
+			bulkLoader.load(entries);
+			size = bulkLoader.getSize();
+			nNodes = bulkLoader.getNNodes();
+			root = bulkLoader.getRoot();
+			depth = bulkLoader.getDepth();
+			return;
+		}
+		STRLoader<T> bulkLoader = new STRLoader<>(parallel, nodeMaxDir, nodeMaxData);
 		bulkLoader.load(entries);
 		size = bulkLoader.getSize();
 		nNodes = bulkLoader.getNNodes();
@@ -201,6 +341,107 @@ public class RTree<T> implements RectangleIndex<T> {
 	}
 	
 
+	/**
+	 * Insert a batch of entries into the tree.
+	 * 
+	 * The batch is packed into subtrees with STR. The nodes of one level of the 
+	 * packed batch are then inserted into the existing tree at that level, like the
+	 * nodes that result from a split. The level is the highest level where the 
+	 * batch has at least as many nodes as the existing tree has on the next higher 
+	 * level, so that the inserted nodes are usually not larger than the nodes 
+	 * that receive them. 
+	 * 
+	 * Underfull nodes of the packed batch are not inserted, instead their 
+	 * children are inserted individually. If the batch is not smaller than the 
+	 * tree, the whole tree is rebuilt with {@link #load(Entry[])}.
+	 * 
+	 * @param entries the entries, this array will be reordered
+	 */
+	public void insertBulk(Entry<T>[] entries) {
+		if (entries.length == 0) {
+			return;
+		}
+		if (entries.length >= size) {
+			Entry<T>[] all = Arrays.copyOf(entries, entries.length + size);
+			int pos = entries.length;
+			for (RTreeIterator<T> it = iterator(); it.hasNext(); ) {
+				all[pos++] = it.next();
+			}
+			load(all);
+			return;
+		}
+		
+		STRLoader<T> bulkLoader = new STRLoader<>(true, nodeMaxDir, nodeMaxData);
+		bulkLoader.load(entries);
+		RTreeNode<T> batchRoot = bulkLoader.getRoot();
+		int batchDepth = bulkLoader.getDepth();
+		int level = Math.min(batchDepth - 1, depth - 2);
+		while (level > 0 && countNodes(batchRoot, batchDepth - 1, level) 
+				< countNodes(root, depth - 1, level + 1)) {
+			level--;
+		}
+		if (level < 0) {
+			//the tree has only one level
+			for (Entry<T> e : entries) {
+				insert(e);
+			}
+			return;
+		}
+		
+		ArrayList<RTreeNode<T>> nodes = new ArrayList<>();
+		collectNodes(batchRoot, batchDepth - 1, level, nodes);
+		size += entries.length;
+		//only nodes at or below 'level' are inserted
+		nNodes += bulkLoader.getNNodes() - countNodes(batchRoot, batchDepth - 1, level + 1, true); 
+		for (RTreeNode<T> node : nodes) {
+			node.setParent(null);
+			if (isUnderfull(node)) {
+				nNodes--;
+				for (Entry<T> e : node.getEntries()) {
+					insertAtDepth(e, level);
+				}
+			} else {
+				insertAtDepth(node, level + 1);
+			}
+		}
+	}
+	
+	/**
+	 * @return Number of nodes on level 'targetLevel' of the subtree.
+	 */
+	private int countNodes(RTreeNode<T> node, int level, int targetLevel) {
+		return countNodes(node, level, targetLevel, false);
+	}
+	
+	/**
+	 * @return Number of nodes on level 'targetLevel' of the subtree. If 'cumulative' is 
+	 * set, this includes all nodes above 'targetLevel'.
+	 */
+	private int countNodes(RTreeNode<T> node, int level, int targetLevel, boolean cumulative) {
+		if (level < targetLevel) {
+			return 0;
+		}
+		if (level == targetLevel) {
+			return 1;
+		}
+		int n = cumulative ? 1 : 0;
+		for (Entry<T> e : node.getEntries()) {
+			n += countNodes((RTreeNode<T>) e, level - 1, targetLevel, cumulative);
+		}
+		return n;
+	}
+	
+	private void collectNodes(RTreeNode<T> node, int level, int targetLevel, 
+			ArrayList<RTreeNode<T>> nodes) {
+		if (level == targetLevel) {
+			nodes.add(node);
+			return;
+		}
+		for (Entry<T> e : node.getEntries()) {
+			collectNodes((RTreeNode<T>) e, level - 1, targetLevel, nodes);
+		}
+	}
+
 	public Object remove(double[] point) {
 		//TODO speed up
 		return remove(point, point);
@@ -282,7 +523,7 @@ public class RTree<T> implements RectangleIndex<T> {
 		//TODO check inside 'removeEntry????'
 		node.removeEntry(pos);
 		int level = 0;
-		while (node != root && node.isUnderfull()) {
+		while (node != root && isUnderfull(node)) {
 			ArrayList<Entry<T>> entries = node.getEntries();
 			RTreeNodeDir<T> parent = node.getParent();
 			parent.removeChildByIdentity(node);
@@ -329,6 +570,77 @@ public class RTree<T> implements RectangleIndex<T> {
 		return new RTreeIterator<>(this, min, max);
 	}
 	
+	/**
+	 * Nodes are only visited if they intersect with the query window.
+	 * @param min lower left corner of the query window
+	 * @param max upper right corner of the query window
+	 * @return all entries that lie completely inside the query window
+	 */
+	@Override
+	public RTreeIterator<T> queryContained(double[] min, double[] max) {
+		return new RTreeIterator<>(this, min, max, WindowPredicate.CONTAINED);
+	}
+	
+	/**
+	 * Nodes are only visited if their MBB encloses the query window.
+	 * @param min lower left corner of the query window
+	 * @param max upper right corner of the query window
+	 * @return all entries that completely enclose the query window
+	 */
+	@Override
+	public RTreeIterator<T> queryEnclosing(double[] min, double[] max) {
+		return new RTreeIterator<>(this, min, max, WindowPredicate.ENCLOSING);
+	}
+	
+	/**
+	 * Count the entries that lie completely inside the query window.
+	 * Subtrees whose MBB lies inside the window are counted with the entry count
+	 * of their root node, without descending into them.
+	 * @param min lower left corner of the query window
+	 * @param max upper right corner of the query window
+	 * @return number of entries inside the window
+	 */
+	public int countContained(double[] min, double[] max) {
+		return count(root, min, max, true);
+	}
+	
+	/**
+	 * Count the entries that intersect with the query window.
+	 * Subtrees whose MBB lies inside the window are counted with the entry count
+	 * of their root node, without descending into them.
+	 * @param min lower left corner of the query window
+	 * @param max upper right corner of the query window
+	 * @return number of entries that intersect with the window
+	 */
+	public int countIntersect(double[] min, double[] max) {
+		return count(root, min, max, false);
+	}
+	
+	private int count(RTreeNode<T> node, double[] min, double[] max, boolean contained) {
+		if (Entry.calcIncludes(min, max, node.min, node.max)) {
+			return node.getCount();
+		}
+		ArrayList<Entry<T>> entries = node.getEntries();
+		int n = 0;
+		if (node instanceof RTreeNodeLeaf) {
+			for (int i = 0; i < entries.size(); i++) {
+				Entry<T> e = entries.get(i);
+				if (contained ? Entry.calcIncludes(min, max, e.min, e.max) 
+						: Entry.checkOverlap(min, max, e)) {
+					n++;
+				}
+			}
+			return n;
+		}
+		for (int i = 0; i < entries.size(); i++) {
+			Entry<T> e = entries.get(i);
+			if (Entry.checkOverlap(min, max, e)) {
+				n += count((RTreeNode<T>) e, min, max, contained);
+			}
+		}
+		return n;
+	}
+	
 	/* (non-Javadoc)
 	 * @see org.tinspin.index.rtree.Index#query1N
 	 */
@@ -430,7 +742,7 @@ public class RTree<T> implements RectangleIndex<T> {
 		stats.dims = dims;
 		stats.maxDepth = depth;
 		getStats(stats, root, depth-1);
-		if (stats.nEntries != size) {
+		if (stats.nEntries != size || root.getCount() != size) {
 			throw new IllegalStateException();
 		}
 		if (stats.nNodes != nNodes) {
@@ -451,6 +763,7 @@ public class RTree<T> implements RectangleIndex<T> {
 		}
 		
 		ArrayList<Entry<T>> entries = node.getEntries();
+		int nEntriesBefore = stats.nEntries;
 		for (int i = 0; i < entries.size(); i++) {
 			Entry<T> e = entries.get(i);
 			if (!node.checkInclusion(e.min, e.max)) {
@@ -462,17 +775,21 @@ public class RTree<T> implements RectangleIndex<T> {
 				stats.nEntries++;
 			}
 		}
+		if (stats.nEntries - nEntriesBefore != node.getCount()) {
+			throw new IllegalStateException("Entry count/actual " + node.getCount() + "/" + 
+					(stats.nEntries - nEntriesBefore));
+		}
 
-		if (node instanceof RTreeNodeLeaf && node != root && entries.size() < NODE_MIN_DATA) {
+		if (node instanceof RTreeNodeLeaf && node != root && entries.size() < nodeMinData) {
 			throw new IllegalStateException();
 		}
-		if (node instanceof RTreeNodeLeaf && entries.size() > NODE_MAX_DATA) {
+		if (node instanceof RTreeNodeLeaf && entries.size() > nodeMaxData) {
 			throw new IllegalStateException();
 		}
-		if (node instanceof RTreeNodeDir && node != root && entries.size() < NODE_MIN_DIR) {
+		if (node instanceof RTreeNodeDir && node != root && entries.size() < nodeMinDir) {
 			throw new IllegalStateException();
 		}
-		if (node instanceof RTreeNodeDir && entries.size() > NODE_MAX_DIR) {
+		if (node instanceof RTreeNodeDir && entries.size() > nodeMaxDir) {
 			throw new IllegalStateException();
 		}
 		
@@ -511,12 +828,21 @@ public class RTree<T> implements RectangleIndex<T> {
 		return root;
 	}
 	
+	int getNodeMaxDir() {
+		return nodeMaxDir;
+	}
+	
+	private boolean isUnderfull(RTreeNode<T> node) {
+		int min = node instanceof RTreeNodeLeaf ? nodeMinData : nodeMinDir;
+		return node.getEntries().size() < min;
+	}
+	
 	@Override
 	public String toString() {
 		return "RTreeZ;" + logic.getClass().getSimpleName() +
 				";size=" + size + ";nNodes=" + nNodes +
-				";dir_m/M=" + NODE_MIN_DIR + "/" + NODE_MAX_DIR +
-				";data_m/M=" + NODE_MIN_DATA + "/" + NODE_MAX_DATA;
+				";dir_m/M=" + nodeMinDir + "/" + nodeMaxDir +
+				";data_m/M=" + nodeMinData + "/" + nodeMaxData;
 	}
 
 	void incNDist1NN() {
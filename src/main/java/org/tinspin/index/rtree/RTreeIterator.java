@@ -21,6 +21,7 @@ import java.util.NoSuchElementException;
 
 import org.tinspin.index.QueryIterator;
 import org.tinspin.index.RectangleEntry;
+import org.tinspin.index.WindowPredicate;
 
 public class RTreeIterator<T> implements QueryIterator<RectangleEntry<T>> {
 	
@@ -58,6 +59,7 @@ public class RTreeIterator<T> implements QueryIterator<RectangleEntry<T>> {
 	}
 
 	private final RTree<T> tree;
+	private final WindowPredicate predicate;
 	private double[] min;
 	private double[] max;
 	private IteratorStack stack;
@@ -75,8 +77,13 @@ public class RTreeIterator<T> implements QueryIterator<RectangleEntry<T>> {
 	}
 	
 	public RTreeIterator(RTree<T> tree, double[] min, double[] max) {
+		this(tree, min, max, WindowPredicate.INTERSECT);
+	}
+
+	public RTreeIterator(RTree<T> tree, double[] min, double[] max, WindowPredicate predicate) {
 		this.stack = new IteratorStack(tree.getDepth());
 		this.tree = tree;
+		this.predicate = predicate;
 		reset(min, max);
 	}
 
@@ -91,7 +98,7 @@ public class RTreeIterator<T> implements QueryIterator<RectangleEntry<T>> {
 		this.max = max;
 		this.hasNext = true;
 		
-		if (!Entry.checkOverlap(min, max, tree.getRoot())) {
+		if (!checkNode(tree.getRoot())) {
 			hasNext = false;
 			return;
 		}
@@ -107,14 +114,14 @@ public class RTreeIterator<T> implements QueryIterator<RectangleEntry<T>> {
 			while (ip.pos < entries.size()) {
 				Entry<T> e = entries.get(ip.pos);
 				ip.pos++;
-				if (Entry.checkOverlap(min, max, e)) {
-					if (e instanceof RTreeNode) {
+				if (e instanceof RTreeNode) {
+					if (checkNode(e)) {
 						stack.prepareAndPush((RTreeNode<T>) e);
 						continue nextSub;
-					} else {
-						next = e;
-						return;
 					}
+				} else if (predicate.matches(min, max, e.min, e.max)) {
+					next = e;
+					return;
 				}
 			}
 			stack.pop();
@@ -122,6 +129,17 @@ public class RTreeIterator<T> implements QueryIterator<RectangleEntry<T>> {
 		hasNext = false;
 	}
 	
+	/**
+	 * @return Whether the subtree of the node may contain matching entries.
+	 */
+	private boolean checkNode(Entry<T> node) {
+		if (predicate == WindowPredicate.ENCLOSING) {
+			//all entries are inside the node
+			return Entry.calcIncludes(node.min, node.max, min, max);
+		}
+		return Entry.checkOverlap(min, max, node);
+	}
+	
 	@Override
 	public boolean hasNext() {
 		return hasNext;
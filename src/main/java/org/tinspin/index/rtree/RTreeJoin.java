@@ -0,0 +1,423 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.rtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.tinspin.index.JoinResultSink;
+import org.tinspin.index.RectangleDistanceFunction;
+
+/**
+ * Spatial join of two R-Trees by synchronized traversal, see
+ * Brinkhoff, T., Kriegel, H.-P., Seeger, B. (1993). 
+ * "Efficient Processing of Spatial Joins Using R-trees".
+ * 
+ * Both trees are descended together. Pairs of nodes are only visited if their MBBs
+ * overlap, and only children that overlap with the intersection of both MBBs are
+ * considered (restriction of the search space). If the trees have different depths, 
+ * the deeper tree is descended alone until both nodes are on the same level.
+ * 
+ * Distance joins find all pairs of entries whose minimum distance 
+ * ({@link RectangleDistanceFunction#edgeDistance(double[], double[], double[], double[])})
+ * is at most 'maxDist'. They work the same way, except that node pairs are pruned by 
+ * the minimum distance of their MBBs and the search space is extended by 'maxDist'.
+ * A self-join reports every unordered pair of different entries exactly once.
+ * 
+ * The parallel variant expands the node pairs of the top levels until there are enough 
+ * pairs to keep all workers of the common fork-join pool busy. 
+ *
+ * @param <T> Value type of the first tree
+ * @param <U> Value type of the second tree
+ */
+public final class RTreeJoin<T, U> {
+
+	/** Joins of trees with fewer entries than this are executed sequentially. */
+	private static final int PARALLEL_THRESHOLD = 10_000;
+	/** Number of node pairs per worker that are required before tasks are created. */
+	private static final int PAIRS_PER_WORKER = 16;
+
+	private final JoinResultSink<T, U> sink;
+	private final int dims;
+	private final double maxDist;
+	private final boolean self;
+	//scratch buffers for each recursion depth
+	private double[][] windowMin = new double[0][];
+	private double[][] windowMax = new double[0][];
+	private Entry<?>[][] candidates = new Entry<?>[0][];
+
+	private RTreeJoin(int dims, double maxDist, boolean self, JoinResultSink<T, U> sink) {
+		this.dims = dims;
+		this.maxDist = maxDist;
+		this.self = self;
+		this.sink = sink;
+	}
+
+	/**
+	 * Find all pairs of intersecting entries.
+	 * @param <T> value type of the first tree
+	 * @param <U> value type of the second tree
+	 * @param tree1 the first tree
+	 * @param tree2 the second tree
+	 * @param sink receives all pairs of intersecting entries
+	 */
+	public static <T, U> void join(RTree<T> tree1, RTree<U> tree2, JoinResultSink<T, U> sink) {
+		join(tree1, tree2, 0, sink);
+	}
+
+	/**
+	 * Find all pairs of entries with a distance of at most 'maxDist'.
+	 * @param <T> value type of the first tree
+	 * @param <U> value type of the second tree
+	 * @param tree1 the first tree
+	 * @param tree2 the second tree
+	 * @param maxDist maximum distance, '0' finds all pairs of intersecting entries
+	 * @param sink receives all pairs of matching entries
+	 */
+	public static <T, U> void join(RTree<T> tree1, RTree<U> tree2, double maxDist, 
+			JoinResultSink<T, U> sink) {
+		checkDist(maxDist);
+		if (!isNear(tree1, tree2, maxDist)) {
+			return;
+		}
+		new RTreeJoin<>(tree1.getDims(), maxDist, false, sink).join(
+				tree1.getRoot(), tree1.getDepth() - 1, tree2.getRoot(), tree2.getDepth() - 1, 0);
+	}
+
+	/**
+	 * Find all pairs of intersecting entries, using the common fork-join pool. 
+	 * The trees must not be modified during the join.
+	 * @param <T> value type of the first tree
+	 * @param <U> value type of the second tree
+	 * @param tree1 the first tree
+	 * @param tree2 the second tree
+	 * @param sink receives all pairs of intersecting entries, this may be called concurrently
+	 */
+	public static <T, U> void joinParallel(RTree<T> tree1, RTree<U> tree2, 
+			JoinResultSink<T, U> sink) {
+		joinParallel(tree1, tree2, 0, sink);
+	}
+
+	/**
+	 * Find all pairs of entries with a distance of at most 'maxDist', using the 
+	 * common fork-join pool. The trees must not be modified during the join.
+	 * @param <T> value type of the first tree
+	 * @param <U> value type of the second tree
+	 * @param tree1 the first tree
+	 * @param tree2 the second tree
+	 * @param maxDist maximum distance, '0' finds all pairs of intersecting entries
+	 * @param sink receives all pairs of matching entries, this may be called concurrently
+	 */
+	public static <T, U> void joinParallel(RTree<T> tree1, RTree<U> tree2, double maxDist,
+			JoinResultSink<T, U> sink) {
+		checkDist(maxDist);
+		if (tree1.size() + tree2.size() < PARALLEL_THRESHOLD) {
+			join(tree1, tree2, maxDist, sink);
+			return;
+		}
+		joinParallel(tree1, tree2, maxDist, false, sink);
+	}
+
+	/**
+	 * Find all pairs of different entries of a tree with a distance of at most 'maxDist'.
+	 * Every pair is reported only once, i.e. if (e1, e2) is reported then (e2, e1) is not.
+	 * @param <T> value type of the tree
+	 * @param tree the tree
+	 * @param maxDist maximum distance, '0' finds all pairs of intersecting entries
+	 * @param sink receives all pairs of matching entries
+	 */
+	public static <T> void selfJoin(RTree<T> tree, double maxDist, JoinResultSink<T, T> sink) {
+		checkDist(maxDist);
+		if (tree.size() == 0) {
+			return;
+		}
+		int level = tree.getDepth() - 1;
+		new RTreeJoin<>(tree.getDims(), maxDist, true, sink).join(
+				tree.getRoot(), level, tree.getRoot(), level, 0);
+	}
+
+	/**
+	 * Find all pairs of different entries of a tree with a distance of at most 'maxDist', 
+	 * using the common fork-join pool. The tree must not be modified during the join.
+	 * Every pair is reported only once, i.e. if (e1, e2) is reported then (e2, e1) is not.
+	 * @param <T> value type of the tree
+	 * @param tree the tree
+	 * @param maxDist maximum distance, '0' finds all pairs of intersecting entries
+	 * @param sink receives all pairs of matching entries, this may be called concurrently
+	 */
+	public static <T> void selfJoinParallel(RTree<T> tree, double maxDist, 
+			JoinResultSink<T, T> sink) {
+		checkDist(maxDist);
+		if (tree.size() < PARALLEL_THRESHOLD) {
+			selfJoin(tree, maxDist, sink);
+			return;
+		}
+		joinParallel(tree, tree, maxDist, true, sink);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T, U> void joinParallel(RTree<T> tree1, RTree<U> tree2, double maxDist, 
+			boolean self, JoinResultSink<T, U> sink) {
+		if (!isNear(tree1, tree2, maxDist)) {
+			return;
+		}
+		
+		//expand the top levels
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int level1 = tree1.getDepth() - 1;
+		int level2 = tree2.getDepth() - 1;
+		ArrayList<RTreeNode<?>> pairs = new ArrayList<>();
+		pairs.add(tree1.getRoot());
+		pairs.add(tree2.getRoot());
+		int minPairs = pool.getParallelism() * PAIRS_PER_WORKER;
+		while (pairs.size() / 2 < minPairs && (level1 > 0 || level2 > 0)) {
+			boolean descend1 = level1 >= level2;
+			boolean descend2 = level2 >= level1;
+			ArrayList<RTreeNode<?>> next = new ArrayList<>();
+			for (int i = 0; i < pairs.size(); i += 2) {
+				expand(pairs.get(i), pairs.get(i + 1), descend1, descend2, maxDist, self, next);
+			}
+			pairs = next;
+			level1 -= descend1 ? 1 : 0;
+			level2 -= descend2 ? 1 : 0;
+		}
+		
+		RTreeNode<T>[] nodes1 = new RTreeNode[pairs.size() / 2];
+		RTreeNode<U>[] nodes2 = new RTreeNode[pairs.size() / 2];
+		for (int i = 0; i < nodes1.length; i++) {
+			nodes1[i] = (RTreeNode<T>) pairs.get(2 * i);
+			nodes2[i] = (RTreeNode<U>) pairs.get(2 * i + 1);
+		}
+		int chunkSize = Math.max(1, nodes1.length / (pool.getParallelism() * 4));
+		pool.invoke(new JoinTask<>(nodes1, level1, nodes2, level2, 0, nodes1.length, 
+				tree1.getDims(), maxDist, self, sink, chunkSize));
+	}
+
+	private static void checkDist(double maxDist) {
+		if (!(maxDist >= 0)) {
+			throw new IllegalArgumentException("maxDist must be >= 0: " + maxDist);
+		}
+	}
+
+	private static boolean isNear(RTree<?> tree1, RTree<?> tree2, double maxDist) {
+		if (tree1.size() == 0 || tree2.size() == 0) {
+			return false;
+		}
+		return isNear(tree1.getRoot(), tree2.getRoot(), maxDist);
+	}
+
+	private static boolean isNear(Entry<?> e1, Entry<?> e2, double maxDist) {
+		if (maxDist == 0) {
+			return Entry.checkOverlap(e1.min, e1.max, e2);
+		}
+		return RectangleDistanceFunction.edgeDistance(e1.min, e1.max, e2.min, e2.max) <= maxDist;
+	}
+
+	/**
+	 * Add all matching pairs of children (or of a node and the children of the other 
+	 * node) to 'out'.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void expand(RTreeNode<?> n1, RTreeNode<?> n2, 
+			boolean descend1, boolean descend2, double maxDist, boolean self, 
+			ArrayList<RTreeNode<?>> out) {
+		ArrayList<? extends Entry<?>> children1 = descend1 ? n1.getEntries() : null;
+		ArrayList<? extends Entry<?>> children2 = descend2 ? n2.getEntries() : null;
+		int size1 = descend1 ? children1.size() : 1;
+		int size2 = descend2 ? children2.size() : 1;
+		//in a self-join, the pairs (c1, c2) and (c2, c1) are equivalent
+		boolean symmetric = self && n1 == n2;
+		for (int i = 0; i < size1; i++) {
+			Entry<?> c1 = descend1 ? children1.get(i) : n1;
+			for (int j = symmetric ? i : 0; j < size2; j++) {
+				Entry<?> c2 = descend2 ? children2.get(j) : n2;
+				if (isNear(c1, c2, maxDist)) {
+					out.add((RTreeNode<Object>) c1);
+					out.add((RTreeNode<Object>) c2);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Join two nodes with matching MBBs.
+	 * @param n1 node of the first tree
+	 * @param level1 level of the first node, '0' for leaves
+	 * @param n2 node of the second tree
+	 * @param level2 level of the second node, '0' for leaves
+	 * @param depth recursion depth
+	 */
+	@SuppressWarnings("unchecked")
+	private void join(RTreeNode<T> n1, int level1, RTreeNode<U> n2, int level2, int depth) {
+		if (self && n1 == n2) {
+			selfJoin(n1, level1, depth);
+			return;
+		}
+		if (depth >= candidates.length) {
+			int oldLength = candidates.length;
+			candidates = Arrays.copyOf(candidates, depth + 1);
+			windowMin = Arrays.copyOf(windowMin, depth + 1);
+			windowMax = Arrays.copyOf(windowMax, depth + 1);
+			for (int i = oldLength; i <= depth; i++) {
+				windowMin[i] = new double[dims];
+				windowMax[i] = new double[dims];
+			}
+		}
+		//restrict the search space to the intersection of both MBBs (extended by maxDist)
+		double[] min = windowMin[depth];
+		double[] max = windowMax[depth];
+		for (int d = 0; d < dims; d++) {
+			min[d] = Entry.max(n1.min[d], n2.min[d]) - maxDist;
+			max[d] = Entry.min(n1.max[d], n2.max[d]) + maxDist;
+		}
+		
+		ArrayList<Entry<T>> children1 = n1.getEntries();
+		if (level1 > level2) {
+			//descend only the first tree
+			for (int i = 0; i < children1.size(); i++) {
+				Entry<T> c1 = children1.get(i);
+				if (Entry.checkOverlap(min, max, c1) && isNear(c1, n2, maxDist)) {
+					join((RTreeNode<T>) c1, level1 - 1, n2, level2, depth + 1);
+				}
+			}
+			return;
+		}
+		ArrayList<Entry<U>> children2 = n2.getEntries();
+		if (level2 > level1) {
+			//descend only the second tree
+			for (int i = 0; i < children2.size(); i++) {
+				Entry<U> c2 = children2.get(i);
+				if (Entry.checkOverlap(min, max, c2) && isNear(n1, c2, maxDist)) {
+					join(n1, level1, (RTreeNode<U>) c2, level2 - 1, depth + 1);
+				}
+			}
+			return;
+		}
+		
+		Entry<?>[] cand = candidates[depth];
+		if (cand == null || cand.length < children2.size()) {
+			cand = new Entry<?>[children2.size()];
+			candidates[depth] = cand;
+		}
+		int nCand = 0;
+		for (int i = 0; i < children2.size(); i++) {
+			Entry<U> c2 = children2.get(i);
+			if (Entry.checkOverlap(min, max, c2)) {
+				cand[nCand++] = c2;
+			}
+		}
+		if (nCand == 0) {
+			return;
+		}
+		
+		for (int i = 0; i < children1.size(); i++) {
+			Entry<T> c1 = children1.get(i);
+			if (!Entry.checkOverlap(min, max, c1)) {
+				continue;
+			}
+			for (int j = 0; j < nCand; j++) {
+				Entry<U> c2 = (Entry<U>) cand[j];
+				if (isNear(c1, c2, maxDist)) {
+					if (level1 == 0) {
+						sink.accept(c1, c2);
+					} else {
+						join((RTreeNode<T>) c1, level1 - 1, (RTreeNode<U>) c2, level2 - 1, depth + 1);
+					}
+				}
+			}
+		}
+		//allow garbage collection of removed entries
+		Arrays.fill(cand, 0, nCand, null);
+	}
+
+	/**
+	 * Join a node with itself. Only pairs (i, j) of children with i <= j are visited, 
+	 * in leaves only pairs with i < j are reported.
+	 */
+	@SuppressWarnings("unchecked")
+	private void selfJoin(RTreeNode<T> node, int level, int depth) {
+		ArrayList<Entry<T>> children = node.getEntries();
+		for (int i = 0; i < children.size(); i++) {
+			Entry<T> c1 = children.get(i);
+			if (level == 0) {
+				for (int j = i + 1; j < children.size(); j++) {
+					Entry<T> c2 = children.get(j);
+					if (isNear(c1, c2, maxDist)) {
+						sink.accept(c1, (Entry<U>) c2);
+					}
+				}
+			} else {
+				for (int j = i; j < children.size(); j++) {
+					Entry<T> c2 = children.get(j);
+					if (isNear(c1, c2, maxDist)) {
+						join((RTreeNode<T>) c1, level - 1, (RTreeNode<U>) c2, level - 1, depth + 1);
+					}
+				}
+			}
+		}
+	}
+
+	private static class JoinTask<T, U> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final RTreeNode<T>[] nodes1;
+		private final int level1;
+		private final RTreeNode<U>[] nodes2;
+		private final int level2;
+		private final int start;
+		private final int end;
+		private final int dims;
+		private final double maxDist;
+		private final boolean self;
+		private final JoinResultSink<T, U> sink;
+		private final int chunkSize;
+
+		JoinTask(RTreeNode<T>[] nodes1, int level1, RTreeNode<U>[] nodes2, int level2, 
+				int start, int end, int dims, double maxDist, boolean self, 
+				JoinResultSink<T, U> sink, int chunkSize) {
+			this.nodes1 = nodes1;
+			this.level1 = level1;
+			this.nodes2 = nodes2;
+			this.level2 = level2;
+			this.start = start;
+			this.end = end;
+			this.dims = dims;
+			this.maxDist = maxDist;
+			this.self = self;
+			this.sink = sink;
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= chunkSize) {
+				RTreeJoin<T, U> joiner = new RTreeJoin<>(dims, maxDist, self, sink);
+				for (int i = start; i < end; i++) {
+					joiner.join(nodes1[i], level1, nodes2[i], level2, 0);
+				}
+				return;
+			}
+			int mid = (start + end) >>> 1;
+			invokeAll(new JoinTask<>(nodes1, level1, nodes2, level2, start, mid, dims, 
+							maxDist, self, sink, chunkSize),
+					new JoinTask<>(nodes1, level1, nodes2, level2, mid, end, dims, 
+							maxDist, self, sink, chunkSize));
+		}
+	}
+}
@@ -27,4 +27,26 @@ public interface RTreeLogic {
 
 	<T> Entry<T>[] reInsert(RTreeNode<T> node, Entry<T> e);
 
+	/**
+	 * @return 'true' if overflowing nodes should be treated with forced reinsertion 
+	 * (once per level and insertion) before they are split.
+	 */
+	default boolean useReinsert() {
+		return true;
+	}
+
+	/**
+	 * @return maximum number of children of directory nodes
+	 */
+	default int getNodeMaxDir() {
+		return RTree.NODE_MAX_DIR;
+	}
+
+	/**
+	 * @return maximum number of entries of leaf nodes
+	 */
+	default int getNodeMaxData() {
+		return RTree.NODE_MAX_DATA;
+	}
+
 }
@@ -31,6 +31,11 @@ abstract class RTreeNode<T> extends Entry<T> {
 
 	public abstract ArrayList<Entry<T>> getEntries();
 
+	/**
+	 * @return Number of data entries in the subtree of this node.
+	 */
+	public abstract int getCount();
+
 	/**
 	 * Calculates the overlap of this node with 'othernode' if this node would be 
 	 * enlarged to contain 'enlargement'.
@@ -130,6 +135,18 @@ abstract class RTreeNode<T> extends Entry<T> {
 		}
 	}
 
+	/**
+	 * Adjusts the entry counts of all parent nodes.
+	 * @param delta change of the entry count of this node
+	 */
+	protected void adjustParentCount(int delta) {
+		RTreeNodeDir<T> parent = this.parent;
+		while (parent != null) {
+			parent.count += delta;
+			parent = parent.getParent();
+		}
+	}
+
 	public void recalcParentMBB() {
 		RTreeNodeDir<T> parent = this.parent;
 		//TODO?
@@ -140,10 +157,6 @@ abstract class RTreeNode<T> extends Entry<T> {
 		}
 	}
 
-	public abstract boolean hasSpace();
-
-	public abstract boolean isUnderfull();
-
 	public void removeEntry(int i) {
 		getEntries().remove(i);
 		recalcMBB();
@@ -28,6 +28,8 @@ import java.util.Arrays;
 class RTreeNodeDir<T> extends RTreeNode<T> {
 
 	private ArrayList<RTreeNode<T>> children;
+	//number of data entries in this subtree
+	int count;
 	
 	public RTreeNodeDir(int dim) {
 		super(dim);
@@ -39,6 +41,8 @@ class RTreeNodeDir<T> extends RTreeNode<T> {
 		RTreeNode<T> node = (RTreeNode<T>) e;
 		children.add(node);
 		node.setParent(this);
+		count += node.getCount();
+		adjustParentCount(node.getCount());
 		if (children.size() > 1) {
 			extendMBB(e);
 		} else {
@@ -63,6 +67,8 @@ class RTreeNodeDir<T> extends RTreeNode<T> {
 			if (children.get(i) == e) {
 				e.setParent(null);
 				children.remove(i);
+				count -= e.getCount();
+				adjustParentCount(-e.getCount());
 				recalcMBB();
 				recalcParentMBB();
 				return;
@@ -71,6 +77,14 @@ class RTreeNodeDir<T> extends RTreeNode<T> {
 		throw new IllegalStateException();
 	}
 
+	@Override
+	public void removeEntry(int i) {
+		int n = children.get(i).getCount();
+		super.removeEntry(i);
+		count -= n;
+		adjustParentCount(-n);
+	}
+
 	public boolean containsLeafNodes() {
 		return children.get(0) instanceof RTreeNodeLeaf;
 	}
@@ -85,30 +99,27 @@ class RTreeNodeDir<T> extends RTreeNode<T> {
 		return (ArrayList)children;
 	}
 
+	@Override
+	public int getCount() {
+		return count;
+	}
+
 	@Override
 	public void clear() {
+		adjustParentCount(-count);
+		count = 0;
 		children.clear();
 		//TODO this may not be necessary
 		resetMBB();
 	}
 
-	@Override
-	public boolean hasSpace() {
-		return children.size() < RTree.NODE_MAX_DIR;
-	}
-	
 	@Override
 	public String toString() {
 		double[] len = new double[min.length];
 		Arrays.setAll(len, (i)->(max[i]-min[i]));
-		return "NodeDir;n=" + children.size() + 
+		return "NodeDir;n=" + children.size() + ";count=" + count + 
 				";min/max=" + Arrays.toString(lower()) + "/" + Arrays.toString(upper()) +
 				";lengths=" + Arrays.toString(len) +
 				";id=" + System.identityHashCode(this);
 	}
-
-	@Override
-	public boolean isUnderfull() {
-		return children.size() < RTree.NODE_MIN_DIR;
-	}
 }
\ No newline at end of file
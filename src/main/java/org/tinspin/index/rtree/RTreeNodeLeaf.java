@@ -36,6 +36,13 @@ class RTreeNodeLeaf<T> extends RTreeNode<T> {
 		} else {
 			setMBB(e);
 		}
+		adjustParentCount(1);
+	}
+
+	@Override
+	public void removeEntry(int i) {
+		super.removeEntry(i);
+		adjustParentCount(-1);
 	}
 
 	@Override
@@ -43,17 +50,18 @@ class RTreeNodeLeaf<T> extends RTreeNode<T> {
 		return entries;
 	}
 
+	@Override
+	public int getCount() {
+		return entries.size();
+	}
+
 	@Override
 	public void clear() {
+		adjustParentCount(-entries.size());
 		entries.clear();
 		resetMBB();
 	}
 
-	@Override
-	public boolean hasSpace() {
-		return entries.size() < RTree.NODE_MAX_DATA;
-	}
-	
 	@Override
 	public String toString() {
 		double[] len = new double[min.length];
@@ -63,9 +71,4 @@ class RTreeNodeLeaf<T> extends RTreeNode<T> {
 				";lengths=" + Arrays.toString(len) +
 				";id=" + System.identityHashCode(this);
 	}
-
-	@Override
-	public boolean isUnderfull() {
-		return entries.size() < RTree.NODE_MIN_DATA;
-	}
 }
\ No newline at end of file
@@ -100,13 +100,13 @@ public class RTreeQuery1NN<T> {
 	}
 	
 	public RTreeQuery1NN(RTree<T> tree) {
-		this.stack = new IteratorStack(tree.getDepth(), RTree.NODE_MAX_DIR);
+		this.stack = new IteratorStack(tree.getDepth(), tree.getNodeMaxDir());
 		this.tree = tree;
 	}
 
 	public DistEntry<T> reset(double[] center, RectangleDistanceFunction dist) {
 		if (stack.stack.length < tree.getDepth()) {
-			this.stack = new IteratorStack(tree.getDepth(), RTree.NODE_MAX_DIR);
+			this.stack = new IteratorStack(tree.getDepth(), tree.getNodeMaxDir());
 		} else {
 			this.stack.size = 0;
 		}
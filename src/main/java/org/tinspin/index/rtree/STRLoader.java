@@ -19,14 +19,61 @@ package org.tinspin.index.rtree;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
+/**
+ * Sort-tile-recursive bulk loader for the R-Tree.
+ * 
+ * Large inputs are sorted and packed in parallel: the initial sort uses 
+ * {@link Arrays#parallelSort(Object[], Comparator)}, slabs are sorted concurrently
+ * and the nodes of each level are created concurrently. All sorts are stable, so 
+ * the parallel loader creates exactly the same tree as the sequential loader.
+ *
+ * @param <T> Value type
+ */
 public class STRLoader<T> {
 
+	/** Inputs smaller than this are loaded sequentially. */
+	private static final int PARALLEL_THRESHOLD = 10_000;
+	/** Number of slabs or nodes that are processed sequentially by a single task. */
+	private static final int TASK_SIZE = 256;
+
+	private final boolean parallel;
+	private final int nodeMaxDir;
+	private final int nodeMaxData;
+	private final int nodeMinDir;
+	private final int nodeMinData;
 	private int nNodes = 0;
 	private int size = 0;
 	private RTreeNode<T> root;
 	private int depth;
 	
+	public STRLoader() {
+		this(true);
+	}
+
+	/**
+	 * @param parallel whether large inputs should be loaded in parallel
+	 */
+	public STRLoader(boolean parallel) {
+		this(parallel, RTree.NODE_MAX_DIR, RTree.NODE_MAX_DATA);
+	}
+
+	/**
+	 * @param parallel whether large inputs should be loaded in parallel
+	 * @param nodeMaxDir maximum number of children of directory nodes
+	 * @param nodeMaxData maximum number of entries of leaf nodes
+	 */
+	public STRLoader(boolean parallel, int nodeMaxDir, int nodeMaxData) {
+		this.parallel = parallel;
+		this.nodeMaxDir = nodeMaxDir;
+		this.nodeMaxData = nodeMaxData;
+		this.nodeMinDir = RTree.calcNodeMin(nodeMaxDir);
+		this.nodeMinData = RTree.calcNodeMin(nodeMaxData);
+	}
+
 	public RTreeNode<T> getRoot() {
 		return root;
 	}
@@ -47,21 +94,23 @@ public class STRLoader<T> {
 	public void load(Entry<T>[] entries) {
 		int dims = entries[0].lower().length;
 		int N = entries.length;
-		int M = RTree.NODE_MAX_DATA;
+		int M = nodeMaxData;
+		boolean par = parallel && N >= PARALLEL_THRESHOLD;
 		CenterComp comp = new CenterComp();
 		
-		sortChunks(entries, dims, M, comp);
+		sortChunks(entries, dims, M, comp, par);
 		
-		RTreeNode<T>[] nodes = new RTreeNode[(int) Math.ceil(N/(double)M)];
-		int posNode = 0;
-		RTreeNode<T> node = null;
-		for (int i = 0; i < entries.length; i++) {
-			if (i % M == 0) {
-				node = new RTreeNodeLeaf<>(dims);
-				nodes[posNode++] = node;
+		RTreeNode<T>[] leaves = new RTreeNode[(int) Math.ceil(N/(double)M)];
+		forEach(leaves.length, par, i -> {
+			RTreeNode<T> node = new RTreeNodeLeaf<>(dims);
+			int start = groupStart(i, leaves.length, N, M, nodeMinData);
+			int end = groupStart(i+1, leaves.length, N, M, nodeMinData);
+			for (int j = start; j < end; j++) {
+				node.addEntry(entries[j]);
 			}
-			node.addEntry(entries[i]);
-		}
+			leaves[i] = node;
+		});
+		RTreeNode<T>[] nodes = leaves;
 		nNodes += nodes.length;
 		
 		depth = 1;
@@ -72,24 +121,25 @@ public class STRLoader<T> {
 			return;
 		}
 		
-		int MDir = RTree.NODE_MAX_DIR;
+		int MDir = nodeMaxDir;
 		RTreeNodeDir<T>[] parentNodes = null; 
 		do {
 			depth++;
 			parentNodes = new RTreeNodeDir[(int) Math.ceil(nodes.length/(double)MDir)];
 			//sort
-			sortChunks(nodes, dims, MDir, comp);
+			sortChunks(nodes, dims, MDir, comp, par && nodes.length >= PARALLEL_THRESHOLD);
 			nNodes += parentNodes.length;
-			RTreeNodeDir<T> p = null;
-			int posParent = 0;
-			for (int i = 0; i < nodes.length; i++) {
-				if (i % MDir == 0) {
-					p = new RTreeNodeDir<>(dims);
-					parentNodes[posParent++] = p;
+			RTreeNode<T>[] children = nodes;
+			RTreeNodeDir<T>[] parents = parentNodes;
+			forEach(parents.length, par, i -> {
+				RTreeNodeDir<T> p = new RTreeNodeDir<>(dims);
+				int start = groupStart(i, parents.length, children.length, MDir, nodeMinDir);
+				int end = groupStart(i+1, parents.length, children.length, MDir, nodeMinDir);
+				for (int j = start; j < end; j++) {
+					p.addEntry(children[j]);
 				}
-				// add
-				p.addEntry(nodes[i]);
-			}
+				parents[i] = p;
+			});
 			nodes = parentNodes;
 		} while (parentNodes.length > 1);
 		root = parentNodes[0];
@@ -190,9 +240,14 @@ public class STRLoader<T> {
 		return nEntries;
 	}
 	
-	private void sortChunks(Entry<T>[] entries, int dims, int M, CenterComp comp) {
+	private void sortChunks(Entry<T>[] entries, int dims, int M, CenterComp comp, 
+			boolean parallel) {
 		comp.setDim(0);
-		Arrays.sort(entries, comp);
+		if (parallel) {
+			Arrays.parallelSort(entries, comp);
+		} else {
+			Arrays.sort(entries, comp);
+		}
 		int nToSplit = entries.length;
 		for (int d = 1; d < dims; d++) {
 			int nodesPerAxis = (int) Math.pow(nToSplit/M, 1.0/(double)(dims-d+1));
@@ -201,16 +256,74 @@ public class STRLoader<T> {
 			if (chunkSize < M) {
 				break;
 			}
-			int pos = 0;
-			while (pos < entries.length) {
+			int nChunks = (int) Math.ceil(entries.length/(double)chunkSize);
+			forEach(nChunks, parallel, i -> {
+				int pos = i*chunkSize;
 				int end = Math.min(pos+chunkSize, entries.length);
 				Arrays.sort(entries, pos, end, comp);
-				pos += chunkSize;
-			}
+			});
 			nToSplit /= nodesPerAxis;
 		}
 	}
 
+	/**
+	 * All groups are full, except for the last group. If the last group would have less
+	 * than 'min' elements, it takes elements from the second to last group.
+	 * @param i group index, 'nGroups' returns the end of the last group
+	 * @param nGroups number of groups
+	 * @param n number of elements
+	 * @param max maximum group size
+	 * @param min minimum group size
+	 * @return position of the first element of the group
+	 */
+	static int groupStart(int i, int nGroups, int n, int max, int min) {
+		if (i >= nGroups) {
+			return n;
+		}
+		if (i == nGroups - 1 && i > 0) {
+			return Math.min(i*max, n - min);
+		}
+		return i*max;
+	}
+
+	/**
+	 * Execute an operation for all indexes in [0, n).
+	 */
+	static void forEach(int n, boolean parallel, IntConsumer op) {
+		if (!parallel || n <= TASK_SIZE) {
+			for (int i = 0; i < n; i++) {
+				op.accept(i);
+			}
+			return;
+		}
+		ForkJoinPool.commonPool().invoke(new RangeTask(0, n, op));
+	}
+
+	private static class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int start;
+		private final int end;
+		private final IntConsumer op;
+
+		RangeTask(int start, int end, IntConsumer op) {
+			this.start = start;
+			this.end = end;
+			this.op = op;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= TASK_SIZE) {
+				for (int i = start; i < end; i++) {
+					op.accept(i);
+				}
+				return;
+			}
+			int mid = (start + end) >>> 1;
+			invokeAll(new RangeTask(start, mid, op), new RangeTask(mid, end, op));
+		}
+	}
+
 	private class CenterComp implements Comparator<Entry<T>> {
 		int dim = -1;
 		
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.rtreepacked;
+
+import java.util.Arrays;
+
+import org.tinspin.index.RectangleEntry;
+
+/**
+ * Entry returned by the packed R*Tree.
+ * The nodes store bounding boxes in primitive arrays, so entries are
+ * only created when they are returned by a query.
+ *
+ * @param <T> Value type
+ */
+public class RPEntry<T> implements RectangleEntry<T> {
+
+	private double[] lower;
+	private double[] upper;
+	private T value;
+
+	public RPEntry(double[] lower, double[] upper, T value) {
+		this.lower = lower;
+		this.upper = upper;
+		this.value = value;
+	}
+
+	void set(double[] lower, double[] upper, T value) {
+		this.lower = lower;
+		this.upper = upper;
+		this.value = value;
+	}
+
+	@Override
+	public double[] lower() {
+		return lower;
+	}
+
+	@Override
+	public double[] upper() {
+		return upper;
+	}
+
+	@Override
+	public T value() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(lower) + "/" + Arrays.toString(upper) + "  v=" + value;
+	}
+}
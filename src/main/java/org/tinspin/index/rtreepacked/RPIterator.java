@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.rtreepacked;
+
+import java.util.NoSuchElementException;
+
+import org.tinspin.index.QueryIterator;
+import org.tinspin.index.RectangleEntry;
+
+/**
+ * Resetable query iterator.
+ * Nodes are traversed depth-first, the bounding boxes of each node are scanned linearly.
+ *
+ * @param <T> Value type
+ */
+public class RPIterator<T> implements QueryIterator<RectangleEntry<T>> {
+
+	private final RTreePacked<T> tree;
+	private RPNode<T>[] nodes;
+	private int[] positions;
+	private int top;
+	private RPEntry<T> next = null;
+	private double[] min;
+	private double[] max;
+
+	RPIterator(RTreePacked<T> tree, double[] min, double[] max) {
+		this.tree = tree;
+		reset(min, max);
+	}
+
+	private void findNext() {
+		int dims = tree.getDims();
+		outer:
+		while (top >= 0) {
+			RPNode<T> node = nodes[top];
+			for (int pos = positions[top]; pos < node.size(); pos++) {
+				if (node.intersects(pos, min, max)) {
+					positions[top] = pos + 1;
+					if (node.isLeaf()) {
+						next = new RPEntry<>(node.getLower(pos, dims), node.getUpper(pos, dims), 
+								node.getValue(pos));
+						return;
+					}
+					top++;
+					nodes[top] = node.getChild(pos);
+					positions[top] = 0;
+					continue outer;
+				}
+			}
+			top--;
+		}
+		next = null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return next != null;
+	}
+
+	@Override
+	public RPEntry<T> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		RPEntry<T> ret = next;
+		findNext();
+		return ret;
+	}
+
+	/**
+	 * Reset the iterator. This iterator can be reused in order to reduce load on the
+	 * garbage collector.
+	 * @param min lower left corner of query
+	 * @param max upper right corner of query
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void reset(double[] min, double[] max) {
+		int depth = tree.getDepth();
+		if (nodes == null || nodes.length < depth) {
+			nodes = new RPNode[depth];
+			positions = new int[depth];
+		}
+		this.min = min;
+		this.max = max;
+		top = 0;
+		nodes[0] = tree.getRoot();
+		positions[0] = 0;
+		findNext();
+	}
+}
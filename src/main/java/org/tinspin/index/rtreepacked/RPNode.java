@@ -0,0 +1,600 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.rtreepacked;
+
+import java.util.Arrays;
+
+/**
+ * Node of the packed R*Tree.
+ *
+ * The bounding boxes of all children are stored in a single contiguous array:
+ * the lower corner of child 'i' is at {@code mbbs[i*2*dims]} to 
+ * {@code mbbs[i*2*dims+dims-1]}, the upper corner follows directly after the 
+ * lower corner. The children (sub-nodes or values) are stored in a parallel array.
+ *
+ * Nodes have space for one additional child. This allows overflowing nodes to be
+ * split and to have children reinserted in place.
+ *
+ * @param <T> Value type
+ */
+class RPNode<T> {
+
+	private final double[] mbbs;
+	private final Object[] children;
+	private final boolean isLeaf;
+	private int size;
+	private RPNode<T> parent;
+	private int posInParent;
+
+	RPNode(int dims, int maxSize, boolean isLeaf) {
+		this.mbbs = new double[(maxSize + 1) * 2 * dims];
+		this.children = new Object[maxSize + 1];
+		this.isLeaf = isLeaf;
+	}
+
+	boolean isLeaf() {
+		return isLeaf;
+	}
+
+	int size() {
+		return size;
+	}
+
+	RPNode<T> getParent() {
+		return parent;
+	}
+
+	void setParent(RPNode<T> parent) {
+		this.parent = parent;
+	}
+
+	int getPosInParent() {
+		return posInParent;
+	}
+
+	@SuppressWarnings("unchecked")
+	RPNode<T> getChild(int pos) {
+		return (RPNode<T>) children[pos];
+	}
+
+	@SuppressWarnings("unchecked")
+	T getValue(int pos) {
+		return (T) children[pos];
+	}
+
+	double[] getLower(int pos, int dims) {
+		int offs = pos * 2 * dims;
+		return Arrays.copyOfRange(mbbs, offs, offs + dims);
+	}
+
+	double[] getUpper(int pos, int dims) {
+		int offs = pos * 2 * dims + dims;
+		return Arrays.copyOfRange(mbbs, offs, offs + dims);
+	}
+
+	/**
+	 * Add a value to a leaf.
+	 * @param lower lower corner
+	 * @param upper upper corner
+	 * @param value the value
+	 * @param dims dimensionality
+	 */
+	void addEntry(double[] lower, double[] upper, T value, int dims) {
+		int pos = size++;
+		System.arraycopy(lower, 0, mbbs, pos * 2 * dims, dims);
+		System.arraycopy(upper, 0, mbbs, pos * 2 * dims + dims, dims);
+		children[pos] = value;
+	}
+
+	/**
+	 * Add a child (sub-node or value).
+	 * @param src array with the bounding box of the child
+	 * @param srcPos position of the bounding box in 'src'
+	 * @param child the child
+	 * @param dims dimensionality
+	 */
+	void add(double[] src, int srcPos, Object child, int dims) {
+		int pos = size++;
+		System.arraycopy(src, srcPos, mbbs, pos * 2 * dims, 2 * dims);
+		setChild(pos, child);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void setChild(int pos, Object child) {
+		children[pos] = child;
+		if (!isLeaf) {
+			RPNode<T> sub = (RPNode<T>) child;
+			sub.parent = this;
+			sub.posInParent = pos;
+		}
+	}
+
+	/**
+	 * Remove a child. The last child is moved into the gap.
+	 * @param pos position of the child
+	 * @param dims dimensionality
+	 */
+	void remove(int pos, int dims) {
+		size--;
+		if (pos < size) {
+			System.arraycopy(mbbs, size * 2 * dims, mbbs, pos * 2 * dims, 2 * dims);
+			setChild(pos, children[size]);
+		}
+		children[size] = null;
+	}
+
+	/**
+	 * Copy the bounding boxes of all children into a new array.
+	 * @param dims dimensionality
+	 * @return the bounding boxes
+	 */
+	double[] copyMBBs(int dims) {
+		return Arrays.copyOf(mbbs, size * 2 * dims);
+	}
+
+	Object[] copyChildren() {
+		return Arrays.copyOf(children, size);
+	}
+
+	/**
+	 * Calculate the bounding box of this node.
+	 * @param out output array for the lower and upper corner
+	 * @param outPos position in the output array
+	 * @param dims dimensionality
+	 */
+	void calcMBB(double[] out, int outPos, int dims) {
+		Arrays.fill(out, outPos, outPos + dims, Double.POSITIVE_INFINITY);
+		Arrays.fill(out, outPos + dims, outPos + 2 * dims, Double.NEGATIVE_INFINITY);
+		for (int i = 0; i < size; i++) {
+			int offs = i * 2 * dims;
+			for (int d = 0; d < dims; d++) {
+				out[outPos + d] = Math.min(out[outPos + d], mbbs[offs + d]);
+				out[outPos + dims + d] = Math.max(out[outPos + dims + d], mbbs[offs + dims + d]);
+			}
+		}
+	}
+
+	/**
+	 * Extend the bounding boxes of all parent nodes to include the given box.
+	 * @param box array with a bounding box
+	 * @param boxPos position of the bounding box in 'box'
+	 * @param dims dimensionality
+	 */
+	void extendParents(double[] box, int boxPos, int dims) {
+		for (RPNode<T> n = this; n.parent != null; n = n.parent) {
+			if (!n.parent.extend(n.posInParent, box, boxPos, dims)) {
+				return;
+			}
+		}
+	}
+
+	private boolean extend(int pos, double[] box, int boxPos, int dims) {
+		int offs = pos * 2 * dims;
+		boolean changed = false;
+		for (int d = 0; d < dims; d++) {
+			if (box[boxPos + d] < mbbs[offs + d]) {
+				mbbs[offs + d] = box[boxPos + d];
+				changed = true;
+			}
+			if (box[boxPos + dims + d] > mbbs[offs + dims + d]) {
+				mbbs[offs + dims + d] = box[boxPos + dims + d];
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Recalculate the bounding boxes of all parent nodes, for example after 
+	 * children have been removed.
+	 * @param dims dimensionality
+	 */
+	void recalcParents(int dims) {
+		for (RPNode<T> n = this; n.parent != null; n = n.parent) {
+			n.calcMBB(n.parent.mbbs, n.posInParent * 2 * dims, dims);
+		}
+	}
+
+	boolean intersects(int pos, double[] min, double[] max) {
+		int dims = min.length;
+		int offs = pos * 2 * dims;
+		for (int d = 0; d < dims; d++) {
+			if (mbbs[offs + d] > max[d] || mbbs[offs + dims + d] < min[d]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	boolean includes(int pos, double[] min, double[] max) {
+		int dims = min.length;
+		int offs = pos * 2 * dims;
+		for (int d = 0; d < dims; d++) {
+			if (mbbs[offs + d] > min[d] || mbbs[offs + dims + d] < max[d]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	boolean isExactMatch(int pos, double[] min, double[] max) {
+		int dims = min.length;
+		int offs = pos * 2 * dims;
+		for (int d = 0; d < dims; d++) {
+			if (mbbs[offs + d] != min[d] || mbbs[offs + dims + d] != max[d]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param pos position of a child
+	 * @param center a point
+	 * @return the squared euclidean distance between the point and the edge of the
+	 * child's bounding box, or '0' if the point is inside the box 
+	 */
+	double distEdgeSquared(int pos, double[] center) {
+		int dims = center.length;
+		int offs = pos * 2 * dims;
+		double dist = 0;
+		for (int d = 0; d < dims; d++) {
+			double delta = 0;
+			if (mbbs[offs + d] > center[d]) {
+				delta = mbbs[offs + d] - center[d];
+			} else if (mbbs[offs + dims + d] < center[d]) {
+				delta = center[d] - mbbs[offs + dims + d];
+			}
+			dist += delta * delta;
+		}
+		return dist;
+	}
+
+	private double calcArea(int pos, int dims) {
+		int offs = pos * 2 * dims;
+		double area = 1;
+		for (int d = 0; d < dims; d++) {
+			area *= mbbs[offs + dims + d] - mbbs[offs + d];
+		}
+		return area;
+	}
+
+	private double calcAreaEnlarged(int pos, double[] box, int boxPos, int dims) {
+		int offs = pos * 2 * dims;
+		double area = 1;
+		for (int d = 0; d < dims; d++) {
+			double lo = Math.min(mbbs[offs + d], box[boxPos + d]);
+			double up = Math.max(mbbs[offs + dims + d], box[boxPos + dims + d]);
+			area *= up - lo;
+		}
+		return area;
+	}
+
+	/**
+	 * @return overlap of child 'pos2' with child 'pos1' after 'pos1' has been
+	 * enlarged to include 'box'
+	 */
+	private double calcOverlapEnlarged(int pos1, int pos2, double[] box, int boxPos, int dims) {
+		int offs1 = pos1 * 2 * dims;
+		int offs2 = pos2 * 2 * dims;
+		double area = 1;
+		for (int d = 0; d < dims; d++) {
+			double lo1 = Math.min(mbbs[offs1 + d], box[boxPos + d]);
+			double up1 = Math.max(mbbs[offs1 + dims + d], box[boxPos + dims + d]);
+			double delta = Math.min(up1, mbbs[offs2 + dims + d]) - Math.max(lo1, mbbs[offs2 + d]);
+			if (delta <= 0) {
+				return 0;
+			}
+			area *= delta;
+		}
+		return area;
+	}
+
+	/**
+	 * R*Tree ChooseSubtree for nodes whose children are leaves: choose the child
+	 * that requires the least overlap enlargement. Ties are resolved by choosing 
+	 * the child with the smallest area.
+	 * 
+	 * The paper restricts the overlap calculation to the 32 children with the 
+	 * least area enlargement. Nodes never have more than 32 children, so all 
+	 * children are considered.
+	 *  
+	 * @param box array with the bounding box of the new entry
+	 * @param boxPos position of the bounding box in 'box'
+	 * @param dims dimensionality
+	 * @return position of the chosen child
+	 */
+	int chooseByOverlap(double[] box, int boxPos, int dims) {
+		double bestOverlap = Double.MAX_VALUE;
+		double bestArea = Double.MAX_VALUE;
+		int best = -1;
+		for (int i = 0; i < size; i++) {
+			double overlap = 0;
+			for (int j = 0; j < size; j++) {
+				if (j != i) {
+					overlap += calcOverlapEnlarged(i, j, box, boxPos, dims);
+				}
+			}
+			if (overlap < bestOverlap) {
+				bestOverlap = overlap;
+				bestArea = calcArea(i, dims);
+				best = i;
+			} else if (overlap == bestOverlap) {
+				double area = calcArea(i, dims);
+				if (area < bestArea) {
+					bestArea = area;
+					best = i;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * R*Tree ChooseSubtree for all other directory nodes: choose the child that 
+	 * requires the least area enlargement. Ties are resolved by choosing 
+	 * the child with the smallest area.
+	 * 
+	 * @param box array with the bounding box of the new entry
+	 * @param boxPos position of the bounding box in 'box'
+	 * @param dims dimensionality
+	 * @return position of the chosen child
+	 */
+	int chooseByAreaEnlargement(double[] box, int boxPos, int dims) {
+		double bestEnlargement = Double.MAX_VALUE;
+		double bestArea = Double.MAX_VALUE;
+		int best = -1;
+		for (int i = 0; i < size; i++) {
+			double area = calcArea(i, dims);
+			double enlargement = calcAreaEnlarged(i, box, boxPos, dims) - area;
+			if (enlargement < bestEnlargement 
+					|| (enlargement == bestEnlargement && area < bestArea)) {
+				bestEnlargement = enlargement;
+				bestArea = area;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * R*Tree forced reinsert: remove the 'p' children that are farthest away from the
+	 * center of this node. The removed children are returned ordered by increasing 
+	 * distance ('close reinsert').
+	 * 
+	 * @param p number of children to remove
+	 * @param outMBBs output array for the bounding boxes of the removed children 
+	 * @param outChildren output array for the removed children
+	 * @param dims dimensionality
+	 */
+	void removeFarthest(int p, double[] outMBBs, Object[] outChildren, int dims) {
+		double[] center = new double[2 * dims];
+		calcMBB(center, 0, dims);
+		double[] dist = new double[size];
+		for (int i = 0; i < size; i++) {
+			int offs = i * 2 * dims;
+			double d2 = 0;
+			for (int d = 0; d < dims; d++) {
+				//twice the distance, this does not affect the ordering
+				double delta = (center[d] + center[dims + d]) - (mbbs[offs + d] + mbbs[offs + dims + d]);
+				d2 += delta * delta;
+			}
+			dist[i] = d2;
+		}
+		int[] order = createOrder();
+		for (int i = 1; i < order.length; i++) {
+			int x = order[i];
+			int j = i - 1;
+			for (; j >= 0 && dist[order[j]] > dist[x]; j--) {
+				order[j + 1] = order[j];
+			}
+			order[j + 1] = x;
+		}
+
+		int nToKeep = size - p;
+		double[] oldMBBs = copyMBBs(dims);
+		Object[] oldChildren = copyChildren();
+		clear();
+		for (int i = 0; i < nToKeep; i++) {
+			add(oldMBBs, order[i] * 2 * dims, oldChildren[order[i]], dims);
+		}
+		for (int i = 0; i < p; i++) {
+			int pos = order[nToKeep + i];
+			System.arraycopy(oldMBBs, pos * 2 * dims, outMBBs, i * 2 * dims, 2 * dims);
+			outChildren[i] = oldChildren[pos];
+		}
+	}
+
+	/**
+	 * R*Tree split of an overflowing node. The split axis is chosen by minimum total 
+	 * margin, the split index by minimum overlap and then by minimum dead space.
+	 * This node keeps the first group of children, the second group is moved to a 
+	 * new node.
+	 * 
+	 * @param dims dimensionality
+	 * @return the new node
+	 */
+	RPNode<T> split(int dims) {
+		int[] order = createOrder();
+		double[] buf1 = new double[2 * dims];
+		double[] buf2 = new double[2 * dims];
+
+		//S1 determine axis
+		int splitAxis = chooseSplitAxis(order, buf1, dims);
+
+		//S2 choose split index
+		final int M = size - 1;
+		final int m = (int) (0.40 * M);
+		final int kEnd = m + (M - 2 * m + 1);
+		int bestSortOrder = -1;
+		double bestDeadSpace = Double.MAX_VALUE;
+		double bestOverlap = Double.MAX_VALUE;
+		int bestIndex = -1;
+		for (int sortOrder = 0; sortOrder < 2; sortOrder++) {
+			sortByAxis(order, splitAxis, sortOrder == 0, dims);
+			for (int k = m + 1; k <= kEnd; k++) {
+				double ds1 = calcDeadSpace(order, 0, k, buf1, dims);
+				double ds2 = calcDeadSpace(order, k, size, buf2, dims);
+				double overlap = calcOverlap(buf1, buf2, dims);
+				if (overlap < bestOverlap || (overlap == bestOverlap && ds1 + ds2 < bestDeadSpace)) {
+					bestOverlap = overlap;
+					bestDeadSpace = ds1 + ds2;
+					bestSortOrder = sortOrder;
+					bestIndex = k;
+				}
+			}
+		}
+		//ensure that children are in correct order
+		if (bestSortOrder == 0) {
+			sortByAxis(order, splitAxis, true, dims);
+		}
+
+		//S3 split
+		RPNode<T> newNode = new RPNode<>(dims, children.length - 1, isLeaf);
+		int oldSize = size;
+		double[] oldMBBs = copyMBBs(dims);
+		Object[] oldChildren = copyChildren();
+		clear();
+		for (int i = 0; i < bestIndex; i++) {
+			add(oldMBBs, order[i] * 2 * dims, oldChildren[order[i]], dims);
+		}
+		for (int i = bestIndex; i < oldSize; i++) {
+			newNode.add(oldMBBs, order[i] * 2 * dims, oldChildren[order[i]], dims);
+		}
+		return newNode;
+	}
+
+	private int chooseSplitAxis(int[] order, double[] buf, int dims) {
+		final int M = size;
+		final int m = (int) (0.40 * M);
+		final int kEnd = m + (M - 2 * m + 1);
+
+		double bestMargin = Double.MAX_VALUE;
+		int bestDim = -1;
+		for (int d = 0; d < dims; d++) {
+			//total margin S for all distributions along this axis
+			double totalMargin = 0;
+			for (int sortOrder = 0; sortOrder < 2; sortOrder++) {
+				sortByAxis(order, d, sortOrder == 0, dims);
+				for (int k = m + 1; k <= kEnd; k++) {
+					calcBoundingBox(order, 0, k, buf, dims);
+					totalMargin += calcMargin(buf, dims);
+					calcBoundingBox(order, k, size, buf, dims);
+					totalMargin += calcMargin(buf, dims);
+				}
+			}
+			if (totalMargin < bestMargin) {
+				bestMargin = totalMargin;
+				bestDim = d;
+			}
+		}
+		return bestDim;
+	}
+
+	private int[] createOrder() {
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		return order;
+	}
+
+	/**
+	 * Stable insertion sort by lower and then upper coordinate of the given axis.
+	 */
+	private void sortByAxis(int[] order, int axis, boolean ascending, int dims) {
+		for (int i = 1; i < order.length; i++) {
+			int x = order[i];
+			int j = i - 1;
+			for (; j >= 0 && compareByAxis(order[j], x, axis, ascending, dims) > 0; j--) {
+				order[j + 1] = order[j];
+			}
+			order[j + 1] = x;
+		}
+	}
+
+	private int compareByAxis(int pos1, int pos2, int axis, boolean ascending, int dims) {
+		int offs1 = pos1 * 2 * dims + axis;
+		int offs2 = pos2 * 2 * dims + axis;
+		double delta = mbbs[offs1] - mbbs[offs2];
+		if (delta == 0) {
+			delta = mbbs[offs1 + dims] - mbbs[offs2 + dims];
+		}
+		int c = delta < 0 ? -1 : (delta > 0 ? 1 : 0);
+		return ascending ? c : -c;
+	}
+
+	private void calcBoundingBox(int[] order, int start, int end, double[] out, int dims) {
+		Arrays.fill(out, 0, dims, Double.POSITIVE_INFINITY);
+		Arrays.fill(out, dims, 2 * dims, Double.NEGATIVE_INFINITY);
+		for (int i = start; i < end; i++) {
+			int offs = order[i] * 2 * dims;
+			for (int d = 0; d < dims; d++) {
+				out[d] = Math.min(out[d], mbbs[offs + d]);
+				out[dims + d] = Math.max(out[dims + d], mbbs[offs + dims + d]);
+			}
+		}
+	}
+
+	/**
+	 * Calculates the bounding box and the estimated dead space of a group of children.
+	 * The dead space does not consider overlapping children, it can therefore be negative.
+	 */
+	private double calcDeadSpace(int[] order, int start, int end, double[] out, int dims) {
+		calcBoundingBox(order, start, end, out, dims);
+		double volumeSum = 0;
+		for (int i = start; i < end; i++) {
+			volumeSum += calcArea(order[i], dims);
+		}
+		double volume = 1;
+		for (int d = 0; d < dims; d++) {
+			volume *= out[dims + d] - out[d];
+		}
+		return volume - volumeSum;
+	}
+
+	private static double calcMargin(double[] box, int dims) {
+		double margin = 0;
+		for (int d = 0; d < dims; d++) {
+			margin += box[dims + d] - box[d];
+		}
+		return margin;
+	}
+
+	private static double calcOverlap(double[] box1, double[] box2, int dims) {
+		double area = 1;
+		for (int d = 0; d < dims; d++) {
+			double delta = Math.min(box1[dims + d], box2[dims + d]) - Math.max(box1[d], box2[d]);
+			if (delta <= 0) {
+				return 0;
+			}
+			area *= delta;
+		}
+		return area;
+	}
+
+	private void clear() {
+		Arrays.fill(children, null);
+		size = 0;
+	}
+
+	@Override
+	public String toString() {
+		return (isLeaf ? "leaf" : "dir") + ": size=" + size + " " + System.identityHashCode(this);
+	}
+}
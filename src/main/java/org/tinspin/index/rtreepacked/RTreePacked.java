@@ -0,0 +1,524 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.rtreepacked;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.tinspin.index.QueryIteratorKNN;
+import org.tinspin.index.RectangleEntryDist;
+import org.tinspin.index.RectangleIndex;
+import org.tinspin.index.Stats;
+
+/**
+ * An R*Tree with packed nodes.
+ * 
+ * Unlike {@link org.tinspin.index.rtree.RTree}, nodes do not hold a list of entry 
+ * objects. Instead, each node stores the bounding boxes of all its children in a 
+ * single contiguous primitive array and the children (sub-nodes or values) in a 
+ * parallel array. This greatly reduces the number of objects (and thus memory 
+ * consumption) of the tree. Queries scan the bounding boxes of a node linearly.
+ * 
+ * Insertion, forced reinsertion and node splitting follow the R*Tree algorithms 
+ * as implemented in {@link org.tinspin.index.rtree.RStarTreeLogic}.
+ * 
+ * @author T. Zäschke
+ *
+ * @param <T> Value type
+ */
+public class RTreePacked<T> implements RectangleIndex<T> {
+
+	private static final String NL = System.lineSeparator();
+
+	static final int NODE_MAX = 10;
+	static final int NODE_MIN = 2;
+
+	private final int dims;
+	private int size;
+	/** Number of levels, leaves are at level 0. */
+	private int depth;
+	private int nNodes;
+	private long nDistKNN = 0;
+	private RPNode<T> root;
+	/** Levels on which a forced reinsert has already been done during the current insert. */
+	private long blockedLevels;
+
+	private RTreePacked(int dims) {
+		this.dims = dims;
+		init();
+	}
+
+	public static <T> RTreePacked<T> create(int dims) {
+		return new RTreePacked<>(dims);
+	}
+
+	private void init() {
+		root = new RPNode<>(dims, NODE_MAX, true);
+		depth = 1;
+		nNodes = 1;
+		size = 0;
+	}
+
+	@Override
+	public int getDims() {
+		return dims;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		init();
+	}
+
+	/**
+	 * Insert a rectangle.
+	 * @param lower minimum corner
+	 * @param upper maximum corner
+	 * @param value value
+	 */
+	@Override
+	public void insert(double[] lower, double[] upper, T value) {
+		size++;
+		double[] box = new double[2 * dims];
+		System.arraycopy(lower, 0, box, 0, dims);
+		System.arraycopy(upper, 0, box, dims, dims);
+		insertAtLevel(box, 0, value, 0);
+	}
+
+	private void insertAtLevel(double[] box, int boxPos, Object child, int level) {
+		blockedLevels = 0;
+		insert(box, boxPos, child, level);
+	}
+
+	/**
+	 * @param box array with the bounding box of the child
+	 * @param boxPos position of the bounding box in 'box'
+	 * @param child a value or a sub-node
+	 * @param level Children have to be inserted at the desired level.
+	 * The level is usually '0' (for values) but can be higher for
+	 * reinsertion of subtrees.
+	 */
+	private void insert(double[] box, int boxPos, Object child, int level) {
+		RPNode<T> node = chooseSubtree(box, boxPos, level);
+		node.add(box, boxPos, child, dims);
+		if (node.size() <= NODE_MAX) {
+			node.extendParents(box, boxPos, dims);
+			return;
+		}
+
+		//overflow treatment
+		if (node != root && (blockedLevels & (1L << level)) == 0) {
+			blockedLevels |= 1L << level;
+			int p = (int) (0.30 * node.size());
+			double[] toReinsertMBBs = new double[p * 2 * dims];
+			Object[] toReinsert = new Object[p];
+			node.removeFarthest(p, toReinsertMBBs, toReinsert, dims);
+			//shrink parents
+			node.recalcParents(dims);
+			for (int i = 0; i < p; i++) {
+				insert(toReinsertMBBs, i * 2 * dims, toReinsert[i], level);
+			}
+			return;
+		}
+
+		RPNode<T> newNode = node.split(dims);
+		nNodes++;
+		//shrink parents
+		node.recalcParents(dims);
+		double[] newBox = new double[2 * dims];
+		newNode.calcMBB(newBox, 0, dims);
+		//propagate overflow up the tree
+		if (level + 1 < depth) {
+			insert(newBox, 0, newNode, level + 1);
+		} else {
+			RPNode<T> newRoot = new RPNode<>(dims, NODE_MAX, false);
+			nNodes++;
+			double[] rootBox = new double[2 * dims];
+			root.calcMBB(rootBox, 0, dims);
+			newRoot.add(newBox, 0, newNode, dims);
+			newRoot.add(rootBox, 0, root, dims);
+			root = newRoot;
+			depth++;
+		}
+	}
+
+	private RPNode<T> chooseSubtree(double[] box, int boxPos, int desiredLevel) {
+		RPNode<T> node = root;
+		int level = depth - 1;
+		while (level != desiredLevel) {
+			int pos;
+			if (level == 1) {
+				pos = node.chooseByOverlap(box, boxPos, dims);
+			} else {
+				pos = node.chooseByAreaEnlargement(box, boxPos, dims);
+			}
+			node = node.getChild(pos);
+			level--;
+		}
+		return node;
+	}
+
+	/**
+	 * Remove an entry.
+	 * @param lower minimum corner
+	 * @param upper maximum corner
+	 * @return the value of the entry or null if the entry was not found
+	 */
+	@Override
+	public T remove(double[] lower, double[] upper) {
+		return findEntry(lower, upper, true);
+	}
+
+	/**
+	 * Update the position of an entry.
+	 * @param lo1 old min
+	 * @param up1 old max
+	 * @param lo2 new min
+	 * @param up2 new max
+	 * @return the value, or null if the entries was not found
+	 */
+	@Override
+	public T update(double[] lo1, double[] up1, double[] lo2, double[] up2) {
+		T val = remove(lo1, up1);
+		if (val != null) {
+			insert(lo2, up2, val);
+		}
+		return val;
+	}
+
+	/**
+	 * Lookup an entry, using exact match.
+	 * @param lower minimum corner
+	 * @param upper maximum corner
+	 * @return the value of the entry or null if the entry was not found
+	 */
+	@Override
+	public T queryExact(double[] lower, double[] upper) {
+		return findEntry(lower, upper, false);
+	}
+
+	private T findEntry(double[] min, double[] max, boolean delete) {
+		int[] positions = new int[depth];
+		int level = depth - 1;
+		RPNode<T> node = root;
+		outer:
+		while (level < depth) {
+			if (!node.isLeaf()) {
+				for (int i = positions[level]; i < node.size(); i++) {
+					if (node.includes(i, min, max)) {
+						positions[level] = i + 1;
+						level--;
+						node = node.getChild(i);
+						positions[level] = 0;
+						continue outer;
+					}
+				}
+			} else {
+				for (int i = 0; i < node.size(); i++) {
+					if (node.isExactMatch(i, min, max)) {
+						T value = node.getValue(i);
+						if (delete) {
+							deleteFromNode(node, i);
+						}
+						return value;
+					}
+				}
+			}
+			node = node.getParent();
+			level++;
+		}
+		return null;
+	}
+
+	private void deleteFromNode(RPNode<T> node, int pos) {
+		size--;
+		node.remove(pos, dims);
+		node.recalcParents(dims);
+		int level = 0;
+		while (node != root && node.size() < NODE_MIN) {
+			double[] mbbs = node.copyMBBs(dims);
+			Object[] children = node.copyChildren();
+			RPNode<T> parent = node.getParent();
+			parent.remove(node.getPosInParent(), dims);
+			parent.recalcParents(dims);
+			nNodes--;
+			node = parent;
+			for (int i = 0; i < children.length; i++) {
+				insertAtLevel(mbbs, i * 2 * dims, children[i], level);
+			}
+			level++;
+		}
+		if (!root.isLeaf() && root.size() == 1) {
+			depth--;
+			nNodes--;
+			root = root.getChild(0);
+			root.setParent(null);
+		}
+	}
+
+	@Override
+	public RPIterator<T> iterator() {
+		double[] min = new double[dims];
+		double[] max = new double[dims];
+		Arrays.fill(min, Double.NEGATIVE_INFINITY);
+		Arrays.fill(max, Double.POSITIVE_INFINITY);
+		return queryIntersect(min, max);
+	}
+
+	/**
+	 * @param min Lower left corner of the query window
+	 * @param max Upper right corner of the query window
+	 * @return All rectangles that intersect with the query rectangle.
+	 */
+	@Override
+	public RPIterator<T> queryIntersect(double[] min, double[] max) {
+		return new RPIterator<>(this, min, max);
+	}
+
+	/**
+	 * Finds the nearest neighbors using the euclidean 'edge distance'.
+	 * @param center center point
+	 * @param k number of neighbors
+	 * @return list of nearest neighbors, ordered by distance
+	 */
+	public List<RPEntryDist<T>> knnQuery(double[] center, int k) {
+		if (size == 0) {
+			return Collections.emptyList();
+		}
+		ArrayList<RPEntryDist<T>> candidates = new ArrayList<>(k);
+		//one buffer per level for ordering the children of directory nodes
+		double[][] distBuf = new double[depth][NODE_MAX + 1];
+		int[][] orderBuf = new int[depth][NODE_MAX + 1];
+		knnSearch(root, depth - 1, center, candidates, k, Double.POSITIVE_INFINITY, 
+				distBuf, orderBuf);
+		for (int i = 0; i < candidates.size(); i++) {
+			RPEntryDist<T> e = candidates.get(i);
+			e.set(e.lower(), e.upper(), e.value(), Math.sqrt(e.dist()));
+		}
+		return candidates;
+	}
+
+	/**
+	 * Depth-first kNN search, children are visited in order of increasing distance.
+	 * All distances are squared distances.
+	 */
+	private double knnSearch(RPNode<T> node, int level, double[] center, 
+			ArrayList<RPEntryDist<T>> candidates, int k, double maxRange, 
+			double[][] distBuf, int[][] orderBuf) {
+		if (node.isLeaf()) {
+			for (int i = 0; i < node.size(); i++) {
+				maxRange = addCandidate(node, i, center, candidates, k, maxRange);
+			}
+			return maxRange;
+		}
+		double[] dist = distBuf[level];
+		int[] order = orderBuf[level];
+		int n = node.size();
+		for (int i = 0; i < n; i++) {
+			double d = node.distEdgeSquared(i, center);
+			int j = i - 1;
+			for (; j >= 0 && dist[order[j]] > d; j--) {
+				order[j + 1] = order[j];
+			}
+			order[j + 1] = i;
+			dist[i] = d;
+		}
+		for (int i = 0; i < n; i++) {
+			int pos = order[i];
+			if (dist[pos] > maxRange) {
+				//all remaining children are further away
+				break;
+			}
+			maxRange = knnSearch(node.getChild(pos), level - 1, center, candidates, k, maxRange, 
+					distBuf, orderBuf);
+		}
+		return maxRange;
+	}
+
+	private double addCandidate(RPNode<T> node, int pos, double[] center, 
+			ArrayList<RPEntryDist<T>> candidates, int k, double maxRange) {
+		nDistKNN++;
+		double d = node.distEdgeSquared(pos, center);
+		if (d > maxRange) {
+			//don't add if too far away
+			return maxRange;
+		}
+		if (d == maxRange && candidates.size() >= k) {
+			//don't add if we already have enough equally good results.
+			return maxRange;
+		}
+		RPEntryDist<T> cand;
+		if (candidates.size() >= k) {
+			cand = candidates.remove(k - 1);
+			cand.set(node.getLower(pos, dims), node.getUpper(pos, dims), node.getValue(pos), d);
+		} else {
+			cand = new RPEntryDist<>(node.getLower(pos, dims), node.getUpper(pos, dims), 
+					node.getValue(pos), d);
+		}
+		int insertionPos = Collections.binarySearch(candidates, cand, RPEntryDist.COMP);
+		insertionPos = insertionPos >= 0 ? insertionPos : -(insertionPos+1);
+		candidates.add(insertionPos, cand);
+		return candidates.size() < k ? maxRange : candidates.get(candidates.size() - 1).dist();
+	}
+
+	private static class RPQueryIteratorKNN<T> implements QueryIteratorKNN<RectangleEntryDist<T>> {
+
+		private Iterator<? extends RectangleEntryDist<T>> it;
+		private final RTreePacked<T> tree;
+
+		public RPQueryIteratorKNN(RTreePacked<T> tree, double[] center, int k) {
+			this.tree = tree;
+			reset(center, k);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return it.hasNext();
+		}
+
+		@Override
+		public RectangleEntryDist<T> next() {
+			return it.next();
+		}
+
+		@Override
+		public RPQueryIteratorKNN<T> reset(double[] center, int k) {
+			it = tree.knnQuery(center, k).iterator();
+			return this;
+		}
+	}
+
+	@Override
+	public QueryIteratorKNN<RectangleEntryDist<T>> queryKNN(double[] center, int k) {
+		return new RPQueryIteratorKNN<>(this, center, k);
+	}
+
+	/**
+	 * Returns a printable list of the tree.
+	 * @return the tree as String
+	 */
+	@Override
+	public String toStringTree() {
+		StringBuilder sb = new StringBuilder();
+		toStringTree(sb, root, depth - 1);
+		return sb.toString();
+	}
+
+	private void toStringTree(StringBuilder sb, RPNode<T> node, int level) {
+		String prefix = "";
+		for (int i = level; i < depth; i++) {
+			prefix += " ";
+		}
+		sb.append(prefix + "L=" + level + " " + node + NL);
+		for (int i = 0; i < node.size(); i++) {
+			if (node.isLeaf()) {
+				sb.append(prefix + "e:" + Arrays.toString(node.getLower(i, dims)) + "/" + 
+						Arrays.toString(node.getUpper(i, dims)) + " v=" + node.getValue(i) + NL);
+			} else {
+				toStringTree(sb, node.getChild(i), level - 1);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "RTreePacked;size=" + size + ";nNodes=" + nNodes +
+				";m/M=" + NODE_MIN + "/" + NODE_MAX;
+	}
+
+	@Override
+	public RPStats getStats() {
+		RPStats s = new RPStats(this);
+		checkNode(s, root, depth - 1);
+		if (s.nEntries != size) {
+			throw new IllegalStateException("Entry count/size " + s.nEntries + "/" + size);
+		}
+		if (s.nNodes != nNodes) {
+			throw new IllegalStateException("Node count/nNodes " + s.nNodes + "/" + nNodes);
+		}
+		return s;
+	}
+
+	private void checkNode(RPStats s, RPNode<T> node, int level) {
+		if (node.isLeaf() != (level == 0)) {
+			throw new IllegalStateException("Leaf at level " + level);
+		}
+		if (node.size() > NODE_MAX || (node != root && node.size() < NODE_MIN)) {
+			throw new IllegalStateException("Node size: " + node.size());
+		}
+		s.nNodes++;
+		s.sumLevel += level;
+		if (node.size() > s.maxNodeSize) {
+			s.maxNodeSize = node.size();
+		}
+		if (node.isLeaf()) {
+			s.nLeaf++;
+			s.nEntries += node.size();
+			return;
+		}
+		s.nInner++;
+		double[] box = new double[2 * dims];
+		for (int i = 0; i < node.size(); i++) {
+			RPNode<T> sub = node.getChild(i);
+			if (sub.getParent() != node || sub.getPosInParent() != i) {
+				throw new IllegalStateException("Parent: " + sub);
+			}
+			sub.calcMBB(box, 0, dims);
+			double[] min = Arrays.copyOfRange(box, 0, dims);
+			double[] max = Arrays.copyOfRange(box, dims, 2 * dims);
+			if (!node.includes(i, min, max)) {
+				throw new IllegalStateException("MBB: " + sub);
+			}
+			checkNode(s, sub, level - 1);
+		}
+	}
+
+	/**
+	 * Statistics container class.
+	 */
+	public static class RPStats extends Stats {
+		public RPStats(RTreePacked<?> tree) {
+			super(tree.nDistKNN, 0, tree.nDistKNN);
+			this.dims = tree.dims;
+			this.minLevel = 0;
+			this.maxLevel = tree.depth;
+			this.maxDepth = tree.depth;
+		}
+	}
+
+	@Override
+	public int getNodeCount() {
+		return nNodes;
+	}
+
+	@Override
+	public int getDepth() {
+		return depth;
+	}
+
+	RPNode<T> getRoot() {
+		return root;
+	}
+}
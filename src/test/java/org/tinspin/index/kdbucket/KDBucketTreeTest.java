@@ -0,0 +1,127 @@
+/*
+ * Copyright 2009-2017 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.kdbucket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.tinspin.index.test.util.PointIndexTestUtil.checkQueries;
+import static org.tinspin.index.test.util.PointIndexTestUtil.createData;
+import static org.tinspin.index.test.util.PointIndexTestUtil.smokeTest;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.tinspin.index.PointEntry;
+import org.tinspin.index.QueryIterator;
+
+/**
+ * Tests for splitting and merging buckets. Queries are also tested in TestPointSmoke.
+ */
+public class KDBucketTreeTest {
+
+	@Test
+	public void testSplit() {
+		double[][] point_list = createData(5_000, 3, 1);
+		for (int bucketSize : new int[] {2, 4, 32}) {
+			KDBucketTree<double[]> tree = KDBucketTree.create(3, bucketSize);
+			for (double[] data : point_list) {
+				tree.insert(data, data);
+			}
+			KDBucketTree.KDBStats s = tree.getStats();
+			assertEquals(point_list.length, s.getEntryCount());
+			assertEquals(s.getLeafNodeCount(), s.getInnerNodeCount() + 1);
+			//only buckets with identical points exceed the bucket size
+			assertTrue(s.getMaxNodeSize() <= Math.max(bucketSize, maxDuplicates(point_list)));
+			checkQueries(tree, point_list, 0);
+			
+			smokeTest(KDBucketTree.create(3, bucketSize), point_list);
+		}
+	}
+	
+	@Test
+	public void testMerge() {
+		double[][] point_list = createData(5_000, 2, 0);
+		KDBucketTree<double[]> tree = KDBucketTree.create(2, 8);
+		for (double[] data : point_list) {
+			tree.insert(data, data);
+		}
+		int nLeaves = tree.getStats().getLeafNodeCount();
+		int nRemaining = 200;
+		for (int i = nRemaining; i < point_list.length; i++) {
+			assertTrue(Arrays.equals(point_list[i], tree.remove(point_list[i])));
+		}
+		point_list = Arrays.copyOf(point_list, nRemaining);
+		KDBucketTree.KDBStats s = tree.getStats();
+		assertEquals(nRemaining, s.getEntryCount());
+		assertTrue(s.getLeafNodeCount() < nLeaves / 4);
+		checkQueries(tree, point_list, 0);
+	}
+	
+	@Test
+	public void smokeTestDuplLarge() {
+		double[][] point_list = new double[10_000][];
+		for (int i = 0; i < point_list.length; i++) {
+			point_list[i] = new double[] {2, 3};
+		}
+		smokeTest(KDBucketTree.create(2, 4), point_list);
+	}
+	
+	/**
+	 * Buckets of identical points must not be rescanned on every insert, this 
+	 * would take minutes.
+	 */
+	@Test(timeout = 10_000)
+	public void testDuplSplit() {
+		KDBucketTree<Integer> tree = KDBucketTree.create(2, 4);
+		double[] key = {2, 3};
+		for (int i = 0; i < 100_000; i++) {
+			tree.insert(key, i);
+		}
+		//identical points are not split
+		assertEquals(1, tree.getStats().getNodeCount());
+		assertEquals(100_000, tree.getStats().getMaxNodeSize());
+		
+		//a different point allows splitting again
+		tree.insert(new double[] {2, 4}, -1);
+		tree.insert(new double[] {1, 3}, -2);
+		assertEquals(100_002, tree.size());
+		assertEquals(100_000, tree.getStats().getMaxNodeSize());
+		assertTrue(tree.getStats().getLeafNodeCount() > 1);
+		assertEquals(Integer.valueOf(-1), tree.queryExact(new double[] {2, 4}));
+		assertEquals(Integer.valueOf(-2), tree.queryExact(new double[] {1, 3}));
+		int n = 0;
+		QueryIterator<PointEntry<Integer>> it = tree.query(key, key);
+		while (it.hasNext()) {
+			it.next();
+			n++;
+		}
+		assertEquals(100_000, n);
+	}
+
+	private static int maxDuplicates(double[][] point_list) {
+		int max = 0;
+		for (double[] p : point_list) {
+			int n = 0;
+			for (double[] p2 : point_list) {
+				n += Arrays.equals(p, p2) ? 1 : 0;
+			}
+			max = Math.max(max, n);
+		}
+		return max;
+	}
+}
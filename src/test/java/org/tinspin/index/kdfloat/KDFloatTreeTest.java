@@ -0,0 +1,82 @@
+/*
+ * Copyright 2009-2017 Tilmann Zaeschke. All rights reserved.
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.kdfloat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.tinspin.index.test.util.PointIndexTestUtil.checkQueries;
+import static org.tinspin.index.test.util.PointIndexTestUtil.createData;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.tinspin.index.PointEntry;
+import org.tinspin.index.PointEntryDist;
+import org.tinspin.index.QueryIterator;
+
+/**
+ * Tests for float precision and removal. Queries are also tested in TestPointSmoke.
+ */
+public class KDFloatTreeTest {
+
+	@Test
+	public void testQueriesAfterRemove() {
+		double[][] point_list = createData(5_000, 3, 1);
+		KDFloatTree<double[]> tree = KDFloatTree.create(3);
+		for (double[] data : point_list) {
+			tree.insert(data, data);
+		}
+		assertEquals(point_list.length, tree.getStats().getNodeCount());
+		//remove some entries to break the invariant
+		for (int i = 0; i < 500; i++) {
+			assertTrue(Arrays.equals(point_list[i], tree.remove(point_list[i])));
+		}
+		assertEquals(point_list.length - 500, tree.getStats().getNodeCount());
+		point_list = Arrays.copyOfRange(point_list, 500, point_list.length);
+		checkQueries(tree, point_list, 0);
+	}
+	
+	@Test
+	public void testFloatPrecision() {
+		KDFloatTree<String> tree = KDFloatTree.create(2);
+		double[] p = {0.1, 1e-3};
+		tree.insert(p, "p");
+		double[] pf = {(float) 0.1, (float) 1e-3};
+		assertEquals("p", tree.queryExact(p));
+		assertEquals("p", tree.queryExact(pf));
+		
+		//keys are compared with float precision
+		assertEquals("p", tree.queryExact(new double[] {0.1 + 1e-12, 1e-3}));
+		assertNull(tree.queryExact(new double[] {0.1 + 1e-6, 1e-3}));
+		
+		QueryIterator<PointEntry<String>> it = tree.query(p, p);
+		assertTrue(it.hasNext());
+		assertTrue(Arrays.equals(pf, it.next().point()));
+		assertFalse(it.hasNext());
+		
+		PointEntryDist<String> e = tree.query1NN(pf);
+		assertEquals("p", e.value());
+		assertEquals(0.0, e.dist(), 0.0);
+		
+		assertEquals("p", tree.update(p, new double[] {0.2, 0.3}));
+		assertNull(tree.queryExact(p));
+		assertEquals("p", tree.queryExact(new double[] {0.2, 0.3}));
+	}
+}
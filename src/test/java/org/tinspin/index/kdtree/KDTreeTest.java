@@ -17,14 +17,28 @@
  */
 package org.tinspin.index.kdtree;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.tinspin.index.test.util.PointIndexTestUtil.createData;
+
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.junit.Test;
+import org.tinspin.index.PointDistanceFunction;
+import org.tinspin.index.PointEntry;
 import org.tinspin.index.PointEntryDist;
 import org.tinspin.index.QueryIteratorKNN;
+import org.tinspin.index.QueryIteratorRange;
 
 public class KDTreeTest {
 
@@ -128,11 +142,582 @@ public class KDTreeTest {
 		smokeTest(point_list);
 	}
 	
+	@Test
+	public void smokeTestBulkLoadDupl() {
+		double[][] point_list = {{2,3}, {2,3}, {2,3}, {2,3}, {2,3}, {2,3}};
+		smokeTest(point_list, true);
+	}
+	
+	@Test
+	public void testBulkLoadDuplLarge() {
+		double[][] point_list = new double[20_000][];
+		for (int i = 0; i < point_list.length; i++) {
+			point_list[i] = new double[] {1, 2, 3};
+		}
+		KDTree<double[]> tree = KDTree.create(3);
+		tree.load(point_list, point_list);
+		assertEquals(point_list.length, tree.size());
+		int maxDepth = 32 - Integer.numberOfLeadingZeros(point_list.length) - 1;
+		assertTrue(tree.getDepth() <= maxDepth);
+		assertEquals(point_list.length, count(tree.query(point_list[0], point_list[0])));
+		assertEquals(10, count(tree.queryKNN(point_list[0], 10)));
+		smokeTest(point_list, true);
+	}
+	
+	@Test
+	public void testBulkLoadDuplMixed() {
+		//mostly duplicates, the remaining keys are smaller or larger 
+		double[][] point_list = new double[20_000][];
+		Random R = new Random(0);
+		for (int i = 0; i < point_list.length; i++) {
+			double x = i % 10 == 0 ? R.nextInt(3) : 1;
+			point_list[i] = new double[] {x, 2 * x, 3};
+		}
+		KDTree<double[]> tree = KDTree.create(3);
+		tree.load(point_list, point_list);
+		int maxDepth = 32 - Integer.numberOfLeadingZeros(point_list.length) - 1;
+		//Ranges with few keys below the median are split unevenly, but not degenerated
+		assertTrue(tree.getDepth() <= 2 * maxDepth);
+		for (int x = 0; x < 3; x++) {
+			double[] key = {x, 2 * x, 3};
+			int n = 0;
+			for (double[] p : point_list) {
+				n += Arrays.equals(p, key) ? 1 : 0;
+			}
+			assertEquals(n, count(tree.query(key, key)));
+		}
+		smokeTest(point_list, true);
+	}
+	
+	@Test
+	public void smokeTestBulkLoad2D_Line() {
+		double[][] point_list = new double[10000][3];
+		int n = 0;
+		for (double[] p : point_list) {
+			p[0] = n % 3;
+			p[1] = n++; 
+			p[2] = n % 5;
+		}
+		smokeTest(point_list, true);
+	}
+	
+	@Test
+	public void smokeTestBulkLoad3D_Large() {
+		double[][] point_list = new double[100_000][3];
+		Random R = new Random(0);
+		for (double[] p : point_list) {
+			Arrays.setAll(p, (i) -> { return (double)R.nextInt(100);} );
+		}
+		smokeTest(point_list, true);
+	}
+	
+	@Test
+	public void testBulkLoadDepth() {
+		double[][] point_list = new double[100_000][3];
+		Random R = new Random(0);
+		for (double[] p : point_list) {
+			Arrays.setAll(p, (i) -> R.nextDouble());
+		}
+		KDTree<double[]> tree = KDTree.create(3);
+		tree.load(point_list, point_list);
+		assertEquals(point_list.length, tree.size());
+		assertEquals(point_list.length, tree.getNodeCount());
+		//depth is counted from 0
+		int maxDepth = 32 - Integer.numberOfLeadingZeros(point_list.length) - 1;
+		assertTrue(tree.getDepth() <= maxDepth);
+		
+		//insert after load
+		double[][] point_list2 = new double[1000][3];
+		for (double[] p : point_list2) {
+			Arrays.setAll(p, (i) -> R.nextDouble());
+			tree.insert(p, p);
+		}
+		for (double[] key : point_list2) {
+			assertTrue(tree.containsExact(key));
+		}
+		assertEquals(point_list.length + point_list2.length, tree.size());
+	}
+	
+	@Test
+	public void testFreeze() {
+		testFreeze(createData(20_000, 3, 0));
+		testFreeze(createData(1, 3, 0));
+		testFreeze(new double[0][3]);
+		double[][] dupl = new double[1000][3];
+		for (double[] p : dupl) {
+			Arrays.fill(p, 2);
+		}
+		testFreeze(dupl);
+	}
+	
+	private void testFreeze(double[][] point_list) {
+		int dims = 3;
+		KDTree<double[]> tree = KDTree.create(dims);
+		for (double[] data : point_list) {
+			tree.insert(data, data);
+		}
+		KDTreeStatic<double[]> frozen = tree.freeze();
+		assertEquals(tree.size(), frozen.size());
+		for (double[] key : point_list) {
+			assertTrue(Arrays.equals(key, frozen.queryExact(key)));
+		}
+		assertNull(frozen.queryExact(new double[] {-1, -1, -1}));
+		
+		Random R = new Random(0);
+		for (int i = 0; i < 100; i++) {
+			double[] min = new double[dims];
+			double[] max = new double[dims];
+			for (int d = 0; d < dims; d++) {
+				min[d] = R.nextInt(100);
+				max[d] = min[d] + R.nextInt(30);
+			}
+			int nExpected = 0;
+			for (double[] p : point_list) {
+				nExpected += KDTree.isEnclosed(p, min, max) ? 1 : 0;
+			}
+			assertEquals(nExpected, count(tree.query(min, max)));
+			assertEquals(nExpected, count(frozen.query(min, max)));
+			
+			Iterator<? extends PointEntryDist<double[]>> it1 = tree.queryKNN(min, 10);
+			Iterator<? extends PointEntryDist<double[]>> it2 = frozen.queryKNN(min, 10);
+			while (it1.hasNext()) {
+				assertEquals(it1.next().dist(), it2.next().dist(), 0.0);
+			}
+			assertFalse(it2.hasNext());
+		}
+		assertEquals(point_list.length, count(frozen.iterator()));
+	}
+	
+	@Test
+	public void testKnnReset() {
+		double[][] point_list = createData(10_000, 3, 0);
+		KDTree<double[]> tree = KDTree.create(3);
+		for (double[] data : point_list) {
+			tree.insert(data, data);
+		}
+		Random R = new Random(1);
+		QueryIteratorKNN<PointEntryDist<double[]>> it = null;
+		for (int i = 0; i < 100; i++) {
+			double[] center = new double[3];
+			Arrays.setAll(center, (d) -> (double)R.nextInt(100));
+			int k = 1 + R.nextInt(200);
+			double[] dists = new double[point_list.length];
+			for (int j = 0; j < point_list.length; j++) {
+				dists[j] = PointDistanceFunction.l2(center, point_list[j]);
+			}
+			Arrays.sort(dists);
+			it = it == null ? tree.queryKNN(center, k) : it.reset(center, k);
+			for (int j = 0; j < k; j++) {
+				PointEntryDist<double[]> e = it.next();
+				assertEquals(dists[j], e.dist(), 0.0);
+				assertEquals(dists[j], PointDistanceFunction.l2(center, e.point()), 0.0);
+			}
+			assertFalse(it.hasNext());
+		}
+	}
+	
+	@Test
+	public void testNearestNeighborsIncremental() {
+		double[][] point_list = createData(10_000, 3, 0);
+		KDTree<double[]> tree = KDTree.create(3);
+		for (double[] data : point_list) {
+			tree.insert(data, data);
+		}
+		Random R = new Random(1);
+		KDIteratorKNN<double[]> it = tree.queryNearestNeighbors(new double[3]);
+		for (int i = 0; i < 20; i++) {
+			double[] center = new double[3];
+			Arrays.setAll(center, (d) -> (double)R.nextInt(100));
+			double[] dists = new double[point_list.length];
+			for (int j = 0; j < point_list.length; j++) {
+				dists[j] = PointDistanceFunction.l2(center, point_list[j]);
+			}
+			Arrays.sort(dists);
+			//full iteration
+			it.reset(center);
+			int n = 0;
+			while (it.hasNext()) {
+				PointEntryDist<double[]> e = it.next();
+				assertEquals(dists[n++], e.dist(), 0.0);
+				assertEquals(e.dist(), PointDistanceFunction.l2(center, e.point()), 0.0);
+			}
+			assertEquals(point_list.length, n);
+			//limited iteration
+			int k = 1 + R.nextInt(100);
+			it.reset(center, k);
+			for (int j = 0; j < k; j++) {
+				assertEquals(dists[j], it.next().dist(), 0.0);
+			}
+			assertFalse(it.hasNext());
+		}
+	}
+	
+	@Test
+	public void testSplitPolicy() {
+		for (KDTree.SplitPolicy policy : KDTree.SplitPolicy.values()) {
+			testSplitPolicy(policy);
+		}
+	}
+	
+	private void testSplitPolicy(KDTree.SplitPolicy policy) {
+		int dims = 3;
+		int[] range = {10, 1000, 100};
+		//dimension '1' has the largest spread and variance
+		double[][] point_list = new double[20_000][dims];
+		Random R = new Random(0);
+		for (double[] p : point_list) {
+			Arrays.setAll(p, (i) -> { return (double)R.nextInt(range[i]);} );
+		}
+		KDTree<double[]> tree = KDTree.create(dims, PointDistanceFunction.L2, policy);
+		assertEquals(policy, tree.getSplitPolicy());
+		tree.load(point_list, point_list);
+		int expectedDim = policy == KDTree.SplitPolicy.ROUND_ROBIN ? 0 : 1;
+		assertEquals(expectedDim, tree.getRoot().getDim());
+		
+		for (double[] key : point_list) {
+			assertTrue(tree.containsExact(key));
+			assertEquals(0.0, tree.queryKNN(key, 1).next().dist(), 0.0);
+		}
+		for (int i = 0; i < 100; i++) {
+			double[] min = new double[dims];
+			double[] max = new double[dims];
+			for (int d = 0; d < dims; d++) {
+				min[d] = R.nextInt(range[d]);
+				max[d] = min[d] + R.nextInt(range[d] / 5);
+			}
+			int nExpected = 0;
+			for (double[] p : point_list) {
+				nExpected += KDTree.isEnclosed(p, min, max) ? 1 : 0;
+			}
+			assertEquals(nExpected, count(tree.query(min, max)));
+		}
+		
+		//insert() and remove() work on loaded trees
+		double[][] more = createData(1000, dims, 1);
+		for (double[] key : more) {
+			tree.insert(key, key);
+		}
+		for (double[] key : more) {
+			assertTrue(Arrays.equals(key, tree.remove(key)));
+		}
+		for (double[] key : point_list) {
+			assertTrue(Arrays.equals(key, tree.remove(key)));
+		}
+		assertEquals(0, tree.size());
+	}
+	
+	@Test
+	public void testRebalance() {
+		int dims = 3;
+		double alpha = 0.7;
+		int n = 20_000;
+		//Without rebalancing, sorted keys would result in a degenerate tree
+		double[][] point_list = new double[n][dims];
+		for (int i = 0; i < n; i++) {
+			Arrays.fill(point_list[i], i);
+		}
+		KDTree<double[]> tree = 
+				KDTree.create(dims, PointDistanceFunction.L2, KDTree.SplitPolicy.ROUND_ROBIN, alpha);
+		for (double[] key : point_list) {
+			tree.insert(key, key);
+		}
+		assertEquals(n, tree.size());
+		assertEquals(n, tree.getNodeCount());
+		assertTrue(tree.getDepth() <= Math.floor(Math.log(n) / Math.log(1 / alpha)));
+		for (double[] key : point_list) {
+			assertTrue(tree.containsExact(key));
+		}
+		
+		//churn, including duplicates
+		double[][] point_list2 = createData(n, dims, 0);
+		for (int i = 0; i < n; i++) {
+			tree.insert(point_list2[i], point_list2[i]);
+			if (i % 2 == 0) {
+				assertTrue(Arrays.equals(point_list[i], tree.remove(point_list[i])));
+			}
+		}
+		assertEquals(n + n / 2, tree.size());
+		assertEquals(n + n / 2, tree.getNodeCount());
+		for (int i = 0; i < n; i++) {
+			assertEquals(i % 2 == 1, tree.containsExact(point_list[i]));
+		}
+		Random R = new Random(0);
+		for (int i = 0; i < 100; i++) {
+			double[] min = new double[dims];
+			double[] max = new double[dims];
+			for (int d = 0; d < dims; d++) {
+				min[d] = R.nextInt(100);
+				max[d] = min[d] + R.nextInt(30);
+			}
+			int nExpected = 0;
+			for (double[] p : point_list2) {
+				nExpected += KDTree.isEnclosed(p, min, max) ? 1 : 0;
+			}
+			for (int j = 1; j < n; j += 2) {
+				nExpected += KDTree.isEnclosed(point_list[j], min, max) ? 1 : 0;
+			}
+			assertEquals(nExpected, count(tree.query(min, max)));
+		}
+		
+		for (double[] key : point_list2) {
+			assertTrue(Arrays.equals(key, tree.remove(key)));
+		}
+		for (int i = 1; i < n; i += 2) {
+			assertTrue(Arrays.equals(point_list[i], tree.remove(point_list[i])));
+		}
+		assertEquals(0, tree.size());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testRebalanceInvalidAlpha() {
+		KDTree.create(3, PointDistanceFunction.L2, KDTree.SplitPolicy.ROUND_ROBIN, 0.5);
+	}
+	
+	@Test
+	public void testQueryParallel() {
+		int dims = 3;
+		KDTree<double[]> tree = KDTree.create(dims);
+		assertTrue(tree.queryParallel(new double[dims], new double[dims]).isEmpty());
+		
+		double[][] point_list = createData(100_000, dims, 0);
+		for (double[] key : point_list) {
+			tree.insert(key, key);
+		}
+		//try to break the invariant
+		for (int i = 0; i < 1000; i++) {
+			tree.remove(point_list[i]);
+		}
+		
+		Random R = new Random(0);
+		for (int i = 0; i < 50; i++) {
+			double[] min = new double[dims];
+			double[] max = new double[dims];
+			for (int d = 0; d < dims; d++) {
+				min[d] = R.nextInt(100);
+				max[d] = min[d] + (i == 0 ? 100 : R.nextInt(50));
+			}
+			List<PointEntry<double[]>> expected = new ArrayList<>();
+			tree.query(min, max).forEachRemaining(expected::add);
+			
+			assertEquals(expected, tree.queryParallel(min, max));
+			
+			ConcurrentLinkedQueue<PointEntry<double[]>> queue = new ConcurrentLinkedQueue<>();
+			tree.queryParallel(min, max, queue::add);
+			assertEquals(expected.size(), queue.size());
+			Set<PointEntry<double[]>> set = Collections.newSetFromMap(new IdentityHashMap<>());
+			set.addAll(queue);
+			assertTrue(set.containsAll(expected));
+		}
+	}
+	
+	@Test
+	public void testKnnApproximate() {
+		int dims = 3;
+		double[][] point_list = new double[50_000][dims];
+		Random R = new Random(0);
+		for (double[] p : point_list) {
+			Arrays.setAll(p, (i) -> R.nextDouble());
+		}
+		KDTree<double[]> tree = KDTree.create(dims);
+		for (double[] key : point_list) {
+			tree.insert(key, key);
+		}
+		
+		double epsilon = 0.5;
+		int k = 10;
+		long nDistExact = 0;
+		long nDistApprox = 0;
+		long nDist1Exact = 0;
+		long nDist1Approx = 0;
+		for (int i = 0; i < 100; i++) {
+			double[] center = new double[dims];
+			Arrays.setAll(center, (j) -> R.nextDouble());
+			
+			long n0 = tree.getStats().getNDistCalcKNN();
+			List<KDEntryDist<double[]>> exact = tree.knnQuery(center, k);
+			long n1 = tree.getStats().getNDistCalcKNN();
+			List<KDEntryDist<double[]>> exact2 = tree.knnQuery(center, k, 0, Integer.MAX_VALUE);
+			long n2 = tree.getStats().getNDistCalcKNN();
+			List<KDEntryDist<double[]>> approx = tree.knnQuery(center, k, epsilon, Integer.MAX_VALUE);
+			long n3 = tree.getStats().getNDistCalcKNN();
+			nDistExact += n1 - n0;
+			assertEquals(n1 - n0, n2 - n1);
+			nDistApprox += n3 - n2;
+			
+			assertEquals(k, exact2.size());
+			assertEquals(k, approx.size());
+			for (int j = 0; j < k; j++) {
+				assertEquals(exact.get(j).dist(), exact2.get(j).dist(), 0.0);
+				assertTrue(approx.get(j).dist() <= (1 + epsilon) * exact.get(j).dist());
+			}
+			
+			n0 = tree.getStats().getNDistCalc1NN();
+			KDEntryDist<double[]> nn = tree.nnQuery(center);
+			n1 = tree.getStats().getNDistCalc1NN();
+			KDEntryDist<double[]> nnApprox = tree.nnQuery(center, epsilon, Integer.MAX_VALUE);
+			n2 = tree.getStats().getNDistCalc1NN();
+			nDist1Exact += n1 - n0;
+			nDist1Approx += n2 - n1;
+			assertEquals(exact.get(0).dist(), nn.dist(), 0.0);
+			assertTrue(nnApprox.dist() <= (1 + epsilon) * nn.dist());
+			
+			//limit number of examined nodes
+			n0 = tree.getStats().getNDistCalcKNN();
+			List<KDEntryDist<double[]>> limited = tree.knnQuery(center, k, 0, 20);
+			n1 = tree.getStats().getNDistCalcKNN();
+			assertTrue(n1 - n0 <= 20);
+			assertTrue(limited.size() >= 1 && limited.size() <= k);
+			for (int j = 1; j < limited.size(); j++) {
+				assertTrue(limited.get(j - 1).dist() <= limited.get(j).dist());
+			}
+			assertTrue(limited.get(0).dist() >= exact.get(0).dist());
+		}
+		assertTrue(nDistApprox < nDistExact);
+		assertTrue(nDist1Approx <= nDist1Exact);
+	}
+	
+	@Test
+	public void testKnnDistanceFunctions() {
+		testKnnDistanceFunctions(3);
+	}
+
+	@Test
+	public void testKnnDistanceFunctionsHighDim() {
+		//Distance calculations are aborted early in high dimensions
+		testKnnDistanceFunctions(64);
+	}
+
+	@Test
+	public void testDistanceWithMaxDist() {
+		Random R = new Random(0);
+		for (PointDistanceFunction fn : 
+				new PointDistanceFunction[]{PointDistanceFunction.L1, PointDistanceFunction.L2}) {
+			for (int i = 0; i < 1000; i++) {
+				double[] p1 = new double[16];
+				double[] p2 = new double[16];
+				Arrays.setAll(p1, (j) -> R.nextDouble());
+				Arrays.setAll(p2, (j) -> R.nextDouble());
+				double d = fn.dist(p1, p2);
+				double dc = fn.distComparable(p1, p2);
+				double max = R.nextDouble() * 3;
+				double maxC = fn.toComparable(max);
+				double dMax = fn.dist(p1, p2, max);
+				double dcMax = fn.distComparable(p1, p2, maxC);
+				assertTrue(dMax == d || (d > max && dMax > max));
+				assertTrue(dcMax == dc || (dc > maxC && dcMax > maxC));
+				assertEquals(d, fn.dist(p1, p2, d), 0.0);
+				assertEquals(dc, fn.distComparable(p1, p2, dc), 0.0);
+				assertEquals(d, fn.toDist(dc), 1e-12);
+			}
+		}
+	}
+
+	private void testKnnDistanceFunctions(int dims) {
+		double[][] point_list = new double[5_000][dims];
+		Random R = new Random(0);
+		for (double[] p : point_list) {
+			Arrays.setAll(p, (i) -> R.nextDouble());
+		}
+		int k = 10;
+		for (PointDistanceFunction fn : 
+				new PointDistanceFunction[]{PointDistanceFunction.L1, PointDistanceFunction.L2}) {
+			KDTree<double[]> tree = KDTree.create(dims, fn);
+			for (double[] key : point_list) {
+				tree.insert(key, key);
+			}
+			
+			for (int i = 0; i < 100; i++) {
+				double[] center = new double[dims];
+				Arrays.setAll(center, (j) -> R.nextDouble());
+				double[] expected = new double[point_list.length];
+				for (int j = 0; j < point_list.length; j++) {
+					expected[j] = fn.dist(center, point_list[j]);
+				}
+				Arrays.sort(expected);
+				
+				//Returned distances must be real distances, not comparable distances
+				List<KDEntryDist<double[]>> knn = tree.knnQuery(center, k);
+				QueryIteratorKNN<PointEntryDist<double[]>> itKnn = tree.queryKNN(center, k);
+				KDIteratorKNN<double[]> itInc = tree.queryNearestNeighbors(center);
+				for (int j = 0; j < k; j++) {
+					assertEquals(expected[j], knn.get(j).dist(), 1e-12);
+					assertEquals(fn.dist(center, knn.get(j).point()), knn.get(j).dist(), 1e-12);
+					assertEquals(expected[j], itKnn.next().dist(), 1e-12);
+					assertEquals(expected[j], itInc.next().dist(), 1e-12);
+				}
+				assertEquals(expected[0], tree.nnQuery(center).dist(), 1e-12);
+			}
+		}
+	}
+
+	@Test
+	public void testRangeQuery() {
+		int dims = 3;
+		double[][] point_list = new double[20_000][dims];
+		Random R = new Random(0);
+		for (double[] p : point_list) {
+			//Use a coarse grid to get duplicates and points on splitting planes
+			Arrays.setAll(p, (i) -> (double) R.nextInt(50));
+		}
+		for (PointDistanceFunction fn : 
+				new PointDistanceFunction[]{PointDistanceFunction.L1, PointDistanceFunction.L2}) {
+			KDTree<double[]> tree = KDTree.create(dims, fn);
+			for (double[] key : point_list) {
+				tree.insert(key, key);
+			}
+			
+			double[] center = new double[dims];
+			QueryIteratorRange<PointEntry<double[]>> it = tree.queryRange(center, 0);
+			for (int i = 0; i < 100; i++) {
+				Arrays.setAll(center, (j) -> R.nextInt(50));
+				double radius = R.nextInt(8);
+				int expected = 0;
+				for (double[] p : point_list) {
+					if (fn.dist(center, p) <= radius) {
+						expected++;
+					}
+				}
+				assertEquals(expected, tree.rangeQuery(center, radius).size());
+				
+				int n = 0;
+				it.reset(center, radius);
+				while (it.hasNext()) {
+					assertTrue(fn.dist(center, it.next().point()) <= radius);
+					n++;
+				}
+				assertEquals(expected, n);
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testKnnApproximateInvalidEpsilon() {
+		KDTree<double[]> tree = KDTree.create(3);
+		tree.knnQuery(new double[3], 1, -1, 10);
+	}
+	
+	private static int count(Iterator<?> it) {
+		int n = 0;
+		while (it.hasNext()) {
+			it.next();
+			n++;
+		}
+		return n;
+	}
+	
 	private void smokeTest(double[][] point_list) {
+		smokeTest(point_list, false);
+	}
+	
+	private void smokeTest(double[][] point_list, boolean bulkLoad) {
 		int dim = point_list[0].length;
 		KDTree<double[]> tree = KDTree.create(dim);
-		for (double[] data : point_list) {
-			tree.insert(data, data);
+		if (bulkLoad) {
+			tree.load(point_list, point_list);
+		} else {
+			for (double[] data : point_list) {
+				tree.insert(data, data);
+			}
 		}
 //	    System.out.println(tree.toStringTree());
 		for (double[] key : point_list) {
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.rtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.tinspin.index.RectangleDistanceFunction;
+import org.tinspin.index.RectangleEntry;
+import org.tinspin.index.RectangleEntryDist;
+import org.tinspin.index.rtree.RTree.LoadPolicy;
+
+public class HilbertLoaderTest {
+
+	@Test
+	public void testHilbertCurve2D() {
+		testHilbertCurve(2, 4);
+	}
+
+	@Test
+	public void testHilbertCurve3D() {
+		testHilbertCurve(3, 3);
+	}
+
+	@Test
+	public void testHilbertCurve5D() {
+		testHilbertCurve(5, 2);
+	}
+
+	/**
+	 * Consecutive cells on the Hilbert curve must be neighbors.
+	 */
+	private void testHilbertCurve(int dims, int bits) {
+		int nCells = 1 << (dims * bits);
+		long[][] cells = new long[nCells][];
+		long[][] keys = new long[nCells][];
+		for (int i = 0; i < nCells; i++) {
+			cells[i] = new long[dims];
+			for (int d = 0; d < dims; d++) {
+				cells[i][d] = (i >> (d * bits)) & ((1 << bits) - 1);
+			}
+			keys[i] = HilbertLoader.hilbertValue(cells[i].clone(), bits);
+		}
+		//Hilbert values must be a permutation of [0, nCells)
+		long[][] ordered = new long[nCells][];
+		for (int i = 0; i < nCells; i++) {
+			int h = (int) (keys[i][0] >>> (64 - dims * bits));
+			assertEquals(null, ordered[h]);
+			ordered[h] = cells[i];
+		}
+		for (int i = 1; i < nCells; i++) {
+			int dist = 0;
+			for (int d = 0; d < dims; d++) {
+				dist += Math.abs(ordered[i][d] - ordered[i-1][d]);
+			}
+			assertEquals(1, dist);
+		}
+	}
+
+	@Test
+	public void testLoad2D() {
+		testLoad(100_000, 2);
+	}
+
+	@Test
+	public void testLoad3D() {
+		testLoad(50_000, 3);
+	}
+
+	@Test
+	public void testLoad10D() {
+		testLoad(10_000, 10);
+	}
+
+	@Test
+	public void testLoadSmall() {
+		testLoad(1, 2);
+		testLoad(11, 3);
+	}
+
+	private void testLoad(int n, int dims) {
+		Entry<Integer>[] entries = RTreeTestData.createEntries(0, n, dims, 0.01, new Random(0));
+		Entry<Integer>[] data = entries.clone();
+		RTree<Integer> tree = RTree.createRStar(dims);
+		tree.load(entries, LoadPolicy.HILBERT);
+		assertEquals(n, tree.size());
+		assertEquals(n, tree.getStats().getEntryCount());
+		for (Entry<Integer> e : data) {
+			assertNotNull(tree.queryExact(e.lower(), e.upper()));
+		}
+		
+		Random R = new Random(1);
+		for (int i = 0; i < 20; i++) {
+			double[] min = new double[dims];
+			double[] max = new double[dims];
+			for (int d = 0; d < dims; d++) {
+				min[d] = R.nextDouble() * 0.9;
+				max[d] = min[d] + 0.3;
+			}
+			int nExpected = 0;
+			for (Entry<Integer> e : data) {
+				if (Entry.checkOverlap(min, max, e)) {
+					nExpected++;
+				}
+			}
+			int nFound = 0;
+			for (RectangleEntry<Integer> e : iterable(tree.queryIntersect(min, max))) {
+				assertTrue(Entry.checkOverlap(min, max, (Entry<?>) e));
+				nFound++;
+			}
+			assertEquals(nExpected, nFound);
+			
+			double[] dists = new double[data.length];
+			for (int j = 0; j < data.length; j++) {
+				dists[j] = RectangleDistanceFunction.edgeDistance(min, data[j].lower(), data[j].upper());
+			}
+			Arrays.sort(dists);
+			int k = Math.min(5, n);
+			int j = 0;
+			for (RectangleEntryDist<Integer> e : iterable(tree.queryKNN(min, k))) {
+				assertEquals(dists[j++], e.dist(), 0.0);
+			}
+			assertEquals(k, j);
+		}
+		
+		//the tree remains updatable
+		for (int i = 0; i < data.length; i += 2) {
+			assertNotNull(tree.remove(data[i].lower(), data[i].upper()));
+		}
+		assertEquals(n / 2, tree.size());
+		assertEquals(n / 2, tree.getStats().getEntryCount());
+	}
+
+	private static <E> Iterable<E> iterable(java.util.Iterator<E> it) {
+		return () -> it;
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.rtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.tinspin.index.rtree.RTree.LoadPolicy;
+
+/**
+ * Compares countContained() and countIntersect() with the results of window queries.
+ */
+public class RTreeCountTest {
+
+	private static final int DIMS = 2;
+	private static final int N = 20_000;
+
+	@Test
+	public void testInsert() {
+		for (RTree<Integer> tree : trees()) {
+			Entry<Integer>[] data = RTreeTestData.createEntries(0, N, DIMS, 0.01, new Random(0));
+			for (Entry<Integer> e : data) {
+				tree.insert(e);
+			}
+			check(tree);
+		}
+	}
+
+	@Test
+	public void testRemove() {
+		for (RTree<Integer> tree : trees()) {
+			Entry<Integer>[] data = RTreeTestData.createEntries(0, N, DIMS, 0.01, new Random(0));
+			for (Entry<Integer> e : data) {
+				tree.insert(e);
+			}
+			for (int i = 0; i < N; i += 3) {
+				assertNotNull(tree.remove(data[i].lower(), data[i].upper()));
+			}
+			check(tree);
+			for (int i = 0; i < N; i++) {
+				tree.remove(data[i].lower(), data[i].upper());
+			}
+			assertEquals(0, tree.size());
+			check(tree);
+		}
+	}
+
+	@Test
+	public void testUpdate() {
+		Random R = new Random(0);
+		for (RTree<Integer> tree : trees()) {
+			Entry<Integer>[] data = RTreeTestData.createEntries(0, N, DIMS, 0.01, R);
+			for (Entry<Integer> e : data) {
+				tree.insert(e);
+			}
+			Entry<Integer>[] moved = RTreeTestData.createEntries(0, N / 2, DIMS, 0.01, R);
+			for (int i = 0; i < moved.length; i++) {
+				assertNotNull(tree.update(data[i].lower(), data[i].upper(), 
+						moved[i].lower(), moved[i].upper()));
+			}
+			check(tree);
+		}
+	}
+
+	@Test
+	public void testLoad() {
+		for (LoadPolicy policy : LoadPolicy.values()) {
+			for (int n : new int[] {1, 17, N}) {
+				RTree<Integer> tree = RTree.createRStar(DIMS);
+				tree.load(RTreeTestData.createEntries(0, n, DIMS, 0.01, new Random(0)), policy);
+				check(tree);
+				//modify the loaded tree
+				Entry<Integer>[] more = RTreeTestData.createEntries(0, n / 2, DIMS, 0.01, new Random(1));
+				for (Entry<Integer> e : more) {
+					tree.insert(e);
+				}
+				for (int i = 0; i < more.length; i += 2) {
+					tree.remove(more[i].lower(), more[i].upper());
+				}
+				check(tree);
+			}
+		}
+	}
+
+	@Test
+	public void testInsertBulk() {
+		RTree<Integer> tree = RTree.createRStar(DIMS);
+		Entry<Integer>[] data = RTreeTestData.createEntries(0, N, DIMS, 0.01, new Random(0));
+		for (int i = 0; i < 15_000; i++) {
+			tree.insert(data[i]);
+		}
+		tree.insertBulk(Arrays.copyOfRange(data, 15_000, N));
+		check(tree);
+	}
+
+	private static List<RTree<Integer>> trees() {
+		List<RTree<Integer>> trees = new ArrayList<>();
+		trees.add(RTree.createRStar(DIMS));
+		trees.add(RTree.createRStar(DIMS, 4, 4));
+		trees.add(RTree.createQuadratic(DIMS));
+		return trees;
+	}
+
+	private static void check(RTree<Integer> tree) {
+		//validates the entry counts of all nodes
+		assertEquals(tree.size(), tree.getStats().getEntryCount());
+		Random R = new Random(0);
+		double[] min = new double[DIMS];
+		double[] max = new double[DIMS];
+		for (int i = 0; i < 200; i++) {
+			double len = R.nextDouble() * 0.5;
+			for (int d = 0; d < DIMS; d++) {
+				min[d] = R.nextDouble() - 0.1;
+				max[d] = min[d] + len;
+			}
+			int nContained = 0;
+			int nIntersect = 0;
+			for (RTreeIterator<Integer> it = tree.queryIntersect(min, max); it.hasNext(); ) {
+				Entry<Integer> e = it.next();
+				if (Entry.calcIncludes(min, max, e.lower(), e.upper())) {
+					nContained++;
+				}
+				nIntersect++;
+			}
+			assertEquals(nContained, tree.countContained(min, max));
+			assertEquals(nIntersect, tree.countIntersect(min, max));
+		}
+		Arrays.fill(min, Double.NEGATIVE_INFINITY);
+		Arrays.fill(max, Double.POSITIVE_INFINITY);
+		assertEquals(tree.size(), tree.countContained(min, max));
+	}
+}
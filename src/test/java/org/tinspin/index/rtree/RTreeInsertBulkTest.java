@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.rtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RTreeInsertBulkTest {
+
+	@Test
+	public void testSmallBatch() {
+		test(50_000, 1_000, 3);
+	}
+
+	@Test
+	public void testLargeBatch() {
+		test(50_000, 30_000, 3);
+	}
+
+	@Test
+	public void testBatchLargerThanTree() {
+		test(10_000, 20_000, 2);
+	}
+
+	@Test
+	public void testSmallTree() {
+		test(5, 3, 2);
+		test(5, 30, 2);
+		test(50, 12, 2);
+	}
+
+	@Test
+	public void testHighDim() {
+		test(20_000, 5_000, 10);
+	}
+
+	@Test
+	public void testRepeated() {
+		int dims = 2;
+		Random R = new Random(0);
+		RTree<Integer> tree = RTree.createRStar(dims);
+		Entry<Integer>[] all = RTreeTestData.createEntries(0, 0, dims, 0.001, R);
+		for (int i = 0; i < 10; i++) {
+			Entry<Integer>[] batch = RTreeTestData.createEntries(all.length, 5_000 + i * 1000, dims, 0.001, R);
+			tree.insertBulk(batch.clone());
+			all = concat(all, batch);
+			check(tree, all);
+		}
+	}
+
+	private void test(int nTree, int nBatch, int dims) {
+		Random R = new Random(0);
+		Entry<Integer>[] data = RTreeTestData.createEntries(0, nTree, dims, 0.001, R);
+		RTree<Integer> tree = RTree.createRStar(dims);
+		for (Entry<Integer> e : data) {
+			tree.insert(e);
+		}
+		Entry<Integer>[] batch = RTreeTestData.createEntries(nTree, nBatch, dims, 0.001, R);
+		tree.insertBulk(batch.clone());
+		check(tree, concat(data, batch));
+	}
+
+	private void check(RTree<Integer> tree, Entry<Integer>[] all) {
+		assertEquals(all.length, tree.size());
+		assertEquals(all.length, tree.getStats().getEntryCount());
+		for (Entry<Integer> e : all) {
+			assertNotNull(tree.queryExact(e.lower(), e.upper()));
+		}
+		Random R = new Random(1);
+		int dims = tree.getDims();
+		for (int i = 0; i < 20; i++) {
+			double[] min = new double[dims];
+			double[] max = new double[dims];
+			for (int d = 0; d < dims; d++) {
+				min[d] = R.nextDouble();
+				max[d] = min[d] + 0.2;
+			}
+			int nExpected = 0;
+			for (Entry<Integer> e : all) {
+				if (Entry.checkOverlap(min, max, e)) {
+					nExpected++;
+				}
+			}
+			int n = 0;
+			for (RTreeIterator<Integer> it = tree.queryIntersect(min, max); it.hasNext(); it.next()) {
+				n++;
+			}
+			assertEquals(nExpected, n);
+		}
+		//the tree remains updatable
+		for (int i = 0; i < all.length; i += 3) {
+			assertNotNull(tree.remove(all[i].lower(), all[i].upper()));
+		}
+		tree.getStats();
+		for (int i = 0; i < all.length; i += 3) {
+			tree.insert(all[i]);
+		}
+		assertEquals(all.length, tree.getStats().getEntryCount());
+	}
+
+	private static Entry<Integer>[] concat(Entry<Integer>[] a1, Entry<Integer>[] a2) {
+		Entry<Integer>[] all = java.util.Arrays.copyOf(a1, a1.length + a2.length);
+		System.arraycopy(a2, 0, all, a1.length, a2.length);
+		return all;
+	}
+}
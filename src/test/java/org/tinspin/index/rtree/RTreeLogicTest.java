@@ -0,0 +1,200 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.rtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.tinspin.index.RectangleDistanceFunction;
+import org.tinspin.index.RectangleEntryDist;
+
+@RunWith(Parameterized.class)
+public class RTreeLogicTest {
+
+	private final String name;
+
+	public RTreeLogicTest(String name) {
+		this.name = name;
+	}
+
+	@Parameters
+	public static Collection<Object[]> candidates() {
+		List<Object[]> l = new ArrayList<>();
+		l.add(new Object[]{"RSTAR"});
+		l.add(new Object[]{"LINEAR"});
+		l.add(new Object[]{"QUADRATIC"});
+		return l;
+	}
+
+	private <T> RTree<T> create(int dims) {
+		switch (name) {
+		case "RSTAR": return RTree.createRStar(dims);
+		case "LINEAR": return RTree.createLinear(dims);
+		case "QUADRATIC": return RTree.createQuadratic(dims);
+		default: throw new IllegalArgumentException(name);
+		}
+	}
+
+	@Test
+	public void testSmall() {
+		for (int n = 0; n < 50; n++) {
+			test(n, 2);
+		}
+	}
+
+	@Test
+	public void test2D() {
+		test(20_000, 2);
+	}
+
+	@Test
+	public void test3D() {
+		test(20_000, 3);
+	}
+
+	@Test
+	public void testHighDim() {
+		test(5_000, 10);
+	}
+
+	@Test
+	public void testDuplicates() {
+		int dims = 2;
+		RTree<Integer> tree = create(dims);
+		double[] p = {0.5, 0.5};
+		for (int i = 0; i < 1000; i++) {
+			tree.insert(p, i);
+		}
+		assertEquals(1000, tree.getStats().getEntryCount());
+		for (int i = 0; i < 1000; i++) {
+			assertNotNull(tree.remove(p, p));
+		}
+		assertNull(tree.remove(p, p));
+		assertEquals(0, tree.size());
+	}
+
+	@Test
+	public void testInsertBulk() {
+		int dims = 3;
+		Random R = new Random(0);
+		Entry<Integer>[] data = RTreeTestData.createEntries(0, 10_000, dims, 0.01, R);
+		RTree<Integer> tree = create(dims);
+		for (Entry<Integer> e : data) {
+			tree.insert(e);
+		}
+		Entry<Integer>[] batch = RTreeTestData.createEntries(data.length, 3_000, dims, 0.01, R);
+		tree.insertBulk(batch.clone());
+		assertEquals(data.length + batch.length, tree.getStats().getEntryCount());
+		for (Entry<Integer> e : batch) {
+			assertNotNull(tree.queryExact(e.lower(), e.upper()));
+		}
+	}
+
+	private void test(int n, int dims) {
+		Random R = new Random(0);
+		Entry<Integer>[] data = RTreeTestData.createEntries(0, n, dims, 0.01, R);
+		RTree<Integer> tree = create(dims);
+		for (Entry<Integer> e : data) {
+			tree.insert(e);
+		}
+		assertEquals(n, tree.size());
+		assertEquals(n, tree.getStats().getEntryCount());
+		for (Entry<Integer> e : data) {
+			assertEquals(e.value(), tree.queryExact(e.lower(), e.upper()));
+		}
+		checkWindowQueries(tree, data, R);
+		checkKnnQueries(tree, data, R);
+
+		//remove every second entry
+		for (int i = 0; i < n; i += 2) {
+			assertEquals(data[i].value(), tree.remove(data[i].lower(), data[i].upper()));
+		}
+		tree.getStats();
+		for (int i = 0; i < n; i++) {
+			Integer v = tree.queryExact(data[i].lower(), data[i].upper());
+			if (i % 2 == 0) {
+				assertNull(v);
+			} else {
+				assertEquals(data[i].value(), v);
+			}
+		}
+		for (int i = 1; i < n; i += 2) {
+			assertNotNull(tree.remove(data[i].lower(), data[i].upper()));
+		}
+		assertEquals(0, tree.size());
+	}
+
+	private static void checkWindowQueries(RTree<Integer> tree, Entry<Integer>[] data, Random R) {
+		int dims = tree.getDims();
+		for (int i = 0; i < 20; i++) {
+			double[] min = new double[dims];
+			double[] max = new double[dims];
+			for (int d = 0; d < dims; d++) {
+				min[d] = R.nextDouble();
+				max[d] = min[d] + 0.3;
+			}
+			int nExpected = 0;
+			for (Entry<Integer> e : data) {
+				if (Entry.checkOverlap(min, max, e)) {
+					nExpected++;
+				}
+			}
+			int nFound = 0;
+			for (RTreeIterator<Integer> it = tree.queryIntersect(min, max); it.hasNext(); it.next()) {
+				nFound++;
+			}
+			assertEquals(nExpected, nFound);
+		}
+	}
+
+	private static void checkKnnQueries(RTree<Integer> tree, Entry<Integer>[] data, Random R) {
+		int dims = tree.getDims();
+		int k = Math.min(10, data.length);
+		for (int i = 0; i < 10; i++) {
+			double[] center = new double[dims];
+			for (int d = 0; d < dims; d++) {
+				center[d] = R.nextDouble();
+			}
+			double[] expected = new double[data.length];
+			for (int j = 0; j < data.length; j++) {
+				expected[j] = RectangleDistanceFunction.EDGE.dist(center, 
+						data[j].lower(), data[j].upper());
+			}
+			Arrays.sort(expected);
+			int nFound = 0;
+			RTreeQueryKnn<Integer> it = tree.queryKNN(center, k);
+			while (it.hasNext()) {
+				RectangleEntryDist<Integer> e = it.next();
+				assertEquals(expected[nFound], e.dist(), 0.0);
+				nFound++;
+			}
+			assertEquals(k, nFound);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.rtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.tinspin.index.rtree.RTree.LoadPolicy;
+
+public class RTreeNodeCapacityTest {
+
+	private static final int[][] CAPACITIES = {{4, 4}, {5, 9}, {16, 16}, {50, 56}, {64, 8}};
+
+	@Test
+	public void testInsert() {
+		for (int[] c : CAPACITIES) {
+			Entry<Integer>[] data = RTreeTestData.createEntries(0, 20_000, 3, 0.001, new Random(0));
+			RTree<Integer> tree = RTree.createRStar(3, c[0], c[1]);
+			for (Entry<Integer> e : data) {
+				tree.insert(e);
+			}
+			check(tree, data);
+		}
+	}
+
+	@Test
+	public void testGuttman() {
+		for (int[] c : CAPACITIES) {
+			Entry<Integer>[] data = RTreeTestData.createEntries(0, 10_000, 2, 0.001, new Random(0));
+			RTree<Integer> tree = RTree.create(2, new QuadraticTreeLogic(c[0], c[1]));
+			for (Entry<Integer> e : data) {
+				tree.insert(e);
+			}
+			check(tree, data);
+		}
+	}
+
+	@Test
+	public void testLoad() {
+		for (LoadPolicy policy : LoadPolicy.values()) {
+			for (int[] c : CAPACITIES) {
+				for (int n : new int[] {1, 3, 17, 20_000}) {
+					Entry<Integer>[] data = RTreeTestData.createEntries(0, n, 3, 0.001, new Random(0));
+					RTree<Integer> tree = RTree.createRStar(3, c[0], c[1]);
+					tree.load(data.clone(), policy);
+					check(tree, data);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testInsertBulk() {
+		for (int[] c : CAPACITIES) {
+			Entry<Integer>[] data = RTreeTestData.createEntries(0, 20_000, 2, 0.001, new Random(0));
+			RTree<Integer> tree = RTree.createRStar(2, c[0], c[1]);
+			for (int i = 0; i < 15_000; i++) {
+				tree.insert(data[i]);
+			}
+			tree.insertBulk(Arrays.copyOfRange(data, 15_000, data.length));
+			check(tree, data);
+		}
+	}
+
+	@Test
+	public void testFanOut() {
+		Entry<Integer>[] data = RTreeTestData.createEntries(0, 20_000, 2, 0.001, new Random(0));
+		RTree<Integer> small = RTree.createRStar(2, 8, 8);
+		RTree<Integer> large = RTree.createRStar(2, 64, 64);
+		for (Entry<Integer> e : data) {
+			small.insert(e);
+			large.insert(e);
+		}
+		assertTrue(small.getDepth() > large.getDepth());
+		assertTrue(small.getNodeCount() > 4 * large.getNodeCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCapacityTooSmall() {
+		RTree.createRStar(2, 3, 10);
+	}
+
+	private static void check(RTree<Integer> tree, Entry<Integer>[] data) {
+		//validates node sizes
+		assertEquals(data.length, tree.getStats().getEntryCount());
+		for (Entry<Integer> e : data) {
+			assertNotNull(tree.queryExact(e.lower(), e.upper()));
+		}
+		RTreeQueryKnn<Integer> knn = tree.queryKNN(data[0].lower(), 1);
+		assertEquals(0, knn.next().dist(), 0.0);
+		for (int i = 0; i < data.length; i += 2) {
+			assertNotNull(tree.remove(data[i].lower(), data[i].upper()));
+		}
+		assertEquals(data.length / 2, tree.getStats().getEntryCount());
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.rtree;
+
+import java.util.Random;
+
+/**
+ * Test data for the R-Tree tests.
+ */
+class RTreeTestData {
+
+	private RTreeTestData() {
+		//utility class
+	}
+
+	/**
+	 * Creates random rectangles in the unit cube.
+	 * @param offset value of the first entry, the values are consecutive
+	 * @param n number of entries
+	 * @param dims dimensionality
+	 * @param maxExtent maximum extent of a rectangle in each dimension
+	 * @param R random generator
+	 * @return the entries
+	 */
+	@SuppressWarnings("unchecked")
+	static Entry<Integer>[] createEntries(int offset, int n, int dims, double maxExtent, Random R) {
+		Entry<Integer>[] entries = new Entry[n];
+		for (int i = 0; i < n; i++) {
+			double[] lo = new double[dims];
+			double[] up = new double[dims];
+			for (int d = 0; d < dims; d++) {
+				lo[d] = R.nextDouble();
+				up[d] = lo[d] + R.nextDouble() * maxExtent;
+			}
+			entries[i] = new Entry<>(lo, up, offset + i);
+		}
+		return entries;
+	}
+
+	/**
+	 * Creates random rectangles on a coarse integer grid, this results in many 
+	 * rectangles with equal coordinates.
+	 * @param n number of entries
+	 * @param dims dimensionality
+	 * @param R random generator
+	 * @return the entries, the values are 0 to n-1
+	 */
+	@SuppressWarnings("unchecked")
+	static Entry<Integer>[] createGridEntries(int n, int dims, Random R) {
+		Entry<Integer>[] entries = new Entry[n];
+		for (int i = 0; i < n; i++) {
+			double[] lo = new double[dims];
+			double[] up = new double[dims];
+			for (int d = 0; d < dims; d++) {
+				lo[d] = R.nextInt(1000);
+				up[d] = lo[d] + R.nextInt(3);
+			}
+			entries[i] = new Entry<>(lo, up, i);
+		}
+		return entries;
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.rtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class STRLoaderTest {
+
+	@Test
+	public void testParallelEqualsSequential2D() {
+		testParallelEqualsSequential(200_000, 2);
+	}
+
+	@Test
+	public void testParallelEqualsSequential3D() {
+		testParallelEqualsSequential(100_000, 3);
+	}
+
+	@Test
+	public void testParallelEqualsSequential10D() {
+		testParallelEqualsSequential(20_000, 10);
+	}
+
+	@Test
+	public void testSmall() {
+		testParallelEqualsSequential(5, 3);
+		testParallelEqualsSequential(1000, 3);
+	}
+
+	private void testParallelEqualsSequential(int n, int dims) {
+		Entry<Integer>[] entries1 = RTreeTestData.createGridEntries(n, dims, new Random(0));
+		Entry<Integer>[] entries2 = entries1.clone();
+		RTree<Integer> seq = RTree.createRStar(dims);
+		seq.load(entries1, false);
+		RTree<Integer> par = RTree.createRStar(dims);
+		par.load(entries2, true);
+
+		assertEquals(n, par.size());
+		assertEquals(seq.getDepth(), par.getDepth());
+		assertEquals(seq.getNodeCount(), par.getNodeCount());
+		assertEquals(n, par.getStats().getEntryCount());
+		assertEqualNodes(seq.getRoot(), par.getRoot());
+
+		for (Entry<Integer> e : entries1) {
+			assertNotNull(par.queryExact(e.lower(), e.upper()));
+		}
+	}
+
+	private static void assertEqualNodes(Entry<Integer> e1, Entry<Integer> e2) {
+		assertTrue(Entry.calcIncludes(e1.lower(), e1.upper(), e2.lower(), e2.upper()));
+		assertTrue(Entry.calcIncludes(e2.lower(), e2.upper(), e1.lower(), e1.upper()));
+		if (!(e1 instanceof RTreeNode)) {
+			assertSame(e1, e2);
+			return;
+		}
+		ArrayList<Entry<Integer>> c1 = ((RTreeNode<Integer>) e1).getEntries();
+		ArrayList<Entry<Integer>> c2 = ((RTreeNode<Integer>) e2).getEntries();
+		assertEquals(c1.size(), c2.size());
+		for (int i = 0; i < c1.size(); i++) {
+			assertEqualNodes(c1.get(i), c2.get(i));
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.rtreepacked;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.tinspin.index.test.util.PointIndexTestUtil.createData;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.tinspin.index.QueryIterator;
+import org.tinspin.index.QueryIteratorKNN;
+import org.tinspin.index.RectangleDistanceFunction;
+import org.tinspin.index.RectangleEntry;
+import org.tinspin.index.RectangleEntryDist;
+
+public class RTreePackedTest {
+
+	@Test
+	public void smokeTestShort() {
+		double[][] lower = {{2,3}, {5,4}, {9,6}, {4,7}, {8,1}, {7,2}};
+		smokeTest(lower, lower);
+	}
+	
+	@Test
+	public void smokeTestDupl() {
+		double[][] lower = new double[100][2];
+		double[][] upper = new double[100][2];
+		for (int i = 0; i < lower.length; i++) {
+			lower[i] = new double[] {2, 3};
+			upper[i] = new double[] {4, 5};
+		}
+		smokeTest(lower, upper);
+	}
+	
+	@Test
+	public void smokeTest3D_Large() {
+		double[][] lower = createData(50_000, 3, 0);
+		smokeTest(lower, createUpper(lower, 0));
+	}
+	
+	@Test
+	public void smokeTest10D() {
+		double[][] lower = createData(10_000, 10, 0);
+		smokeTest(lower, createUpper(lower, 0));
+	}
+	
+	@Test
+	public void testQueries() {
+		double[][] lower = createData(5_000, 3, 1);
+		double[][] upper = createUpper(lower, 1);
+		RTreePacked<Integer> tree = RTreePacked.create(3);
+		for (int i = 0; i < lower.length; i++) {
+			tree.insert(lower[i], upper[i], i);
+		}
+		Random R = new Random(0);
+		for (int i = 0; i < 100; i++) {
+			double[] min = new double[3];
+			double[] max = new double[3];
+			for (int d = 0; d < 3; d++) {
+				min[d] = R.nextInt(100);
+				max[d] = min[d] + R.nextInt(30);
+			}
+			int nExpected = 0;
+			for (int j = 0; j < lower.length; j++) {
+				if (intersects(lower[j], upper[j], min, max)) {
+					nExpected++;
+				}
+			}
+			int n = 0;
+			QueryIterator<RectangleEntry<Integer>> it = tree.queryIntersect(min, max);
+			while (it.hasNext()) {
+				RectangleEntry<Integer> e = it.next();
+				assertTrue(intersects(e.lower(), e.upper(), min, max));
+				assertTrue(Arrays.equals(lower[e.value()], e.lower()));
+				assertTrue(Arrays.equals(upper[e.value()], e.upper()));
+				n++;
+			}
+			assertEquals(nExpected, n);
+			
+			double[] center = min;
+			int k = 10;
+			double[] dists = new double[lower.length];
+			for (int j = 0; j < lower.length; j++) {
+				dists[j] = RectangleDistanceFunction.edgeDistance(center, lower[j], upper[j]);
+			}
+			Arrays.sort(dists);
+			QueryIteratorKNN<RectangleEntryDist<Integer>> itKnn = tree.queryKNN(center, k);
+			for (int j = 0; j < k; j++) {
+				RectangleEntryDist<Integer> e = itKnn.next();
+				assertEquals(dists[j], e.dist(), 0.0);
+				assertEquals(RectangleDistanceFunction.edgeDistance(center, e.lower(), e.upper()), 
+						e.dist(), 0.0);
+			}
+			assertFalse(itKnn.hasNext());
+		}
+	}
+	
+	@Test
+	public void testUpdate() {
+		//use unique rectangles
+		Random R = new Random(2);
+		double[][] lower = new double[10_000][];
+		double[][] upper = new double[10_000][];
+		for (int i = 0; i < lower.length; i++) {
+			lower[i] = new double[] {R.nextDouble() * 100, R.nextDouble() * 100};
+			upper[i] = new double[] {lower[i][0] + R.nextDouble(), lower[i][1] + R.nextDouble()};
+		}
+		RTreePacked<Integer> tree = RTreePacked.create(2);
+		for (int i = 0; i < lower.length; i++) {
+			tree.insert(lower[i], upper[i], i);
+		}
+		for (int i = 0; i < lower.length; i++) {
+			double[] lo2 = new double[] {lower[i][0] + 1, lower[i][1]};
+			double[] up2 = new double[] {upper[i][0] + 1, upper[i][1]};
+			assertEquals(i, (int) tree.update(lower[i], upper[i], lo2, up2));
+			lower[i] = lo2;
+			upper[i] = up2;
+		}
+		tree.getStats();
+		assertEquals(lower.length, tree.size());
+		for (int i = 0; i < lower.length; i++) {
+			assertTrue(tree.queryExact(lower[i], upper[i]) != null);
+		}
+	}
+	
+	private static boolean intersects(double[] lower, double[] upper, double[] min, double[] max) {
+		for (int d = 0; d < lower.length; d++) {
+			if (lower[d] > max[d] || upper[d] < min[d]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static double[][] createUpper(double[][] lower, long seed) {
+		double[][] upper = new double[lower.length][];
+		Random R = new Random(seed);
+		for (int i = 0; i < lower.length; i++) {
+			double[] lo = lower[i];
+			upper[i] = new double[lo.length];
+			Arrays.setAll(upper[i], (d) -> { return lo[d] + R.nextInt(5);} );
+		}
+		return upper;
+	}
+	
+	private void smokeTest(double[][] lower, double[][] upper) {
+		int dim = lower[0].length;
+		RTreePacked<double[]> tree = RTreePacked.create(dim);
+		for (int i = 0; i < lower.length; i++) {
+			tree.insert(lower[i], upper[i], lower[i]);
+		}
+		assertEquals(lower.length, tree.size());
+		assertEquals(lower.length, tree.getStats().getEntryCount());
+		for (int i = 0; i < lower.length; i++) {
+			if (tree.queryExact(lower[i], upper[i]) == null) {
+				throw new IllegalStateException("" + Arrays.toString(lower[i]));
+			}
+		}
+
+		for (int i = 0; i < lower.length; i++) {
+			RectangleEntryDist<double[]> e = tree.query1NN(lower[i]);
+			if (e == null) {
+				throw new IllegalStateException("kNN() failed: " + Arrays.toString(lower[i]));
+			}
+			assertEquals(0, e.dist(), 0.0);
+		}
+	    
+		for (int i = 0; i < lower.length; i++) {
+			double[] answer = tree.remove(lower[i], upper[i]); 
+			if (answer == null || !Arrays.equals(answer, lower[i])) {
+				throw new IllegalStateException("Expected " + Arrays.toString(lower[i]) + 
+						" but got " + Arrays.toString(answer));
+			}
+			if (i % 1000 == 0) {
+				assertEquals(lower.length - i - 1, tree.getStats().getEntryCount());
+			}
+		}
+		assertEquals(0, tree.size());
+		assertNull(tree.queryExact(lower[0], upper[0]));
+		assertFalse(tree.iterator().hasNext());
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.tinspin.index.PointEntryDist;
+import org.tinspin.index.PointIndex;
+import org.tinspin.index.QueryIteratorKNN;
+import org.tinspin.index.array.PointArray;
+import org.tinspin.index.covertree.CoverTree;
+import org.tinspin.index.kdtree.KDTree;
+import org.tinspin.index.qthypercube2.QuadTreeKD2;
+
+/**
+ * Compares the results of batch kNN queries with single kNN queries.
+ */
+public class TestPointKnnBatch {
+
+	private static final int N = 10*1000;
+	private static final int DIMS = 3;
+	private static final int K = 5;
+
+	@Test
+	public void testArray() {
+		//Uses the default implementation in PointIndex
+		check(new PointArray<>(DIMS, N));
+	}
+
+	@Test
+	public void testCoverTree() {
+		check(CoverTree.create(DIMS));
+	}
+
+	@Test
+	public void testKDTree() {
+		check(KDTree.create(DIMS));
+	}
+
+	@Test
+	public void testQuadTree2() {
+		check(QuadTreeKD2.create(DIMS));
+	}
+
+	private static void check(PointIndex<double[]> index) {
+		Random R = new Random(0);
+		for (int i = 0; i < N; i++) {
+			double[] p = new double[DIMS];
+			Arrays.setAll(p, j -> R.nextDouble());
+			index.insert(p, p);
+		}
+		
+		double[][] centers = new double[2000][DIMS];
+		for (double[] c : centers) {
+			Arrays.setAll(c, j -> R.nextDouble());
+		}
+		
+		double[][] dists = new double[centers.length][K];
+		int[] counts = new int[centers.length];
+		index.queryKNN(centers, K, (id, e) -> {
+			assertEquals(Arrays.toString(e.point()), Arrays.toString(e.value()));
+			dists[id][counts[id]++] = e.dist();
+		});
+		
+		for (int i = 0; i < centers.length; i++) {
+			assertEquals(K, counts[i]);
+			QueryIteratorKNN<PointEntryDist<double[]>> it = index.queryKNN(centers[i], K);
+			for (int j = 0; j < K; j++) {
+				assertEquals(it.next().dist(), dists[i][j], 0.0);
+			}
+		}
+	}
+}
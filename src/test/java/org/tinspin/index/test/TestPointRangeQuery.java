@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.tinspin.index.PointDistanceFunction;
+import org.tinspin.index.PointEntry;
+import org.tinspin.index.PointIndex;
+import org.tinspin.index.QueryIteratorRange;
+import org.tinspin.index.array.PointArray;
+import org.tinspin.index.covertree.CoverTree;
+import org.tinspin.index.kdbucket.KDBucketTree;
+import org.tinspin.index.kdfloat.KDFloatTree;
+import org.tinspin.index.kdtree.KDTree;
+import org.tinspin.index.qthypercube.QuadTreeKD;
+import org.tinspin.index.qthypercube2.QuadTreeKD2;
+import org.tinspin.index.qtplain.QuadTreeKD0;
+
+/**
+ * Compares the results of range queries with a brute force search.
+ */
+public class TestPointRangeQuery {
+
+	private static final int N = 10*1000;
+	private static final int DIMS = 3;
+
+	@Test
+	public void testArray() {
+		check(new PointArray<>(DIMS, N));
+	}
+
+	@Test
+	public void testCoverTree() {
+		check(CoverTree.create(DIMS));
+	}
+
+	@Test
+	public void testKDTree() {
+		check(KDTree.create(DIMS));
+	}
+
+	@Test
+	public void testKDTreeL1() {
+		check(KDTree.create(DIMS, PointDistanceFunction.L1), PointDistanceFunction.L1);
+	}
+
+	@Test
+	public void testKDTreeStatic() {
+		checkStatic(PointDistanceFunction.L2);
+	}
+
+	@Test
+	public void testKDTreeStaticL1() {
+		checkStatic(PointDistanceFunction.L1);
+	}
+
+	@Test
+	public void testKDBucketTree() {
+		check(KDBucketTree.create(DIMS));
+	}
+
+	@Test
+	public void testKDBucketTreeL1() {
+		check(KDBucketTree.create(DIMS, 16, PointDistanceFunction.L1), PointDistanceFunction.L1);
+	}
+
+	@Test
+	public void testKDFloatTree() {
+		check(KDFloatTree.create(DIMS));
+	}
+
+	@Test
+	public void testKDFloatTreeL1() {
+		check(KDFloatTree.create(DIMS, PointDistanceFunction.L1), PointDistanceFunction.L1);
+	}
+
+	@Test
+	public void testQuadTree() {
+		check(QuadTreeKD.create(DIMS));
+	}
+
+	@Test
+	public void testQuadTree2() {
+		check(QuadTreeKD2.create(DIMS));
+	}
+
+	/**
+	 * Uses the default implementation in PointIndex.
+	 */
+	@Test
+	public void testDefault() {
+		check(QuadTreeKD0.create(DIMS));
+	}
+
+	private static void checkStatic(PointDistanceFunction dist) {
+		Random R = new Random(0);
+		double[][] data = createData(R);
+		KDTree<double[]> tree = KDTree.create(DIMS, dist);
+		for (double[] p : data) {
+			tree.insert(p, p);
+		}
+		check(tree.freeze(), data, dist, R);
+	}
+
+	/**
+	 * Coordinates are multiples of 1/1024, so they are exact in float trees.
+	 */
+	private static double[][] createData(Random R) {
+		double[][] data = new double[N][DIMS];
+		for (double[] p : data) {
+			Arrays.setAll(p, i -> R.nextInt(1024) / 1024.);
+		}
+		return data;
+	}
+
+	private static void check(PointIndex<double[]> index) {
+		check(index, PointDistanceFunction.L2);
+	}
+
+	private static void check(PointIndex<double[]> index, PointDistanceFunction dist) {
+		Random R = new Random(0);
+		double[][] data = createData(R);
+		for (double[] p : data) {
+			index.insert(p, p);
+		}
+		check(index, data, dist, R);
+	}
+
+	private static void check(PointIndex<double[]> index, double[][] data, 
+			PointDistanceFunction dist, Random R) {
+		double[] center = new double[DIMS];
+		QueryIteratorRange<PointEntry<double[]>> it = index.queryRange(center, 0);
+		for (int i = 0; i < 200; i++) {
+			Arrays.setAll(center, j -> R.nextDouble());
+			double radius = i < 10 ? 0 : R.nextDouble() * 0.2;
+			if (i < 10) {
+				center = data[R.nextInt(N)].clone();
+			}
+			
+			List<String> expected = new ArrayList<>();
+			for (double[] p : data) {
+				if (dist.dist(center, p) <= radius) {
+					expected.add(Arrays.toString(p));
+				}
+			}
+			
+			List<String> actual = new ArrayList<>();
+			it.reset(center, radius);
+			while (it.hasNext()) {
+				PointEntry<double[]> e = it.next();
+				assertTrue(dist.dist(center, e.point()) <= radius);
+				actual.add(Arrays.toString(e.value()));
+			}
+			Collections.sort(expected);
+			Collections.sort(actual);
+			assertEquals(expected, actual);
+			if (i < 10) {
+				assertFalse(actual.isEmpty());
+			}
+		}
+	}
+}
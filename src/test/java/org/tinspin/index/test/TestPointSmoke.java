@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.test;
+
+import static org.tinspin.index.test.util.PointIndexTestUtil.checkQueries;
+import static org.tinspin.index.test.util.PointIndexTestUtil.createData;
+import static org.tinspin.index.test.util.PointIndexTestUtil.smokeTest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import org.junit.Test;
+import org.tinspin.index.PointIndex;
+import org.tinspin.index.kdbucket.KDBucketTree;
+import org.tinspin.index.kdfloat.KDFloatTree;
+
+/**
+ * Inserts, queries and removes points with different distributions.
+ */
+public class TestPointSmoke {
+
+	@Test
+	public void testKDBucketTree() {
+		check(KDBucketTree::create);
+	}
+
+	@Test
+	public void testKDFloatTree() {
+		check(KDFloatTree::create);
+	}
+
+	private static void check(IntFunction<PointIndex<double[]>> factory) {
+		double[][] point_list = {{2,3}, {5,4}, {9,6}, {4,7}, {8,1}, {7,2}};
+		smokeTest(factory.apply(2), point_list);
+
+		//duplicates
+		point_list = new double[100][2];
+		for (double[] p : point_list) {
+			p[0] = 2;
+			p[1] = 3;
+		}
+		smokeTest(factory.apply(2), point_list);
+
+		//line
+		point_list = new double[10000][3];
+		int n = 0;
+		for (double[] p : point_list) {
+			p[0] = n % 3;
+			p[1] = n++; 
+			p[2] = n % 5;
+		}
+		List<double[]> list = Arrays.asList(point_list);
+		Collections.shuffle(list, new Random(0));
+		smokeTest(factory.apply(3), list.toArray(point_list));
+
+		smokeTest(factory.apply(3), createData(100_000, 3, 0));
+		smokeTest(factory.apply(10), createData(100_000, 10, 0));
+
+		point_list = createData(5_000, 3, 1);
+		PointIndex<double[]> tree = factory.apply(3);
+		for (double[] data : point_list) {
+			tree.insert(data, data);
+		}
+		checkQueries(tree, point_list, 0);
+	}
+}
@@ -48,12 +48,18 @@ public class TestPointWrappers extends AbstractWrapperTest {
 		l.add(new Object[]{INDEX.ARRAY});
 		l.add(new Object[]{INDEX.COVER});
 		l.add(new Object[]{INDEX.KDTREE});
+		l.add(new Object[]{INDEX.KDBUCKET});
+		l.add(new Object[]{INDEX.KDTREE_LOAD});
+		l.add(new Object[]{INDEX.KDTREE_SPREAD});
+		l.add(new Object[]{INDEX.KDTREE_VARIANCE});
 		l.add(new Object[]{INDEX.PHTREE});
 		l.add(new Object[]{INDEX.QUAD});
 		l.add(new Object[]{INDEX.QUAD2});
 		l.add(new Object[]{INDEX.QUAD_OLD});
 		l.add(new Object[]{INDEX.RSTAR});
 		l.add(new Object[]{INDEX.STR});
+		l.add(new Object[]{INDEX.HILBERT});
+		l.add(new Object[]{INDEX.RSTAR_PACKED});
 //		l.add(new Object[]{INDEX.CRITBIT});
 		return l;
 	}
@@ -51,6 +51,10 @@ public class TestRectangleWrappers extends AbstractWrapperTest {
 		l.add(new Object[]{INDEX.QUAD});
 		l.add(new Object[]{INDEX.RSTAR});
 		l.add(new Object[]{INDEX.STR});
+		l.add(new Object[]{INDEX.HILBERT});
+		l.add(new Object[]{INDEX.RSTAR_PACKED});
+		l.add(new Object[]{INDEX.RTREE_LINEAR});
+		l.add(new Object[]{INDEX.RTREE_QUADRATIC});
 		return l;
 	}
 
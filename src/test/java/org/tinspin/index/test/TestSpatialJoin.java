@@ -0,0 +1,265 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.tinspin.index.JoinResultSink;
+import org.tinspin.index.PointIndexWrapper;
+import org.tinspin.index.RectangleDistanceFunction;
+import org.tinspin.index.RectangleIndex;
+import org.tinspin.index.SpatialJoin;
+import org.tinspin.index.array.RectArray;
+import org.tinspin.index.qthypercube.QuadTreeRKD;
+import org.tinspin.index.rtree.RTree;
+
+/**
+ * Compares the results of spatial joins with a nested loop join.
+ */
+public class TestSpatialJoin {
+
+	private static final int DIMS = 2;
+
+	@Test
+	public void testRTree() {
+		check(RTree.createRStar(DIMS), RTree.createRStar(DIMS), 20_000, 5_000);
+	}
+
+	@Test
+	public void testRTreeDifferentDepth() {
+		check(RTree.createRStar(DIMS), RTree.createRStar(DIMS), 50, 30_000);
+		check(RTree.createRStar(DIMS), RTree.createRStar(DIMS), 30_000, 50);
+		check(RTree.createRStar(DIMS), RTree.createRStar(DIMS), 1, 30_000);
+	}
+
+	@Test
+	public void testRTreeSelfJoin() {
+		RTree<Integer> tree = RTree.createRStar(DIMS);
+		List<double[][]> data = fill(tree, 15_000, new Random(0));
+		Set<Long> expected = nestedLoop(data, data, 0);
+		assertEquals(expected, join(tree, tree, 0, false));
+		assertEquals(expected, join(tree, tree, 0, true));
+	}
+
+	@Test
+	public void testFallback() {
+		check(QuadTreeRKD.create(DIMS), RTree.createRStar(DIMS), 10_000, 10_000);
+		check(RTree.createRStar(DIMS), QuadTreeRKD.create(DIMS), 10_000, 10_000);
+		check(new RectArray<>(DIMS, 2_000), QuadTreeRKD.create(DIMS), 2_000, 5_000);
+	}
+
+	@Test
+	public void testEmpty() {
+		check(RTree.createRStar(DIMS), RTree.createRStar(DIMS), 0, 1_000);
+		check(RTree.createRStar(DIMS), RTree.createRStar(DIMS), 1_000, 0);
+		check(QuadTreeRKD.create(DIMS), RTree.createRStar(DIMS), 0, 0);
+	}
+
+	@Test
+	public void testDistanceRTree() {
+		checkDistance(RTree.createRStar(DIMS), RTree.createRStar(DIMS), 20_000, 5_000, 0.005);
+		checkDistance(RTree.createRStar(DIMS), RTree.createRStar(DIMS), 100, 20_000, 0.02);
+	}
+
+	@Test
+	public void testDistanceFallback() {
+		checkDistance(QuadTreeRKD.create(DIMS), RTree.createRStar(DIMS), 10_000, 10_000, 0.005);
+		checkDistance(RTree.createRStar(DIMS), QuadTreeRKD.create(DIMS), 10_000, 10_000, 0.005);
+	}
+
+	@Test
+	public void testSelfJoinDistance() {
+		checkSelf(RTree.createRStar(DIMS), 10_000, 0);
+		checkSelf(RTree.createRStar(DIMS), 10_000, 0.005);
+		checkSelf(QuadTreeRKD.create(DIMS), 5_000, 0.01);
+		checkSelf(RTree.createRStar(DIMS), 1, 0.01);
+		checkSelf(RTree.createRStar(DIMS), 0, 0.01);
+	}
+
+	@Test
+	public void testPointWrapper() {
+		Random R = new Random(0);
+		PointIndexWrapper<Integer> pi1 = 
+				(PointIndexWrapper<Integer>) PointIndexWrapper.create(RTree.<Integer>createRStar(DIMS));
+		PointIndexWrapper<Integer> pi2 = 
+				(PointIndexWrapper<Integer>) PointIndexWrapper.create(RTree.<Integer>createRStar(DIMS));
+		List<double[]> data1 = new ArrayList<>();
+		List<double[]> data2 = new ArrayList<>();
+		for (int i = 0; i < 10_000; i++) {
+			double[] p1 = {R.nextDouble(), R.nextDouble()};
+			double[] p2 = {R.nextDouble(), R.nextDouble()};
+			pi1.insert(p1, i);
+			pi2.insert(p2, i);
+			data1.add(p1);
+			data2.add(p2);
+		}
+		double maxDist = 0.005;
+		Set<Long> expected = new HashSet<>();
+		Set<Long> expectedSelf = new HashSet<>();
+		for (int i = 0; i < data1.size(); i++) {
+			for (int j = 0; j < data2.size(); j++) {
+				if (dist(data1.get(i), data2.get(j)) <= maxDist) {
+					expected.add(key(i, j));
+				}
+				if (i < j && dist(data1.get(i), data1.get(j)) <= maxDist) {
+					expectedSelf.add(key(i, j));
+				}
+			}
+		}
+		assertTrue(!expected.isEmpty() && !expectedSelf.isEmpty());
+		for (boolean parallel : new boolean[] {false, true}) {
+			Set<Long> result = Collections.synchronizedSet(new HashSet<>());
+			pi1.join(pi2, maxDist, parallel, 
+					(e1, e2) -> assertTrue(result.add(key(e1.value(), e2.value()))));
+			assertEquals(expected, result);
+			Set<Long> resultSelf = Collections.synchronizedSet(new HashSet<>());
+			pi1.selfJoin(maxDist, parallel, (e1, e2) -> assertTrue(resultSelf.add(
+					key(Math.min(e1.value(), e2.value()), Math.max(e1.value(), e2.value())))));
+			assertEquals(expectedSelf, resultSelf);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDimsMismatch() {
+		SpatialJoin.sequential(RTree.createRStar(2), RTree.createRStar(3), (e1, e2) -> { });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeDistance() {
+		SpatialJoin.sequential(RTree.createRStar(2), RTree.createRStar(2), -1, (e1, e2) -> { });
+	}
+
+	private static void check(RectangleIndex<Integer> index1, RectangleIndex<Integer> index2, 
+			int n1, int n2) {
+		Random R = new Random(0);
+		List<double[][]> data1 = fill(index1, n1, R);
+		List<double[][]> data2 = fill(index2, n2, R);
+		Set<Long> expected = nestedLoop(data1, data2, 0);
+		assertTrue(n1 == 0 || n2 == 0 || !expected.isEmpty());
+		assertEquals(expected, join(index1, index2, 0, false));
+		assertEquals(expected, join(index1, index2, 0, true));
+		//default method
+		Set<Long> result = new HashSet<>();
+		index1.join(index2, (e1, e2) -> result.add(key(e1.value(), e2.value())));
+		assertEquals(expected, result);
+	}
+
+	private static void checkDistance(RectangleIndex<Integer> index1, 
+			RectangleIndex<Integer> index2, int n1, int n2, double maxDist) {
+		Random R = new Random(0);
+		List<double[][]> data1 = fill(index1, n1, R);
+		List<double[][]> data2 = fill(index2, n2, R);
+		Set<Long> expected = nestedLoop(data1, data2, maxDist);
+		//the distance join must find more than the intersection join
+		assertTrue(expected.size() > nestedLoop(data1, data2, 0).size());
+		assertEquals(expected, join(index1, index2, maxDist, false));
+		assertEquals(expected, join(index1, index2, maxDist, true));
+	}
+
+	private static void checkSelf(RectangleIndex<Integer> index, int n, double maxDist) {
+		List<double[][]> data = fill(index, n, new Random(0));
+		Set<Long> expected = new HashSet<>();
+		for (long k : nestedLoop(data, data, maxDist)) {
+			//only pairs (i, j) with i < j
+			if ((int) (k >>> 32) < (int) k) {
+				expected.add(k);
+			}
+		}
+		for (boolean parallel : new boolean[] {false, true}) {
+			List<Long> result = Collections.synchronizedList(new ArrayList<>());
+			JoinResultSink<Integer, Integer> sink = (e1, e2) -> result.add(
+					key(Math.min(e1.value(), e2.value()), Math.max(e1.value(), e2.value())));
+			if (parallel) {
+				SpatialJoin.parallelSelf(index, maxDist, sink);
+			} else {
+				SpatialJoin.sequentialSelf(index, maxDist, sink);
+			}
+			Set<Long> set = new HashSet<>(result);
+			//every pair only once
+			assertEquals(result.size(), set.size());
+			assertEquals(expected, set);
+		}
+	}
+
+	private static Set<Long> join(RectangleIndex<Integer> index1, 
+			RectangleIndex<Integer> index2, double maxDist, boolean parallel) {
+		List<Long> result = Collections.synchronizedList(new ArrayList<>());
+		if (parallel) {
+			SpatialJoin.parallel(index1, index2, maxDist, 
+					(e1, e2) -> result.add(key(e1.value(), e2.value())));
+		} else {
+			SpatialJoin.sequential(index1, index2, maxDist, 
+					(e1, e2) -> result.add(key(e1.value(), e2.value())));
+		}
+		Set<Long> set = new HashSet<>(result);
+		//no duplicates
+		assertEquals(result.size(), set.size());
+		return set;
+	}
+
+	private static List<double[][]> fill(RectangleIndex<Integer> index, int n, Random R) {
+		List<double[][]> data = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			double[] lo = new double[DIMS];
+			double[] up = new double[DIMS];
+			for (int d = 0; d < DIMS; d++) {
+				lo[d] = R.nextDouble();
+				up[d] = lo[d] + R.nextDouble() * 0.02;
+			}
+			index.insert(lo, up, i);
+			data.add(new double[][] {lo, up});
+		}
+		return data;
+	}
+
+	private static Set<Long> nestedLoop(List<double[][]> data1, List<double[][]> data2, 
+			double maxDist) {
+		Set<Long> result = new HashSet<>();
+		for (int i = 0; i < data1.size(); i++) {
+			double[][] r1 = data1.get(i);
+			for (int j = 0; j < data2.size(); j++) {
+				double[][] r2 = data2.get(j);
+				if (RectangleDistanceFunction.edgeDistance(r1[0], r1[1], r2[0], r2[1]) <= maxDist) {
+					result.add(key(i, j));
+				}
+			}
+		}
+		return result;
+	}
+
+	private static double dist(double[] p1, double[] p2) {
+		double d = 0;
+		for (int i = 0; i < p1.length; i++) {
+			d += (p1[i] - p2[i]) * (p1[i] - p2[i]);
+		}
+		return Math.sqrt(d);
+	}
+
+	private static long key(int id1, int id2) {
+		return ((long) id1 << 32) | id2;
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.tinspin.index.QueryIterator;
+import org.tinspin.index.RectangleEntry;
+import org.tinspin.index.RectangleIndex;
+import org.tinspin.index.WindowPredicate;
+import org.tinspin.index.array.RectArray;
+import org.tinspin.index.qthypercube.QuadTreeRKD;
+import org.tinspin.index.qtplain.QuadTreeRKD0;
+import org.tinspin.index.rtree.RTree;
+
+/**
+ * Compares the results of queryContained() and queryEnclosing() with a full scan.
+ */
+public class TestWindowPredicates {
+
+	private static final int N = 10_000;
+	private static final int DIMS = 3;
+
+	@Test
+	public void testRTree() {
+		check(RTree.createRStar(DIMS));
+	}
+
+	@Test
+	public void testQuadTreeRKD() {
+		check(QuadTreeRKD.create(DIMS));
+	}
+
+	/**
+	 * Windows that touch quadrant boundaries. The sub-node bounds of this tree are 
+	 * subject to rounding errors, e.g. the lower bound of an upper sub-node, 
+	 * (0.1+0.45)-0.45, is larger than 0.1.
+	 */
+	@Test
+	public void testQuadTreeRKDBoundary() {
+		double[] center = {0.1, 0.1, 0.1};
+		double radius = 0.9;
+		QuadTreeRKD<Integer> tree = QuadTreeRKD.create(DIMS, 10, center, radius);
+		Random R = new Random(0);
+		List<double[][]> data = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			double[] lo = new double[DIMS];
+			double[] up = new double[DIMS];
+			for (int d = 0; d < DIMS; d++) {
+				if (i % 2 == 0) {
+					//touch the lower boundary of the upper quadrant
+					lo[d] = center[d];
+					up[d] = lo[d] + R.nextDouble() * radius / 4;
+				} else {
+					//touch the outer boundary of the lower quadrant
+					lo[d] = center[d] - radius;
+					up[d] = lo[d] + R.nextDouble() * radius / 4;
+				}
+			}
+			tree.insert(lo, up, i);
+			data.add(new double[][] {lo, up});
+		}
+
+		int nEnclosing = 0;
+		for (double[][] w : data) {
+			Set<Integer> expEnclosing = scan(data, w[0], w[1], WindowPredicate.ENCLOSING);
+			assertEquals(expEnclosing, toSet(tree.queryEnclosing(w[0], w[1])));
+			nEnclosing += expEnclosing.size();
+		}
+		assertTrue(nEnclosing >= data.size());
+	}
+
+	@Test
+	public void testDefaultImplementation() {
+		check(QuadTreeRKD0.create(DIMS));
+		check(new RectArray<>(DIMS, N));
+	}
+
+	@Test
+	public void testEmpty() {
+		RTree<Integer> tree = RTree.createRStar(DIMS);
+		double[] min = {0, 0, 0};
+		double[] max = {1, 1, 1};
+		assertFalse(tree.queryContained(min, max).hasNext());
+		assertFalse(tree.queryEnclosing(min, max).hasNext());
+		QuadTreeRKD<Integer> qt = QuadTreeRKD.create(DIMS);
+		assertFalse(qt.queryContained(min, max).hasNext());
+		assertFalse(qt.queryEnclosing(min, max).hasNext());
+	}
+
+	private static void check(RectangleIndex<Integer> index) {
+		Random R = new Random(0);
+		List<double[][]> data = new ArrayList<>();
+		for (int i = 0; i < N; i++) {
+			double[] lo = new double[DIMS];
+			double[] up = new double[DIMS];
+			//a mix of small and large rectangles
+			double maxLen = i % 10 == 0 ? 0.5 : 0.05;
+			for (int d = 0; d < DIMS; d++) {
+				lo[d] = R.nextDouble();
+				up[d] = lo[d] + R.nextDouble() * maxLen;
+			}
+			index.insert(lo, up, i);
+			data.add(new double[][] {lo, up});
+		}
+
+		int nContained = 0;
+		int nEnclosing = 0;
+		QueryIterator<RectangleEntry<Integer>> itC = null;
+		QueryIterator<RectangleEntry<Integer>> itE = null;
+		for (int i = 0; i < 200; i++) {
+			double[] min = new double[DIMS];
+			double[] max = new double[DIMS];
+			double len = i % 2 == 0 ? 0.4 : 0.01;
+			for (int d = 0; d < DIMS; d++) {
+				min[d] = R.nextDouble();
+				max[d] = min[d] + R.nextDouble() * len;
+			}
+			Set<Integer> expContained = scan(data, min, max, WindowPredicate.CONTAINED);
+			Set<Integer> expEnclosing = scan(data, min, max, WindowPredicate.ENCLOSING);
+			assertEquals(expContained, toSet(index.queryContained(min, max)));
+			assertEquals(expEnclosing, toSet(index.queryEnclosing(min, max)));
+			//reuse iterators
+			if (itC == null) {
+				itC = index.queryContained(min, max);
+				itE = index.queryEnclosing(min, max);
+			} else {
+				itC.reset(min, max);
+				itE.reset(min, max);
+			}
+			assertEquals(expContained, toSet(itC));
+			assertEquals(expEnclosing, toSet(itE));
+			nContained += expContained.size();
+			nEnclosing += expEnclosing.size();
+		}
+		assertTrue(nContained > 0);
+		assertTrue(nEnclosing > 0);
+	}
+
+	private static Set<Integer> scan(List<double[][]> data, double[] min, double[] max, 
+			WindowPredicate predicate) {
+		Set<Integer> result = new HashSet<>();
+		for (int i = 0; i < data.size(); i++) {
+			double[][] r = data.get(i);
+			boolean matches = true;
+			for (int d = 0; d < DIMS; d++) {
+				if (predicate == WindowPredicate.CONTAINED) {
+					matches &= r[0][d] >= min[d] && r[1][d] <= max[d];
+				} else {
+					matches &= r[0][d] <= min[d] && r[1][d] >= max[d];
+				}
+			}
+			if (matches) {
+				result.add(i);
+			}
+		}
+		return result;
+	}
+
+	private static Set<Integer> toSet(QueryIterator<RectangleEntry<Integer>> it) {
+		Set<Integer> result = new HashSet<>();
+		while (it.hasNext()) {
+			assertTrue(result.add(it.next().value()));
+		}
+		return result;
+	}
+}
@@ -15,7 +15,9 @@ import org.tinspin.index.PointIndex;
 import org.tinspin.index.PointIndexWrapper;
 import org.tinspin.index.QueryIterator;
 import org.tinspin.index.QueryIteratorKNN;
+import org.tinspin.index.kdtree.KDTree;
 import org.tinspin.index.rtree.Entry;
+import org.tinspin.index.rtree.RTree.LoadPolicy;
 import org.tinspin.index.test.util.TestStats.INDEX;
 
 public class PointIndexCandidate extends Candidate {
@@ -27,6 +29,8 @@ public class PointIndexCandidate extends Candidate {
 	private QueryIterator<PointEntry<double[]>> it;
 	private QueryIteratorKNN<PointEntryDist<double[]>> itKnn;
 	private final boolean bulkloadSTR;
+	private final LoadPolicy loadPolicy;
+	private final boolean bulkloadKD;
 	private final INDEX index;
 
 	
@@ -40,7 +44,10 @@ public class PointIndexCandidate extends Candidate {
 		this.dims = ts.cfgNDims;
 		idx = (PointIndex<double[]>) pi;
 		this.index = ts.INDEX;
-		this.bulkloadSTR = INDEX.STR == this.index;
+		this.bulkloadSTR = INDEX.STR == this.index || INDEX.HILBERT == this.index;
+		this.loadPolicy = INDEX.HILBERT == this.index ? LoadPolicy.HILBERT : LoadPolicy.STR;
+		this.bulkloadKD = INDEX.KDTREE_LOAD == this.index || INDEX.KDTREE_SPREAD == this.index
+				|| INDEX.KDTREE_VARIANCE == this.index;
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -57,7 +64,14 @@ public class PointIndexCandidate extends Candidate {
 				entries[i] = new Entry<double[]>(buf, buf, buf);
 			}
 			PointIndexWrapper<double[]> rt = (PointIndexWrapper<double[]>) idx;
-			rt.load(entries);
+			rt.load(entries, loadPolicy);
+		} else if (bulkloadKD) {
+			double[][] keys = new double[N][];
+			for (int i = 0; i < N; i++) {
+				keys[i] = Arrays.copyOfRange(data, i*dims, (i+1)*dims);
+			}
+			KDTree<double[]> kd = (KDTree<double[]>) idx;
+			kd.load(keys, keys);
 		} else {
 			for (int i = 0; i < N; i++) {
 				double[] buf = new double[dims];
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016-2017 Tilmann Zaeschke
+ * 
+ * This file is part of TinSpin.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinspin.index.test.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.tinspin.index.PointDistanceFunction;
+import org.tinspin.index.PointEntry;
+import org.tinspin.index.PointEntryDist;
+import org.tinspin.index.PointIndex;
+import org.tinspin.index.QueryIterator;
+import org.tinspin.index.QueryIteratorKNN;
+
+/**
+ * Test data and checks that are shared by the tests of the point indexes.
+ */
+public class PointIndexTestUtil {
+
+	private PointIndexTestUtil() {
+		//utility class
+	}
+
+	/**
+	 * Creates random points with integer coordinates in [0, 100). 
+	 * This results in many points with equal coordinates.
+	 * @param n number of points
+	 * @param dims dimensionality
+	 * @param seed random seed
+	 * @return the points
+	 */
+	public static double[][] createData(int n, int dims, long seed) {
+		double[][] point_list = new double[n][dims];
+		Random R = new Random(seed);
+		for (double[] p : point_list) {
+			Arrays.setAll(p, (i) -> { return (double)R.nextInt(100);} );
+		}
+		return point_list;
+	}
+
+	/**
+	 * Inserts all points, checks that they can be found with exact and kNN queries,
+	 * and removes them again. The tree must be empty.
+	 * @param tree an empty tree
+	 * @param point_list the points
+	 */
+	public static void smokeTest(PointIndex<double[]> tree, double[][] point_list) {
+		for (double[] data : point_list) {
+			tree.insert(data, data);
+		}
+		assertEquals(point_list.length, tree.size());
+		for (double[] key : point_list) {
+			if (tree.queryExact(key) == null) {
+				throw new IllegalStateException("" + Arrays.toString(key));
+			}
+		}
+
+		for (double[] key : point_list) {
+			QueryIteratorKNN<PointEntryDist<double[]>> iter = tree.queryKNN(key, 1);
+			if (!iter.hasNext()) {
+				throw new IllegalStateException("kNN() failed: " + Arrays.toString(key));
+			}
+			double[] answer = iter.next().point();
+			if (answer != key && !Arrays.equals(answer, key)) {
+				throw new IllegalStateException("Expected " + Arrays.toString(key) + " but got " + Arrays.toString(answer));
+			}
+		}
+	    
+		for (double[] key : point_list) {
+			double[] answer = tree.remove(key); 
+			if (answer != key && !Arrays.equals(answer, key)) {
+				throw new IllegalStateException("Expected " + Arrays.toString(key) + " but got " + Arrays.toString(answer));
+			}
+		}
+		assertEquals(0, tree.size());
+		assertNull(tree.queryExact(point_list[0]));
+	}
+
+	/**
+	 * Compares window queries and kNN queries with a brute force search.
+	 * @param tree a tree that contains exactly the given points
+	 * @param point_list the points, as created by {@link #createData(int, int, long)}
+	 * @param seed random seed for the queries
+	 */
+	public static void checkQueries(PointIndex<double[]> tree, double[][] point_list, long seed) {
+		int dims = tree.getDims();
+		Random R = new Random(seed);
+		for (int i = 0; i < 100; i++) {
+			double[] min = new double[dims];
+			double[] max = new double[dims];
+			for (int d = 0; d < dims; d++) {
+				min[d] = R.nextInt(100);
+				max[d] = min[d] + R.nextInt(30);
+			}
+			int nExpected = 0;
+			for (double[] p : point_list) {
+				if (isEnclosed(p, min, max)) {
+					nExpected++;
+				}
+			}
+			int n = 0;
+			QueryIterator<PointEntry<double[]>> it = tree.query(min, max);
+			while (it.hasNext()) {
+				assertTrue(isEnclosed(it.next().point(), min, max));
+				n++;
+			}
+			assertEquals(nExpected, n);
+			
+			double[] center = min;
+			int k = 10;
+			double[] dists = new double[point_list.length];
+			for (int j = 0; j < point_list.length; j++) {
+				dists[j] = PointDistanceFunction.l2(center, point_list[j]);
+			}
+			Arrays.sort(dists);
+			QueryIteratorKNN<PointEntryDist<double[]>> itKnn = tree.queryKNN(center, k);
+			for (int j = 0; j < k; j++) {
+				assertEquals(dists[j], itKnn.next().dist(), 0.0);
+			}
+			assertFalse(itKnn.hasNext());
+		}
+	}
+	
+	private static boolean isEnclosed(double[] p, double[] min, double[] max) {
+		for (int d = 0; d < p.length; d++) {
+			if (p[d] < min[d] || p[d] > max[d]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -16,6 +16,7 @@ import org.tinspin.index.RectangleEntryDist;
 import org.tinspin.index.RectangleIndex;
 import org.tinspin.index.rtree.Entry;
 import org.tinspin.index.rtree.RTree;
+import org.tinspin.index.rtree.RTree.LoadPolicy;
 import org.tinspin.index.test.util.TestStats.INDEX;
 
 public class RectangleIndexCandidate extends Candidate {
@@ -28,6 +29,7 @@ public class RectangleIndexCandidate extends Candidate {
 	private QueryIterator<RectangleEntry<Object>> query = null;
 	private QueryIteratorKNN<RectangleEntryDist<Object>> queryKnn = null;
 	private final boolean bulkloadSTR;
+	private final LoadPolicy loadPolicy;
 	
 	/**
 	 * @param ri index 
@@ -38,7 +40,8 @@ public class RectangleIndexCandidate extends Candidate {
 		this.N = ts.cfgNEntries;
 		this.dims = ts.cfgNDims;
 		this.idx = (RectangleIndex<Object>) ri;
-		this.bulkloadSTR = ts.INDEX.equals(INDEX.STR);
+		this.bulkloadSTR = ts.INDEX.equals(INDEX.STR) || ts.INDEX.equals(INDEX.HILBERT);
+		this.loadPolicy = ts.INDEX.equals(INDEX.HILBERT) ? LoadPolicy.HILBERT : LoadPolicy.STR;
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -58,7 +61,7 @@ public class RectangleIndexCandidate extends Candidate {
 				entries[i] = new Entry<Object>(lo, hi, O);
 			}
 			RTree<Object> rt = (RTree<Object>) idx;
-			rt.load(entries);
+			rt.load(entries, loadPolicy);
 		} else {
 			int pos = 0;
 			for (int n = 0; n < N; n++) {
@@ -51,7 +51,12 @@ public class TestRunner {
 		//TestStats s0 = new TestStats(TST.CLUSTER, IDX.RSZ, N, DIM, false, 3.4);
 		//TestStats s0 = new TestStats(TST.CUBE, INDEX.QUAD_OLD, N, DIM, false, 1.0);
 		//TestStats s0 = new TestStats(TST.OSM, INDEX.RSTAR, N, 2, false, 1.0);
+		//Split policies: compare KDTREE_LOAD (round-robin) with KDTREE_SPREAD and KDTREE_VARIANCE
+		//TestStats s0 = new TestStats(TST.CLUSTER, INDEX.KDTREE_SPREAD, N, DIM, true, 5);
 		//s0.cfgWindowQueryRepeat = 1000;
+		//Node capacities of the R*Tree: report the best capacity per dimensionality
+		//sweepNodeCapacity(TST.CUBE, INDEX.RSTAR, N, new int[]{2, 3, 6, 10}, 
+		//		new int[]{8, 10, 16, 24, 32, 48, 64});
 		s0.cfgPointQueryRepeat = 1000*1000;
 		//s0.cfgUpdateSize = 1000;
 
@@ -68,6 +73,48 @@ public class TestRunner {
 	}
 	
 
+	/**
+	 * Run the test for all combinations of dimensionality and node capacity and
+	 * report the capacity with the best insert (or load), window query and 
+	 * 10-NN query times for each dimensionality.
+	 * @param tst the test data
+	 * @param index an R*Tree index, e.g. RSTAR or STR
+	 * @param N number of entries
+	 * @param dims the dimensionalities
+	 * @param capacities the node capacities
+	 */
+	public static void sweepNodeCapacity(TST tst, INDEX index, int N, int[] dims, int[] capacities) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("dims\tcapacity\tload[ns/entry]\twindow[ns/result]\t10-NN[ns/query]\n");
+		for (int dim : dims) {
+			long[] best = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+			int[] bestCapacity = new int[3];
+			for (int capacity : capacities) {
+				TestStats s0 = new TestStats(tst, index, N, dim, false, 1.0);
+				s0.cfgNodeCapacity = capacity;
+				s0.cfgPointQueryRepeat = 1000;
+				s0.setSeed(0);
+				TestStats s = new TestRunner(s0).run();
+				long[] t = {s.statTLoad*1000*1000/N, s.statTq2E, s.statTqk10_2E};
+				for (int i = 0; i < t.length; i++) {
+					if (t[i] < best[i]) {
+						best[i] = t[i];
+						bestCapacity[i] = capacity;
+					}
+				}
+				sb.append(dim).append('\t').append(capacity);
+				for (long x : t) {
+					sb.append('\t').append(x);
+				}
+				sb.append('\n');
+			}
+			sb.append("best for dims=").append(dim).append(": load=").append(bestCapacity[0]);
+			sb.append(" window=").append(bestCapacity[1]).append(" 10-NN=").append(bestCapacity[2]);
+			sb.append('\n');
+		}
+		log(sb.toString());
+	}
+
 	public TestRunner(TestStats S) { 
 		this.S = S;
 		this.R = new Random(S.seed);
@@ -9,13 +9,17 @@ package org.tinspin.index.test.util;
 import java.io.Serializable;
 import java.util.List;
 
+import org.tinspin.index.PointDistanceFunction;
 import org.tinspin.index.PointIndex;
 import org.tinspin.index.PointIndexWrapper;
 import org.tinspin.index.RectangleIndex;
 import org.tinspin.index.array.PointArray;
 import org.tinspin.index.array.RectArray;
 import org.tinspin.index.covertree.CoverTree;
+import org.tinspin.index.kdbucket.KDBucketTree;
+import org.tinspin.index.kdfloat.KDFloatTree;
 import org.tinspin.index.kdtree.KDTree;
+import org.tinspin.index.kdtree.KDTree.SplitPolicy;
 import org.tinspin.index.phtree.PHTreeP;
 import org.tinspin.index.phtree.PHTreeR;
 import org.tinspin.index.qthypercube.QuadTreeKD;
@@ -24,6 +28,7 @@ import org.tinspin.index.qthypercube2.QuadTreeKD2;
 import org.tinspin.index.qtplain.QuadTreeKD0;
 import org.tinspin.index.qtplain.QuadTreeRKD0;
 import org.tinspin.index.rtree.RTree;
+import org.tinspin.index.rtreepacked.RTreePacked;
 
 public class TestStats implements Serializable, Cloneable {
 
@@ -32,6 +37,16 @@ public class TestStats implements Serializable, Cloneable {
 		ARRAY,
 		/** kD-Tree */
 		KDTREE,
+		/** kD-Tree with bucket leaves */
+		KDBUCKET,
+		/** kD-Tree with float coordinates */
+		KDFLOAT,
+		/** bulk-loaded kD-Tree */
+		KDTREE_LOAD,
+		/** bulk-loaded kD-Tree, split dimensions with maximum spread */
+		KDTREE_SPREAD,
+		/** bulk-loaded kD-Tree, split dimensions with maximum variance */
+		KDTREE_VARIANCE,
 		/** PH-Tree */
 		PHTREE,
 		/** CritBit */
@@ -46,28 +61,45 @@ public class TestStats implements Serializable, Cloneable {
 		RSTAR,
 		/** STR-loaded RStarTree */
 		STR,
+		/** Hilbert-packed RStarTree */
+		HILBERT,
+		/** RStarTree with packed nodes */
+		RSTAR_PACKED,
+		/** RTree with Guttman's linear split */
+		RTREE_LINEAR,
+		/** RTree with Guttman's quadratic split */
+		RTREE_QUADRATIC,
 		/** CoverTree */
 		COVER
 	}
 
-	static <T> PointIndex<T> createPI(INDEX idx, int dims, int size) {
+	static <T> PointIndex<T> createPI(INDEX idx, int dims, int size, int nodeCapacity) {
 		switch (idx) {
 		case ARRAY: return new PointArray<>(dims, size);
 		//case CRITBIT: return new PointArray<>(dims, size);
 		case KDTREE: return KDTree.create(dims);
+		case KDBUCKET: return KDBucketTree.create(dims);
+		case KDFLOAT: return KDFloatTree.create(dims);
+		case KDTREE_LOAD: return KDTree.create(dims, PointDistanceFunction.L2, SplitPolicy.ROUND_ROBIN);
+		case KDTREE_SPREAD: return KDTree.create(dims, PointDistanceFunction.L2, SplitPolicy.MAX_SPREAD);
+		case KDTREE_VARIANCE: return KDTree.create(dims, PointDistanceFunction.L2, SplitPolicy.MAX_VARIANCE);
 		case PHTREE: return PHTreeP.createPHTree(dims);
 		case QUAD: return QuadTreeKD.create(dims);
 		case QUAD2: return QuadTreeKD2.create(dims);
 		case QUAD_OLD: return QuadTreeKD0.create(dims);
 		case RSTAR: 
-		case STR: return PointIndexWrapper.create(RTree.createRStar(dims));
+		case STR: 
+		case HILBERT: return PointIndexWrapper.create(createRStar(dims, nodeCapacity));
+		case RSTAR_PACKED: return PointIndexWrapper.create(RTreePacked.create(dims));
+		case RTREE_LINEAR: return PointIndexWrapper.create(RTree.createLinear(dims));
+		case RTREE_QUADRATIC: return PointIndexWrapper.create(RTree.createQuadratic(dims));
 		case COVER: return CoverTree.create(dims);
 		default:
 			throw new UnsupportedOperationException();
 		}
 	}
 	
-	static <T> RectangleIndex<T> createRI(INDEX idx, int dims, int size) {
+	static <T> RectangleIndex<T> createRI(INDEX idx, int dims, int size, int nodeCapacity) {
 		switch (idx) {
 		case ARRAY: return new RectArray<>(dims, size);
 		//case CRITBIT: return new PointArray<>(dims, size);
@@ -75,12 +107,23 @@ public class TestStats implements Serializable, Cloneable {
 		case QUAD: return QuadTreeRKD.create(dims);
 		case QUAD_OLD: return QuadTreeRKD0.create(dims);
 		case RSTAR: 
-		case STR: return RTree.createRStar(dims);
+		case STR: 
+		case HILBERT: return createRStar(dims, nodeCapacity);
+		case RSTAR_PACKED: return RTreePacked.create(dims);
+		case RTREE_LINEAR: return RTree.createLinear(dims);
+		case RTREE_QUADRATIC: return RTree.createQuadratic(dims);
 		default:
 			throw new UnsupportedOperationException();
 		}
 	}
 	
+	private static <T> RTree<T> createRStar(int dims, int nodeCapacity) {
+		if (nodeCapacity > 0) {
+			return RTree.createRStar(dims, nodeCapacity, nodeCapacity);
+		}
+		return RTree.createRStar(dims);
+	}
+	
 	
 	/** Edge length of the populated data area. */
 	//private final double DEFAULT_LEN = (1L<<31)-1;
@@ -155,6 +198,8 @@ public class TestStats implements Serializable, Cloneable {
 	public double cfgDataLen = DEFAULT_DATA_LEN;
 	/** length of the data rectangles */
 	public double cfgRectLen = DEFAULT_RECT_LEN;
+	/** Node capacity of R*Trees, '0' for the default capacity. */
+	public int cfgNodeCapacity = 0;
 	
 	public final TestStats.INDEX INDEX;
 	public final TestStats.TST TEST;
@@ -493,10 +538,10 @@ public class TestStats implements Serializable, Cloneable {
 	
 	public Candidate createTree(int size, TestStats ts) {
 		if (isRangeData) {
-			RectangleIndex<?> ri = createRI(INDEX, cfgNDims, size);
+			RectangleIndex<?> ri = createRI(INDEX, cfgNDims, size, cfgNodeCapacity);
 			return new RectangleIndexCandidate(ri, ts);
 		} else {
-			PointIndex<?> pi = createPI(INDEX, cfgNDims, size);
+			PointIndex<?> pi = createPI(INDEX, cfgNDims, size, cfgNodeCapacity);
 			return new PointIndexCandidate(pi, ts);
 		}
 	}